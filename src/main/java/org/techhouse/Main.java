@@ -9,6 +9,7 @@ import org.techhouse.cache.Cache;
 import org.techhouse.cache.MemoryManagement;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
+import org.techhouse.conn.ClientTracker;
 import org.techhouse.conn.SocketServer;
 import org.techhouse.conn.tls.TlsContextFactory;
 import org.techhouse.data.admin.AdminUserEntry;
@@ -16,6 +17,7 @@ import org.techhouse.data.auth.GlobalPermissionType;
 import org.techhouse.data.auth.PasswordHasher;
 import org.techhouse.ex.InvalidPortException;
 import org.techhouse.fs.FileSystem;
+import org.techhouse.fs.WriteAheadLog;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.listen.ListenManager;
 import org.techhouse.log.LogWriter;
@@ -25,10 +27,12 @@ import org.techhouse.ops.AdminOperationHelper;
 public class Main {
     private static final Configuration config = Configuration.getInstance();
     private static final FileSystem fs = IocContainer.get(FileSystem.class);
+    private static final WriteAheadLog wal = IocContainer.get(WriteAheadLog.class);
     private static final Cache cache = IocContainer.get(Cache.class);
     private static final MemoryManagement memoryManagement = IocContainer.get(MemoryManagement.class);
     private static final BackgroundTaskManager backgroundTaskManager = IocContainer.get(BackgroundTaskManager.class);
     private static final ListenManager listenManager = IocContainer.get(ListenManager.class);
+    private static final ClientTracker clientTracker = IocContainer.get(ClientTracker.class);
     private static final Logger logger = Logger.logFor(Main.class);
 
     private static int getPort(String[] args) {
@@ -47,6 +51,9 @@ public class Main {
         LogWriter.createLogPathAndRemoveOldFiles();
         fs.createBaseDbPath();
         fs.createAdminDatabase();
+        // Must run before any cache load so the caches are built from files that include every logged write.
+        fs.recoverInterruptedPageCompactions();
+        fs.recoverFromWriteAheadLog();
         cache.loadAdminData();
         bootstrapDefaultAdmin();
         final var port = getPort(args);
@@ -54,6 +61,8 @@ public class Main {
         listenManager.startWorkers();
         memoryManagement.loadProfileFromAdmin();
         memoryManagement.startSweepThread();
+        wal.startCheckpointThread();
+        clientTracker.startCursorSweepThread();
         warnIfXmxExceedsMaxMemory();
         warnIfDefaultAdminPassword();
         // Built eagerly so a self-signed keystore is generated (and its security warning logged) at startup,
@@ -6,6 +6,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import org.techhouse.config.Globals;
+import org.techhouse.ops.QueryPlan;
 
 /**
  * Thread-scoped collector for AGGREGATE "analyze" mode. It is created and registered by
@@ -21,6 +22,8 @@ public final class AnalyzeContext {
     private final AtomicLong documentsScanned = new AtomicLong();
     private final Set<String> indexesUsed = ConcurrentHashMap.newKeySet();
     private final List<String> locksAcquired = new CopyOnWriteArrayList<>();
+    private final List<String> joinStrategies = new CopyOnWriteArrayList<>();
+    private volatile QueryPlan plan;
 
     public static AnalyzeContext current() {
         return CURRENT.get();
@@ -52,6 +55,11 @@ public final class AnalyzeContext {
         locksAcquired.add(lockIdentifier);
     }
 
+    // How a JOIN step was run, recorded once the step picks its strategy.
+    public void addJoinStrategy(String description) {
+        joinStrategies.add(description);
+    }
+
     public long getDocumentsScanned() {
         return documentsScanned.get();
     }
@@ -63,4 +71,17 @@ public final class AnalyzeContext {
     public List<String> getLocksAcquired() {
         return locksAcquired;
     }
+
+    public List<String> getJoinStrategies() {
+        return joinStrategies;
+    }
+
+    // The pipeline as the planner rewrote it; null until planned.
+    public void setPlan(QueryPlan plan) {
+        this.plan = plan;
+    }
+
+    public QueryPlan getPlan() {
+        return plan;
+    }
 }
@@ -7,7 +7,7 @@ import java.util.List;
  * serializer emits it like the other response DTOs. The timing fields
  * ({@code startTime}/{@code endTime}/{@code durationMillis}) are set by {@code MessageProcessor}
  * around the processing call; the remaining fields are populated by {@code AnalyzeHelper} from the
- * {@link AnalyzeContext} gathered during the pipeline run.
+ * {@link AnalyzeContext} gathered during the pipeline run, including the plan the steps ran as.
  */
 public class AnalyzeResult {
     public long startTime;
@@ -18,6 +18,9 @@ public class AnalyzeResult {
     public long documentsScanned;
     public List<String> locksAcquired;
     public List<String> suggestions;
+    public List<String> plan;
+    public List<String> planRewrites;
+    public List<String> joinStrategies;
 
     public long getStartTime() {
         return startTime;
@@ -82,4 +85,28 @@ public class AnalyzeResult {
     public void setSuggestions(List<String> suggestions) {
         this.suggestions = suggestions;
     }
+
+    public List<String> getPlan() {
+        return plan;
+    }
+
+    public void setPlan(List<String> plan) {
+        this.plan = plan;
+    }
+
+    public List<String> getPlanRewrites() {
+        return planRewrites;
+    }
+
+    public void setPlanRewrites(List<String> planRewrites) {
+        this.planRewrites = planRewrites;
+    }
+
+    public List<String> getJoinStrategies() {
+        return joinStrategies;
+    }
+
+    public void setJoinStrategies(List<String> joinStrategies) {
+        this.joinStrategies = joinStrategies;
+    }
 }
@@ -8,9 +8,14 @@ import org.techhouse.bckg_ops.events.CollectionUsageEvent;
 import org.techhouse.bckg_ops.events.EntityEvent;
 import org.techhouse.bckg_ops.events.Event;
 import org.techhouse.bckg_ops.events.EventType;
+import org.techhouse.bckg_ops.events.PageCompactionEvent;
 import org.techhouse.bckg_ops.events.UsageProfileCleanupEvent;
+import org.techhouse.cache.Cache;
 import org.techhouse.cache.MemoryManagement;
+import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.fs.FileSystem;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.AdminOperationHelper;
 import org.techhouse.ops.IndexHelper;
@@ -18,6 +23,9 @@ import org.techhouse.ops.IndexHelper;
 public class EventProcessorHelper {
     private static final MemoryManagement memoryManagement = IocContainer.get(MemoryManagement.class);
     private static final PendingIndexWrites pendingIndexWrites = IocContainer.get(PendingIndexWrites.class);
+    private static final FileSystem fs = IocContainer.get(FileSystem.class);
+    private static final Cache cache = IocContainer.get(Cache.class);
+    private static final ResourceLocking locks = IocContainer.get(ResourceLocking.class);
 
     public static void processEvent(Event event) throws IOException, InterruptedException {
         switch (event) {
@@ -26,10 +34,34 @@ public class EventProcessorHelper {
             case CollectionUsageEvent usageEvent -> AdminOperationHelper.upsertCollectionUsage(usageEvent);
             case UsageProfileCleanupEvent ignored ->
                 AdminOperationHelper.cleanupCollectionUsage(memoryManagement.usageRetentionMillis());
+            case PageCompactionEvent compactionEvent -> processPageCompactionEvent(compactionEvent);
             default -> throw new IllegalStateException("Unexpected value: " + event);
         }
     }
 
+    private static void processPageCompactionEvent(PageCompactionEvent event)
+            throws IOException, InterruptedException {
+        final var dbName = event.getDbName();
+        final var collName = event.getCollName();
+        if (!Globals.ADMIN_DB_NAME.equals(dbName) && AdminOperationHelper.getCollectionEntry(dbName, collName) == null) {
+            // The collection was dropped while this event was queued.
+            return;
+        }
+        // The collection write lock keeps every operation from holding a PK position while rows move; the cached
+        // entries are fixed before it is released. Snapshot readers hold positions without it: rather than keep
+        // every writer waiting for them, the compaction is given up and retried a little later.
+        locks.lock(dbName, collName);
+        try {
+            if (!locks.tryExclusive(dbName, collName)) {
+                fs.retryPageCompaction(dbName, collName, event.getPage());
+                return;
+            }
+            cache.applyPageCompaction(fs.compactPage(dbName, collName, event.getPage()));
+        } finally {
+            locks.release(dbName, collName);
+        }
+    }
+
     private static void processBulkEntityEvent(BulkEntityEvent event) throws IOException, InterruptedException {
         final var dbName = event.getDbName();
         final var collName = event.getCollName();
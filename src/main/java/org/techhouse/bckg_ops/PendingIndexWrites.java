@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.techhouse.cache.Cache;
+import org.techhouse.concurrency.ReadSnapshot;
 
 /**
  * Tracks documents that have been committed (document, PK index and document cache updated
@@ -48,12 +49,19 @@ public class PendingIndexWrites {
     }
 
     // Snapshot of the ids currently pending for the collection; empty when there are no recent
-    // writes, in which case index reads incur no overhead.
+    // writes, in which case index reads incur no overhead. Under a ReadSnapshot the ids written
+    // since it was pinned are included too: the field indexes may already hold their newer values.
     public Set<String> idsFor(String dbName, String collName) {
         final var byId = pending.get(Cache.getCollectionIdentifier(dbName, collName));
-        if (byId == null || byId.isEmpty()) {
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
+        final var written = snapshot == null ? Set.<String>of() : snapshot.delta(dbName, collName).ids();
+        if ((byId == null || byId.isEmpty()) && written.isEmpty()) {
             return Set.of();
         }
-        return new HashSet<>(byId.keySet());
+        final var ids = new HashSet<>(written);
+        if (byId != null) {
+            ids.addAll(byId.keySet());
+        }
+        return ids;
     }
 }
@@ -0,0 +1,50 @@
+package org.techhouse.bckg_ops.events;
+
+import java.util.Objects;
+
+public class PageCompactionEvent extends Event {
+    private final String dbName;
+    private final String collName;
+    private final long page;
+
+    public PageCompactionEvent(String dbName, String collName, long page) {
+        super(EventType.UPDATED);
+        this.dbName = dbName;
+        this.collName = collName;
+        this.page = page;
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public String getCollName() {
+        return collName;
+    }
+
+    public long getPage() {
+        return page;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PageCompactionEvent that))
+            return false;
+        if (!super.equals(o))
+            return false;
+        return page == that.page && Objects.equals(dbName, that.dbName) && Objects.equals(collName, that.collName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), dbName, collName, page);
+    }
+
+    @Override
+    public String toString() {
+        return "PageCompactionEvent(super=" + super.toString() + ", dbName=" + dbName + ", collName=" + collName
+                + ", page=" + page + ")";
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
@@ -38,6 +39,8 @@ public class AdminCache {
     private final Map<String, AdminCollEntry> collections = new ConcurrentHashMap<>();
     private final Map<String, AdminUserEntry> users = new ConcurrentHashMap<>();
     private final Map<String, List<AdminPageEntry>> pages = new ConcurrentHashMap<>();
+    // Collection -> page -> bytes of the inserts in flight there; guarded by this object's monitor.
+    private final Map<String, Map<Long, Long>> reservedPageBytes = new HashMap<>();
     private final Map<String, PkIndexEntry> databasesPkIndex = new ConcurrentHashMap<>();
     private final Map<String, PkIndexEntry> collectionsPkIndex = new ConcurrentHashMap<>();
     private final Map<String, PkIndexEntry> usersPkIndex = new ConcurrentHashMap<>();
@@ -117,7 +120,7 @@ public class AdminCache {
             pagesStream.forEach(map -> map.values().stream()
                     .map(e -> AdminPageEntry.fromJsonObject(dbName, collName, e.getData())).forEach(pageEntries::add));
         }
-        pages.put(collId, pageEntries);
+        pages.put(collId, new CopyOnWriteArrayList<>(pageEntries));
         rebuildInMemoryPagesFromPkIndex(pagesCollName, pkIdx);
     }
 
@@ -132,7 +135,7 @@ public class AdminCache {
             entry.setPageSize(pkList.stream().mapToLong(PkIndexEntry::getLength).sum());
             entries.add(entry);
         }
-        pages.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, collName), entries);
+        pages.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, collName), new CopyOnWriteArrayList<>(entries));
     }
 
     private Map<String, DbEntry> readWholeAdminCollection(String collName) throws IOException {
@@ -192,18 +195,24 @@ public class AdminCache {
         return entries.stream().filter(p -> p.getPage() == page).findFirst().orElse(null);
     }
 
-    public void putAdminPageEntries(String dbName, String collName, List<AdminPageEntry> adminPageEntries) {
-        pages.put(Cache.getCollectionIdentifier(dbName, collName), adminPageEntries);
+    // Page entries are changed under this object's monitor (writers of a collection run concurrently, see
+    // ResourceLocking) and read without it, so the lists are copy-on-write.
+    public synchronized void putAdminPageEntries(String dbName, String collName,
+            List<AdminPageEntry> adminPageEntries) {
+        pages.put(Cache.getCollectionIdentifier(dbName, collName), new CopyOnWriteArrayList<>(adminPageEntries));
     }
 
-    public void addAdminPageEntries(String dbName, String collName, AdminPageEntry adminPageEntry) {
-        pages.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName), _ -> new ArrayList<>())
-                .add(adminPageEntry);
+    public synchronized void addAdminPageEntries(String dbName, String collName, AdminPageEntry adminPageEntry) {
+        pageEntriesOf(dbName, collName).add(adminPageEntry);
     }
 
-    public void updatePageSizeInMemory(String dbName, String collName, long page, long bytesDelta) {
-        final var pageEntries = pages.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName),
-                _ -> new ArrayList<>());
+    private List<AdminPageEntry> pageEntriesOf(String dbName, String collName) {
+        return pages.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName),
+                _ -> new CopyOnWriteArrayList<>());
+    }
+
+    public synchronized void updatePageSizeInMemory(String dbName, String collName, long page, long bytesDelta) {
+        final var pageEntries = pageEntriesOf(dbName, collName);
         final var existing = pageEntries.stream().filter(p -> p.getPage() == page).findFirst();
         if (existing.isPresent()) {
             existing.get().setPageSize(existing.get().getPageSize() + bytesDelta);
@@ -221,13 +230,12 @@ public class AdminCache {
     }
 
     /**
-     * Keeps the cached admin PK index positions consistent after a single-entry page compaction on
-     * the given admin collection, dispatching to the matching PK structure (databases, collections,
-     * users, collection_usage, or a {@code pages_*} collection). Every cached entry on {@code page}
-     * whose position is greater than {@code removedPosition} shifted toward the start of the file by
-     * {@code removedLength}; entries are mutated in place.
+     * Keeps the cached admin PK index positions consistent after a background page compaction on the
+     * given admin collection, dispatching to the matching PK structure (databases, collections, users,
+     * collection_usage, or a {@code pages_*} collection). Every cached entry on {@code page} whose id is in
+     * {@code newPositions} moved to the recorded position; entries are mutated in place.
      */
-    public void shiftPkPositionsAfterCompaction(String collName, long page, long removedPosition, long removedLength) {
+    public void applyPageCompaction(String collName, long page, Map<String, Long> newPositions) {
         final Collection<PkIndexEntry> entries;
         switch (collName) {
             case Globals.ADMIN_DATABASES_COLLECTION_NAME -> entries = databasesPkIndex.values();
@@ -240,8 +248,11 @@ public class AdminCache {
             }
         }
         for (final var entry : entries) {
-            if (entry.getPage() == page && entry.getPosition() > removedPosition) {
-                entry.setPosition(entry.getPosition() - removedLength);
+            if (entry.getPage() == page) {
+                final var newPosition = newPositions.get(entry.getValue());
+                if (newPosition != null) {
+                    entry.setPosition(newPosition);
+                }
             }
         }
     }
@@ -277,28 +288,68 @@ public class AdminCache {
         return selectPageForInsert(dbName, collName, entryByteSize, Map.of());
     }
 
-    public long selectPageForInsert(String dbName, String collName, int entryByteSize,
+    public synchronized long selectPageForInsert(String dbName, String collName, int entryByteSize,
             Map<Long, Long> pendingPageBytes) {
         final var maxPageBytes = configuration.getMaxPageSize();
-        final var pageEntries = pages.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName),
-                _ -> new ArrayList<>());
+        final var pageEntries = pageEntriesOf(dbName, collName);
         // First-fit must also consider pages allocated earlier in the same in-flight batch (present
         // only in pendingPageBytes, not yet committed to pageEntries) — otherwise a single bulk insert
-        // into a fresh collection scatters every entry onto its own new page.
+        // into a fresh collection scatters every entry onto its own new page. The bytes other writers
+        // reserved (see reservePageForInsert) count as well.
         final var committedSizeByPage = pageEntries.stream()
                 .collect(Collectors.toMap(AdminPageEntry::getPage, AdminPageEntry::getPageSize));
+        final var reserved = reservedPageBytes.getOrDefault(Cache.getCollectionIdentifier(dbName, collName), Map.of());
         final var candidatePages = new TreeSet<>(committedSizeByPage.keySet());
         candidatePages.addAll(pendingPageBytes.keySet());
+        candidatePages.addAll(reserved.keySet());
+        Long busyFit = null;
         for (final long page : candidatePages) {
             final var effectiveSize = committedSizeByPage.getOrDefault(page, 0L)
-                    + pendingPageBytes.getOrDefault(page, 0L);
-            if (effectiveSize + entryByteSize <= maxPageBytes) {
+                    + pendingPageBytes.getOrDefault(page, 0L) + reserved.getOrDefault(page, 0L);
+            if (effectiveSize + entryByteSize > maxPageBytes) {
+                continue;
+            }
+            // A page another insert is writing to is only taken when no idle one has room: that insert holds
+            // the page's file lock, so the two would run one after the other.
+            if (!reserved.containsKey(page)) {
                 return page;
             }
+            if (busyFit == null) {
+                busyFit = page;
+            }
+        }
+        if (busyFit != null) {
+            return busyFit;
         }
         final var maxKnownPage = pageEntries.stream().mapToLong(AdminPageEntry::getPage).max().orElse(-1L);
         final var maxPendingPage = pendingPageBytes.keySet().stream().mapToLong(Long::longValue).max().orElse(-1L);
-        return Math.max(maxKnownPage, maxPendingPage) + 1L;
+        final var maxReservedPage = reserved.keySet().stream().mapToLong(Long::longValue).max().orElse(-1L);
+        return Math.max(Math.max(maxKnownPage, maxPendingPage), maxReservedPage) + 1L;
+    }
+
+    /**
+     * Selects the page for a document inserted while other writers of the collection may be inserting too (see
+     * {@link #selectPageForInsert}), and reserves its bytes there until {@link #releasePageReservation}, by which
+     * time the insert has added them to the page's size. Concurrent inserts are spread over the pages with room
+     * rather than queued on one, and together never overfill a page.
+     */
+    public synchronized long reservePageForInsert(String dbName, String collName, int entryByteSize) {
+        final var page = selectPageForInsert(dbName, collName, entryByteSize, Map.of());
+        reservedPageBytes.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName), _ -> new HashMap<>())
+                .merge(page, (long) entryByteSize, Long::sum);
+        return page;
+    }
+
+    public synchronized void releasePageReservation(String dbName, String collName, long page, int entryByteSize) {
+        final var collId = Cache.getCollectionIdentifier(dbName, collName);
+        final var reserved = reservedPageBytes.get(collId);
+        if (reserved == null) {
+            return;
+        }
+        reserved.computeIfPresent(page, (_, bytes) -> bytes - entryByteSize <= 0 ? null : bytes - entryByteSize);
+        if (reserved.isEmpty()) {
+            reservedPageBytes.remove(collId);
+        }
     }
 
     public boolean hasIndex(String dbName, String collName, String fieldName) {
@@ -7,21 +7,28 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.techhouse.analyze.AnalyzeContext;
+import org.techhouse.concurrency.ReadSnapshot;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.FieldStatistics;
 import org.techhouse.data.IndexKind;
+import org.techhouse.data.NumericFieldIndex;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
 import org.techhouse.data.admin.AdminCollEntry;
 import org.techhouse.data.admin.AdminDbEntry;
 import org.techhouse.data.admin.AdminPageEntry;
 import org.techhouse.data.admin.AdminUserEntry;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.fs.FileSystem;
-import org.techhouse.fs.PkCompaction;
+import org.techhouse.fs.PageCompaction;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.req.agg.operators.FieldOperator;
 
@@ -43,6 +50,8 @@ public class Cache {
     // construction-time cycle: MemoryManagement holds the cache eagerly, so we cannot hold
     // MemoryManagement eagerly here without recursing through the IoC container during init.
     private MemoryManagement memoryManagement;
+    // Whether a scan started on this thread may hand back pages in the order their reads finish.
+    private static final ThreadLocal<Boolean> unorderedScans = new ThreadLocal<>();
 
     private MemoryManagement memoryManagement() {
         var mm = memoryManagement;
@@ -72,25 +81,32 @@ public class Cache {
 
     // ── User document / index cache (delegated to UserCache) ──────────────────
 
-    public List<PkIndexEntry> getPkIndexAndLoadIfNecessary(String dbName, String collName) throws IOException {
-        return userCache.getPkIndexAndLoadIfNecessary(dbName, collName);
+    public PkIndex getPkIndex(String dbName, String collName) throws IOException {
+        return userCache.getPkIndex(dbName, collName);
+    }
+
+    public void putPkEntry(String dbName, String collName, PkIndexEntry entry) {
+        userCache.putPkEntry(dbName, collName, entry);
+    }
+
+    public void removePkEntry(String dbName, String collName, String id) {
+        userCache.removePkEntry(dbName, collName, id);
     }
 
     /**
-     * Applies the in-memory PK position fix described by a {@link PkCompaction} returned from a
-     * delete/update, routing to the admin or user cache by database. Null-safe: a {@code null}
-     * compaction (no survivor moved) is a no-op.
+     * Applies the in-memory PK position fix described by a {@link PageCompaction} produced by the
+     * background page compactor, routing to the admin or user cache by database. Null-safe: a {@code null}
+     * compaction (nothing moved) is a no-op.
      */
-    public void shiftPkPositionsAfterCompaction(PkCompaction compaction) {
+    public void applyPageCompaction(PageCompaction compaction) {
         if (compaction == null) {
             return;
         }
         if (Globals.ADMIN_DB_NAME.equals(compaction.dbName())) {
-            adminCache.shiftPkPositionsAfterCompaction(compaction.collName(), compaction.page(),
-                    compaction.removedPosition(), compaction.removedLength());
+            adminCache.applyPageCompaction(compaction.collName(), compaction.page(), compaction.newPositions());
         } else {
-            userCache.shiftPkPositionsAfterCompaction(compaction.dbName(), compaction.collName(), compaction.page(),
-                    compaction.removedPosition(), compaction.removedLength());
+            userCache.applyPageCompaction(compaction.dbName(), compaction.collName(), compaction.page(),
+                    compaction.newPositions());
         }
     }
 
@@ -99,6 +115,11 @@ public class Cache {
         return userCache.getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, indexType);
     }
 
+    public NumericFieldIndex getNumericIndexAndLoadIfNecessary(String dbName, String collName, String fieldName)
+            throws IOException {
+        return userCache.getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
+    }
+
     public List<FieldIndexEntry<String>> getHashIndexAndLoadIfNecessary(String dbName, String collName,
             String fieldName, IndexKind kind) throws IOException {
         return userCache.getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, kind);
@@ -109,6 +130,23 @@ public class Cache {
         return userCache.getIdsFromIndex(dbName, collName, fieldName, operator, value);
     }
 
+    public <T> RowIdBitmap getRowIdsFromIndex(String dbName, String collName, String fieldName,
+            FieldOperator operator, T value, RowIdDictionary rowIds) throws IOException {
+        return userCache.getRowIdsFromIndex(dbName, collName, fieldName, operator, value, rowIds);
+    }
+
+    public RowIdDictionary getRowIdDictionary(String dbName, String collName) {
+        return userCache.getRowIdDictionary(dbName, collName);
+    }
+
+    public RowIdBitmap getAllRowIds(String dbName, String collName, RowIdDictionary rowIds) throws IOException {
+        return userCache.getAllRowIds(dbName, collName, rowIds);
+    }
+
+    public int countDocuments(String dbName, String collName) throws IOException {
+        return userCache.countDocuments(dbName, collName);
+    }
+
     public void recordFieldIndexAccess(String dbName, String collName, String fieldName) {
         userCache.recordFieldIndexAccess(dbName, collName, fieldName);
     }
@@ -155,6 +193,16 @@ public class Cache {
         userCache.evictFieldIndexAllTypes(dbName, collName, fieldName);
     }
 
+    public void addIdToCachedFieldIndex(String dbName, String collName, String indexIdentifier, Object value,
+            String id) {
+        userCache.addIdToCachedFieldIndex(dbName, collName, indexIdentifier, value, id);
+    }
+
+    public void removeIdFromCachedFieldIndex(String dbName, String collName, String indexIdentifier, Object value,
+            String id) {
+        userCache.removeIdFromCachedFieldIndex(dbName, collName, indexIdentifier, value, id);
+    }
+
     public List<CacheableResource> listCacheableResources() {
         return userCache.listCacheableResources();
     }
@@ -186,22 +234,77 @@ public class Cache {
     // The exact, currently-consistent document count from the synchronously-maintained PK index.
     private int pkIndexSize(String dbName, String collName) {
         try {
-            return userCache.getPkIndexAndLoadIfNecessary(dbName, collName).size();
+            return userCache.getPkIndex(dbName, collName).size();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public Stream<DbEntry> streamCollection(String dbName, String collName) throws IOException {
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
         if (!userCache.isCachingDisabled(dbName)) {
             final var cached = userCache.getCachedCollection(dbName, collName);
             // See getWholeCollection: gate on the synchronous PK index size, not the lagging admin
             // page entry counts, so a stale count can never accept an incomplete cached collection.
             if (cached != null && !cached.isEmpty() && cached.size() >= pkIndexSize(dbName, collName)) {
-                return decorateScan(cached.values().stream());
+                if (snapshot == null) {
+                    return decorateScan(cached.values().stream());
+                }
+                final var documents = cachedAsOfSnapshot(dbName, collName, cached, snapshot);
+                if (documents != null) {
+                    return decorateScan(documents.stream());
+                }
+            }
+        }
+        return decorateScan(streamCollectionFromDisk(dbName, collName, snapshot));
+    }
+
+    // A copy of the cached documents when they are the snapshot's: nothing was written to the collection since it
+    // was pinned, before or after the copy, and no eviction left the copy short. Otherwise null.
+    private List<DbEntry> cachedAsOfSnapshot(String dbName, String collName, Map<String, DbEntry> cached,
+            ReadSnapshot snapshot) {
+        if (!snapshot.unchanged(dbName, collName)) {
+            return null;
+        }
+        final var documents = List.copyOf(cached.values());
+        return documents.size() >= pkIndexSize(dbName, collName) && snapshot.unchanged(dbName, collName)
+                ? documents : null;
+    }
+
+    /**
+     * The documents of the collection matching {@code test}, which only looks at {@code fieldName}, or at any field
+     * when it is null. Like {@link #streamCollection}, but a page read from disk hands the test to the file system,
+     * which builds only the matching documents; for binary collections and a single field it decodes just that
+     * field of each row until one matches.
+     */
+    public Stream<DbEntry> streamCollectionMatching(String dbName, String collName, String fieldName,
+            Predicate<JsonObject> test) throws IOException {
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
+        if (!userCache.isCachingDisabled(dbName)) {
+            final var cached = userCache.getCachedCollection(dbName, collName);
+            if (cached != null && !cached.isEmpty() && cached.size() >= pkIndexSize(dbName, collName)) {
+                final var documents = snapshot == null ? cached.values() : cachedAsOfSnapshot(dbName, collName,
+                        cached, snapshot);
+                if (documents != null) {
+                    return decorateScan(documents.stream()).filter(entry -> test.test(entry.getData()));
+                }
             }
         }
-        return decorateScan(streamCollectionFromDisk(dbName, collName));
+        final var analyzeContext = AnalyzeContext.current();
+        // Every tested row counts as scanned, matching or not, as with streamCollection.
+        final Predicate<JsonObject> countingTest = analyzeContext == null ? test : data -> {
+            analyzeContext.addScanned(1);
+            return test.test(data);
+        };
+        if (snapshot != null) {
+            return streamPagesFromDisk(dbName, collName,
+                    page -> fs.readCollectionPageMatching(dbName, collName, page, fieldName, countingTest, snapshot),
+                    () -> fs.streamEntries(dbName, collName, snapshot)
+                            .filter(entry -> countingTest.test(entry.getData())));
+        }
+        return streamPagesFromDisk(dbName, collName,
+                page -> fs.readCollectionPageMatching(dbName, collName, page, fieldName, countingTest),
+                () -> fs.streamEntries(dbName, collName).filter(entry -> countingTest.test(entry.getData())));
     }
 
     // Counts entries as they are consumed for AGGREGATE analyze mode (the stream is lazy, so the
@@ -215,15 +318,34 @@ public class Cache {
         return stream.peek(_ -> analyzeContext.addScanned(1));
     }
 
-    private Stream<DbEntry> streamCollectionFromDisk(String dbName, String collName) throws IOException {
+    // The pages are read as of the snapshot, when there is one; the readers capture it, as they may run on other
+    // threads (see ParallelPageScan).
+    private Stream<DbEntry> streamCollectionFromDisk(String dbName, String collName, ReadSnapshot snapshot)
+            throws IOException {
+        if (snapshot != null) {
+            return streamPagesFromDisk(dbName, collName,
+                    page -> fs.readWholeCollectionPage(dbName, collName, page, snapshot),
+                    () -> fs.streamEntries(dbName, collName, snapshot));
+        }
+        return streamPagesFromDisk(dbName, collName,
+                page -> fs.readWholeCollectionPage(dbName, collName, page),
+                () -> fs.streamEntries(dbName, collName));
+    }
+
+    private Stream<DbEntry> streamPagesFromDisk(String dbName, String collName, PageReader pageReader,
+            PageStreamFallback fallback) throws IOException {
         final var collPages = adminCache.getAdminPageEntries(dbName, collName);
         if (collPages == null || collPages.isEmpty()) {
             // No page metadata to drive memory-aware reading; fall back to the lazy
             // file-based page stream (still only one page resident at a time).
-            return fs.streamEntries(dbName, collName);
+            return fallback.stream();
         }
         final var maxPageBytes = configuration.getMaxPageSize();
         final var sortedPages = collPages.stream().sorted(Comparator.comparingLong(AdminPageEntry::getPage)).toList();
+        if (ParallelPageScan.enabled(sortedPages.size())) {
+            return ParallelPageScan.scan(sortedPages, pageReader, !Boolean.TRUE.equals(unorderedScans.get()),
+                    memoryManagement());
+        }
         // flatMap pulls one page at a time: the headroom check + page read happen lazily
         // as the previous page's entries are exhausted downstream, so each page map is
         // released for GC before the next is read.
@@ -231,13 +353,35 @@ public class Cache {
             final var estimate = pageEntry.getPageSize() > 0 ? pageEntry.getPageSize() : maxPageBytes;
             memoryManagement().ensureHeadroomForBytes(estimate);
             try {
-                return fs.readWholeCollectionPage(dbName, collName, pageEntry.getPage()).values().stream();
+                return pageReader.read(pageEntry.getPage()).values().stream();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    @FunctionalInterface
+    interface PageReader {
+        Map<String, DbEntry> read(long page) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PageStreamFallback {
+        Stream<DbEntry> stream() throws IOException;
+    }
+
+    /**
+     * Lets the scans started on this thread until the next call hand back pages in the order their reads finish
+     * instead of in page order, for a caller whose result does not depend on the order of the documents.
+     */
+    public void allowUnorderedScans(boolean allowed) {
+        if (allowed) {
+            unorderedScans.set(true);
+        } else {
+            unorderedScans.remove();
+        }
+    }
+
     public Stream<JsonObject> initializeStreamIfNecessary(Stream<JsonObject> resultStream, String dbName,
             String collName) throws IOException {
         if (resultStream != null) {
@@ -265,6 +409,14 @@ public class Cache {
         return adminCache.selectPageForInsert(dbName, collName, entryByteSize, pendingPageBytes);
     }
 
+    public long reservePageForInsert(String dbName, String collName, int entryByteSize) {
+        return adminCache.reservePageForInsert(dbName, collName, entryByteSize);
+    }
+
+    public void releasePageReservation(String dbName, String collName, long page, int entryByteSize) {
+        adminCache.releasePageReservation(dbName, collName, page, entryByteSize);
+    }
+
     public PkIndexEntry getPkIndexAdminDbEntry(String dbName) {
         return adminCache.getPkIndexAdminDbEntry(dbName);
     }
@@ -353,6 +505,12 @@ public class Cache {
         return adminCache.getIndexesForCollection(dbName, collName);
     }
 
+    // Statistics from the field's last index build, or null when it is not indexed or was indexed without them.
+    public FieldStatistics getFieldStatistics(String dbName, String collName, String fieldName) {
+        final var adminCollEntry = adminCache.getAdminCollectionEntry(dbName, collName);
+        return adminCollEntry == null ? null : adminCollEntry.getStatistics().get(fieldName);
+    }
+
     public AdminUserEntry getAdminUserEntry(String username) {
         return adminCache.getAdminUserEntry(username);
     }
@@ -0,0 +1,128 @@
+package org.techhouse.cache;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.RandomAccess;
+import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
+import org.techhouse.data.RowIdPostings;
+
+/**
+ * A field index as {@link UserCache} caches it: the entries, sorted like the index files load them, changed in
+ * place by the background index writer under the field's index write lock. The bytes they are estimated to take are
+ * kept up to date with every change, so the eviction sweep reads them without taking the index lock. Once a query
+ * asked for rows, the ids of every entry are also kept as row bitmaps (see {@link RowIdPostings}).
+ * <p>
+ * Readers see a read-only list: the entries can only be changed through {@link #insert}, {@link #addId} and
+ * {@link #removeId}, which keep the estimate and the row bitmaps in step.
+ */
+final class CachedFieldIndex extends AbstractList<FieldIndexEntry<?>> implements RandomAccess {
+    private static final long ENTRY_OVERHEAD_BYTES = 64L;
+    private final ArrayList<FieldIndexEntry<?>> entries;
+    // Only written under the index write lock; volatile for the unlocked readers.
+    private volatile long estimatedBytes;
+    private volatile RowIdPostings postings;
+
+    CachedFieldIndex(Collection<? extends FieldIndexEntry<?>> entries) {
+        this.entries = new ArrayList<>(entries);
+        estimatedBytes = estimate(entries);
+    }
+
+    @Override
+    public FieldIndexEntry<?> get(int position) {
+        return entries.get(position);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    long estimatedBytes() {
+        final var rows = postings;
+        return estimatedBytes + (rows == null ? 0L : rows.estimatedBytes());
+    }
+
+    // Rows of the entries at positions. Callers hold the index read lock; the postings are built once per
+    // dictionary, under this instance so concurrent readers build them once.
+    RowIdBitmap rowsAt(BitSet positions, RowIdDictionary dictionary) {
+        var rows = postings;
+        if (rows == null || rows.dictionary() != dictionary) {
+            synchronized (this) {
+                rows = postings;
+                if (rows == null || rows.dictionary() != dictionary) {
+                    rows = RowIdPostings.build(dictionary, size(), position -> get(position).getIds());
+                    postings = rows;
+                }
+            }
+        }
+        return rows.rowsAt(positions);
+    }
+
+    // Drops the postings of a dictionary that was replaced; the next query builds them for the new one.
+    void dropRows() {
+        postings = null;
+    }
+
+    void addId(int position, String id) {
+        if (get(position).getIds().add(id)) {
+            estimatedBytes += ENTRY_OVERHEAD_BYTES;
+            final var rows = postings;
+            if (rows != null) {
+                rows.add(position, id);
+            }
+        }
+    }
+
+    void insert(int position, FieldIndexEntry<?> entry) {
+        entries.add(position, entry);
+        estimatedBytes += estimate(entry);
+        final var rows = postings;
+        if (rows != null) {
+            rows.insertValue(position);
+            for (var id : entry.getIds()) {
+                rows.add(position, id);
+            }
+        }
+    }
+
+    // Drops id from the entry at position, and the entry once it holds no ids.
+    void removeId(int position, String id) {
+        final var entry = get(position);
+        if (!entry.getIds().remove(id)) {
+            return;
+        }
+        final var rows = postings;
+        if (entry.getIds().isEmpty()) {
+            entries.remove(position);
+            estimatedBytes -= estimate(entry) + ENTRY_OVERHEAD_BYTES;
+            if (rows != null) {
+                rows.removeValue(position);
+            }
+        } else {
+            estimatedBytes -= ENTRY_OVERHEAD_BYTES;
+            if (rows != null) {
+                rows.remove(position, id);
+            }
+        }
+    }
+
+    static long estimate(Collection<? extends FieldIndexEntry<?>> entries) {
+        var total = 0L;
+        for (var entry : entries) {
+            total += estimate(entry);
+        }
+        return total;
+    }
+
+    private static long estimate(FieldIndexEntry<?> entry) {
+        final var value = entry.getValue();
+        final var valueLen = value == null ? 0 : value.toString().length() * 2L;
+        final var ids = entry.getIds();
+        final var idsLen = ids == null ? 0L : ids.size() * ENTRY_OVERHEAD_BYTES;
+        return valueLen + idsLen + ENTRY_OVERHEAD_BYTES;
+    }
+}
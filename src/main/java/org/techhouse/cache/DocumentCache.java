@@ -0,0 +1,433 @@
+package org.techhouse.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.data.DbEntry;
+import org.techhouse.ioc.IocContainer;
+
+/**
+ * The cached user documents, admitted and evicted one at a time within a byte budget (W-TinyLFU). A new document
+ * enters a small LRU window; when it leaves the window it only joins the main area if the {@link FrequencySketch}
+ * says it is read more often than the documents it would push out. The main area is a segmented LRU: a document
+ * read again while on probation is promoted to the protected segment, whose overflow goes back to probation. A scan
+ * of documents read once churns through the window instead of flushing the documents read often.
+ *
+ * <p>Lookups read the resident maps without locking and only record the read in a {@link ReadBuffer}; admission
+ * and eviction are serialized on the cache's lock, which applies the recorded reads first. A collection only loses
+ * documents while its write lock can be taken, since readers holding its read lock may be walking its cached
+ * documents.
+ */
+public class DocumentCache {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final ResourceLocking locks = IocContainer.get(ResourceLocking.class);
+    private final Map<String, Map<String, DbEntry>> collections = new ConcurrentHashMap<>();
+    private final Map<String, Long> collectionBytes = new ConcurrentHashMap<>();
+    private final Map<Key, Node> nodes = new HashMap<>();
+    // Least recently used first.
+    private final LinkedHashMap<Key, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Key, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Key, Node> protectedSegment = new LinkedHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final ReadBuffer<Key> reads = new ReadBuffer<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+    private long maximumBytes = Long.MAX_VALUE;
+
+    private enum Segment {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private record Key(String collectionId, String id) {
+    }
+
+    private static final class Node {
+        private final Key key;
+        private final String dbName;
+        private final String collName;
+        private long bytes;
+        private Segment segment;
+
+        private Node(Key key, String dbName, String collName, long bytes) {
+            this.key = key;
+            this.dbName = dbName;
+            this.collName = collName;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The cached document, or {@code null}. Hit or miss, the read counts towards the document's frequency.
+     */
+    public DbEntry get(String dbName, String collName, String id) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        final var documents = collections.get(collectionId);
+        final var entry = documents == null ? null : documents.get(id);
+        // A full buffer is drained by whoever gets the lock; the others just carry on reading.
+        if (reads.offer(new Key(collectionId, id)) && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * A read-only view of the collection's resident documents, or {@code null} when none is cached.
+     */
+    public Map<String, DbEntry> documents(String dbName, String collName) {
+        final var documents = collections.get(Cache.getCollectionIdentifier(dbName, collName));
+        return documents == null ? null : Collections.unmodifiableMap(documents);
+    }
+
+    public Set<String> collectionIdentifiers() {
+        return Set.copyOf(collections.keySet());
+    }
+
+    public long bytesOf(String collectionId) {
+        return collectionBytes.getOrDefault(collectionId, 0L);
+    }
+
+    /**
+     * Offers a document to the cache, replacing any cached version of it, with {@code budgetBytes} for all the
+     * cached documents. Returns whether it was kept; a document that does not fit at all evicts its stale version.
+     */
+    public boolean admit(String dbName, String collName, DbEntry entry, long budgetBytes) {
+        final var bytes = entry.byteSize();
+        lock.lock();
+        try {
+            drainReads();
+            maximumBytes = budgetBytes;
+            try (var eviction = new EvictionLocks()) {
+                return doAdmit(dbName, collName, entry, bytes, eviction);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void admitAll(String dbName, String collName, Collection<DbEntry> entries, long budgetBytes) {
+        admitAll(dbName, collName, entries, budgetBytes, () -> true);
+    }
+
+    /**
+     * Like {@link #admitAll(String, String, Collection, long)}, only if {@code stillCurrent} holds. It is checked
+     * under the cache's lock, which every write to the collection's cached documents takes after it, so documents
+     * read without the collection lock are never cached over a newer version.
+     */
+    public void admitAll(String dbName, String collName, Collection<DbEntry> entries, long budgetBytes,
+            BooleanSupplier stillCurrent) {
+        final var sized = new ArrayList<Map.Entry<DbEntry, Integer>>(entries.size());
+        for (var entry : entries) {
+            sized.add(Map.entry(entry, entry.byteSize()));
+        }
+        lock.lock();
+        try {
+            if (!stillCurrent.getAsBoolean()) {
+                return;
+            }
+            drainReads();
+            maximumBytes = budgetBytes;
+            try (var eviction = new EvictionLocks()) {
+                for (var entry : sized) {
+                    doAdmit(dbName, collName, entry.getKey(), entry.getValue(), eviction);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps a document outside the budget and the eviction order, for the admin database.
+     */
+    public void pin(String dbName, String collName, DbEntry entry) {
+        lock.lock();
+        try {
+            collections.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName),
+                    _ -> new ConcurrentHashMap<>()).put(entry.get_id(), entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(String dbName, String collName, String id) {
+        final var key = new Key(Cache.getCollectionIdentifier(dbName, collName), id);
+        lock.lock();
+        try {
+            final var node = nodes.get(key);
+            if (node != null) {
+                drop(node);
+                return;
+            }
+            final var documents = collections.get(key.collectionId());
+            if (documents != null) {
+                documents.remove(id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeCollection(String dbName, String collName) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        lock.lock();
+        try {
+            final var documents = collections.remove(collectionId);
+            collectionBytes.remove(collectionId);
+            if (documents == null) {
+                return;
+            }
+            for (var id : documents.keySet()) {
+                final var node = nodes.remove(new Key(collectionId, id));
+                if (node != null) {
+                    unlink(node);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evicts documents, coldest first, until {@code bytes} were freed or no unlocked collection has any left.
+     * Returns the bytes freed.
+     */
+    public long evict(long bytes) {
+        lock.lock();
+        try (var eviction = new EvictionLocks()) {
+            drainReads();
+            return evictColdest(bytes, eviction);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drainReads() {
+        reads.drainTo(this::recordAccess);
+    }
+
+    private void recordAccess(Key key) {
+        sketch.increment(key);
+        final var node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+        switch (node.segment) {
+            case WINDOW -> moveToTail(window, node);
+            case PROTECTED -> moveToTail(protectedSegment, node);
+            case PROBATION -> {
+                unlink(node);
+                link(node, Segment.PROTECTED);
+                demoteProtectedOverflow();
+            }
+        }
+    }
+
+    private boolean doAdmit(String dbName, String collName, DbEntry entry, long bytes, EvictionLocks eviction) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        final var key = new Key(collectionId, entry.get_id());
+        sketch.increment(key);
+        var node = nodes.get(key);
+        if (bytes > maximumBytes) {
+            if (node != null) {
+                drop(node);
+            }
+            return false;
+        }
+        if (node == null) {
+            node = new Node(key, dbName, collName, bytes);
+            nodes.put(key, node);
+            link(node, Segment.WINDOW);
+            sketch.ensureCapacity(nodes.size());
+        } else {
+            final var segment = node.segment;
+            unlink(node);
+            node.bytes = bytes;
+            link(node, segment);
+        }
+        collections.computeIfAbsent(collectionId, _ -> new ConcurrentHashMap<>()).put(entry.get_id(), entry);
+        evictToFit(eviction);
+        return nodes.containsKey(key);
+    }
+
+    private void evictToFit(EvictionLocks eviction) {
+        final var windowMax = maximumBytes / 100 * WINDOW_PERCENT;
+        final var mainMax = maximumBytes - windowMax;
+        // The newest document always stays in the window, however small it is.
+        while (windowBytes > windowMax && window.size() > 1) {
+            final var candidate = window.firstEntry().getValue();
+            if (!eviction.tryLock(candidate)) {
+                break;
+            }
+            final var victims = victimsFor(candidate, mainMax, eviction);
+            if (victims == null) {
+                drop(candidate);
+            } else {
+                victims.forEach(this::drop);
+                unlink(candidate);
+                link(candidate, Segment.PROBATION);
+            }
+        }
+        demoteProtectedOverflow();
+        // A budget smaller than before sheds the coldest documents.
+        final var total = windowBytes + probationBytes + protectedBytes;
+        if (total > maximumBytes) {
+            evictColdest(total - maximumBytes, eviction);
+        }
+    }
+
+    // The main-area documents the candidate replaces, least recently used first, or null when one of them is read
+    // at least as often as the candidate, or there is not enough room to free.
+    private List<Node> victimsFor(Node candidate, long mainMax, EvictionLocks eviction) {
+        final var victims = new ArrayList<Node>();
+        var needed = probationBytes + protectedBytes + candidate.bytes - mainMax;
+        if (needed <= 0) {
+            return victims;
+        }
+        final var candidateFrequency = sketch.frequency(candidate.key);
+        for (var segment : List.of(probation, protectedSegment)) {
+            for (var victim : segment.values()) {
+                if (!eviction.tryLock(victim)) {
+                    continue;
+                }
+                if (sketch.frequency(victim.key) >= candidateFrequency) {
+                    return null;
+                }
+                victims.add(victim);
+                needed -= victim.bytes;
+                if (needed <= 0) {
+                    return victims;
+                }
+            }
+        }
+        return null;
+    }
+
+    private long evictColdest(long bytes, EvictionLocks eviction) {
+        final var victims = new ArrayList<Node>();
+        var freed = 0L;
+        for (var segment : List.of(probation, window, protectedSegment)) {
+            for (var node : segment.values()) {
+                if (freed >= bytes) {
+                    break;
+                }
+                if (eviction.tryLock(node)) {
+                    victims.add(node);
+                    freed += node.bytes;
+                }
+            }
+        }
+        victims.forEach(this::drop);
+        return freed;
+    }
+
+    private void demoteProtectedOverflow() {
+        final var mainMax = maximumBytes - maximumBytes / 100 * WINDOW_PERCENT;
+        final var protectedMax = mainMax / 100 * PROTECTED_PERCENT;
+        while (protectedBytes > protectedMax && !protectedSegment.isEmpty()) {
+            final var demoted = protectedSegment.firstEntry().getValue();
+            unlink(demoted);
+            link(demoted, Segment.PROBATION);
+        }
+    }
+
+    private void moveToTail(LinkedHashMap<Key, Node> segment, Node node) {
+        segment.remove(node.key);
+        segment.put(node.key, node);
+    }
+
+    private void link(Node node, Segment segment) {
+        node.segment = segment;
+        switch (segment) {
+            case WINDOW -> {
+                window.put(node.key, node);
+                windowBytes += node.bytes;
+            }
+            case PROBATION -> {
+                probation.put(node.key, node);
+                probationBytes += node.bytes;
+            }
+            case PROTECTED -> {
+                protectedSegment.put(node.key, node);
+                protectedBytes += node.bytes;
+            }
+        }
+        collectionBytes.merge(node.key.collectionId(), node.bytes, Long::sum);
+    }
+
+    private void unlink(Node node) {
+        switch (node.segment) {
+            case WINDOW -> {
+                window.remove(node.key);
+                windowBytes -= node.bytes;
+            }
+            case PROBATION -> {
+                probation.remove(node.key);
+                probationBytes -= node.bytes;
+            }
+            case PROTECTED -> {
+                protectedSegment.remove(node.key);
+                protectedBytes -= node.bytes;
+            }
+        }
+        collectionBytes.computeIfPresent(node.key.collectionId(), (_, bytes) -> bytes - node.bytes);
+    }
+
+    private void drop(Node node) {
+        nodes.remove(node.key);
+        unlink(node);
+        final var collectionId = node.key.collectionId();
+        final var documents = collections.get(collectionId);
+        if (documents != null) {
+            documents.remove(node.key.id());
+            if (documents.isEmpty()) {
+                collections.remove(collectionId);
+                collectionBytes.remove(collectionId);
+            }
+        }
+    }
+
+    // Write locks on the collections losing documents during one call, held until it returns.
+    private final class EvictionLocks implements AutoCloseable {
+        private final Map<String, Node> held = new HashMap<>();
+        private final Set<String> refused = new HashSet<>();
+
+        private boolean tryLock(Node node) {
+            final var collectionId = node.key.collectionId();
+            if (held.containsKey(collectionId)) {
+                return true;
+            }
+            if (refused.contains(collectionId)) {
+                return false;
+            }
+            if (locks.tryLockWrite(node.dbName, node.collName)) {
+                held.put(collectionId, node);
+                return true;
+            }
+            refused.add(collectionId);
+            return false;
+        }
+
+        @Override
+        public void close() {
+            held.values().forEach(node -> locks.releaseWrite(node.dbName, node.collName));
+        }
+    }
+}
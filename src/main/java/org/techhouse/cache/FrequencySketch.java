@@ -0,0 +1,86 @@
+package org.techhouse.cache;
+
+/**
+ * A count-min sketch of how often keys were seen, in 4-bit counters packed sixteen to a long. Each key has one
+ * counter in four rows and its frequency is the smallest of them, so collisions can only overestimate it. Once
+ * ten times as many increments as there are counters went in, every counter is halved, so old popularity fades.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MIN_TABLE_SIZE = 64;
+    static final int MAX_FREQUENCY = 15;
+
+    private long[] table = new long[MIN_TABLE_SIZE];
+    private int tableMask = MIN_TABLE_SIZE - 1;
+    private int sampleSize = 10 * MIN_TABLE_SIZE;
+    private int additions;
+
+    // Grows the table to one counter per expected key; the counts start over, as after a reset.
+    void ensureCapacity(int expectedKeys) {
+        final var size = Math.max(MIN_TABLE_SIZE, Integer.highestOneBit(Math.max(1, expectedKeys) - 1) << 1);
+        if (size <= table.length || size < 0) {
+            return;
+        }
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * size;
+        additions = 0;
+    }
+
+    int frequency(Object key) {
+        final var hash = spread(key.hashCode());
+        final var start = (hash & 3) << 2;
+        var frequency = MAX_FREQUENCY;
+        for (var i = 0; i < SEEDS.length; i++) {
+            final var count = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        final var hash = spread(key.hashCode());
+        final var start = (hash & 3) << 2;
+        var added = false;
+        for (var i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final var offset = counter << 2;
+        final var mask = 0xfL << offset;
+        if ((table[index] & mask) == mask) {
+            return false;
+        }
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    private void reset() {
+        var odd = 0;
+        for (var i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int row) {
+        var h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.techhouse.bckg_ops.BackgroundTaskManager;
 import org.techhouse.bckg_ops.events.UsageProfileCleanupEvent;
 import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.admin.AdminCollectionUsageEntry;
@@ -28,6 +29,7 @@ public class MemoryManagement {
     private final FileSystem fs = IocContainer.get(FileSystem.class);
     private final UserCache userCache = IocContainer.get(UserCache.class);
     private final ResourceLocking locks = IocContainer.get(ResourceLocking.class);
+    private final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
     private final BackgroundTaskManager taskManager = IocContainer.get(BackgroundTaskManager.class);
     private final ConcurrentHashMap<String, UsageCounter> counters = new ConcurrentHashMap<>();
     private final AtomicBoolean sweepRunning = new AtomicBoolean(false);
@@ -155,7 +157,7 @@ public class MemoryManagement {
         if (config.isCacheUnlimited()) {
             return AdmissionDecision.ADMIT;
         }
-        return userCacheBytes() + estimatedBytes > config.getMaxMemoryBytes()
+        return usedBytes() + estimatedBytes > config.getMaxMemoryBytes()
                 ? AdmissionDecision.REJECT
                 : AdmissionDecision.ADMIT;
     }
@@ -175,29 +177,48 @@ public class MemoryManagement {
     }
 
     // Synchronous, between-pages guard for the streaming read path. Reuses the same
-    // LFU eviction logic as the scheduled sweep so a long scan can reclaim other
+    // eviction logic as the scheduled sweep so a long scan can reclaim other
     // cached resources to make room for the next page instead of waiting for the timer.
     public void ensureHeadroomForBytes(long nextPageEstimateBytes) {
         if (isCachingDisabled() || isCacheUnlimited()) {
             return;
         }
         final var maxBytes = config.getMaxMemoryBytes();
-        if (userCacheBytes() + nextPageEstimateBytes <= maxBytes) {
+        if (usedBytes() + nextPageEstimateBytes <= maxBytes) {
             return;
         }
         evictDownTo(Math.max(0L, maxBytes - nextPageEstimateBytes));
     }
 
+    // How many bytes of documents an external SORT or a JOIN's hash table may buffer before spilling to disk: the
+    // room left under maxMemory once cached resources are evicted, as for a page read, to free at least minimumBytes.
+    // Unbounded when no memory budget is configured.
+    public long spillBudgetBytes(long minimumBytes) {
+        if (isCachingDisabled() || isCacheUnlimited()) {
+            return Long.MAX_VALUE;
+        }
+        ensureHeadroomForBytes(minimumBytes);
+        return Math.max(minimumBytes, config.getMaxMemoryBytes() - usedBytes());
+    }
+
+    // Documents go first, one at a time from the cold end of the document cache; then whole indexes, least used
+    // first within each tier.
     private void evictDownTo(long targetBytes) {
-        var resources = userCache.listCacheableResources();
-        if (sumBytes(resources) <= targetBytes) {
+        final var excess = usedBytes() - targetBytes;
+        if (excess <= 0) {
             return;
         }
-        final var ranked = new ArrayList<>(resources);
+        userCache.evictDocuments(excess);
+        final var ranked = new ArrayList<CacheableResource>();
+        for (var resource : userCache.listCacheableResources()) {
+            if (resource.kind() != AccessKind.COLLECTION) {
+                ranked.add(resource);
+            }
+        }
         ranked.sort(Comparator.comparingInt((CacheableResource r) -> tierOrdinal(r.kind()))
                 .thenComparingLong(this::counterAccessCount).thenComparingLong(this::counterLastAccess));
         for (var resource : ranked) {
-            if (userCacheBytes() <= targetBytes) {
+            if (usedBytes() <= targetBytes) {
                 break;
             }
             if (!locks.tryLockWrite(resource.dbName(), resource.collName())) {
@@ -208,7 +229,6 @@ public class MemoryManagement {
                     case PK_INDEX -> userCache.evictPkIndex(resource.dbName(), resource.collName());
                     case FIELD_INDEX ->
                         userCache.evictFieldIndex(resource.dbName(), resource.collName(), resource.indexKey());
-                    case COLLECTION -> userCache.evictCollectionDocuments(resource.dbName(), resource.collName());
                     default -> {
                     }
                 }
@@ -222,6 +242,12 @@ public class MemoryManagement {
         return sumBytes(userCache.listCacheableResources());
     }
 
+    // The cached resources and the rows kept for snapshot reads, which count against maxMemory alike but only the
+    // former can be evicted.
+    public long usedBytes() {
+        return userCacheBytes() + snapshots.retainedBytes();
+    }
+
     private long sumBytes(java.util.List<CacheableResource> resources) {
         long total = 0L;
         for (var r : resources) {
@@ -0,0 +1,188 @@
+package org.techhouse.cache;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.techhouse.config.Configuration;
+import org.techhouse.data.DbEntry;
+import org.techhouse.data.admin.AdminPageEntry;
+
+/**
+ * A full-collection scan spread over a bounded fork-join pool: worker threads read, decode and filter whole pages
+ * independently while the consuming thread walks their results. A window bounds the pages read ahead, both by the
+ * number of scan threads and by the memory the pages may take: each page makes room for itself under maxMemory as a
+ * sequential page read does, and no page is read ahead once the resident pages fill the room left under it. Pages
+ * are handed back in page order, or in the order their reads finish when the caller does not depend on the order.
+ */
+final class ParallelPageScan {
+    private ParallelPageScan() {
+    }
+
+    private static final Configuration configuration = Configuration.getInstance();
+    private static volatile ForkJoinPool pool;
+
+    static boolean enabled(int pages) {
+        return pages > 1 && configuration.getScanThreads() > 1;
+    }
+
+    static Stream<DbEntry> scan(List<AdminPageEntry> pages, Cache.PageReader reader, boolean ordered,
+            MemoryManagement memoryManagement) {
+        final var window = new PageWindow(pages, reader, ordered, memoryManagement);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(window, Spliterator.NONNULL), false)
+                .onClose(window::close);
+    }
+
+    // Shared by every scan, so the scan threads bound the page reads in flight across all queries.
+    private static ForkJoinPool pool() {
+        var current = pool;
+        if (current == null) {
+            synchronized (ParallelPageScan.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ForkJoinPool(configuration.getScanThreads(),
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // A page read that counts towards the resident pages from submission until its documents are walked.
+    private record ResidentPage(CompletableFuture<Collection<DbEntry>> read, long bytes) {
+    }
+
+    private static final class PageWindow implements Iterator<DbEntry> {
+        private final List<AdminPageEntry> pages;
+        private final Cache.PageReader reader;
+        private final boolean ordered;
+        private final MemoryManagement memoryManagement;
+        private final int threads = configuration.getScanThreads();
+        private final long maxPageBytes = configuration.getMaxPageSize();
+        // Submission order, for an ordered scan; the order reads finish in, otherwise.
+        private final ArrayDeque<ResidentPage> submitted = new ArrayDeque<>();
+        private final LinkedBlockingQueue<ResidentPage> finished = new LinkedBlockingQueue<>();
+        private long residentLimit = -1;
+        private long residentBytes;
+        private int nextPage;
+        private int outstanding;
+        private ResidentPage current;
+        private Iterator<DbEntry> entries = Collections.emptyIterator();
+        private boolean closed;
+
+        private PageWindow(List<AdminPageEntry> pages, Cache.PageReader reader, boolean ordered,
+                MemoryManagement memoryManagement) {
+            this.pages = pages;
+            this.reader = reader;
+            this.ordered = ordered;
+            this.memoryManagement = memoryManagement;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!entries.hasNext()) {
+                if (current != null) {
+                    residentBytes -= current.bytes();
+                    current = null;
+                }
+                if (closed) {
+                    return false;
+                }
+                readAhead();
+                if (outstanding == 0) {
+                    return false;
+                }
+                if (ordered) {
+                    current = submitted.remove();
+                } else {
+                    current = takeFinished();
+                    submitted.remove(current);
+                }
+                outstanding--;
+                entries = documentsOf(current).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public DbEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return entries.next();
+        }
+
+        private void readAhead() {
+            if (residentLimit < 0) {
+                residentLimit = memoryManagement.spillBudgetBytes(maxPageBytes);
+            }
+            while (nextPage < pages.size() && outstanding < threads) {
+                final var pageEntry = pages.get(nextPage);
+                final var estimate = pageEntry.getPageSize() > 0 ? pageEntry.getPageSize() : maxPageBytes;
+                // At least one page is always read, however little room there is.
+                if (outstanding > 0 && residentBytes + estimate > residentLimit) {
+                    return;
+                }
+                memoryManagement.ensureHeadroomForBytes(residentBytes + estimate);
+                residentBytes += estimate;
+                nextPage++;
+                outstanding++;
+                final var read = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return reader.read(pageEntry.getPage()).values();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, pool());
+                final var page = new ResidentPage(read, estimate);
+                submitted.add(page);
+                if (!ordered) {
+                    read.whenComplete((_, _) -> finished.add(page));
+                }
+            }
+        }
+
+        private ResidentPage takeFinished() {
+            try {
+                return finished.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private Collection<DbEntry> documentsOf(ResidentPage page) {
+            try {
+                return page.read().join();
+            } catch (CompletionException e) {
+                close();
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        // Pages still being read finish on their own; their documents are dropped.
+        private void close() {
+            closed = true;
+            submitted.forEach(page -> page.read().cancel(false));
+            submitted.clear();
+            finished.clear();
+            entries = Collections.emptyIterator();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.techhouse.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Reads waiting to be applied to the eviction order, recorded without a lock. Each thread writes to one of several
+ * small ring buffers picked by its id, so concurrent readers rarely touch the same counter. A read that finds its
+ * buffer full, or loses a race for a slot, is dropped: the order and the frequencies are estimates anyway. Only
+ * the one thread holding the owner's lock drains the buffers.
+ */
+final class ReadBuffer<E> {
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    private static final class Stripe<E> {
+        private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        // Only written by the draining thread.
+        private volatile long reads;
+    }
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        final var count = Integer.highestOneBit(Math.max(1, 4 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        // A generic array can't be created; every slot gets a Stripe<E> below, so the cast holds.
+        stripes = (Stripe<E>[]) new Stripe<?>[count];
+        for (var i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeMask = count - 1;
+    }
+
+    // Records element; returns true when its buffer is full and should be drained.
+    boolean offer(E element) {
+        final var stripe = stripes[stripeOf(Thread.currentThread().threadId())];
+        final var tail = stripe.writes.get();
+        if (tail - stripe.reads >= STRIPE_SIZE) {
+            return true;
+        }
+        if (!stripe.writes.compareAndSet(tail, tail + 1)) {
+            return true;
+        }
+        stripe.slots.lazySet((int) (tail & STRIPE_MASK), element);
+        return tail + 1 - stripe.reads >= STRIPE_SIZE;
+    }
+
+    // Hands every recorded element to consumer. Callers hold the owner's lock.
+    void drainTo(Consumer<E> consumer) {
+        for (var stripe : stripes) {
+            var head = stripe.reads;
+            final var tail = stripe.writes.get();
+            for (; head < tail; head++) {
+                final var index = (int) (head & STRIPE_MASK);
+                final var element = stripe.slots.get(index);
+                // Claimed but not written yet; the next drain picks it up.
+                if (element == null) {
+                    break;
+                }
+                stripe.slots.lazySet(index, null);
+                consumer.accept(element);
+            }
+            stripe.reads = head;
+        }
+    }
+
+    private int stripeOf(long threadId) {
+        return (int) ((threadId * 0x9e3779b97f4a7c15L) >>> 32) & stripeMask;
+    }
+}
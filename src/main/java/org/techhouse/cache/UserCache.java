@@ -2,22 +2,33 @@ package org.techhouse.cache;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.techhouse.bckg_ops.BackgroundTaskManager;
 import org.techhouse.bckg_ops.events.CollectionUsageEvent;
+import org.techhouse.concurrency.ReadSnapshot;
 import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
 import org.techhouse.data.IndexKind;
+import org.techhouse.data.NumericFieldIndex;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
 import org.techhouse.ejson.custom_types.CustomTypeFactory;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBaseElement;
@@ -35,20 +46,33 @@ import org.techhouse.utils.SearchUtils;
 
 /**
  * Cache for user document and index entries: the PK index map, field index map
- * and full document map. Unlike {@link AdminCache}, these caches are
- * memory-managed — admission is gated by {@link MemoryManagement} and entries
- * are evicted by the LFU sweep. The {@link Cache} facade coordinates this cache
- * with the admin page metadata for the cross-cutting read/stream methods.
+ * and the {@link DocumentCache}. Unlike {@link AdminCache}, these caches are
+ * memory-managed — index admission is gated by {@link MemoryManagement} and
+ * whole indexes are evicted by the LFU sweep, while documents are admitted and
+ * evicted one at a time within the part of maxMemory the indexes leave. The
+ * {@link Cache} facade coordinates this cache with the admin page metadata for
+ * the cross-cutting read/stream methods.
  */
 public class UserCache {
-    private static final long ESTIMATED_PK_ENTRY_BYTES = 96L;
-    private static final long ESTIMATED_FIELD_ENTRY_OVERHEAD_BYTES = 64L;
+    // An entry in the id map and in its page's bucket (see PkIndex).
+    private static final long ESTIMATED_PK_ENTRY_BYTES = 160L;
+    // A value: its double, its id count and its own id array.
+    private static final long ESTIMATED_NUMERIC_KEY_BYTES = Double.BYTES + Integer.BYTES + 24L;
+    private static final long ESTIMATED_NUMERIC_ID_BYTES = 8L;
+    // Map node plus value and position of an id, once a written index maps them (see NumericFieldIndex).
+    private static final long ESTIMATED_NUMERIC_ID_SLOT_BYTES = 64L;
     private final Configuration configuration = Configuration.getInstance();
     private final FileSystem fs = IocContainer.get(FileSystem.class);
     private final ResourceLocking rl = IocContainer.get(ResourceLocking.class);
-    private final Map<String, List<PkIndexEntry>> pkIndexMap = new ConcurrentHashMap<>();
+    private final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
+    private final Map<String, PkIndex> pkIndexMap = new ConcurrentHashMap<>();
+    // Held for writing while a PK index is loaded, for reading while a writer changes the cached one.
+    private final Map<String, ReentrantReadWriteLock> pkIndexLoadLocks = new ConcurrentHashMap<>();
     private final Map<String, Map<String, List<FieldIndexEntry<?>>>> fieldIndexMap = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, DbEntry>> collectionMap = new ConcurrentHashMap<>();
+    // Number indexes are cached packed (see NumericFieldIndex), under the same field|Number identifier.
+    private final Map<String, Map<String, NumericFieldIndex>> numericIndexMap = new ConcurrentHashMap<>();
+    private final DocumentCache documentCache = new DocumentCache();
+    private final Map<String, RowIdDictionary> rowIdMap = new ConcurrentHashMap<>();
     // Lazily initialized because UserCache <-> MemoryManagement is a construction-time cycle:
     // MemoryManagement holds the cache eagerly, so we cannot hold MemoryManagement eagerly here
     // without recursing through the IoC container during static init.
@@ -73,36 +97,127 @@ public class UserCache {
         return tm;
     }
 
-    public List<PkIndexEntry> getPkIndexAndLoadIfNecessary(String dbName, String collName) throws IOException {
+    /**
+     * The collection's PK index, loaded from disk when not cached (and cached unless the memory budget refuses
+     * it). Writers of different documents change the cached index concurrently (see {@link #putPkEntry}); a load
+     * keeps them from doing so until it is cached, so a change is either in the file it reads or applied to it.
+     */
+    public PkIndex getPkIndex(String dbName, String collName) throws IOException {
         final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         var primaryKeyIndex = pkIndexMap.get(collectionIdentifier);
-        if (primaryKeyIndex == null) {
-            primaryKeyIndex = fs.readWholePkIndexFile(dbName, collName);
-            if (shouldCache(dbName, estimatePkIndexSize(primaryKeyIndex))) {
-                pkIndexMap.put(collectionIdentifier, primaryKeyIndex);
+        if (primaryKeyIndex != null) {
+            return primaryKeyIndex;
+        }
+        final var loadLock = pkIndexLoadLock(collectionIdentifier).writeLock();
+        loadLock.lock();
+        try {
+            primaryKeyIndex = pkIndexMap.get(collectionIdentifier);
+            if (primaryKeyIndex == null) {
+                final var loaded = fs.readWholePkIndexFile(dbName, collName);
+                primaryKeyIndex = new PkIndex(loaded);
+                if (shouldCache(dbName, estimatePkIndexSize(loaded.size()))) {
+                    pkIndexMap.put(collectionIdentifier, primaryKeyIndex);
+                }
             }
+            return primaryKeyIndex;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock pkIndexLoadLock(String collectionIdentifier) {
+        return pkIndexLoadLocks.computeIfAbsent(collectionIdentifier, _ -> new ReentrantReadWriteLock());
+    }
+
+    // Applies a committed write to the cached PK index, if any: the entry replaces the id's previous one. Called
+    // once the write is in the PK index file.
+    public void putPkEntry(String dbName, String collName, PkIndexEntry entry) {
+        changeCachedPkIndex(dbName, collName, index -> index.put(entry));
+    }
+
+    public void removePkEntry(String dbName, String collName, String id) {
+        changeCachedPkIndex(dbName, collName, index -> index.remove(id));
+        final var rowIds = rowIdMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        if (rowIds != null) {
+            rowIds.retire(id);
+        }
+    }
+
+    private void changeCachedPkIndex(String dbName, String collName, Consumer<PkIndex> change) {
+        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var loadLock = pkIndexLoadLock(collectionIdentifier).readLock();
+        loadLock.lock();
+        try {
+            final var primaryKeyIndex = pkIndexMap.get(collectionIdentifier);
+            if (primaryKeyIndex != null) {
+                change.accept(primaryKeyIndex);
+            }
+        } finally {
+            loadLock.unlock();
         }
-        return primaryKeyIndex;
     }
 
     /**
-     * Keeps the cached PK index positions consistent after a single-entry page compaction: every
-     * cached entry on {@code page} whose position is greater than {@code removedPosition} shifted
-     * toward the start of the file by {@code removedLength}. Mutates the cached entries in place so
-     * any in-flight operation holding a reference observes the corrected position. No-op when the
-     * collection's PK index is not cached.
+     * The number of documents in the collection, from the PK index; as of the current snapshot when one covers
+     * the collection.
      */
-    public void shiftPkPositionsAfterCompaction(String dbName, String collName, long page, long removedPosition,
-            long removedLength) {
-        final var primaryKeyIndex = pkIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
+    public int countDocuments(String dbName, String collName) throws IOException {
+        final var primaryKeyIndex = getPkIndex(dbName, collName);
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
+        if (snapshot == null) {
+            return primaryKeyIndex.size();
+        }
+        final var delta = snapshot.delta(dbName, collName);
+        var count = primaryKeyIndex.size() + delta.existingIds().size();
+        for (var id : delta.ids()) {
+            if (primaryKeyIndex.contains(id)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the cached PK index positions consistent after a background page compaction: every cached
+     * entry on {@code page} whose id is in {@code newPositions} moved to the recorded position. Mutates the
+     * cached entries in place so any in-flight operation holding a reference observes the corrected
+     * position. No-op when the collection's PK index is not cached. Compaction follows deletes, so this is also
+     * where a row id dictionary mostly made of deleted documents is replaced by a new one.
+     */
+    public void applyPageCompaction(String dbName, String collName, long page, Map<String, Long> newPositions) {
+        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var rowIds = rowIdMap.get(collectionIdentifier);
+        if (rowIds != null && rowIds.isMostlyRetired()) {
+            dropRowIds(collectionIdentifier);
+        }
+        final var primaryKeyIndex = pkIndexMap.get(collectionIdentifier);
         if (primaryKeyIndex == null) {
             return;
         }
-        for (final var entry : primaryKeyIndex) {
-            if (entry.getPage() == page && entry.getPosition() > removedPosition) {
-                entry.setPosition(entry.getPosition() - removedLength);
+        for (final var entry : primaryKeyIndex.onPage(page)) {
+            final var newPosition = newPositions.get(entry.getValue());
+            if (newPosition != null) {
+                entry.setPosition(newPosition);
+            }
+        }
+    }
+
+    // Drops the collection's row id dictionary and the row bitmaps the cached indexes built with it; the next
+    // query starts a new one. Queries holding the old dictionary finish with it (see rowsOf).
+    private void dropRowIds(String collectionIdentifier) {
+        rowIdMap.remove(collectionIdentifier);
+        final var fieldIndexes = fieldIndexMap.get(collectionIdentifier);
+        if (fieldIndexes != null) {
+            for (var entries : fieldIndexes.values()) {
+                if (entries instanceof CachedFieldIndex cached) {
+                    cached.dropRows();
+                }
             }
         }
+        final var numericIndexes = numericIndexMap.get(collectionIdentifier);
+        if (numericIndexes != null) {
+            numericIndexes.values().forEach(NumericFieldIndex::dropRows);
+        }
     }
 
     public boolean isCachingDisabled(String dbName) {
@@ -123,8 +238,15 @@ public class UserCache {
     // ResourceLocking#lockIndexRead, write lock for the background index writer). The returned
     // entries alias the cached id sets, so a caller that lets them escape lock scope (e.g. into a
     // lazily-consumed stream) must take its own snapshot of the ids it needs before releasing.
+    @SuppressWarnings("unchecked")
     public <T> List<FieldIndexEntry<T>> getFieldIndexAndLoadIfNecessary(String dbName, String collName,
             String fieldName, Class<T> indexType) throws IOException {
+        if (indexType == Number.class) {
+            // Materialized from the packed form; the entries are detached from the cache.
+            final var numericIndex = getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
+            return numericIndex == null ? null : (List<FieldIndexEntry<T>>) (List<?>) numericIndex.toEntries(dbName,
+                    collName);
+        }
         final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         final var indexIdentifier = Cache.getIndexIdentifier(fieldName, indexType);
         var index = fieldIndexMap.get(collectionIdentifier);
@@ -138,7 +260,7 @@ public class UserCache {
             }
             final var asWildcard = new ArrayList<FieldIndexEntry<?>>(indexEntries);
             if (shouldCache(dbName, estimateFieldIndexSize(asWildcard))) {
-                index.put(indexIdentifier, new ArrayList<>(indexEntries));
+                index.put(indexIdentifier, new CachedFieldIndex(indexEntries));
                 fieldIndexMap.put(collectionIdentifier, index);
             }
         } else {
@@ -154,6 +276,29 @@ public class UserCache {
         return indexEntries;
     }
 
+    // Number counterpart of getFieldIndexAndLoadIfNecessary: loads the field's Number index (and caches it when
+    // admitted) in its packed form. Same locking contract; a cached index is changed in place by the index writer.
+    public NumericFieldIndex getNumericIndexAndLoadIfNecessary(String dbName, String collName, String fieldName)
+            throws IOException {
+        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var indexIdentifier = Cache.getIndexIdentifier(fieldName, Number.class);
+        final var index = numericIndexMap.get(collectionIdentifier);
+        final var cached = index == null ? null : index.get(indexIdentifier);
+        if (cached != null) {
+            return cached;
+        }
+        final var entries = fs.readWholeFieldIndexFiles(dbName, collName, fieldName, Number.class);
+        if (entries == null) {
+            return null;
+        }
+        final var numericIndex = NumericFieldIndex.fromEntries(entries);
+        if (shouldCache(dbName, estimateNumericIndexSize(numericIndex))) {
+            numericIndexMap.computeIfAbsent(collectionIdentifier, _ -> new ConcurrentHashMap<>())
+                    .put(indexIdentifier, numericIndex);
+        }
+        return numericIndex;
+    }
+
     // Hash index counterpart of getFieldIndexAndLoadIfNecessary: loads (and caches) the element-match
     // entries (value = hex hash) for the object or array index family. Cached under the
     // field|Object / field|Array identifier, kept apart from the scalar/custom index entries. Same
@@ -173,7 +318,7 @@ public class UserCache {
             }
             final var asWildcard = new ArrayList<FieldIndexEntry<?>>(indexEntries);
             if (shouldCache(dbName, estimateFieldIndexSize(asWildcard))) {
-                index.put(indexIdentifier, new ArrayList<>(indexEntries));
+                index.put(indexIdentifier, new CachedFieldIndex(indexEntries));
                 fieldIndexMap.put(collectionIdentifier, index);
             }
         } else {
@@ -189,9 +334,73 @@ public class UserCache {
         return indexEntries;
     }
 
+    // Field index entries a single comparison needs. A cached index (or one small enough to be admitted into the
+    // cache) is used whole; otherwise an equality or range comparison reads only the index blocks that can hold
+    // a match, which is a sorted slice the search below runs on unchanged. Same locking contract as
+    // getFieldIndexAndLoadIfNecessary.
+    private <T> List<FieldIndexEntry<T>> getFieldIndexForOperator(String dbName, String collName, String fieldName,
+            Class<T> indexType, FieldOperator operator, T value) throws IOException {
+        final var index = fieldIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        final var cached = index != null && index.containsKey(Cache.getIndexIdentifier(fieldName, indexType));
+        if (!cached && readsIndexRange(dbName, collName, fieldName, indexType, operator)) {
+            return readIndexRange(dbName, collName, fieldName, indexType, operator, value);
+        }
+        return getSearchableFieldIndex(dbName, collName, fieldName, indexType);
+    }
+
+    // The index a query searches: the cached list itself when the index is cached (read under the read lock, and
+    // the one whose row bitmaps rowsOf uses), otherwise the entries just read.
+    @SuppressWarnings("unchecked")
+    private <T> List<FieldIndexEntry<T>> getSearchableFieldIndex(String dbName, String collName, String fieldName,
+            Class<T> indexType) throws IOException {
+        final var entries = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, indexType);
+        final var cached = getCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, indexType));
+        return entries == null || cached == null ? entries : (List<FieldIndexEntry<T>>) (List<?>) cached;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FieldIndexEntry<String>> getSearchableHashIndex(String dbName, String collName, String fieldName,
+            IndexKind kind) throws IOException {
+        final var entries = getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, kind);
+        final var cached = getCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, kind.label()));
+        return entries == null || cached == null ? entries : (List<FieldIndexEntry<String>>) (List<?>) cached;
+    }
+
+    // Number counterpart of getFieldIndexForOperator; a range slice is packed the same way as a whole index.
+    private NumericFieldIndex getNumericIndexForOperator(String dbName, String collName, String fieldName,
+            FieldOperator operator, Number value) throws IOException {
+        final var index = numericIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        final var cached = index != null && index.containsKey(Cache.getIndexIdentifier(fieldName, Number.class));
+        if (!cached && readsIndexRange(dbName, collName, fieldName, Number.class, operator)) {
+            final var slice = readIndexRange(dbName, collName, fieldName, Number.class, operator, value);
+            return slice == null ? null : NumericFieldIndex.fromEntries(slice);
+        }
+        return getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
+    }
+
+    private boolean readsIndexRange(String dbName, String collName, String fieldName, Class<?> indexType,
+            FieldOperator operator) {
+        return switch (operator.getFieldOperatorType()) {
+            case EQUALS, GREATER_THAN, GREATER_THAN_EQUALS, SMALLER_THAN, SMALLER_THAN_EQUALS ->
+                !shouldCache(dbName, fs.fieldIndexFileSize(dbName, collName, fieldName, indexType));
+            default -> false;
+        };
+    }
+
+    private <T> List<FieldIndexEntry<T>> readIndexRange(String dbName, String collName, String fieldName,
+            Class<T> indexType, FieldOperator operator, T value) throws IOException {
+        return switch (operator.getFieldOperatorType()) {
+            case GREATER_THAN, GREATER_THAN_EQUALS ->
+                fs.readFieldIndexRange(dbName, collName, fieldName, indexType, value, null);
+            case SMALLER_THAN, SMALLER_THAN_EQUALS ->
+                fs.readFieldIndexRange(dbName, collName, fieldName, indexType, null, value);
+            default -> fs.readFieldIndexRange(dbName, collName, fieldName, indexType, value, value);
+        };
+    }
+
     // Resolves the matching ids for a single field operator under the field's index read lock and
-    // returns a detached snapshot. The read lock serializes against the background index writer (the
-    // searched id sets are mutated by it), and the copy keeps the result safe once the lock is
+    // returns a detached set. The read lock serializes against the background index writer (the
+    // searched id sets are mutated by it), and the new set keeps the result safe once the lock is
     // released and the ids flow into a lazily-consumed stream.
     public <T> Set<String> getIdsFromIndex(String dbName, String collName, String fieldName, FieldOperator operator,
             T value) throws IOException {
@@ -202,20 +411,82 @@ public class UserCache {
             throw new IOException("Interrupted while acquiring index read lock", e);
         }
         try {
-            final var result = doGetIdsFromIndex(dbName, collName, fieldName, operator, value);
-            if (result == null) {
+            final var match = matchIndex(dbName, collName, fieldName, operator, value);
+            if (match == null) {
                 return null;
             }
-            final var snapshot = new HashSet<>(result);
+            final var ids = match.ids();
             if (!Globals.ADMIN_DB_NAME.equals(dbName)) {
                 recordFieldIndexAccess(dbName, collName, fieldName);
             }
-            return snapshot;
+            return ids;
         } finally {
             rl.releaseIndexRead(dbName, collName, fieldName);
         }
     }
 
+    // Bitmap counterpart of getIdsFromIndex: the matching ids as rows of the given dictionary, under the index
+    // read lock. A cached index ORs the row bitmaps it keeps per value (see rowsOf), so no id is handled.
+    public <T> RowIdBitmap getRowIdsFromIndex(String dbName, String collName, String fieldName,
+            FieldOperator operator, T value, RowIdDictionary rowIds) throws IOException {
+        try {
+            rl.lockIndexRead(dbName, collName, fieldName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while acquiring index read lock", e);
+        }
+        try {
+            final var match = matchIndex(dbName, collName, fieldName, operator, value);
+            if (match == null) {
+                return null;
+            }
+            final var rows = rowsOf(dbName, collName, match, rowIds);
+            if (!Globals.ADMIN_DB_NAME.equals(dbName)) {
+                recordFieldIndexAccess(dbName, collName, fieldName);
+            }
+            return rows;
+        } finally {
+            rl.releaseIndexRead(dbName, collName, fieldName);
+        }
+    }
+
+    // A cached index ORs the row bitmaps it keeps for the collection's current dictionary. Anything else (a range
+    // slice, an index too big to cache, or a query still holding a dictionary that was since replaced) numbers
+    // the matched ids.
+    private RowIdBitmap rowsOf(String dbName, String collName, IndexMatch match, RowIdDictionary rowIds) {
+        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        if (rowIdMap.get(collectionIdentifier) == rowIds) {
+            if (match.entries() instanceof CachedFieldIndex cached) {
+                return cached.rowsAt(match.positions(), rowIds);
+            }
+            final var numericIndexes = numericIndexMap.get(collectionIdentifier);
+            if (match.numeric() != null && numericIndexes != null && numericIndexes.containsValue(match.numeric())) {
+                return match.numeric().rowsAt(match.positions(), rowIds);
+            }
+        }
+        return rowIds.rowsOf(match.ids());
+    }
+
+    public RowIdDictionary getRowIdDictionary(String dbName, String collName) {
+        return rowIdMap.computeIfAbsent(Cache.getCollectionIdentifier(dbName, collName), _ -> new RowIdDictionary());
+    }
+
+    // Rows of every document in the collection, from the PK index (no documents are read).
+    public RowIdBitmap getAllRowIds(String dbName, String collName, RowIdDictionary rowIds) throws IOException {
+        final var rows = new RowIdBitmap();
+        for (var entry : getPkIndex(dbName, collName).values()) {
+            rows.add(rowIds.rowOf(entry.getValue()));
+        }
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
+        if (snapshot != null) {
+            final var delta = snapshot.delta(dbName, collName);
+            if (!delta.isEmpty()) {
+                return rows.andNot(rowIds.rowsOf(delta.ids())).or(rowIds.rowsOf(delta.existingIds()));
+            }
+        }
+        return rows;
+    }
+
     public void recordFieldIndexAccess(String dbName, String collName, String fieldName) {
         memoryManagement().recordAccess(AccessKind.FIELD_INDEX, dbName, collName, fieldName);
         taskManager().submitBackgroundTask(new CollectionUsageEvent(AccessKind.FIELD_INDEX, dbName, collName, fieldName,
@@ -223,68 +494,62 @@ public class UserCache {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> Set<String> doGetIdsFromIndex(String dbName, String collName, String fieldName, FieldOperator operator,
+    private <T> IndexMatch matchIndex(String dbName, String collName, String fieldName, FieldOperator operator,
             T value) throws IOException {
+        final var opType = operator.getFieldOperatorType();
         return switch (value) {
             case Number n -> {
-                final var numberIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, Number.class);
-                if (numberIndex != null) {
-                    yield SearchUtils.findingByOperator(numberIndex, operator.getFieldOperatorType(), n);
-                } else {
-                    yield null;
-                }
+                final var numberIndex = getNumericIndexForOperator(dbName, collName, fieldName, operator, n);
+                yield numberIndex != null
+                        ? IndexMatch.of(numberIndex, SearchUtils.matchingKeys(numberIndex, opType, n))
+                        : null;
             }
             case Boolean b -> {
-                final var booleanIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, Boolean.class);
-                if (booleanIndex != null) {
-                    yield SearchUtils.findingByOperator(booleanIndex, operator.getFieldOperatorType(), b);
-                } else {
-                    yield null;
-                }
+                final var booleanIndex = getFieldIndexForOperator(dbName, collName, fieldName, Boolean.class, operator,
+                        b);
+                yield booleanIndex != null
+                        ? IndexMatch.of(booleanIndex, SearchUtils.matchingEntries(booleanIndex, opType, b))
+                        : null;
             }
             case String s -> {
-                final var stringIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, String.class);
-                if (stringIndex != null) {
-                    yield SearchUtils.findingByOperator(stringIndex, operator.getFieldOperatorType(), s);
-                } else {
-                    yield null;
-                }
+                final var stringIndex = getFieldIndexForOperator(dbName, collName, fieldName, String.class, operator,
+                        s);
+                yield stringIndex != null
+                        ? IndexMatch.of(stringIndex, SearchUtils.matchingEntries(stringIndex, opType, s))
+                        : null;
             }
             case JsonCustom<?> c -> {
                 final var customTypes = CustomTypeFactory.getCustomTypes();
                 final var customClass = customTypes.get(c.getCustomTypeName());
-                final var customIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName,
-                        (Class<T>) customClass);
-                if (customIndex != null) {
-                    yield SearchUtils.findingByOperator(customIndex, operator.getFieldOperatorType(), (T) c);
-                } else {
-                    yield null;
-                }
+                final var customIndex = getFieldIndexForOperator(dbName, collName, fieldName,
+                        (Class<T>) customClass, operator, (T) c);
+                yield customIndex != null
+                        ? IndexMatch.of(customIndex, SearchUtils.matchingEntries(customIndex, opType, (T) c))
+                        : null;
             }
             case JsonObject obj -> {
-                final var opType = operator.getFieldOperatorType();
                 if (opType == FieldOperatorType.EQUALS || opType == FieldOperatorType.NOT_EQUALS) {
-                    final var hashIndex = getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, IndexKind.OBJECT);
+                    final var hashIndex = getSearchableHashIndex(dbName, collName, fieldName, IndexKind.OBJECT);
                     yield hashIndex != null
-                            ? SearchUtils.findingByOperator(hashIndex, opType, JsonUtils.hashElement(obj))
+                            ? IndexMatch.of(hashIndex,
+                                    SearchUtils.matchingEntries(hashIndex, opType, JsonUtils.hashElement(obj)))
                             : null;
                 } else {
                     yield null;
                 }
             }
             case JsonArray arr -> {
-                final var opType = operator.getFieldOperatorType();
                 yield switch (opType) {
                     // EQUALS/NOT_EQUALS against an array operand means element-match on the whole array.
                     case EQUALS, NOT_EQUALS -> {
-                        final var hashIndex = getHashIndexAndLoadIfNecessary(dbName, collName, fieldName,
-                                IndexKind.ARRAY);
+                        final var hashIndex = getSearchableHashIndex(dbName, collName, fieldName, IndexKind.ARRAY);
                         yield hashIndex != null
-                                ? SearchUtils.findingByOperator(hashIndex, opType, JsonUtils.hashElement(arr))
+                                ? IndexMatch.of(hashIndex,
+                                        SearchUtils.matchingEntries(hashIndex, opType, JsonUtils.hashElement(arr)))
                                 : null;
                     }
                     // IN/NOT_IN against an array operand means membership in the list of candidate values.
-                    case IN, NOT_IN -> getIdsFromInList(dbName, collName, fieldName, operator, arr);
+                    case IN, NOT_IN -> matchInList(dbName, collName, fieldName, operator, arr);
                     default -> null;
                 };
             }
@@ -297,7 +562,7 @@ public class UserCache {
     // index of the matching kind. The candidate list is assumed homogeneous (dispatched off its
     // first element), mirroring how the scalar path already worked.
     @SuppressWarnings("unchecked")
-    private <T> Set<String> getIdsFromInList(String dbName, String collName, String fieldName, FieldOperator operator,
+    private <T> IndexMatch matchInList(String dbName, String collName, String fieldName, FieldOperator operator,
             JsonArray arr) throws IOException {
         if (arr.isEmpty()) {
             return null;
@@ -305,48 +570,44 @@ public class UserCache {
         final var firstElement = arr.get(0);
         final var listStream = arr.asList().stream();
         final var opType = operator.getFieldOperatorType();
-        if (firstElement.isJsonObject()) {
-            final var hashIndex = getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, IndexKind.OBJECT);
-            return hashIndex != null
-                    ? SearchUtils.findingInNotIn(hashIndex, opType, listStream.map(JsonUtils::hashElement).toList())
-                    : null;
-        } else if (firstElement.isJsonArray()) {
-            final var hashIndex = getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, IndexKind.ARRAY);
+        if (firstElement.isJsonObject() || firstElement.isJsonArray()) {
+            final var kind = firstElement.isJsonObject() ? IndexKind.OBJECT : IndexKind.ARRAY;
+            final var hashIndex = getSearchableHashIndex(dbName, collName, fieldName, kind);
             return hashIndex != null
-                    ? SearchUtils.findingInNotIn(hashIndex, opType, listStream.map(JsonUtils::hashElement).toList())
+                    ? IndexMatch.of(hashIndex, SearchUtils.matchingEntriesInNotIn(hashIndex, opType,
+                            listStream.map(JsonUtils::hashElement).toList()))
                     : null;
         } else if (firstElement.isJsonPrimitive()) {
             final var prim = firstElement.asJsonPrimitive();
             return switch (prim) {
                 case JsonCustom<?> c -> {
                     final var customClass = CustomTypeFactory.getCustomTypes().get(c.getCustomTypeName());
-                    final var customIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName,
+                    final var customIndex = getSearchableFieldIndex(dbName, collName, fieldName,
                             (Class<T>) customClass);
                     yield customIndex != null
-                            ? SearchUtils.findingInNotIn(customIndex, opType,
-                                    (List<T>) listStream.map(JsonBaseElement::asJsonCustom).toList())
+                            ? IndexMatch.of(customIndex, SearchUtils.matchingEntriesInNotIn(customIndex, opType,
+                                    (List<T>) listStream.map(JsonBaseElement::asJsonCustom).toList()))
                             : null;
                 }
                 case JsonString ignored -> {
-                    final var stringIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, String.class);
+                    final var stringIndex = getSearchableFieldIndex(dbName, collName, fieldName, String.class);
                     yield stringIndex != null
-                            ? SearchUtils.findingInNotIn(stringIndex, opType,
-                                    listStream.map(x -> x.asJsonString().getValue()).toList())
+                            ? IndexMatch.of(stringIndex, SearchUtils.matchingEntriesInNotIn(stringIndex, opType,
+                                    listStream.map(x -> x.asJsonString().getValue()).toList()))
                             : null;
                 }
                 case JsonNumber ignored -> {
-                    final var numberIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, Number.class);
+                    final var numberIndex = getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
                     yield numberIndex != null
-                            ? SearchUtils.findingInNotIn(numberIndex, opType,
-                                    listStream.map(x -> x.asJsonNumber().getValue()).toList())
+                            ? IndexMatch.of(numberIndex, SearchUtils.matchingKeysInNotIn(numberIndex, opType,
+                                    listStream.map(x -> x.asJsonNumber().getValue()).toList()))
                             : null;
                 }
                 case JsonBoolean ignored -> {
-                    final var booleanIndex = getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName,
-                            Boolean.class);
+                    final var booleanIndex = getSearchableFieldIndex(dbName, collName, fieldName, Boolean.class);
                     yield booleanIndex != null
-                            ? SearchUtils.findingInNotIn(booleanIndex, opType,
-                                    listStream.map(x -> x.asJsonBoolean().getValue()).toList())
+                            ? IndexMatch.of(booleanIndex, SearchUtils.matchingEntriesInNotIn(booleanIndex, opType,
+                                    listStream.map(x -> x.asJsonBoolean().getValue()).toList()))
                             : null;
                 }
                 default -> null;
@@ -355,65 +616,67 @@ public class UserCache {
         return null;
     }
 
+    // The values of one index an operator matched, as positions in the index's sorted order; resolved to ids, or
+    // to rows by rowsOf, once the search is done.
+    private record IndexMatch(List<? extends FieldIndexEntry<?>> entries, NumericFieldIndex numeric,
+            BitSet positions) {
+        static IndexMatch of(List<? extends FieldIndexEntry<?>> entries, BitSet positions) {
+            return new IndexMatch(entries, null, positions);
+        }
+
+        static IndexMatch of(NumericFieldIndex numeric, BitSet positions) {
+            return new IndexMatch(null, numeric, positions);
+        }
+
+        Set<String> ids() {
+            return numeric != null ? numeric.idsAt(positions) : SearchUtils.idsAt(entries, positions);
+        }
+    }
+
     public void addEntryToCache(String dbName, String collName, DbEntry entry) {
-        if (!shouldCache(dbName, entry.byteSize())) {
-            return;
+        if (Globals.ADMIN_DB_NAME.equals(dbName)) {
+            documentCache.pin(dbName, collName, entry);
+        } else if (!isCachingDisabled(dbName)) {
+            documentCache.admit(dbName, collName, entry, documentBudgetBytes());
         }
-        final var collId = Cache.getCollectionIdentifier(dbName, collName);
-        var coll = collectionMap.computeIfAbsent(collId, _ -> new ConcurrentHashMap<>());
-        coll.put(entry.get_id(), entry);
     }
 
     public void addEntriesToCache(String dbName, String collName, List<DbEntry> entries) {
-        long total = 0L;
-        for (var e : entries) {
-            total += e.byteSize();
-        }
-        if (!shouldCache(dbName, total)) {
-            return;
+        if (Globals.ADMIN_DB_NAME.equals(dbName)) {
+            entries.forEach(entry -> documentCache.pin(dbName, collName, entry));
+        } else if (!isCachingDisabled(dbName)) {
+            documentCache.admitAll(dbName, collName, entries, documentBudgetBytes());
         }
-        final var collId = Cache.getCollectionIdentifier(dbName, collName);
-        var coll = collectionMap.computeIfAbsent(collId, _ -> new ConcurrentHashMap<>());
-        coll.putAll(entries.stream().collect(Collectors.toMap(DbEntry::get_id, o -> o, (_, b) -> b)));
     }
 
     public DbEntry getById(String dbName, String collName, PkIndexEntry idxEntry) throws Exception {
-        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         if (isCachingDisabled(dbName)) {
             return fs.getById(idxEntry);
         }
-        final var coll = collectionMap.computeIfAbsent(collectionIdentifier, _ -> new ConcurrentHashMap<>());
-        final var pk = idxEntry.getValue();
-        var entry = coll.get(pk);
+        var entry = documentCache.get(dbName, collName, idxEntry.getValue());
         if (entry == null) {
             entry = fs.getById(idxEntry);
-            if (shouldCache(dbName, entry.byteSize())) {
-                coll.put(pk, entry);
+            if (entry != null) {
+                addEntryToCache(dbName, collName, entry);
             }
         }
         return entry;
     }
 
     /**
-     * Returns the cached document map for the collection, or {@code null} if none is cached. Used by the
-     * {@link Cache} facade, which combines it with the admin page metadata to decide completeness.
+     * Returns a read-only view of the collection's cached documents, or {@code null} if none is cached. Used by
+     * the {@link Cache} facade, which combines it with the PK index to decide completeness.
      */
     public Map<String, DbEntry> getCachedCollection(String dbName, String collName) {
-        return collectionMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        return documentCache.documents(dbName, collName);
     }
 
     /**
-     * Admits a freshly loaded whole-collection map into the cache when caching is enabled and the
-     * admission check passes, returning the resident map; otherwise returns the loaded map unchanged.
+     * Offers the documents of a freshly loaded whole collection to the cache, which keeps those it has room for
+     * or reads more often than the ones already cached, and returns the loaded map.
      */
     public Map<String, DbEntry> admitWholeCollection(String dbName, String collName, Map<String, DbEntry> loaded) {
-        if (!isCachingDisabled(dbName)) {
-            final var asMap = new ConcurrentHashMap<>(loaded);
-            if (shouldCache(dbName, estimateCollectionSize(asMap))) {
-                collectionMap.put(Cache.getCollectionIdentifier(dbName, collName), asMap);
-                return asMap;
-            }
-        }
+        addEntriesToCache(dbName, collName, List.copyOf(loaded.values()));
         return loaded;
     }
 
@@ -422,87 +685,106 @@ public class UserCache {
         if (ids == null || ids.isEmpty()) {
             return result;
         }
-        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         final var cachingDisabled = isCachingDisabled(dbName);
-        final var cached = cachingDisabled ? null : collectionMap.get(collectionIdentifier);
         // Serve cache hits directly by id; only ids that are not cached need to be
         // resolved through the PK index and targeted-read from disk.
         final var missingIds = new ArrayList<String>();
         for (var id : ids) {
-            final var hit = cached != null ? cached.get(id) : null;
+            final var hit = cachingDisabled ? null : documentCache.get(dbName, collName, id);
             if (hit != null) {
                 result.add(hit);
             } else {
                 missingIds.add(id);
             }
         }
+        final var snapshot = ReadSnapshot.currentFor(dbName, collName);
         if (missingIds.isEmpty()) {
-            return result;
+            return snapshot == null ? result : asOfSnapshot(dbName, collName, ids, result, List.of(), snapshot);
         }
-        final var pkIndex = getPkIndexAndLoadIfNecessary(dbName, collName);
-        // toRead holds detached copies so a concurrent shiftPkPositionsAfterCompaction
+        final var pkIndex = getPkIndex(dbName, collName);
+        // toRead holds detached copies so a concurrent applyPageCompaction
         // (which mutates position in place) cannot move the offset between here and the read.
         final var toRead = new ArrayList<PkIndexEntry>();
         for (var id : missingIds) {
-            final var pos = Collections.binarySearch(pkIndex, id);
-            if (pos >= 0) {
-                final var e = pkIndex.get(pos);
+            final var e = pkIndex.get(id);
+            if (e != null) {
                 toRead.add(new PkIndexEntry(e.getDatabaseName(), e.getCollectionName(), e.getValue(), e.getPosition(),
                         e.getLength(), e.getPage()));
             }
         }
         if (toRead.isEmpty()) {
-            return result;
+            return snapshot == null ? result : asOfSnapshot(dbName, collName, ids, result, List.of(), snapshot);
         }
         final var read = fs.getByIndexEntries(toRead);
         result.addAll(read);
+        if (snapshot != null) {
+            return asOfSnapshot(dbName, collName, ids, result, read, snapshot);
+        }
         if (!cachingDisabled) {
-            long bytes = 0L;
-            for (var e : read) {
-                bytes += e.byteSize();
-            }
-            if (shouldCache(dbName, bytes)) {
-                final var coll = collectionMap.computeIfAbsent(collectionIdentifier, _ -> new ConcurrentHashMap<>());
-                for (var e : read) {
-                    coll.put(e.get_id(), e);
+            addEntriesToCache(dbName, collName, read);
+        }
+        return result;
+    }
+
+    // Puts the documents written since the snapshot back the way it saw them. What was read but not written since
+    // is already as of the snapshot, so it may be cached while the collection stays unchanged.
+    private List<DbEntry> asOfSnapshot(String dbName, String collName, Set<String> ids, List<DbEntry> result,
+            List<DbEntry> read, ReadSnapshot snapshot) throws IOException {
+        final var delta = snapshot.delta(dbName, collName);
+        if (!delta.isEmpty()) {
+            result.removeIf(entry -> delta.touches(entry.get_id()));
+            for (var id : ids) {
+                final var row = delta.touches(id) ? delta.rowAt(id) : null;
+                if (row != null) {
+                    result.add(fs.decodeEntry(dbName, collName, row));
                 }
             }
+        } else if (!read.isEmpty() && !isCachingDisabled(dbName)) {
+            documentCache.admitAll(dbName, collName, read, documentBudgetBytes(),
+                    () -> snapshot.unchanged(dbName, collName));
         }
         return result;
     }
 
     public void evictEntry(String dbName, String collName, String pk) {
-        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
-        final var coll = collectionMap.get(collectionIdentifier);
-        if (coll != null) {
-            coll.remove(pk);
-        }
+        documentCache.remove(dbName, collName, pk);
+    }
+
+    // Evicts cached documents, coldest first, until bytes were freed; returns the bytes freed.
+    public long evictDocuments(long bytes) {
+        return documentCache.evict(bytes);
     }
 
     public void evictDatabase(String dbName) {
-        // Keys are "db|coll"; append the separator so "foo" does not match "foobar|...".
-        final var toRemove = collectionMap.keySet().stream()
-                .filter(s -> s.startsWith(dbName + Globals.COLL_IDENTIFIER_SEPARATOR)).toList();
+        // Keys are "db|coll"; append the separator so "foo" does not match "foobar|...". A collection may have
+        // cached indexes and no cached documents left, so every map contributes its keys.
+        final var toRemove = Stream.of(documentCache.collectionIdentifiers(), pkIndexMap.keySet(),
+                        fieldIndexMap.keySet(), numericIndexMap.keySet(), rowIdMap.keySet())
+                .flatMap(Set::stream).filter(s -> s.startsWith(dbName + Globals.COLL_IDENTIFIER_SEPARATOR))
+                .collect(Collectors.toSet());
         for (var entryKeyToRemove : toRemove) {
             pkIndexMap.remove(entryKeyToRemove);
-            collectionMap.remove(entryKeyToRemove);
+            documentCache.removeCollection(dbName, entryKeyToRemove.substring(dbName.length() + 1));
             fieldIndexMap.remove(entryKeyToRemove);
+            numericIndexMap.remove(entryKeyToRemove);
+            rowIdMap.remove(entryKeyToRemove);
         }
     }
 
     public void evictCollection(String dbName, String collName) {
         final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         pkIndexMap.remove(collIdentifier);
-        collectionMap.remove(collIdentifier);
+        documentCache.removeCollection(dbName, collName);
         fieldIndexMap.remove(collIdentifier);
+        numericIndexMap.remove(collIdentifier);
+        rowIdMap.remove(collIdentifier);
     }
 
     public void evictCollectionDocuments(String dbName, String collName) {
         if (Globals.ADMIN_DB_NAME.equals(dbName)) {
             return;
         }
-        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
-        collectionMap.remove(collIdentifier);
+        documentCache.removeCollection(dbName, collName);
     }
 
     public void evictPkIndex(String dbName, String collName) {
@@ -511,6 +793,8 @@ public class UserCache {
         }
         final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         pkIndexMap.remove(collIdentifier);
+        // The row id dictionary is accounted with the PK index (see listIndexResources).
+        dropRowIds(collIdentifier);
     }
 
     public void evictFieldIndex(String dbName, String collName, String indexKey) {
@@ -525,6 +809,13 @@ public class UserCache {
                 fieldIndexMap.remove(collIdentifier);
             }
         }
+        final var numericIndexes = numericIndexMap.get(collIdentifier);
+        if (numericIndexes != null) {
+            numericIndexes.remove(indexKey);
+            if (numericIndexes.isEmpty()) {
+                numericIndexMap.remove(collIdentifier);
+            }
+        }
     }
 
     // Evicts every per-type list cached for a field (field|Number, field|String, field|Object, ...).
@@ -536,31 +827,147 @@ public class UserCache {
             return;
         }
         final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var prefix = fieldName + Globals.COLL_IDENTIFIER_SEPARATOR;
         final var indexes = fieldIndexMap.get(collIdentifier);
         if (indexes != null) {
-            final var prefix = fieldName + Globals.COLL_IDENTIFIER_SEPARATOR;
             indexes.keySet().removeIf(key -> key.equals(fieldName) || key.startsWith(prefix));
             if (indexes.isEmpty()) {
                 fieldIndexMap.remove(collIdentifier);
             }
         }
+        final var numericIndexes = numericIndexMap.get(collIdentifier);
+        if (numericIndexes != null) {
+            numericIndexes.keySet().removeIf(key -> key.startsWith(prefix));
+            if (numericIndexes.isEmpty()) {
+                numericIndexMap.remove(collIdentifier);
+            }
+        }
+    }
+
+    // Incremental counterpart of evictFieldIndexAllTypes: the background index writer applies the same
+    // id move it wrote to the .idx file to the cached list of that index type (field|Type), so the
+    // cache stays warm across writes. A no-op when the list is not cached. Callers must hold the
+    // field's index write lock, which keeps readers out while the list is changed in place; the
+    // eviction sweep only reads the size estimate the list keeps (see CachedFieldIndex).
+    public void addIdToCachedFieldIndex(String dbName, String collName, String indexIdentifier, Object value,
+            String id) {
+        if (value instanceof Number number) {
+            updateCachedNumericIndex(dbName, collName, indexIdentifier, index -> index.add(number.doubleValue(), id));
+            return;
+        }
+        final var entries = getCachedFieldIndex(dbName, collName, indexIdentifier);
+        if (entries == null) {
+            return;
+        }
+        final var position = searchCachedEntry(entries, value);
+        if (position >= 0) {
+            entries.addId(position, id);
+        } else {
+            entries.insert(-position - 1, new FieldIndexEntry<>(dbName, collName, value, new HashSet<>(Set.of(id))));
+        }
+    }
+
+    // Removes the id from the cached entry holding value and drops the entry once it is empty, the
+    // same way the .idx line is dropped. Same contract as addIdToCachedFieldIndex.
+    public void removeIdFromCachedFieldIndex(String dbName, String collName, String indexIdentifier, Object value,
+            String id) {
+        if (value instanceof Number number) {
+            updateCachedNumericIndex(dbName, collName, indexIdentifier,
+                    index -> index.remove(number.doubleValue(), id));
+            return;
+        }
+        final var entries = getCachedFieldIndex(dbName, collName, indexIdentifier);
+        if (entries == null) {
+            return;
+        }
+        final var position = searchCachedEntry(entries, value);
+        if (position >= 0) {
+            entries.removeId(position, id);
+        }
+    }
+
+    private void updateCachedNumericIndex(String dbName, String collName, String indexIdentifier,
+            Consumer<NumericFieldIndex> update) {
+        if (Globals.ADMIN_DB_NAME.equals(dbName)) {
+            return;
+        }
+        final var indexes = numericIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        final var index = indexes == null ? null : indexes.get(indexIdentifier);
+        if (index != null) {
+            update.accept(index);
+        }
+    }
+
+    private CachedFieldIndex getCachedFieldIndex(String dbName, String collName, String indexIdentifier) {
+        if (Globals.ADMIN_DB_NAME.equals(dbName)) {
+            return null;
+        }
+        final var indexes = fieldIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
+        final var entries = indexes == null ? null : indexes.get(indexIdentifier);
+        return entries instanceof CachedFieldIndex cached ? cached : null;
+    }
+
+    // Binary search over a cached list (sorted by FieldIndexEntry#compareTo, as the file readers sort
+    // it). Strings sort case-insensitively, so a hit only lands somewhere in the run of entries equal
+    // ignoring case; the exact value is looked up within that run. Returns -(insertion point) - 1 when
+    // absent, like Collections#binarySearch.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int searchCachedEntry(List<FieldIndexEntry<?>> entries, Object value) {
+        final var found = Collections.binarySearch((List) entries, value);
+        if (found < 0 || !(value instanceof String)) {
+            return found;
+        }
+        var first = found;
+        while (first > 0 && ((FieldIndexEntry) entries.get(first - 1)).compareTo(value) == 0) {
+            first--;
+        }
+        for (var i = first; i < entries.size() && ((FieldIndexEntry) entries.get(i)).compareTo(value) == 0; i++) {
+            if (Objects.equals(entries.get(i).getValue(), value)) {
+                return i;
+            }
+        }
+        return -first - 1;
     }
 
     public List<CacheableResource> listCacheableResources() {
         final var result = new ArrayList<CacheableResource>();
-        for (var entry : pkIndexMap.entrySet()) {
-            final var parts = entry.getKey().split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
-            if (parts.length < 2 || Globals.ADMIN_DB_NAME.equals(parts[0]))
+        for (var collectionIdentifier : documentCache.collectionIdentifiers()) {
+            final var parts = collectionIdentifier.split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
+            final var bytes = documentCache.bytesOf(collectionIdentifier);
+            if (parts.length < 2 || Globals.ADMIN_DB_NAME.equals(parts[0]) || bytes == 0L)
                 continue;
-            result.add(new CacheableResource(AccessKind.PK_INDEX, parts[0], parts[1], null,
-                    estimatePkIndexSize(entry.getValue())));
+            result.add(new CacheableResource(AccessKind.COLLECTION, parts[0], parts[1], null, bytes));
         }
-        for (var entry : collectionMap.entrySet()) {
-            final var parts = entry.getKey().split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
+        result.addAll(listIndexResources());
+        return result;
+    }
+
+    // The part of maxMemory the cached indexes and the rows kept for snapshot reads leave to documents.
+    private long documentBudgetBytes() {
+        if (configuration.isCacheUnlimited()) {
+            return Long.MAX_VALUE;
+        }
+        var indexBytes = 0L;
+        for (var resource : listIndexResources()) {
+            indexBytes += resource.estimatedSizeBytes();
+        }
+        return Math.max(0L, configuration.getMaxMemoryBytes() - indexBytes - snapshots.retainedBytes());
+    }
+
+    private List<CacheableResource> listIndexResources() {
+        final var result = new ArrayList<CacheableResource>();
+        // A collection's row id dictionary is numbered from its ids like the PK index, so both are one resource.
+        final var pkCollections = new HashSet<>(pkIndexMap.keySet());
+        pkCollections.addAll(rowIdMap.keySet());
+        for (var collectionIdentifier : pkCollections) {
+            final var parts = collectionIdentifier.split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
             if (parts.length < 2 || Globals.ADMIN_DB_NAME.equals(parts[0]))
                 continue;
-            result.add(new CacheableResource(AccessKind.COLLECTION, parts[0], parts[1], null,
-                    estimateCollectionSize(entry.getValue())));
+            final var primaryKeyIndex = pkIndexMap.get(collectionIdentifier);
+            final var rowIds = rowIdMap.get(collectionIdentifier);
+            final var bytes = (primaryKeyIndex == null ? 0L : estimatePkIndexSize(primaryKeyIndex.size()))
+                    + (rowIds == null ? 0L : rowIds.estimatedBytes());
+            result.add(new CacheableResource(AccessKind.PK_INDEX, parts[0], parts[1], null, bytes));
         }
         for (var entry : fieldIndexMap.entrySet()) {
             final var parts = entry.getKey().split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
@@ -571,44 +978,41 @@ public class UserCache {
                         estimateFieldIndexSize(inner.getValue())));
             }
         }
+        for (var entry : numericIndexMap.entrySet()) {
+            final var parts = entry.getKey().split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
+            if (parts.length < 2 || Globals.ADMIN_DB_NAME.equals(parts[0]))
+                continue;
+            for (var inner : entry.getValue().entrySet()) {
+                result.add(new CacheableResource(AccessKind.FIELD_INDEX, parts[0], parts[1], inner.getKey(),
+                        estimateNumericIndexSize(inner.getValue())));
+            }
+        }
         return result;
     }
 
-    private long estimatePkIndexSize(List<PkIndexEntry> entries) {
-        if (entries == null)
-            return 0L;
-        return (long) entries.size() * ESTIMATED_PK_ENTRY_BYTES;
+    private long estimatePkIndexSize(int entries) {
+        return (long) entries * ESTIMATED_PK_ENTRY_BYTES;
     }
 
-    private long estimateCollectionSize(Map<String, DbEntry> entries) {
+    private long estimateFieldIndexSize(List<FieldIndexEntry<?>> entries) {
         if (entries == null)
             return 0L;
-        long total = 0L;
-        for (var e : entries.values()) {
-            total += e.byteSize();
-        }
-        return total;
+        return entries instanceof CachedFieldIndex cached ? cached.estimatedBytes() : CachedFieldIndex.estimate(entries);
     }
 
-    private long estimateFieldIndexSize(List<FieldIndexEntry<?>> entries) {
-        if (entries == null)
-            return 0L;
-        long total = 0L;
-        for (var e : entries) {
-            final var value = e.getValue();
-            final var valueLen = value == null ? 0 : value.toString().length() * 2L;
-            final var ids = e.getIds();
-            final var idsLen = ids == null ? 0L : ids.size() * ESTIMATED_FIELD_ENTRY_OVERHEAD_BYTES;
-            total += valueLen + idsLen + ESTIMATED_FIELD_ENTRY_OVERHEAD_BYTES;
-        }
-        return total;
+    private long estimateNumericIndexSize(NumericFieldIndex index) {
+        final var idBytes = index.hasIdSlots()
+                ? ESTIMATED_NUMERIC_ID_BYTES + ESTIMATED_NUMERIC_ID_SLOT_BYTES : ESTIMATED_NUMERIC_ID_BYTES;
+        return index.size() * ESTIMATED_NUMERIC_KEY_BYTES + index.idCount() * idBytes + index.rowsEstimatedBytes();
     }
 
     public boolean hasLoadedIndex(String dbName, String collName, String fieldName) {
-        final var fieldIndexes = fieldIndexMap.get(Cache.getCollectionIdentifier(dbName, collName));
-        if (fieldIndexes != null) {
-            return fieldIndexes.containsKey(fieldName);
+        final var collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var fieldIndexes = fieldIndexMap.get(collectionIdentifier);
+        if (fieldIndexes != null && fieldIndexes.containsKey(fieldName)) {
+            return true;
         }
-        return false;
+        final var numericIndexes = numericIndexMap.get(collectionIdentifier);
+        return numericIndexes != null && numericIndexes.containsKey(fieldName);
     }
 }
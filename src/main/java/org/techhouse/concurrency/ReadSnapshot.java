@@ -0,0 +1,80 @@
+package org.techhouse.concurrency;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.techhouse.cache.Cache;
+
+/**
+ * The versions an AGGREGATE (or the cursor it opened) reads its collections at, pinned until closed. Registered
+ * for the thread running the pipeline; the cache reads consult {@link #current()} and correct what they read with
+ * the collection's {@link SnapshotDelta}, so reads without a snapshot are untouched.
+ */
+public final class ReadSnapshot implements AutoCloseable {
+    private static final ThreadLocal<ReadSnapshot> CURRENT = new ThreadLocal<>();
+
+    private final SnapshotManager manager;
+    private final Map<String, Long> versions;
+    // The last delta of each collection, reused by the next read while no write has recorded a change since.
+    private final Map<String, SnapshotDelta> deltas = new ConcurrentHashMap<>();
+    private boolean closed;
+
+    ReadSnapshot(SnapshotManager manager, Map<String, Long> versions) {
+        this.manager = manager;
+        this.versions = versions;
+    }
+
+    public static ReadSnapshot current() {
+        return CURRENT.get();
+    }
+
+    // The current snapshot when it covers the collection, otherwise null.
+    public static ReadSnapshot currentFor(String dbName, String collName) {
+        final var snapshot = CURRENT.get();
+        return snapshot != null && snapshot.covers(dbName, collName) ? snapshot : null;
+    }
+
+    public static void set(ReadSnapshot snapshot) {
+        CURRENT.set(snapshot);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public boolean covers(String dbName, String collName) {
+        return versions.containsKey(Cache.getCollectionIdentifier(dbName, collName));
+    }
+
+    /**
+     * What was written to the collection since the snapshot, as far as it is known now: to be taken after the read
+     * it corrects.
+     */
+    public SnapshotDelta delta(String dbName, String collName) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        final var delta = manager.since(collectionId, versions.get(collectionId), deltas.get(collectionId));
+        deltas.put(collectionId, delta);
+        return delta;
+    }
+
+    // Whether the collection is still at the snapshot's version, with no write in progress.
+    public boolean unchanged(String dbName, String collName) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        return manager.unchangedSince(collectionId, versions.get(collectionId));
+    }
+
+    /**
+     * Runs {@code action} if the collection is unchanged, before any writer can start on it. Returns whether it ran.
+     */
+    public boolean runIfUnchanged(String dbName, String collName, Runnable action) {
+        final var collectionId = Cache.getCollectionIdentifier(dbName, collName);
+        return manager.runIfUnchangedSince(collectionId, versions.get(collectionId), action);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            manager.release(versions);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.techhouse.concurrency;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
+import org.techhouse.ioc.IocContainer;
 
 /**
  * Per-resource read/write locking. Each collection (keyed {@code db|coll}) and each field index
@@ -14,10 +19,32 @@ import org.techhouse.config.Globals;
  *
  * <p>Lock-ordering rule: the collection/index locks managed here are always acquired <em>above</em>
  * the per-file locks held inside {@code FileSystem}, never the other way around, so the two tiers
- * cannot deadlock.
+ * cannot deadlock. Document locks sit between the two: taken after the collection lock.
+ *
+ * <p>Writes of single documents don't need the whole collection: they hold its read lock in
+ * {@link #lockSharedWrite shared write} mode, which only keeps the exclusive writers out, plus the lock of the
+ * document (see {@link #lockDocument}), so writers of different documents proceed in parallel, each serialized
+ * with the others on the same page by that page's file lock. A reader sharing the read lock that needs a document
+ * not to change under it (background index maintenance) takes the document's lock as well. Anything that must see
+ * no write in progress (index builds, bulk saves, compaction, drops) takes the collection write lock, which waits
+ * for them all.
+ *
+ * <p>Every collection write-lock or shared-write section is a write to the collection's version history (see
+ * {@link SnapshotManager}): the outermost hold begins it and its release commits it.
  */
 public class ResourceLocking {
+    // Documents hash onto a fixed set of stripes: two writers of the same document always meet on one.
+    private static final int DOCUMENT_STRIPES = 256;
     private static final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+    private static final ReentrantLock[] documentLocks = new ReentrantLock[DOCUMENT_STRIPES];
+
+    static {
+        for (var i = 0; i < DOCUMENT_STRIPES; i++) {
+            documentLocks[i] = new ReentrantLock();
+        }
+    }
+
+    private final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
 
     private ReentrantReadWriteLock lockFor(String lockName) {
         return locks.computeIfAbsent(lockName, _ -> new ReentrantReadWriteLock());
@@ -48,7 +75,32 @@ public class ResourceLocking {
 
     // ---------- collection write locking (exclusive) ----------
     public void lock(String dbName, String collName) throws InterruptedException {
-        lockWrite(Cache.getCollectionIdentifier(dbName, collName));
+        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var lock = lockFor(collIdentifier);
+        lock.writeLock().lockInterruptibly();
+        if (lock.getWriteHoldCount() == 1) {
+            snapshots.beginWrite(collIdentifier);
+        }
+    }
+
+    // The write lock without any snapshot reading the collection: for maintenance that moves rows around. New
+    // snapshots are kept out and the pinned ones drained before the write lock is taken, so writers only wait for
+    // the maintenance itself, not for the slowest cursor reading the collection.
+    public void lockExclusive(String dbName, String collName) throws InterruptedException {
+        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        snapshots.awaitExclusive(collIdentifier);
+        try {
+            lock(dbName, collName);
+        } catch (InterruptedException e) {
+            snapshots.releaseExclusive(collIdentifier);
+            throw e;
+        }
+    }
+
+    // For a caller already holding the write lock: whether no snapshot reads the collection, keeping new ones
+    // out until the lock is released if so.
+    public boolean tryExclusive(String dbName, String collName) {
+        return snapshots.tryExclusive(Cache.getCollectionIdentifier(dbName, collName));
     }
 
     public void release(String dbName, String collName) {
@@ -56,13 +108,84 @@ public class ResourceLocking {
     }
 
     public void releaseWrite(String dbName, String collName) {
-        releaseWrite(Cache.getCollectionIdentifier(dbName, collName));
+        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var lock = locks.get(collIdentifier);
+        if (lock != null && lock.isWriteLockedByCurrentThread()) {
+            if (lock.getWriteHoldCount() == 1) {
+                snapshots.endWrite(collIdentifier);
+            }
+            lock.writeLock().unlock();
+        }
     }
 
     public boolean tryLockWrite(String dbName, String collName) {
         return lockFor(Cache.getCollectionIdentifier(dbName, collName)).writeLock().tryLock();
     }
 
+    // ---------- shared collection write locking (concurrent writers of single documents) ----------
+    // The collection read lock taken by a writer: other writers and the readers that only need the collection
+    // not to be rebuilt under them share it, the exclusive writers wait for it. Pair with #lockDocument.
+    public void lockSharedWrite(String dbName, String collName) throws InterruptedException {
+        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        lockFor(collIdentifier).readLock().lockInterruptibly();
+        snapshots.beginWrite(collIdentifier);
+    }
+
+    public void releaseSharedWrite(String dbName, String collName) {
+        final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
+        final var lock = locks.get(collIdentifier);
+        if (lock != null && lock.getReadHoldCount() > 0) {
+            snapshots.endWrite(collIdentifier);
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------- document locking ----------
+    private static int stripeOf(String dbName, String collName, String id) {
+        return Math.floorMod(Objects.hash(dbName, collName, id), DOCUMENT_STRIPES);
+    }
+
+    public void lockDocument(String dbName, String collName, String id) throws InterruptedException {
+        documentLocks[stripeOf(dbName, collName, id)].lockInterruptibly();
+    }
+
+    public void releaseDocument(String dbName, String collName, String id) {
+        final var lock = documentLocks[stripeOf(dbName, collName, id)];
+        if (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    // Locks every document of ids, in stripe order so two overlapping sets can never deadlock. Returns the stripes
+    // held, for #releaseDocuments.
+    public Collection<Integer> lockDocuments(String dbName, String collName, Collection<String> ids)
+            throws InterruptedException {
+        final var stripes = new TreeSet<Integer>();
+        for (var id : ids) {
+            stripes.add(stripeOf(dbName, collName, id));
+        }
+        final var held = new TreeSet<Integer>();
+        try {
+            for (var stripe : stripes) {
+                documentLocks[stripe].lockInterruptibly();
+                held.add(stripe);
+            }
+        } catch (InterruptedException e) {
+            releaseDocuments(held);
+            throw e;
+        }
+        return held;
+    }
+
+    public void releaseDocuments(Collection<Integer> stripes) {
+        for (var stripe : stripes) {
+            final var lock = documentLocks[stripe];
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
     // ---------- collection read locking (shared) ----------
     public void lockRead(String dbName, String collName) throws InterruptedException {
         lockReadByName(Cache.getCollectionIdentifier(dbName, collName));
@@ -96,5 +219,6 @@ public class ResourceLocking {
     public void removeLock(String dbName, String collName) {
         final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         locks.remove(collIdentifier);
+        snapshots.forget(collIdentifier);
     }
 }
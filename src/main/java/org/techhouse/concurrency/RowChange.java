@@ -0,0 +1,11 @@
+package org.techhouse.concurrency;
+
+/**
+ * A page row a write created or retired (blanked, being superseded or deleted), tagged with the version of the
+ * collection the write publishes. A retired row keeps its bytes, {@code null} for a created row.
+ */
+public record RowChange(long version, String id, long page, long position, byte[] row) {
+    public boolean created() {
+        return row == null;
+    }
+}
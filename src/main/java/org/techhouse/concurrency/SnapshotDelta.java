@@ -0,0 +1,83 @@
+package org.techhouse.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the writes after a snapshot changed in one collection: the rows they created, which the snapshot must not
+ * see, and the rows they retired that were there at the snapshot, which it still sees. Taken after the read it
+ * corrects: a write that lands later only changes rows the read already saw as they were at the snapshot.
+ */
+public final class SnapshotDelta {
+    private record Location(long page, long position) {
+    }
+
+    // The collection's count of recorded changes when this was taken (see VersionHistory#since).
+    private final long recordedAt;
+    private final Set<String> ids = new HashSet<>();
+    private final Set<Location> created = new HashSet<>();
+    // The row of each id at the snapshot; an id written since but missing here did not exist then.
+    private final Map<String, RowChange> snapshotRows = new HashMap<>();
+
+    SnapshotDelta(long recordedAt, List<RowChange> changes) {
+        this.recordedAt = recordedAt;
+        for (var change : changes) {
+            ids.add(change.id());
+            if (change.created()) {
+                created.add(new Location(change.page(), change.position()));
+            }
+        }
+        for (var change : changes) {
+            if (!change.created() && !created.contains(new Location(change.page(), change.position()))) {
+                snapshotRows.putIfAbsent(change.id(), change);
+            }
+        }
+    }
+
+    long recordedAt() {
+        return recordedAt;
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    // The ids written since the snapshot.
+    public Set<String> ids() {
+        return ids;
+    }
+
+    public boolean touches(String id) {
+        return ids.contains(id);
+    }
+
+    // The ids written since the snapshot that existed at it.
+    public Set<String> existingIds() {
+        return snapshotRows.keySet();
+    }
+
+    // The id's row at the snapshot, or null when it did not exist then. Only meaningful for an id it touches.
+    public byte[] rowAt(String id) {
+        final var change = snapshotRows.get(id);
+        return change == null ? null : change.row();
+    }
+
+    public boolean createdAt(long page, long position) {
+        return created.contains(new Location(page, position));
+    }
+
+    // The rows of the page at the snapshot that were blanked since.
+    public List<RowChange> retiredOn(long page) {
+        final var retired = new ArrayList<RowChange>();
+        for (var change : snapshotRows.values()) {
+            if (change.page() == page) {
+                retired.add(change);
+            }
+        }
+        return retired;
+    }
+}
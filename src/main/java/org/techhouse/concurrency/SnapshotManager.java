@@ -0,0 +1,147 @@
+package org.techhouse.concurrency;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.techhouse.cache.Cache;
+import org.techhouse.config.Configuration;
+
+/**
+ * Multiversion reads: an AGGREGATE pins the version each collection it reads was at instead of taking the
+ * collection read lock, so writers never wait for it and it never waits for them. The files always hold the
+ * latest version; every row a write creates or blanks is recorded (see {@link RowChange}) under the version of its
+ * write section (see {@link VersionHistory}), and a {@link ReadSnapshot} undoes the changes newer than its version
+ * on what it reads. Changes are dropped once no pinned snapshot is older than them.
+ *
+ * <p>Maintenance that moves rows (page compaction, storage migration) needs the collection without snapshots: it
+ * takes it exclusively, which keeps new snapshots waiting until it is done. A migration waits for the pinned ones
+ * before it takes the write lock, so writers are not held up by a slow cursor; a compaction, which already holds
+ * the write lock, gives up and is retried later instead.
+ *
+ * <p>The rows kept for snapshots count against maxMemory (see MemoryManagement) and are limited by
+ * maxSnapshotMemory: a change that takes them past it expires the oldest snapshots of the collection keeping the
+ * most, whose next read then fails, until they fit again.
+ */
+public class SnapshotManager {
+    private final Map<String, VersionHistory> histories = new ConcurrentHashMap<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private VersionHistory historyOf(String collectionId) {
+        return histories.computeIfAbsent(collectionId, _ -> new VersionHistory(retainedBytes));
+    }
+
+    // Bytes of the rows kept for snapshot reads, in all collections.
+    public long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Pins the committed version of every collection, acquired in sorted order like the collection locks.
+     */
+    public ReadSnapshot pin(Collection<String> collectionIds) throws InterruptedException {
+        final var versions = new LinkedHashMap<String, Long>();
+        try {
+            for (var collectionId : collectionIds.stream().distinct().sorted().toList()) {
+                versions.put(collectionId, historyOf(collectionId).pin());
+            }
+        } catch (InterruptedException e) {
+            release(versions);
+            throw e;
+        }
+        return new ReadSnapshot(this, versions);
+    }
+
+    void release(Map<String, Long> versions) {
+        versions.forEach((collectionId, version) -> historyOf(collectionId).unpin(version));
+    }
+
+    SnapshotDelta since(String collectionId, long version, SnapshotDelta previous) {
+        return historyOf(collectionId).since(version, previous);
+    }
+
+    boolean unchangedSince(String collectionId, long version) {
+        return historyOf(collectionId).unchangedSince(version);
+    }
+
+    boolean runIfUnchangedSince(String collectionId, long version, Runnable action) {
+        return historyOf(collectionId).runIfUnchangedSince(version, action);
+    }
+
+    // ---------- writers (see ResourceLocking) ----------
+    void beginWrite(String collectionId) {
+        historyOf(collectionId).beginWrite();
+    }
+
+    void endWrite(String collectionId) {
+        final var history = histories.get(collectionId);
+        if (history != null) {
+            history.endWrite();
+            // The write's version is committed now, so the snapshots pinned before it can be expired.
+            enforceLimit();
+        }
+    }
+
+    void awaitExclusive(String collectionId) throws InterruptedException {
+        historyOf(collectionId).awaitExclusive();
+    }
+
+    void releaseExclusive(String collectionId) {
+        final var history = histories.get(collectionId);
+        if (history != null) {
+            history.releaseExclusive();
+        }
+    }
+
+    boolean tryExclusive(String collectionId) {
+        return historyOf(collectionId).tryExclusive();
+    }
+
+    // A dropped collection: a snapshot still pinned on it sees nothing written since.
+    void forget(String collectionId) {
+        final var history = histories.remove(collectionId);
+        if (history != null) {
+            history.discard();
+        }
+    }
+
+    // ---------- row changes (see FileSystem) ----------
+    // Whether the calling thread is in a write section of the collection: only its changes are recorded.
+    public boolean isWriting(String dbName, String collName) {
+        final var history = histories.get(Cache.getCollectionIdentifier(dbName, collName));
+        return history != null && history.isWriting();
+    }
+
+    public void created(String dbName, String collName, String id, long page, long position) {
+        final var history = histories.get(Cache.getCollectionIdentifier(dbName, collName));
+        if (history != null) {
+            history.record(id, page, position, null);
+            enforceLimit();
+        }
+    }
+
+    public void retired(String dbName, String collName, String id, long page, long position, byte[] row) {
+        final var history = histories.get(Cache.getCollectionIdentifier(dbName, collName));
+        if (history != null) {
+            history.record(id, page, position, row);
+            enforceLimit();
+        }
+    }
+
+    // Called outside every history's monitor: a history is only locked one at a time.
+    private void enforceLimit() {
+        final var limit = Configuration.getInstance().getMaxSnapshotMemoryBytes();
+        while (retainedBytes.get() > limit) {
+            final var byRetained = histories.values().stream()
+                    .map(history -> Map.entry(history, history.retainedBytes()))
+                    .sorted(Map.Entry.<VersionHistory, Long>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            // What is left belongs to snapshots at the committed version or to writes still running.
+            if (byRetained.stream().noneMatch(VersionHistory::expireOldest)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.techhouse.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.techhouse.ex.SnapshotExpiredException;
+
+/**
+ * The versions of one collection: the last one committed, the ones snapshots are pinned at and the row changes the
+ * oldest of them still needs. Every write section of the collection (see {@link ResourceLocking}) takes the next
+ * version when it begins, and its changes are tagged with it. Writers of different documents overlap, so they
+ * finish out of order: the committed version is the newest one whose writers, and all older ones, are done.
+ * <p>
+ * The bytes the changes keep are counted here and in the total of all collections; once that total is over its
+ * limit, {@link #expireOldest()} gives up the oldest snapshots instead of keeping their changes.
+ */
+final class VersionHistory {
+    // What a change costs besides its row: the record, its id and its slot in the list.
+    static final long CHANGE_OVERHEAD_BYTES = 96L;
+
+    // The last version handed to a writer.
+    private long latest;
+    private long committed;
+    private Thread exclusiveOwner;
+    // The version of each writing thread and how many nested sections it has open.
+    private final Map<Thread, Writer> writers = new HashMap<>();
+    private final TreeSet<Long> writing = new TreeSet<>();
+    // Pinned version -> snapshots pinned at it.
+    private final TreeMap<Long, Integer> pins = new TreeMap<>();
+    // Version -> the changes of its write section, in the order they were made. Writers that overlap record out of
+    // version order, so they are kept by version: the oldest ones are always first.
+    private final TreeMap<Long, List<RowChange>> changes = new TreeMap<>();
+    // Changes recorded so far: a delta taken at this count is still complete (see #since).
+    private long recorded;
+    // Bytes the changes keep, and the same for every collection (see SnapshotManager#retainedBytes).
+    private long retainedBytes;
+    private final AtomicLong totalRetainedBytes;
+    // Snapshots pinned at this version or an older one were expired; -1 while none was.
+    private long expiredThrough = -1;
+
+    VersionHistory(AtomicLong totalRetainedBytes) {
+        this.totalRetainedBytes = totalRetainedBytes;
+    }
+
+    private static final class Writer {
+        private final long version;
+        private int depth = 1;
+
+        private Writer(long version) {
+            this.version = version;
+        }
+    }
+
+    synchronized long pin() throws InterruptedException {
+        while (exclusiveOwner != null) {
+            wait();
+        }
+        pins.merge(committed, 1, Integer::sum);
+        return committed;
+    }
+
+    synchronized void unpin(long version) {
+        pins.computeIfPresent(version, (_, count) -> count == 1 ? null : count - 1);
+        trim();
+        notifyAll();
+    }
+
+    synchronized void beginWrite() {
+        final var writer = writers.get(Thread.currentThread());
+        if (writer != null) {
+            writer.depth++;
+            return;
+        }
+        latest++;
+        writers.put(Thread.currentThread(), new Writer(latest));
+        writing.add(latest);
+    }
+
+    synchronized void endWrite() {
+        final var thread = Thread.currentThread();
+        final var writer = writers.get(thread);
+        if (writer == null || --writer.depth > 0) {
+            return;
+        }
+        writers.remove(thread);
+        writing.remove(writer.version);
+        if (exclusiveOwner == thread) {
+            exclusiveOwner = null;
+        }
+        committed = writing.isEmpty() ? latest : writing.first() - 1;
+        trim();
+        notifyAll();
+    }
+
+    // Whether the calling thread is in a write section.
+    synchronized boolean isWriting() {
+        return writers.containsKey(Thread.currentThread());
+    }
+
+    // Keeps new snapshots out and waits for the pinned ones to be released, before the caller's write begins;
+    // undone when that write ends, or by #releaseExclusive. One exclusive claim at a time.
+    synchronized void awaitExclusive() throws InterruptedException {
+        final var thread = Thread.currentThread();
+        while (exclusiveOwner != null && exclusiveOwner != thread) {
+            wait();
+        }
+        exclusiveOwner = thread;
+        try {
+            while (!pins.isEmpty()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            releaseExclusive();
+            throw e;
+        }
+    }
+
+    synchronized void releaseExclusive() {
+        if (exclusiveOwner == Thread.currentThread()) {
+            exclusiveOwner = null;
+            notifyAll();
+        }
+    }
+
+    // For a writer already in its write section. A claim another thread made keeps new snapshots out just as well,
+    // so it is left to that thread.
+    synchronized boolean tryExclusive() {
+        if (!pins.isEmpty()) {
+            return false;
+        }
+        if (exclusiveOwner == null) {
+            exclusiveOwner = Thread.currentThread();
+        }
+        return true;
+    }
+
+    // Only a write section records changes: any other write (recovery, an unlocked admin write) has no snapshot
+    // readers to keep anything for.
+    synchronized void record(String id, long page, long position, byte[] row) {
+        final var writer = writers.get(Thread.currentThread());
+        if (writer != null) {
+            final var change = new RowChange(writer.version, id, page, position, row);
+            changes.computeIfAbsent(writer.version, _ -> new ArrayList<>()).add(change);
+            recorded++;
+            retain(sizeOf(change));
+        }
+    }
+
+    // The changes newer than the version; the previous delta of that version while nothing was recorded since.
+    synchronized SnapshotDelta since(long version, SnapshotDelta previous) {
+        if (version <= expiredThrough) {
+            throw new SnapshotExpiredException("The snapshot was expired: the rows written since it took more than "
+                    + "maxSnapshotMemory");
+        }
+        if (previous != null && previous.recordedAt() == recorded) {
+            return previous;
+        }
+        final var newer = new ArrayList<RowChange>();
+        for (var ofVersion : changes.tailMap(version, false).values()) {
+            newer.addAll(ofVersion);
+        }
+        return new SnapshotDelta(recorded, newer);
+    }
+
+    synchronized boolean unchangedSince(long version) {
+        return writers.isEmpty() && committed == version;
+    }
+
+    synchronized boolean runIfUnchangedSince(long version, Runnable action) {
+        if (!unchangedSince(version)) {
+            return false;
+        }
+        action.run();
+        return true;
+    }
+
+    synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    // Expires the snapshots pinned at the oldest version and drops the changes only they needed: reading them fails
+    // from then on. Snapshots at the committed version keep nothing a new one would not, so they are never expired.
+    // Returns whether any was.
+    synchronized boolean expireOldest() {
+        if (pins.isEmpty() || pins.firstKey() >= committed) {
+            return false;
+        }
+        expiredThrough = pins.pollFirstEntry().getKey();
+        trim();
+        notifyAll();
+        return true;
+    }
+
+    // The collection was dropped: its changes are no longer kept.
+    synchronized void discard() {
+        changes.clear();
+        retain(-retainedBytes);
+    }
+
+    private void retain(long bytes) {
+        retainedBytes += bytes;
+        totalRetainedBytes.addAndGet(bytes);
+    }
+
+    private static long sizeOf(RowChange change) {
+        return CHANGE_OVERHEAD_BYTES + 2L * change.id().length() + (change.row() == null ? 0 : change.row().length);
+    }
+
+    // A snapshot pinned from now on is at the committed version, so only the changes newer than the oldest pin, or
+    // than the committed version, can still be needed.
+    private void trim() {
+        final var oldest = pins.isEmpty() ? committed : pins.firstKey();
+        while (!changes.isEmpty() && changes.firstKey() <= oldest) {
+            for (var change : changes.pollFirstEntry().getValue()) {
+                retain(-sizeOf(change));
+            }
+        }
+    }
+}
@@ -19,7 +19,9 @@ public final class ConfigReader {
     private static final Set<String> configKeys = Set.of("port", "maxConnections", "filePath",
             "backgroundProcessingThreads", "logPath", "maxLogFiles", "maxPageSize", "maxEntrySize",
             "defaultAdminUsername", "defaultAdminPassword", "maxMemory", "tlsEnabled", "tlsKeystorePath",
-            "tlsKeystorePassword");
+            "tlsKeystorePassword", "walEnabled", "walGroupCommitMillis", "walCheckpointIntervalSeconds",
+            "pageCompactionDeadPercent", "mmapReadsEnabled", "mmapMaxMappedPages", "cursorIdleTimeoutSeconds",
+            "maxCursorsPerClient", "scanThreads", "maxInFlightRequests", "maxSnapshotMemory");
     private static final String COMMENT_PREFIX = "#";
     private static final String DEFAULT_CONFIG_PATH = "/default.cfg";
     private static final Logger logger = Logger.logFor(ConfigReader.class);
@@ -21,6 +21,17 @@ public final class Configuration {
     private boolean tlsEnabled;
     private String tlsKeystorePath;
     private String tlsKeystorePassword;
+    private boolean walEnabled;
+    private int walGroupCommitMillis;
+    private int walCheckpointIntervalSeconds;
+    private int pageCompactionDeadPercent;
+    private boolean mmapReadsEnabled;
+    private int mmapMaxMappedPages;
+    private int cursorIdleTimeoutSeconds;
+    private int maxCursorsPerClient;
+    private int scanThreads;
+    private int maxInFlightRequests;
+    private long maxSnapshotMemoryBytes;
 
     private Configuration() {
     }
@@ -49,6 +60,18 @@ public final class Configuration {
                 case "tlsEnabled" -> tlsEnabled = Boolean.parseBoolean(config.getValue());
                 case "tlsKeystorePath" -> tlsKeystorePath = config.getValue();
                 case "tlsKeystorePassword" -> tlsKeystorePassword = config.getValue();
+                case "walEnabled" -> walEnabled = Boolean.parseBoolean(config.getValue());
+                case "walGroupCommitMillis" -> walGroupCommitMillis = Integer.parseInt(config.getValue());
+                case "walCheckpointIntervalSeconds" ->
+                    walCheckpointIntervalSeconds = Integer.parseInt(config.getValue());
+                case "pageCompactionDeadPercent" -> pageCompactionDeadPercent = Integer.parseInt(config.getValue());
+                case "mmapReadsEnabled" -> mmapReadsEnabled = Boolean.parseBoolean(config.getValue());
+                case "mmapMaxMappedPages" -> mmapMaxMappedPages = Integer.parseInt(config.getValue());
+                case "cursorIdleTimeoutSeconds" -> cursorIdleTimeoutSeconds = Integer.parseInt(config.getValue());
+                case "maxCursorsPerClient" -> maxCursorsPerClient = Integer.parseInt(config.getValue());
+                case "scanThreads" -> scanThreads = Integer.parseInt(config.getValue());
+                case "maxInFlightRequests" -> maxInFlightRequests = Integer.parseInt(config.getValue());
+                case "maxSnapshotMemory" -> maxSnapshotMemoryBytes = SizeParser.parse(config.getValue());
                 default -> {
                 }
             }
@@ -125,4 +148,51 @@ public final class Configuration {
     public String getTlsKeystorePassword() {
         return tlsKeystorePassword;
     }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    public int getWalGroupCommitMillis() {
+        return walGroupCommitMillis;
+    }
+
+    public int getWalCheckpointIntervalSeconds() {
+        return walCheckpointIntervalSeconds;
+    }
+
+    public int getPageCompactionDeadPercent() {
+        return pageCompactionDeadPercent;
+    }
+
+    public boolean isMmapReadsEnabled() {
+        return mmapReadsEnabled;
+    }
+
+    public int getMmapMaxMappedPages() {
+        return mmapMaxMappedPages;
+    }
+
+    public int getCursorIdleTimeoutSeconds() {
+        return cursorIdleTimeoutSeconds;
+    }
+
+    public int getMaxCursorsPerClient() {
+        return maxCursorsPerClient;
+    }
+
+    // Threads reading the pages of a full-collection scan: one per available processor when set to 0.
+    public int getScanThreads() {
+        return scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Requests with a requestId one connection may have processing at once.
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    // Bytes of retired rows snapshot reads may keep before the oldest snapshots are expired.
+    public long getMaxSnapshotMemoryBytes() {
+        return maxSnapshotMemoryBytes;
+    }
 }
@@ -31,6 +31,13 @@ public final class ConfigurationValidator {
         validateAdminPassword(configs, errors);
         validateMaxMemory(configs, errors);
         validateTls(configs, errors);
+        validateWal(configs, errors);
+        validatePageCompaction(configs, errors);
+        validateMmapReads(configs, errors);
+        validateCursors(configs, errors);
+        validateInt(configs, "scanThreads", 0, errors);
+        validateInt(configs, "maxInFlightRequests", 1, errors);
+        validatePositiveSize(configs, "maxSnapshotMemory", errors);
         return errors;
     }
 
@@ -69,6 +76,35 @@ public final class ConfigurationValidator {
         }
     }
 
+    private static void validateWal(Map<String, String> configs, List<String> errors) {
+        final var enabledValue = configs.get("walEnabled");
+        if (enabledValue == null || !isBoolean(enabledValue)) {
+            errors.add("walEnabled must be true or false, but was: " + enabledValue);
+        }
+        validateInt(configs, "walGroupCommitMillis", 0, errors);
+        validateInt(configs, "walCheckpointIntervalSeconds", 1, errors);
+    }
+
+    private static void validatePageCompaction(Map<String, String> configs, List<String> errors) {
+        final var value = configs.get("pageCompactionDeadPercent");
+        if (notAnInt(value, percent -> percent >= 1 && percent <= 100)) {
+            errors.add("pageCompactionDeadPercent must be a valid number between 1 and 100, but was: " + value);
+        }
+    }
+
+    private static void validateMmapReads(Map<String, String> configs, List<String> errors) {
+        final var enabledValue = configs.get("mmapReadsEnabled");
+        if (enabledValue == null || !isBoolean(enabledValue)) {
+            errors.add("mmapReadsEnabled must be true or false, but was: " + enabledValue);
+        }
+        validateInt(configs, "mmapMaxMappedPages", 1, errors);
+    }
+
+    private static void validateCursors(Map<String, String> configs, List<String> errors) {
+        validateInt(configs, "cursorIdleTimeoutSeconds", 1, errors);
+        validateInt(configs, "maxCursorsPerClient", 1, errors);
+    }
+
     private static boolean isBoolean(String value) {
         final var trimmed = value.trim();
         return trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("false");
@@ -16,6 +16,12 @@ public final class Globals {
     public static final int BUFFER_SIZE = 32768;
     public static final String DB_FILE_EXTENSION = ".dat";
     public static final String INDEX_FILE_EXTENSION = ".idx";
+    public static final String WAL_FILE_EXTENSION = ".wal";
+    public static final String STORAGE_FORMAT_FILE_EXTENSION = ".format";
+    public static final String FIELD_DICTIONARY_FILE_EXTENSION = ".fields";
+    public static final String SORT_RUN_FILE_EXTENSION = ".run";
+    public static final String JOIN_PARTITION_FILE_EXTENSION = ".part";
+    public static final String SPILL_FOLDER_NAME = ".spill";
     public static final String RW_PERMISSIONS = "rwd";
     public static final String R_PERMISSIONS = "r";
     public static final char COLL_IDENTIFIER_SEPARATOR = '|';
@@ -0,0 +1,92 @@
+package org.techhouse.conn;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.techhouse.concurrency.ReadSnapshot;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ops.req.AggregateRequest;
+
+/**
+ * The unread rest of a batched AGGREGATE. It keeps the lazy result stream, not the results: each batch pulls only as
+ * far as it needs, so pages not reached yet are not read (steps that need the whole input, like SORT, buffer it on
+ * the first pull). Every batch reads the collections as of the AGGREGATE's {@link ReadSnapshot}, which the cursor
+ * keeps pinned until it is closed, so writes that land between two batches are never seen by the later ones. A dirty
+ * read has no snapshot: later batches may or may not see such writes.
+ */
+public class AggregateCursor {
+    private final UUID id = UUID.randomUUID();
+    private final AggregateRequest request;
+    private final Stream<JsonObject> results;
+    private final Iterator<JsonObject> iterator;
+    private final ReadSnapshot snapshot;
+    private final int batchSize;
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+    private boolean closed;
+
+    public AggregateCursor(AggregateRequest request, Stream<JsonObject> results) {
+        this(request, results, null);
+    }
+
+    public AggregateCursor(AggregateRequest request, Stream<JsonObject> results, ReadSnapshot snapshot) {
+        this.request = request;
+        this.results = results;
+        this.iterator = results.iterator();
+        this.batchSize = request.getBatchSize();
+        this.snapshot = snapshot;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    // The request that opened the cursor: its collections and dirtyRead flag apply to every batch.
+    public AggregateRequest getRequest() {
+        return request;
+    }
+
+    // The snapshot every batch reads at, null for a dirty read.
+    public ReadSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    public void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+
+    public synchronized List<JsonObject> nextBatch(int size) {
+        final var batch = new ArrayList<JsonObject>(Math.min(size, 1024));
+        while (!closed && batch.size() < size && iterator.hasNext()) {
+            batch.add(iterator.next());
+        }
+        touch();
+        return batch;
+    }
+
+    public synchronized boolean hasMore() {
+        return !closed && iterator.hasNext();
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                results.close();
+            } finally {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            }
+        }
+    }
+}
@@ -3,16 +3,25 @@ package org.techhouse.conn;
 import java.io.BufferedWriter;
 import java.net.Socket;
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import org.techhouse.config.Configuration;
 import org.techhouse.data.Client;
+import org.techhouse.log.Logger;
 
 public class ClientTracker {
+    private static final Logger logger = Logger.logFor(ClientTracker.class);
     private final Map<UUID, Client> clients = new ConcurrentHashMap<>();
+    // Open AGGREGATE cursors by client: a cursor is only visible to the connection that opened it.
+    private final Map<UUID, Map<UUID, AggregateCursor>> cursors = new ConcurrentHashMap<>();
     private final Configuration configuration = Configuration.getInstance();
+    private ScheduledExecutorService cursorSweeper;
 
     public UUID addClient(Socket socket) {
         final var maxConnections = configuration.getMaxConnections();
@@ -26,6 +35,10 @@ public class ClientTracker {
 
     public void removeById(UUID clientId) {
         clients.remove(clientId);
+        final var clientCursors = cursors.remove(clientId);
+        if (clientCursors != null) {
+            clientCursors.values().forEach(AggregateCursor::close);
+        }
     }
 
     public void updateLastCommandTime(UUID clientId) {
@@ -75,4 +88,93 @@ public class ClientTracker {
         final var client = clients.get(clientId);
         return client != null ? client.getWriterLock() : null;
     }
+
+    // Returns false (and closes the cursor) when the client is gone. A client already at maxCursorsPerClient has
+    // its least recently read cursor closed to make room: each one holds a pinned snapshot and its result stream.
+    public boolean registerCursor(UUID clientId, AggregateCursor cursor) {
+        if (clientId == null || !clients.containsKey(clientId)) {
+            cursor.close();
+            return false;
+        }
+        final var clientCursors = cursors.computeIfAbsent(clientId, _ -> new ConcurrentHashMap<>());
+        synchronized (clientCursors) {
+            while (clientCursors.size() >= configuration.getMaxCursorsPerClient()) {
+                final var oldest = clientCursors.values().stream()
+                        .min(Comparator.comparingLong(AggregateCursor::getLastAccessMillis)).orElseThrow();
+                if (clientCursors.remove(oldest.getId(), oldest)) {
+                    oldest.close();
+                }
+            }
+            clientCursors.put(cursor.getId(), cursor);
+        }
+        return true;
+    }
+
+    public AggregateCursor getCursor(UUID clientId, UUID cursorId) {
+        if (clientId == null)
+            return null;
+        final var clientCursors = cursors.get(clientId);
+        final var cursor = clientCursors != null ? clientCursors.get(cursorId) : null;
+        if (cursor != null) {
+            cursor.touch();
+        }
+        return cursor;
+    }
+
+    public boolean closeCursor(UUID clientId, UUID cursorId) {
+        if (clientId == null)
+            return false;
+        final var clientCursors = cursors.get(clientId);
+        final var cursor = clientCursors != null ? clientCursors.remove(cursorId) : null;
+        if (cursor == null) {
+            return false;
+        }
+        cursor.close();
+        return true;
+    }
+
+    /**
+     * Closes the cursors not read for longer than {@code idleMillis}, returning how many were closed.
+     */
+    public int closeIdleCursors(long idleMillis) {
+        final var cutoff = System.currentTimeMillis() - idleMillis;
+        var closed = 0;
+        for (var clientCursors : cursors.values()) {
+            for (var cursor : clientCursors.values()) {
+                if (cursor.getLastAccessMillis() < cutoff && clientCursors.remove(cursor.getId(), cursor)) {
+                    cursor.close();
+                    closed++;
+                }
+            }
+        }
+        return closed;
+    }
+
+    public void startCursorSweepThread() {
+        final var idleMillis = TimeUnit.SECONDS.toMillis(configuration.getCursorIdleTimeoutSeconds());
+        // Sweeping a few times per timeout keeps a cursor from outliving it by much.
+        final var intervalMillis = Math.max(1000L, idleMillis / 4);
+        cursorSweeper = Executors.newScheduledThreadPool(1, r -> {
+            final var t = new Thread(r, "cursor-idle-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        cursorSweeper.scheduleAtFixedRate(() -> {
+            try {
+                final var closed = closeIdleCursors(idleMillis);
+                if (closed > 0) {
+                    logger.info("Closed " + closed + " idle cursor(s)");
+                }
+            } catch (Exception e) {
+                logger.error("Cursor sweep failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopCursorSweepThread() {
+        if (cursorSweeper != null) {
+            cursorSweeper.shutdownNow();
+            cursorSweeper = null;
+        }
+    }
 }
@@ -7,8 +7,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.net.ssl.SSLException;
 import org.techhouse.cache.Cache;
+import org.techhouse.config.Configuration;
 import org.techhouse.ejson.EJson;
 import org.techhouse.ex.InvalidCommandException;
 import org.techhouse.ioc.IocContainer;
@@ -19,11 +23,22 @@ import org.techhouse.ops.OperationProcessor;
 import org.techhouse.ops.OperationType;
 import org.techhouse.ops.auth.AuthorizationChecker;
 import org.techhouse.ops.req.AggregateRequest;
+import org.techhouse.ops.req.OperationRequest;
 import org.techhouse.ops.req.RequestParser;
 import org.techhouse.ops.req.validations.RequestValidator;
 import org.techhouse.ops.resp.AggregateAnalyzeResponse;
 import org.techhouse.ops.resp.OperationResponse;
 
+/**
+ * Reads the requests of one connection, a line each, and writes their responses.
+ * <p>
+ * A request with a {@code requestId} is pipelined: it is processed on its own virtual thread while the next ones
+ * are read, up to {@code maxInFlightRequests} at once (reading waits for one to finish beyond that), and its
+ * response carries the id and is written when it is ready, in any order. A request without one, an
+ * {@code AUTHENTICATE} and a {@code CLOSE_CONNECTION} first wait for the pipelined requests to finish and are
+ * answered before anything after them is read, so a client that does not send ids sees the responses in order.
+ * Responses are flushed once no other one is waiting to be written, so a burst of them shares one flush.
+ */
 public class MessageProcessor implements Runnable {
     private final EJson eJson = IocContainer.get(EJson.class);
     private final OperationProcessor operationProcessor = IocContainer.get(OperationProcessor.class);
@@ -33,6 +48,11 @@ public class MessageProcessor implements Runnable {
     private final Logger logger = Logger.logFor(MessageProcessor.class);
     private final Socket socket;
     private final UUID clientId;
+    private final int maxInFlight = Configuration.getInstance().getMaxInFlightRequests();
+    // One permit per pipelined request that may still be processing.
+    private final Semaphore inFlight = new Semaphore(maxInFlight);
+    // Responses ready and not yet written: whichever is written last flushes them all.
+    private final AtomicInteger unwritten = new AtomicInteger();
 
     public MessageProcessor(Socket socket) {
         this.socket = socket;
@@ -47,101 +67,21 @@ public class MessageProcessor implements Runnable {
             if (clientId != null) {
                 clientTracker.registerWriter(clientId, writer);
                 final var writerLock = clientTracker.getWriterLock(clientId);
-                var close = false;
-                while (!close) {
-                    final var message = reader.readLine();
-                    if (message == null) {
-                        listenManager.unregisterAllForClient(clientId);
-                        clientTracker.removeById(clientId);
-                        break;
-                    }
-                    if (!message.isBlank()) {
-                        String response;
-                        try {
-                            final var parsedMessage = RequestParser.parseRequest(message);
-                            final var validationResult = RequestValidator.validate(parsedMessage);
-                            if (!validationResult.isValid()) {
-                                response = eJson.toJson(new OperationResponse(parsedMessage.getType(),
-                                        validationResult.getErrorMessage(), ErrorCode.VALIDATION_ERROR));
-                            } else {
-                                final var type = parsedMessage.getType();
-                                final var isPublicOperation = type == OperationType.AUTHENTICATE
-                                        || type == OperationType.LIST_DATABASES
-                                        || type == OperationType.CLOSE_CONNECTION;
-
-                                if (isPublicOperation) {
-                                    final var responseObj = operationProcessor.processMessage(parsedMessage, clientId);
-                                    if (responseObj.getType() == OperationType.CLOSE_CONNECTION) {
-                                        close = true;
-                                        listenManager.unregisterAllForClient(clientId);
-                                        clientTracker.removeById(clientId);
-                                    }
-                                    response = eJson.toJson(responseObj);
-                                } else {
-                                    final var username = clientTracker.getAuthenticatedUsername(clientId);
-                                    if (username == null) {
-                                        response = eJson
-                                                .toJson(new OperationResponse(type, ErrorCode.MUST_AUTHENTICATE_FIRST));
-                                    } else {
-                                        final var user = cache.getAdminUserEntry(username);
-                                        if (user == null) {
-                                            response = eJson.toJson(
-                                                    new OperationResponse(type, ErrorCode.USER_NO_LONGER_EXISTS));
-                                        } else {
-                                            final var authResult = AuthorizationChecker.check(parsedMessage, user);
-                                            if (!authResult.isAllowed()) {
-                                                response = eJson
-                                                        .toJson(new OperationResponse(type, ErrorCode.NO_PERMISSIONS));
-                                            } else {
-                                                // The query timer brackets only processing: it starts after
-                                                // parsing/validation/authorization and stops right after the
-                                                // operation returns. Only AGGREGATE with analyze=true is timed.
-                                                final var analyze = parsedMessage instanceof AggregateRequest aggReq
-                                                        && aggReq.isAnalyze();
-                                                final var analyzeStart = analyze ? System.currentTimeMillis() : 0L;
-                                                final var responseObj = operationProcessor.processMessage(parsedMessage,
-                                                        clientId);
-                                                if (analyze
-                                                        && responseObj instanceof AggregateAnalyzeResponse analyzeResp
-                                                        && analyzeResp.getAnalyzeResult() != null) {
-                                                    final var analyzeEnd = System.currentTimeMillis();
-                                                    final var analyzeResult = analyzeResp.getAnalyzeResult();
-                                                    analyzeResult.setStartTime(analyzeStart);
-                                                    analyzeResult.setEndTime(analyzeEnd);
-                                                    analyzeResult.setDurationMillis(analyzeEnd - analyzeStart);
-                                                }
-                                                if (responseObj.getType() == OperationType.CLOSE_CONNECTION) {
-                                                    close = true;
-                                                    listenManager.unregisterAllForClient(clientId);
-                                                    clientTracker.removeById(clientId);
-                                                }
-                                                response = eJson.toJson(responseObj);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (InvalidCommandException exception) {
-                            response = exception.getMessage();
-                        }
-                        clientTracker.updateLastCommandTime(clientId);
-                        writerLock.lock();
-                        try {
-                            writer.write(response);
-                            writer.newLine();
-                            writer.flush();
-                        } finally {
-                            writerLock.unlock();
-                        }
-                    }
+                try {
+                    readRequests(reader, writer, writerLock);
+                } finally {
+                    // The pipelined requests still processing write their responses before the socket is closed.
+                    inFlight.acquireUninterruptibly(maxInFlight);
+                    listenManager.unregisterAllForClient(clientId);
+                    clientTracker.removeById(clientId);
                 }
             } else {
-                final var localWriterLock = new java.util.concurrent.locks.ReentrantLock();
+                final var localWriterLock = new ReentrantLock();
                 final var responseObj = new OperationResponse(OperationType.CLOSE_CONNECTION,
                         ErrorCode.MAX_CONNECTIONS_REACHED);
                 localWriterLock.lock();
                 try {
-                    writer.write(eJson.toJson(responseObj));
+                    eJson.toJson(responseObj, writer);
                     writer.newLine();
                     writer.flush();
                 } finally {
@@ -160,6 +100,166 @@ public class MessageProcessor implements Runnable {
                 clientTracker.removeById(clientId);
             }
             logger.error("General error in MessageProcessor", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readRequests(BufferedReader reader, BufferedWriter writer, ReentrantLock writerLock)
+            throws IOException, InterruptedException {
+        while (true) {
+            final var message = reader.readLine();
+            if (message == null) {
+                return;
+            }
+            if (message.isBlank()) {
+                continue;
+            }
+            final OperationRequest parsedMessage;
+            try {
+                parsedMessage = RequestParser.parseRequest(message);
+            } catch (InvalidCommandException exception) {
+                clientTracker.updateLastCommandTime(clientId);
+                respond(exception.getMessage(), writer, writerLock);
+                continue;
+            }
+            if (isPipelined(parsedMessage)) {
+                inFlight.acquire();
+                Thread.startVirtualThread(() -> processPipelined(parsedMessage, writer, writerLock));
+                continue;
+            }
+            awaitInFlight();
+            final var response = process(parsedMessage);
+            respond(response, writer, writerLock);
+            if (response.getType() == OperationType.CLOSE_CONNECTION) {
+                return;
+            }
+        }
+    }
+
+    // Authentication changes what the requests after it may do and closing ends them, so both wait their turn.
+    private static boolean isPipelined(OperationRequest request) {
+        final var type = request.getType();
+        return request.getRequestId() != null && type != OperationType.AUTHENTICATE
+                && type != OperationType.CLOSE_CONNECTION;
+    }
+
+    private void processPipelined(OperationRequest request, BufferedWriter writer, ReentrantLock writerLock) {
+        try {
+            respond(process(request), writer, writerLock);
+        } catch (IOException e) {
+            // The connection is gone; the reading thread cleans it up.
+            logger.warning("Could not write the response to request " + request.getRequestId());
+        } catch (RuntimeException e) {
+            // As when a request fails on the reading thread: the connection is dropped.
+            logger.error("Error processing request " + request.getRequestId(), e);
+            closeQuietly();
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    private OperationResponse process(OperationRequest parsedMessage) {
+        final OperationResponse response;
+        final var validationResult = RequestValidator.validate(parsedMessage);
+        if (!validationResult.isValid()) {
+            response = new OperationResponse(parsedMessage.getType(), validationResult.getErrorMessage(),
+                    ErrorCode.VALIDATION_ERROR);
+        } else {
+            response = processValid(parsedMessage);
+        }
+        clientTracker.updateLastCommandTime(clientId);
+        response.setRequestId(parsedMessage.getRequestId());
+        return response;
+    }
+
+    private OperationResponse processValid(OperationRequest parsedMessage) {
+        final var type = parsedMessage.getType();
+        final var isPublicOperation = type == OperationType.AUTHENTICATE || type == OperationType.LIST_DATABASES
+                || type == OperationType.CLOSE_CONNECTION;
+        if (isPublicOperation) {
+            return operationProcessor.processMessage(parsedMessage, clientId);
+        }
+        final var username = clientTracker.getAuthenticatedUsername(clientId);
+        if (username == null) {
+            return new OperationResponse(type, ErrorCode.MUST_AUTHENTICATE_FIRST);
+        }
+        final var user = cache.getAdminUserEntry(username);
+        if (user == null) {
+            return new OperationResponse(type, ErrorCode.USER_NO_LONGER_EXISTS);
+        }
+        final var authResult = AuthorizationChecker.check(parsedMessage, user);
+        if (!authResult.isAllowed()) {
+            return new OperationResponse(type, ErrorCode.NO_PERMISSIONS);
+        }
+        // The query timer brackets only processing: it starts after parsing/validation/authorization and stops
+        // right after the operation returns. Only AGGREGATE with analyze=true is timed.
+        final var analyze = parsedMessage instanceof AggregateRequest aggReq && aggReq.isAnalyze();
+        final var analyzeStart = analyze ? System.currentTimeMillis() : 0L;
+        final var responseObj = operationProcessor.processMessage(parsedMessage, clientId);
+        if (analyze && responseObj instanceof AggregateAnalyzeResponse analyzeResp
+                && analyzeResp.getAnalyzeResult() != null) {
+            final var analyzeEnd = System.currentTimeMillis();
+            final var analyzeResult = analyzeResp.getAnalyzeResult();
+            analyzeResult.setStartTime(analyzeStart);
+            analyzeResult.setEndTime(analyzeEnd);
+            analyzeResult.setDurationMillis(analyzeEnd - analyzeStart);
+        }
+        return responseObj;
+    }
+
+    private void respond(OperationResponse response, BufferedWriter writer, ReentrantLock writerLock)
+            throws IOException {
+        // The response is serialized straight into the socket's buffer, so a large result set is never held as a
+        // single string.
+        writeLine(() -> eJson.toJson(response, writer), writer, writerLock);
+    }
+
+    private void respond(String invalidCommandMessage, BufferedWriter writer, ReentrantLock writerLock)
+            throws IOException {
+        writeLine(() -> writer.write(invalidCommandMessage), writer, writerLock);
+    }
+
+    @FunctionalInterface
+    private interface LineWriter {
+        void write() throws IOException;
+    }
+
+    private void writeLine(LineWriter line, BufferedWriter writer, ReentrantLock writerLock) throws IOException {
+        unwritten.incrementAndGet();
+        writerLock.lock();
+        try {
+            final int waiting;
+            try {
+                line.write();
+                writer.newLine();
+            } catch (IOException | RuntimeException e) {
+                // Part of the line may already be in the buffer or on the wire: the connection is closed before
+                // another response can be written after it.
+                closeQuietly();
+                throw e;
+            } finally {
+                waiting = unwritten.decrementAndGet();
+            }
+            // A response waiting for the lock is flushed together with this one when it is written.
+            if (waiting == 0) {
+                writer.flush();
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // already closed
         }
     }
 }
@@ -22,19 +22,31 @@ public class FieldIndexEntry<T> implements Comparable<T> {
     }
 
     public String toFileEntry() {
-        String strValue;
+        return toIndexValue(value) + Globals.ID_SEPARATOR + String.join(Globals.ID_SEPARATOR, ids);
+    }
+
+    // The string form an index value is stored and looked up by in the .idx files. Whole numbers are
+    // written as integers: they load back as Double, and "5" and "5.0" must stay the same value.
+    public static String toIndexValue(Object value) {
         if (value instanceof JsonCustom<?> jc) {
-            strValue = jc.getValue();
-        } else {
-            strValue = value.toString();
+            return jc.getValue();
+        } else if (value instanceof Number number && number.doubleValue() % 1 == 0) {
+            return String.valueOf(number.longValue());
         }
-        return strValue + Globals.ID_SEPARATOR + String.join(Globals.ID_SEPARATOR, ids);
+        return value.toString();
     }
 
     public static <T> FieldIndexEntry<T> fromIndexFileEntry(String databaseName, String collectionName, String line,
             Class<T> tClass) {
         final var separatorIdx = line.indexOf(Globals.ID_SEPARATOR);
         final var strValue = line.substring(0, separatorIdx);
+        final var idsStr = line.substring(separatorIdx + Globals.ID_SEPARATOR.length());
+        return fromIndexValue(databaseName, collectionName, strValue,
+                Arrays.stream(idsStr.split(Globals.ID_SEPARATOR)).collect(Collectors.toSet()), tClass);
+    }
+
+    public static <T> FieldIndexEntry<T> fromIndexValue(String databaseName, String collectionName, String strValue,
+            Set<String> ids, Class<T> tClass) {
         Object value;
         if (Number.class.isAssignableFrom(tClass)) {
             value = Double.parseDouble(strValue);
@@ -45,9 +57,7 @@ public class FieldIndexEntry<T> implements Comparable<T> {
         } else {
             value = CustomTypeFactory.getCustomTypeInstance(strValue);
         }
-        final var idsStr = line.substring(separatorIdx + Globals.ID_SEPARATOR.length());
-        return new FieldIndexEntry<>(databaseName, collectionName, tClass.cast(value),
-                Arrays.stream(idsStr.split(Globals.ID_SEPARATOR)).collect(Collectors.toSet()));
+        return new FieldIndexEntry<>(databaseName, collectionName, tClass.cast(value), ids);
     }
 
     public String getDatabaseName() {
@@ -0,0 +1,30 @@
+package org.techhouse.data;
+
+import org.techhouse.ejson.elements.JsonObject;
+
+/**
+ * Cardinality of an indexed field, taken when its index is built: how many distinct values it holds and how
+ * many documents have the field at all. The query planner estimates from them how many documents a filter on
+ * the field matches. They are not maintained on writes, so they drift until the index is rebuilt.
+ */
+public record FieldStatistics(long distinctValues, long indexedDocuments) {
+    private static final String DISTINCT_VALUES_FIELD_NAME = "distinctValues";
+    private static final String INDEXED_DOCUMENTS_FIELD_NAME = "indexedDocuments";
+
+    // Average number of documents holding one value.
+    public double documentsPerValue() {
+        return distinctValues == 0 ? 0 : (double) indexedDocuments / distinctValues;
+    }
+
+    public JsonObject toJson() {
+        final var json = new JsonObject();
+        json.addProperty(DISTINCT_VALUES_FIELD_NAME, distinctValues);
+        json.addProperty(INDEXED_DOCUMENTS_FIELD_NAME, indexedDocuments);
+        return json;
+    }
+
+    public static FieldStatistics fromJson(JsonObject json) {
+        return new FieldStatistics(json.get(DISTINCT_VALUES_FIELD_NAME).asJsonNumber().getValue().longValue(),
+                json.get(INDEXED_DOCUMENTS_FIELD_NAME).asJsonNumber().getValue().longValue());
+    }
+}
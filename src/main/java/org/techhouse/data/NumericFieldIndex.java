@@ -0,0 +1,298 @@
+package org.techhouse.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory form of a field's Number index. The distinct values are kept as a sorted {@code double[]} and each one
+ * owns an array of its ids, without a {@link FieldIndexEntry} (boxed value and id set) per value. A comparison is a
+ * binary search over the keys plus the ids of the values in range.
+ * <p>
+ * Instances are changed in place by {@link #add} and {@link #remove}, so like the other cached indexes they are
+ * only read under the field's index read lock and changed under its write lock. A new value shifts the keys after
+ * it; an id is found, added and removed without touching the ids of other values. The value and position of every
+ * id are only mapped once the index is first changed or asked for an id, so an index that is only read does not
+ * pay for them. Likewise the ids of every value are kept as row bitmaps once a query asked the cached index for
+ * rows (see {@link RowIdPostings}).
+ */
+public final class NumericFieldIndex {
+    private static final String[] NO_IDS = new String[0];
+
+    private double[] keys;
+    // ids[k][0 .. counts[k] - 1] are the ids of keys[k].
+    private String[][] ids;
+    private int[] counts;
+    private int size;
+    private int idCount;
+    private Map<String, Slot> slots;
+    private volatile RowIdPostings postings;
+
+    // Where an id is: the value it is under and its position in that value's ids.
+    private record Slot(double key, int position) {
+    }
+
+    private NumericFieldIndex(double[] keys, String[][] ids, int[] counts, int idCount) {
+        this.keys = keys;
+        this.ids = ids;
+        this.counts = counts;
+        this.size = keys.length;
+        this.idCount = idCount;
+    }
+
+    // Entries need not be sorted nor distinct: values equal as doubles ("5" and "5.0") are merged, and values
+    // without ids are left out.
+    public static NumericFieldIndex fromEntries(List<? extends FieldIndexEntry<?>> entries) {
+        final var byKey = new TreeMap<Double, Set<String>>();
+        for (var entry : entries) {
+            if (entry.getIds().isEmpty()) {
+                continue;
+            }
+            final var key = ((Number) entry.getValue()).doubleValue();
+            byKey.computeIfAbsent(key, _ -> new HashSet<>()).addAll(entry.getIds());
+        }
+        final var keys = new double[byKey.size()];
+        final var ids = new String[byKey.size()][];
+        final var counts = new int[byKey.size()];
+        var idCount = 0;
+        var i = 0;
+        for (var entry : byKey.entrySet()) {
+            keys[i] = entry.getKey();
+            ids[i] = entry.getValue().toArray(String[]::new);
+            counts[i] = ids[i].length;
+            idCount += counts[i];
+            i++;
+        }
+        return new NumericFieldIndex(keys, ids, counts, idCount);
+    }
+
+    // Number of distinct values.
+    public int size() {
+        return size;
+    }
+
+    public int idCount() {
+        return idCount;
+    }
+
+    // Whether the value and position of every id are mapped (see the class comment).
+    public boolean hasIdSlots() {
+        return slots != null;
+    }
+
+    public double keyAt(int keyIndex) {
+        return keys[keyIndex];
+    }
+
+    // Position of the first value >= value (size() when there is none).
+    public int firstAtLeast(double value) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (keys[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Position of the first value > value (size() when there is none).
+    public int firstAbove(double value) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (keys[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Position of value, or -1 when it is not indexed.
+    public int indexOfKey(double value) {
+        final var position = firstAtLeast(value);
+        return position < size && keys[position] == value ? position : -1;
+    }
+
+    // Position of the value holding id, or -1. Used by the index writer to find a document's previous value.
+    public int indexOfId(String id) {
+        final var slot = slots().get(id);
+        return slot == null ? -1 : indexOfKey(slot.key());
+    }
+
+    // Ids of the values in [fromKey, toKey).
+    public Set<String> idsBetween(int fromKey, int toKey) {
+        final var result = new HashSet<String>();
+        for (var k = fromKey; k < toKey; k++) {
+            result.addAll(Arrays.asList(ids[k]).subList(0, counts[k]));
+        }
+        return result;
+    }
+
+    // Ids of the values at the given positions.
+    public Set<String> idsAt(BitSet keyPositions) {
+        final var result = new HashSet<String>();
+        for (var k = keyPositions.nextSetBit(0); k >= 0; k = keyPositions.nextSetBit(k + 1)) {
+            result.addAll(Arrays.asList(ids[k]).subList(0, counts[k]));
+        }
+        return result;
+    }
+
+    // Rows of the values at the given positions. Same contract as CachedFieldIndex#rowsAt: callers hold the index
+    // read lock and the postings are built once per dictionary.
+    public RowIdBitmap rowsAt(BitSet keyPositions, RowIdDictionary dictionary) {
+        var rows = postings;
+        if (rows == null || rows.dictionary() != dictionary) {
+            synchronized (this) {
+                rows = postings;
+                if (rows == null || rows.dictionary() != dictionary) {
+                    rows = RowIdPostings.build(dictionary, size, k -> Arrays.asList(ids[k]).subList(0, counts[k]));
+                    postings = rows;
+                }
+            }
+        }
+        return rows.rowsAt(keyPositions);
+    }
+
+    // Bytes of the row bitmaps, 0 until a query built them.
+    public long rowsEstimatedBytes() {
+        final var rows = postings;
+        return rows == null ? 0L : rows.estimatedBytes();
+    }
+
+    public void dropRows() {
+        postings = null;
+    }
+
+    // Ids of every value outside [fromKey, toKey).
+    public Set<String> idsOutside(int fromKey, int toKey) {
+        final var result = idsBetween(0, fromKey);
+        result.addAll(idsBetween(Math.max(fromKey, toKey), size));
+        return result;
+    }
+
+    // A detached entry (own id set) for the value at keyIndex, stored as Double like the index files load it.
+    public FieldIndexEntry<Number> entryAt(String dbName, String collName, int keyIndex) {
+        return new FieldIndexEntry<>(dbName, collName, keys[keyIndex], idsBetween(keyIndex, keyIndex + 1));
+    }
+
+    public List<FieldIndexEntry<Number>> toEntries(String dbName, String collName) {
+        final var result = new ArrayList<FieldIndexEntry<Number>>(size);
+        for (var i = 0; i < size; i++) {
+            result.add(entryAt(dbName, collName, i));
+        }
+        return result;
+    }
+
+    // Adds id under value, creating the value when it is new, and moves it there when it was under another value
+    // (a document holds one value of the field). Returns false when id is already under value.
+    public boolean add(double value, String id) {
+        final var slotsById = slots();
+        final var existing = slotsById.get(id);
+        if (existing != null && existing.key() == value) {
+            return false;
+        } else if (existing != null) {
+            remove(existing.key(), id);
+        }
+        final var position = firstAtLeast(value);
+        final var rows = postings;
+        if (position == size || keys[position] != value) {
+            insertKey(position, value);
+            if (rows != null) {
+                rows.insertValue(position);
+            }
+        }
+        if (counts[position] == ids[position].length) {
+            ids[position] = Arrays.copyOf(ids[position], Math.max(2, counts[position] * 2));
+        }
+        ids[position][counts[position]] = id;
+        slotsById.put(id, new Slot(value, counts[position]));
+        counts[position]++;
+        idCount++;
+        if (rows != null) {
+            rows.add(position, id);
+        }
+        return true;
+    }
+
+    // Drops id from value, and value once it holds no ids. Returns false when id is not under value.
+    public boolean remove(double value, String id) {
+        final var slotsById = slots();
+        final var slot = slotsById.get(id);
+        if (slot == null || slot.key() != value) {
+            return false;
+        }
+        final var position = indexOfKey(value);
+        final var keyIds = ids[position];
+        final var last = counts[position] - 1;
+        // The last id of the value takes the place of the removed one.
+        if (slot.position() != last) {
+            keyIds[slot.position()] = keyIds[last];
+            slotsById.put(keyIds[last], new Slot(value, slot.position()));
+        }
+        keyIds[last] = null;
+        slotsById.remove(id);
+        counts[position] = last;
+        idCount--;
+        final var rows = postings;
+        if (rows != null) {
+            rows.remove(position, id);
+        }
+        if (last == 0) {
+            removeKey(position);
+            if (rows != null) {
+                rows.removeValue(position);
+            }
+        }
+        return true;
+    }
+
+    private Map<String, Slot> slots() {
+        if (slots == null) {
+            final var built = HashMap.<String, Slot>newHashMap(idCount);
+            for (var k = 0; k < size; k++) {
+                for (var i = 0; i < counts[k]; i++) {
+                    built.put(ids[k][i], new Slot(keys[k], i));
+                }
+            }
+            slots = built;
+        }
+        return slots;
+    }
+
+    private void insertKey(int position, double value) {
+        if (size == keys.length) {
+            final var capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        System.arraycopy(counts, position, counts, position + 1, size - position);
+        keys[position] = value;
+        ids[position] = NO_IDS;
+        counts[position] = 0;
+        size++;
+    }
+
+    private void removeKey(int position) {
+        System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+        size--;
+        ids[size] = null;
+    }
+}
@@ -0,0 +1,85 @@
+package org.techhouse.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory form of a collection's PK index: the entries sorted by id in a {@link ConcurrentSkipListMap}, so
+ * writers of different documents change it at the same time, each in O(log n), and readers never wait for them.
+ * Every entry is also in the bucket of its page, so work on one page (compaction) only walks that page's entries.
+ */
+public final class PkIndex {
+    private final ConcurrentSkipListMap<String, PkIndexEntry> entries = new ConcurrentSkipListMap<>();
+    // Page -> its entries by id; a page's bucket is dropped with its last entry.
+    private final ConcurrentHashMap<Long, ConcurrentSkipListMap<String, PkIndexEntry>> pages =
+            new ConcurrentHashMap<>();
+    // ConcurrentSkipListMap#size walks the map.
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PkIndex(Collection<PkIndexEntry> loaded) {
+        for (var entry : loaded) {
+            put(entry);
+        }
+    }
+
+    public PkIndexEntry get(String id) {
+        return entries.get(id);
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    // Adds the entry, or replaces the one of the same id (an update moved it). Changes of one id are made one at a
+    // time by its writers (see ResourceLocking#lockDocument), so its page bucket follows its entry.
+    public void put(PkIndexEntry entry) {
+        final var previous = entries.put(entry.getValue(), entry);
+        if (previous == null) {
+            size.incrementAndGet();
+        } else {
+            removeFromPage(previous);
+        }
+        pages.compute(entry.getPage(), (_, bucket) -> {
+            final var onPage = bucket != null ? bucket : new ConcurrentSkipListMap<String, PkIndexEntry>();
+            onPage.put(entry.getValue(), entry);
+            return onPage;
+        });
+    }
+
+    public void remove(String id) {
+        final var removed = entries.remove(id);
+        if (removed != null) {
+            size.decrementAndGet();
+            removeFromPage(removed);
+        }
+    }
+
+    private void removeFromPage(PkIndexEntry entry) {
+        pages.computeIfPresent(entry.getPage(), (_, bucket) -> {
+            bucket.remove(entry.getValue(), entry);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // Live, sorted by id; changes made while it is walked may or may not be seen.
+    public Collection<PkIndexEntry> values() {
+        return entries.values();
+    }
+
+    // The entries on the page, live and sorted by id like #values.
+    public Collection<PkIndexEntry> onPage(long page) {
+        final var bucket = pages.get(page);
+        return bucket != null ? bucket.values() : List.of();
+    }
+}
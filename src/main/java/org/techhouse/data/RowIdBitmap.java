@@ -0,0 +1,530 @@
+package org.techhouse.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of row ids (the dense per-collection ints documents are numbered with), laid out like a
+ * roaring bitmap: ids are grouped by their high 16 bits, and each group is stored either as a sorted
+ * {@code char[]} of its low 16 bits (up to 4096 of them) or as a 65536-bit {@code long[]} once it is denser
+ * than that. Set algebra works group by group on the two layouts directly.
+ * <p>
+ * {@link #add}, {@link #addAll} and {@link #remove} mutate the bitmap, the set operations return new ones. Not
+ * thread-safe.
+ */
+public final class RowIdBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RowIdBitmap() {
+        this(new char[4], new Container[4], 0);
+    }
+
+    private RowIdBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static RowIdBitmap of(int... rows) {
+        final var bitmap = new RowIdBitmap();
+        for (var row : rows) {
+            bitmap.add(row);
+        }
+        return bitmap;
+    }
+
+    public void add(int row) {
+        final var key = (char) (row >>> 16);
+        final var position = findKey(key);
+        if (position >= 0) {
+            containers[position] = containers[position].add((char) row);
+        } else {
+            final var insertAt = -position - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+                containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, size - insertAt);
+            System.arraycopy(containers, insertAt, containers, insertAt + 1, size - insertAt);
+            keys[insertAt] = key;
+            containers[insertAt] = new ArrayContainer(new char[] {(char) row}, 1);
+            size++;
+        }
+    }
+
+    public void remove(int row) {
+        final var position = findKey((char) (row >>> 16));
+        if (position < 0) {
+            return;
+        }
+        final var container = containers[position].remove((char) row);
+        if (container.cardinality() > 0) {
+            containers[position] = container;
+            return;
+        }
+        System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+        System.arraycopy(containers, position + 1, containers, position, size - position - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    // In-place or: adds every row of other, without building a new bitmap per call when many are merged.
+    public void addAll(RowIdBitmap other) {
+        for (var j = 0; j < other.size; j++) {
+            final var position = findKey(other.keys[j]);
+            if (position >= 0) {
+                containers[position] = containers[position].or(other.containers[j]);
+                continue;
+            }
+            final var insertAt = -position - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+                containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, size - insertAt);
+            System.arraycopy(containers, insertAt, containers, insertAt + 1, size - insertAt);
+            keys[insertAt] = other.keys[j];
+            containers[insertAt] = other.containers[j].copy();
+            size++;
+        }
+    }
+
+    public boolean contains(int row) {
+        final var position = findKey((char) (row >>> 16));
+        return position >= 0 && containers[position].contains((char) row);
+    }
+
+    public int cardinality() {
+        var total = 0;
+        for (var i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public RowIdBitmap and(RowIdBitmap other) {
+        final var result = new RowIdBitmap(new char[Math.min(size, other.size)],
+                new Container[Math.min(size, other.size)], 0);
+        var i = 0;
+        var j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RowIdBitmap or(RowIdBitmap other) {
+        final var result = new RowIdBitmap(new char[size + other.size], new Container[size + other.size], 0);
+        var i = 0;
+        var j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RowIdBitmap andNot(RowIdBitmap other) {
+        final var result = new RowIdBitmap(new char[Math.max(size, 1)], new Container[Math.max(size, 1)], 0);
+        var j = 0;
+        for (var i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    // Rough heap footprint: the group arrays plus each group's char[] or long[].
+    public long estimatedBytes() {
+        var total = 32L + keys.length * 10L;
+        for (var i = 0; i < size; i++) {
+            total += containers[i].estimatedBytes();
+        }
+        return total;
+    }
+
+    // Visits the rows in ascending order.
+    public void forEach(IntConsumer consumer) {
+        for (var i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public int[] toArray() {
+        final var result = new int[cardinality()];
+        final var position = new int[1];
+        forEach(row -> result[position[0]++] = row);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RowIdBitmap that && Arrays.equals(toArray(), that.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "RowIdBitmap" + Arrays.toString(toArray());
+    }
+
+    private int findKey(char key) {
+        var low = 0;
+        var high = size - 1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else if (keys[mid] > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Appends a group with a key above every present one; empty groups are dropped.
+    private void append(char key, Container container) {
+        if (container.cardinality() == 0) {
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    private sealed interface Container permits ArrayContainer, BitmapContainer {
+        Container add(char low);
+
+        Container remove(char low);
+
+        boolean contains(char low);
+
+        int cardinality();
+
+        Container and(Container other);
+
+        Container or(Container other);
+
+        Container andNot(Container other);
+
+        void forEach(int high, IntConsumer consumer);
+
+        Container copy();
+
+        long estimatedBytes();
+    }
+
+    private static final class ArrayContainer implements Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char low) {
+            final var position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                final var bitmap = BitmapContainer.from(this);
+                return bitmap.add(low);
+            }
+            final var insertAt = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, cardinality - insertAt);
+            values[insertAt] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            final var position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                cardinality--;
+                // Gives back the room of a group that shrank to a quarter, like it grew by doubling.
+                if (values.length > 4 && cardinality < values.length / 4) {
+                    values = Arrays.copyOf(values, values.length / 2);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            final var result = new char[cardinality];
+            var count = 0;
+            if (other instanceof ArrayContainer array) {
+                var i = 0;
+                var j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (var i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer bitmap) {
+                return bitmap.or(this);
+            }
+            final var array = (ArrayContainer) other;
+            final var result = new char[cardinality + array.cardinality];
+            var count = 0;
+            var i = 0;
+            var j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            final var merged = new ArrayContainer(result, count);
+            return count > ARRAY_LIMIT ? BitmapContainer.from(merged) : merged;
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            final var result = new char[cardinality];
+            var count = 0;
+            for (var i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer consumer) {
+            for (var i = 0; i < cardinality; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        public Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 32L + values.length * 2L;
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private static BitmapContainer from(ArrayContainer array) {
+            final var words = new long[BITMAP_WORDS];
+            for (var i = 0; i < array.cardinality; i++) {
+                words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+            return new BitmapContainer(words, array.cardinality);
+        }
+
+        // Back to the array layout once sparse enough.
+        private static Container of(long[] words) {
+            var cardinality = 0;
+            for (var word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return new BitmapContainer(words, cardinality);
+            }
+            final var values = new char[cardinality];
+            var count = 0;
+            for (var i = 0; i < words.length; i++) {
+                var word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        public Container add(char low) {
+            final var mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0) {
+                words[low >>> 6] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            final var mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0) {
+                return this;
+            }
+            words[low >>> 6] &= ~mask;
+            cardinality--;
+            return cardinality > ARRAY_LIMIT ? this : of(words);
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer array) {
+                return array.and(this);
+            }
+            final var bitmap = (BitmapContainer) other;
+            final var result = new long[BITMAP_WORDS];
+            for (var i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & bitmap.words[i];
+            }
+            return of(result);
+        }
+
+        @Override
+        public Container or(Container other) {
+            final var result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (var i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                final var bitmap = (BitmapContainer) other;
+                for (var i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] |= bitmap.words[i];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            final var result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (var i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            } else {
+                final var bitmap = (BitmapContainer) other;
+                for (var i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] &= ~bitmap.words[i];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer consumer) {
+            for (var i = 0; i < BITMAP_WORDS; i++) {
+                var word = words[i];
+                while (word != 0) {
+                    consumer.accept(high | ((i << 6) + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        public Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 32L + BITMAP_WORDS * 8L;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.techhouse.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers the documents of one collection with dense int row ids so id sets can be handled as
+ * {@link RowIdBitmap}s. A row id is handed out the first time an {@code _id} is seen and stays fixed while
+ * the dictionary lives, so rows are not reused: the rows of deleted documents are only counted as retired, and
+ * once they outnumber the live ones the cache starts a new dictionary (see {@link #isMostlyRetired}). Row ids
+ * are in-memory only: a dictionary is dropped with its collection's cache entries and a new one is started
+ * afterward, so a query takes one dictionary up front and resolves every bitmap it builds through that same
+ * instance.
+ */
+public class RowIdDictionary {
+    private static final int MIN_RETIRED_ROWS = 1024;
+    // Map node, boxed row and id slot of one row.
+    private static final long ESTIMATED_ROW_BYTES = 64L;
+
+    private final Map<String, Integer> rowsById = new ConcurrentHashMap<>();
+    private volatile String[] idsByRow = new String[1024];
+    private int nextRow;
+    private int retiredRows;
+
+    public int rowOf(String id) {
+        final var row = rowsById.get(id);
+        return row != null ? row : assign(id);
+    }
+
+    public String idOf(int row) {
+        return idsByRow[row];
+    }
+
+    public RowIdBitmap rowsOf(Collection<String> ids) {
+        final var bitmap = new RowIdBitmap();
+        for (var id : ids) {
+            bitmap.add(rowOf(id));
+        }
+        return bitmap;
+    }
+
+    public Set<String> idsOf(RowIdBitmap rows) {
+        final var ids = HashSet.<String>newHashSet(rows.cardinality());
+        final var byRow = idsByRow;
+        rows.forEach(row -> ids.add(byRow[row]));
+        return ids;
+    }
+
+    // Counts the row of a deleted document. The row keeps its id, so bitmaps still holding it resolve and can
+    // drop it; a document saved again under the same id is not told apart, which only makes a rebuild come early.
+    public synchronized void retire(String id) {
+        if (rowsById.containsKey(id)) {
+            retiredRows++;
+        }
+    }
+
+    public synchronized boolean isMostlyRetired() {
+        return retiredRows >= MIN_RETIRED_ROWS && retiredRows * 2 > nextRow;
+    }
+
+    public synchronized long estimatedBytes() {
+        return nextRow * ESTIMATED_ROW_BYTES + idsByRow.length * 8L;
+    }
+
+    // The id array is written before the mapping is published, so a reader that got a row from rowsById
+    // always finds its id.
+    private synchronized int assign(String id) {
+        final var existing = rowsById.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        final var row = nextRow++;
+        var byRow = idsByRow;
+        if (row == byRow.length) {
+            byRow = Arrays.copyOf(byRow, byRow.length * 2);
+        }
+        byRow[row] = id;
+        idsByRow = byRow;
+        rowsById.put(id, row);
+        return row;
+    }
+}
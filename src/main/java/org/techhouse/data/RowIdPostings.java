@@ -0,0 +1,80 @@
+package org.techhouse.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.function.IntFunction;
+
+/**
+ * The ids of every value of a sorted index as {@link RowIdBitmap}s, one per value in the same order, numbered
+ * through one {@link RowIdDictionary}. A cached index builds them the first time a query asks for rows and then
+ * changes them along with its values under the field's index write lock, so a query ORs the bitmaps of the values
+ * it matched instead of numbering their ids again.
+ */
+public final class RowIdPostings {
+    private final RowIdDictionary dictionary;
+    private final ArrayList<RowIdBitmap> byValue;
+    // Only written under the index write lock; volatile for the eviction sweep.
+    private volatile long estimatedBytes;
+
+    private RowIdPostings(RowIdDictionary dictionary, ArrayList<RowIdBitmap> byValue, long estimatedBytes) {
+        this.dictionary = dictionary;
+        this.byValue = byValue;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public static RowIdPostings build(RowIdDictionary dictionary, int size, IntFunction<Iterable<String>> idsAt) {
+        final var byValue = new ArrayList<RowIdBitmap>(size);
+        var bytes = 0L;
+        for (var i = 0; i < size; i++) {
+            final var rows = new RowIdBitmap();
+            for (var id : idsAt.apply(i)) {
+                rows.add(dictionary.rowOf(id));
+            }
+            byValue.add(rows);
+            bytes += rows.estimatedBytes();
+        }
+        return new RowIdPostings(dictionary, byValue, bytes);
+    }
+
+    public RowIdDictionary dictionary() {
+        return dictionary;
+    }
+
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    // A new value, without ids yet, at position.
+    public void insertValue(int position) {
+        final var rows = new RowIdBitmap();
+        byValue.add(position, rows);
+        estimatedBytes += rows.estimatedBytes();
+    }
+
+    public void removeValue(int position) {
+        estimatedBytes -= byValue.remove(position).estimatedBytes();
+    }
+
+    public void add(int position, String id) {
+        final var rows = byValue.get(position);
+        final var before = rows.estimatedBytes();
+        rows.add(dictionary.rowOf(id));
+        estimatedBytes += rows.estimatedBytes() - before;
+    }
+
+    public void remove(int position, String id) {
+        final var rows = byValue.get(position);
+        final var before = rows.estimatedBytes();
+        rows.remove(dictionary.rowOf(id));
+        estimatedBytes += rows.estimatedBytes() - before;
+    }
+
+    // A new bitmap with the rows of the values at positions.
+    public RowIdBitmap rowsAt(BitSet positions) {
+        final var result = new RowIdBitmap();
+        for (var i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            result.addAll(byValue.get(i));
+        }
+        return result;
+    }
+}
@@ -1,18 +1,24 @@
 package org.techhouse.data.admin;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.data.FieldStatistics;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonObject;
 
 public class AdminCollEntry extends DbEntry {
     private static final String INDEXES_FIELD_NAME = "indexes";
+    private static final String STATISTICS_FIELD_NAME = "statistics";
     private Set<String> indexes;
+    // Per indexed field, from its last index build. Absent for indexes built before statistics were kept.
+    private Map<String, FieldStatistics> statistics = new HashMap<>();
 
     private AdminCollEntry() {
         super.setDatabaseName(Globals.ADMIN_DB_NAME);
@@ -43,6 +49,14 @@ public class AdminCollEntry extends DbEntry {
         final var collections = object.get(INDEXES_FIELD_NAME).asJsonArray().asList().stream()
                 .map(element -> element.asJsonString().getValue()).collect(Collectors.toSet());
         result.setIndexes(collections);
+        final var statistics = new HashMap<String, FieldStatistics>();
+        if (object.has(STATISTICS_FIELD_NAME)) {
+            for (var fieldStatistics : object.get(STATISTICS_FIELD_NAME).asJsonObject().entrySet()) {
+                statistics.put(fieldStatistics.getKey(),
+                        FieldStatistics.fromJson(fieldStatistics.getValue().asJsonObject()));
+            }
+        }
+        result.statistics = statistics;
         result.setDatabaseName(Globals.ADMIN_DB_NAME);
         result.setCollectionName(Globals.ADMIN_COLLECTIONS_COLLECTION_NAME);
         return result;
@@ -61,6 +75,17 @@ public class AdminCollEntry extends DbEntry {
         return indexes;
     }
 
+    public Map<String, FieldStatistics> getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(Map<String, FieldStatistics> statistics) {
+        this.statistics = statistics;
+        final var json = new JsonObject();
+        statistics.forEach((fieldName, fieldStatistics) -> json.add(fieldName, fieldStatistics.toJson()));
+        getData().add(STATISTICS_FIELD_NAME, json);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -69,16 +94,16 @@ public class AdminCollEntry extends DbEntry {
             return false;
         if (!super.equals(o))
             return false;
-        return Objects.equals(indexes, that.indexes);
+        return Objects.equals(indexes, that.indexes) && Objects.equals(statistics, that.statistics);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), indexes);
+        return Objects.hash(super.hashCode(), indexes, statistics);
     }
 
     @Override
     public String toString() {
-        return "AdminCollEntry(super=" + super.toString() + ", indexes=" + indexes + ")";
+        return "AdminCollEntry(super=" + super.toString() + ", indexes=" + indexes + ", statistics=" + statistics + ")";
     }
 }
@@ -1,7 +1,10 @@
 package org.techhouse.ejson;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import org.techhouse.ejson.custom_types.CustomTypeFactory;
 import org.techhouse.ejson.custom_types.JsonDateTime;
 import org.techhouse.ejson.custom_types.JsonTime;
@@ -82,6 +85,15 @@ public class EJson {
         return reader.fromJson(jsonString, tClass);
     }
 
+    public <T> T fromJson(char[] json, Class<T> tClass) {
+        return reader.fromJson(json, tClass);
+    }
+
+    // Parses the buffer's remaining bytes as UTF-8, e.g. a page row read straight from disk or from a mapping.
+    public <T> T fromJson(ByteBuffer json, Class<T> tClass) {
+        return reader.fromJson(json, tClass);
+    }
+
     public <T> T fromJson(JsonBaseElement jsonObject, Class<T> tClass) {
         final var adapter = TypeAdapterFactory.getAdapter(tClass);
         return adapter.fromJson(jsonObject);
@@ -92,4 +104,21 @@ public class EJson {
         final Class<T> clazz = (Class<T>) obj.getClass();
         return writer.toJson(obj, clazz);
     }
+
+    /**
+     * Writes the JSON of {@code obj} into {@code out} as it is produced, instead of building it as a single string
+     * first. Objects, arrays and iterables are written member by member.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void toJson(T obj, Appendable out) throws IOException {
+        final Class<T> clazz = (Class<T>) obj.getClass();
+        writer.toJson(obj, clazz, out);
+    }
+
+    // Same as toJson(obj, Appendable), UTF-8 encoded; the stream is flushed but not closed.
+    @SuppressWarnings("unchecked")
+    public <T> void toJson(T obj, OutputStream out) throws IOException {
+        final Class<T> clazz = (Class<T>) obj.getClass();
+        writer.toJson(obj, clazz, out);
+    }
 }
@@ -0,0 +1,14 @@
+package org.techhouse.ejson.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Leaves the field out of the serialized object while it is {@code null}, instead of writing it as {@code null}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface OmitIfNull {
+}
@@ -0,0 +1,312 @@
+package org.techhouse.ejson.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.techhouse.ejson.custom_types.CustomTypeFactory;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonBoolean;
+import org.techhouse.ejson.elements.JsonCustom;
+import org.techhouse.ejson.elements.JsonNull;
+import org.techhouse.ejson.elements.JsonNumber;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.elements.JsonString;
+import org.techhouse.ejson.exceptions.MalformedJsonException;
+import org.techhouse.ejson.exceptions.MissingEndOfStringException;
+import org.techhouse.ejson.exceptions.UnexpectedCharacterException;
+
+/**
+ * Single-pass recursive-descent JSON parser. A cursor walks the input once: every token is recognized in place and
+ * consumed by the grammar rule that needs it, so there is no token list and the only copies made are the text of
+ * strings and numbers. Parsing is linear in the input size.
+ *
+ * <p>The input can be a {@link CharSequence}, a {@code char[]} or a {@link ByteBuffer} holding UTF-8 (read with
+ * absolute gets, so a slice of a page mapping is parsed in place and its position is left untouched). Structural
+ * characters, numbers and literals are ASCII, and no byte of a multibyte UTF-8 sequence is, so bytes are scanned
+ * directly and only the contents of strings are decoded.
+ *
+ * <p>Strings follow the format {@link org.techhouse.ejson.EJson} writes: they end at the next quote and have no
+ * escape sequences. A string in the {@code #type(value)} form of a registered custom type becomes that type.
+ */
+public final class JsonParser {
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+    private static final String NULL = "null";
+
+    private final Input input;
+    private final int length;
+    private int pos;
+
+    private JsonParser(Input input) {
+        this.input = input;
+        this.length = input.length();
+    }
+
+    public static JsonBaseElement parse(CharSequence json) {
+        return new JsonParser(new CharSequenceInput(json)).parseRoot();
+    }
+
+    public static JsonBaseElement parse(char[] json) {
+        return new JsonParser(new CharArrayInput(json)).parseRoot();
+    }
+
+    // Parses the buffer's remaining bytes.
+    public static JsonBaseElement parse(ByteBuffer json) {
+        return new JsonParser(new Utf8Input(json)).parseRoot();
+    }
+
+    private JsonBaseElement parseRoot() {
+        skipWhitespace();
+        if (pos == length) {
+            throw new MalformedJsonException("Empty JSON array");
+        }
+        final var first = input.charAt(pos);
+        if (first != '{' && first != '[') {
+            throw new MalformedJsonException("Json must start with either a left bracket or a left brace");
+        }
+        final var root = parseValue();
+        skipWhitespace();
+        if (pos < length) {
+            throw new UnexpectedCharacterException(input.charAt(pos), pos);
+        }
+        return root;
+    }
+
+    private JsonBaseElement parseValue() {
+        skipWhitespace();
+        if (pos == length) {
+            throw new MalformedJsonException("Unexpected end of JSON");
+        }
+        final var c = input.charAt(pos);
+        return switch (c) {
+            case '{' -> parseObject();
+            case '[' -> parseArray();
+            case '"' -> toStringElement(readString());
+            case 't' -> readLiteral(TRUE, new JsonBoolean(true));
+            case 'f' -> readLiteral(FALSE, new JsonBoolean(false));
+            case 'n' -> readLiteral(NULL, JsonNull.INSTANCE);
+            default -> {
+                if (isNumberStart(c)) {
+                    yield readNumber();
+                }
+                throw new UnexpectedCharacterException(c, pos);
+            }
+        };
+    }
+
+    private JsonObject parseObject() {
+        pos++;
+        final var obj = new JsonObject();
+        skipWhitespace();
+        if (pos < length && input.charAt(pos) == '}') {
+            pos++;
+            return obj;
+        }
+        for (;;) {
+            skipWhitespace();
+            if (pos == length || input.charAt(pos) != '"') {
+                throw new MalformedJsonException("Expected string key, got " + describeNext());
+            }
+            final var propertyName = readString();
+            skipWhitespace();
+            if (pos == length || input.charAt(pos) != ':') {
+                throw new MalformedJsonException("Expected colon after key in object, got: " + describeNext());
+            }
+            pos++;
+            obj.add(propertyName, parseValue());
+            skipWhitespace();
+            if (pos < length && input.charAt(pos) == '}') {
+                pos++;
+                return obj;
+            }
+            if (pos == length || input.charAt(pos) != ',') {
+                throw new MalformedJsonException("Expected comma after pair in object, got: " + describeNext());
+            }
+            pos++;
+        }
+    }
+
+    private JsonArray parseArray() {
+        pos++;
+        final var arr = new JsonArray();
+        skipWhitespace();
+        if (pos < length && input.charAt(pos) == ']') {
+            pos++;
+            return arr;
+        }
+        for (;;) {
+            arr.add(parseValue());
+            skipWhitespace();
+            if (pos < length && input.charAt(pos) == ']') {
+                pos++;
+                return arr;
+            }
+            if (pos == length || input.charAt(pos) != ',') {
+                throw new MalformedJsonException("Expected comma after object in array");
+            }
+            pos++;
+        }
+    }
+
+    // Reads the string starting at the opening quote under the cursor and leaves the cursor past its closing quote.
+    private String readString() {
+        final var start = pos + 1;
+        var end = start;
+        while (end < length && input.charAt(end) != '"') {
+            end++;
+        }
+        if (end == length) {
+            throw new MissingEndOfStringException();
+        }
+        pos = end + 1;
+        return input.text(start, end);
+    }
+
+    private static JsonBaseElement toStringElement(String value) {
+        final var string = new JsonString(value);
+        // The '#' check spares ordinary strings the custom type pattern match.
+        if (!value.isEmpty() && value.charAt(0) == '#' && JsonCustom.isJsonCustom(string)) {
+            return CustomTypeFactory.getCustomTypeInstance(string);
+        }
+        return string;
+    }
+
+    private JsonBaseElement readLiteral(String literal, JsonBaseElement value) {
+        final var end = pos + literal.length();
+        if (end > length) {
+            throw new UnexpectedCharacterException(input.charAt(pos), pos);
+        }
+        for (var i = 0; i < literal.length(); i++) {
+            if (input.charAt(pos + i) != literal.charAt(i)) {
+                throw new UnexpectedCharacterException(input.charAt(pos + i), pos + i);
+            }
+        }
+        pos = end;
+        return value;
+    }
+
+    private JsonNumber readNumber() {
+        final var start = pos;
+        while (pos < length && isNumberPart(input.charAt(pos))) {
+            pos++;
+        }
+        final var text = input.text(start, pos);
+        try {
+            return new JsonNumber(text);
+        } catch (NumberFormatException e) {
+            throw new MalformedJsonException("Malformed number " + text + " at position: " + start);
+        }
+    }
+
+    private static boolean isNumberStart(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '.';
+    }
+
+    // Also accepts exponents, which is how very large or small doubles are written out.
+    private static boolean isNumberPart(char c) {
+        return isNumberStart(c) || c == 'e' || c == 'E' || c == '+';
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            final var c = input.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\b') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private String describeNext() {
+        return pos == length ? "end of JSON" : "'" + input.charAt(pos) + "' at position: " + pos;
+    }
+
+    private abstract static class Input {
+        abstract int length();
+
+        abstract char charAt(int index);
+
+        // The decoded text between the two indexes.
+        abstract String text(int start, int end);
+    }
+
+    private static final class CharSequenceInput extends Input {
+        private final CharSequence chars;
+
+        private CharSequenceInput(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        int length() {
+            return chars.length();
+        }
+
+        @Override
+        char charAt(int index) {
+            return chars.charAt(index);
+        }
+
+        @Override
+        String text(int start, int end) {
+            return chars.subSequence(start, end).toString();
+        }
+    }
+
+    private static final class CharArrayInput extends Input {
+        private final char[] chars;
+
+        private CharArrayInput(char[] chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        int length() {
+            return chars.length;
+        }
+
+        @Override
+        char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        String text(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+    }
+
+    // Indexes are byte offsets; charAt is only meaningful for ASCII bytes, which is all the grammar looks at.
+    private static final class Utf8Input extends Input {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        private Utf8Input(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.offset = bytes.position();
+            this.length = bytes.remaining();
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        String text(int start, int end) {
+            if (bytes.hasArray()) {
+                return new String(bytes.array(), bytes.arrayOffset() + offset + start, end - start,
+                        StandardCharsets.UTF_8);
+            }
+            final var copy = new byte[end - start];
+            bytes.get(offset + start, copy);
+            return new String(copy, StandardCharsets.UTF_8);
+        }
+    }
+}
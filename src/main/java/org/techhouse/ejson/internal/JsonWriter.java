@@ -1,5 +1,12 @@
 package org.techhouse.ejson.internal;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import org.techhouse.ejson.type_adapters.TypeAdapter;
 import org.techhouse.ejson.type_adapters.TypeAdapterFactory;
 
 public class JsonWriter {
@@ -7,4 +14,28 @@ public class JsonWriter {
         final var typeAdapter = TypeAdapterFactory.getAdapter(tClass);
         return typeAdapter.toJson(obj);
     }
+
+    public <T> void toJson(T obj, Class<T> tClass, Appendable out) throws IOException {
+        final var typeAdapter = TypeAdapterFactory.getAdapter(tClass);
+        typeAdapter.write(obj, out);
+    }
+
+    // Writes the UTF-8 encoded JSON and flushes it into the stream, which is left open.
+    public <T> void toJson(T obj, Class<T> tClass, OutputStream out) throws IOException {
+        final var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        toJson(obj, tClass, writer);
+        writer.flush();
+    }
+
+    // toJson for the adapters that implement write: the same text, built in memory.
+    public static <T> String writeToString(TypeAdapter<T> adapter, T value) {
+        final var out = new StringBuilder();
+        try {
+            adapter.write(value, out);
+        } catch (IOException e) {
+            // StringBuilder.append never throws
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
 }
@@ -1,8 +1,18 @@
 package org.techhouse.ejson.type_adapters;
 
+import java.io.IOException;
 import org.techhouse.ejson.elements.JsonBaseElement;
 
 public interface TypeAdapter<T> {
     String toJson(T value);
+
+    /**
+     * Writes the text {@link #toJson} returns into {@code out}. Adapters of objects and arrays override it to write
+     * their members one at a time, so a large value is never held in memory as a single string.
+     */
+    default void write(T value, Appendable out) throws IOException {
+        out.append(toJson(value));
+    }
+
     T fromJson(JsonBaseElement value);
 }
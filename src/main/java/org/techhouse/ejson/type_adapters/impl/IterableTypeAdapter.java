@@ -1,12 +1,13 @@
 package org.techhouse.ejson.type_adapters.impl;
 
+import java.io.IOException;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.internal.JsonWriter;
 import org.techhouse.ejson.type_adapters.TypeAdapter;
 import org.techhouse.ejson.type_adapters.TypeAdapterFactory;
 
@@ -20,15 +21,22 @@ public class IterableTypeAdapter<T> implements TypeAdapter<Iterable<T>> {
 
     @Override
     public String toJson(Iterable<T> value) {
-        final var iterator = value.iterator();
-        if (iterator.hasNext()) {
-            return '[' + StreamSupport
-                    .stream(Spliterators.spliteratorUnknownSize(value.iterator(), Spliterator.ORDERED), false)
-                    .map(t -> Objects.requireNonNull(TypeAdapterFactory.getAdapter(tClass)).toJson(t))
-                    .collect(Collectors.joining(",")) + ']';
-        } else {
-            return "[]";
+        return JsonWriter.writeToString(this, value);
+    }
+
+    @Override
+    public void write(Iterable<T> value, Appendable out) throws IOException {
+        final var elementAdapter = Objects.requireNonNull(TypeAdapterFactory.getAdapter(tClass));
+        out.append('[');
+        var first = true;
+        for (var element : value) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            elementAdapter.write(element, out);
         }
+        out.append(']');
     }
 
     @Override
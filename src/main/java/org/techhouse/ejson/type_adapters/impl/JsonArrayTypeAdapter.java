@@ -1,8 +1,9 @@
 package org.techhouse.ejson.type_adapters.impl;
 
-import java.util.stream.Collectors;
+import java.io.IOException;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.internal.JsonWriter;
 import org.techhouse.ejson.type_adapters.TypeAdapter;
 import org.techhouse.ejson.type_adapters.TypeAdapterFactory;
 
@@ -10,9 +11,22 @@ public class JsonArrayTypeAdapter implements TypeAdapter<JsonArray> {
 
     @Override
     public String toJson(JsonArray value) {
-        return '[' + value.asList().stream()
-                .map(element -> TypeAdapterFactory.getAdapter(JsonBaseElement.class).toJson(element))
-                .collect(Collectors.joining(",")) + ']';
+        return JsonWriter.writeToString(this, value);
+    }
+
+    @Override
+    public void write(JsonArray value, Appendable out) throws IOException {
+        final var elementAdapter = TypeAdapterFactory.getAdapter(JsonBaseElement.class);
+        out.append('[');
+        var first = true;
+        for (var element : value) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            elementAdapter.write(element, out);
+        }
+        out.append(']');
     }
 
     @Override
@@ -1,9 +1,9 @@
 package org.techhouse.ejson.type_adapters.impl;
 
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.io.IOException;
 import org.techhouse.ejson.elements.JsonBaseElement;
 import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.internal.JsonWriter;
 import org.techhouse.ejson.type_adapters.TypeAdapter;
 import org.techhouse.ejson.type_adapters.TypeAdapterFactory;
 
@@ -11,13 +11,23 @@ public class JsonObjectTypeAdapter implements TypeAdapter<JsonObject> {
 
     @Override
     public String toJson(JsonObject value) {
-        return '{'
-                + value.entrySet().stream()
-                        .map(stringJsonBaseElementEntry -> "\"" + stringJsonBaseElementEntry.getKey() + "\":"
-                                + Objects.requireNonNull(TypeAdapterFactory.getAdapter(JsonBaseElement.class))
-                                        .toJson(stringJsonBaseElementEntry.getValue()))
-                        .collect(Collectors.joining(","))
-                + '}';
+        return JsonWriter.writeToString(this, value);
+    }
+
+    @Override
+    public void write(JsonObject value, Appendable out) throws IOException {
+        final var elementAdapter = TypeAdapterFactory.getAdapter(JsonBaseElement.class);
+        out.append('{');
+        var first = true;
+        for (var entry : value.entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('"').append(entry.getKey()).append("\":");
+            elementAdapter.write(entry.getValue(), out);
+        }
+        out.append('}');
     }
 
     @Override
@@ -1,8 +1,11 @@
 package org.techhouse.ejson.type_adapters.impl;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import org.techhouse.ejson.annotations.OmitIfNull;
 import org.techhouse.ejson.elements.JsonBaseElement;
 import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.internal.JsonWriter;
 import org.techhouse.ejson.internal.ReflectionUtils;
 import org.techhouse.ejson.type_adapters.TypeAdapter;
 import org.techhouse.ejson.type_adapters.TypeAdapterFactory;
@@ -22,26 +25,30 @@ public class ReflectionTypeAdapter<T> implements TypeAdapter<T> {
 
     @Override
     public String toJson(T value) {
-        final var result = new StringBuilder();
-        result.append('{');
+        return JsonWriter.writeToString(this, value);
+    }
+
+    @Override
+    public void write(T value, Appendable out) throws IOException {
+        out.append('{');
         final var clazz = value.getClass();
         final var fields = ReflectionUtils.getFields(clazz);
-        for (var i = 0; i < fields.length; i++) {
-            result.append('"');
-            result.append(fields[i].getName());
-            result.append('"');
-            result.append(':');
-            try {
-                result.append(getFieldValue(fields[i], value));
-            } catch (Exception e) {
-                result.append("null");
+        var first = true;
+        for (var field : fields) {
+            if (isOmitted(field, value)) {
+                continue;
             }
-            if (i < fields.length - 1) {
-                result.append(',');
+            if (!first) {
+                out.append(',');
             }
+            first = false;
+            out.append('"');
+            out.append(field.getName());
+            out.append('"');
+            out.append(':');
+            writeFieldValue(field, value, out);
         }
-        result.append('}');
-        return result.toString();
+        out.append('}');
     }
 
     @Override
@@ -68,34 +75,40 @@ public class ReflectionTypeAdapter<T> implements TypeAdapter<T> {
         }
     }
 
-    private <U> String getFieldValue(Field field, U instance) throws IllegalAccessException, ClassNotFoundException {
-        Object value = ReflectionUtils.getFieldValue(field, instance);
-        if (value != null) {
-            final var pClass = field.getType();
-            return hardCast(value, pClass, field); // This should be fine
-        } else {
-            return "null";
+    private static <U> boolean isOmitted(Field field, U instance) {
+        if (!field.isAnnotationPresent(OmitIfNull.class)) {
+            return false;
+        }
+        try {
+            return ReflectionUtils.getFieldValue(field, instance) == null;
+        } catch (IllegalAccessException e) {
+            return true;
         }
     }
 
-    private <P> String hardCast(Object value, Class<P> pClass, Field field) throws ClassNotFoundException {
-        P casted;
-        if (field.getType().isPrimitive()) {
-            //noinspection unchecked
-            casted = (P) value;
-        } else {
-            casted = pClass.cast(value);
+    private <U> void writeFieldValue(Field field, U instance, Appendable out) throws IOException {
+        Object value;
+        TypeAdapter<Object> adapter;
+        try {
+            value = ReflectionUtils.getFieldValue(field, instance);
+            adapter = value != null ? adapterFor(field) : null;
+        } catch (Exception e) {
+            value = null;
+            adapter = null;
         }
-        TypeAdapter<P> adapter;
-        if (field.getType().getTypeParameters().length > 0) {
-            adapter = TypeAdapterFactory.getAdapter(field.getGenericType());
+        if (value == null || adapter == null) {
+            out.append("null");
         } else {
-            adapter = TypeAdapterFactory.getAdapter(pClass);
+            adapter.write(value, out);
         }
-        if (adapter != null) {
-            return adapter.toJson(casted);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypeAdapter<Object> adapterFor(Field field) throws ClassNotFoundException {
+        if (field.getType().getTypeParameters().length > 0) {
+            return TypeAdapterFactory.getAdapter(field.getGenericType());
         } else {
-            return null;
+            return (TypeAdapter<Object>) TypeAdapterFactory.getAdapter(field.getType());
         }
     }
 
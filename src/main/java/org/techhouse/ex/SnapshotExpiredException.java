@@ -0,0 +1,7 @@
+package org.techhouse.ex;
+
+public class SnapshotExpiredException extends RuntimeException {
+    public SnapshotExpiredException(String message) {
+        super(message);
+    }
+}
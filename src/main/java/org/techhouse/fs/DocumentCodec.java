@@ -0,0 +1,342 @@
+package org.techhouse.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.techhouse.config.Globals;
+import org.techhouse.ejson.custom_types.CustomTypeFactory;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonBoolean;
+import org.techhouse.ejson.elements.JsonCustom;
+import org.techhouse.ejson.elements.JsonNull;
+import org.techhouse.ejson.elements.JsonNumber;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.elements.JsonString;
+
+/**
+ * Row encoding of {@link StorageFormat#BINARY} collections. A binary row is
+ * {@code 0x01 varint(payloadLength) payload NEWLINE}, where the payload is the document as a typed value:
+ * <ul>
+ * <li>{@code NULL}, {@code FALSE}, {@code TRUE}: the tag alone;</li>
+ * <li>{@code INT}: a zig-zag varint; {@code DOUBLE}: 8 bytes;</li>
+ * <li>{@code STRING}, {@code CUSTOM}: varint byte length and UTF-8 bytes (a custom value keeps its
+ * {@code #type(value)} form);</li>
+ * <li>{@code ARRAY}: varint byte length, varint count, the elements;</li>
+ * <li>{@code OBJECT}: varint byte length, varint count, then per member the varint id of its name in the
+ * collection's {@link FieldDictionary} and its value.</li>
+ * </ul>
+ * Every value's size is known from its header, so a reader can hop over members to reach a single field (see
+ * {@link #project}) without building the rest of the document. The trailing newline keeps the page format's
+ * invariants: a blanked binary row is a blank line like any other, and JSON rows (which start with {@code '{'})
+ * can share a page with binary ones.
+ */
+final class DocumentCodec {
+    private DocumentCodec() {
+    }
+
+    static final byte BINARY_ROW_MARKER = 0x01;
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte CUSTOM = 6;
+    private static final byte ARRAY = 7;
+    private static final byte OBJECT = 8;
+    private static final byte[] NEWLINE_BYTES = Globals.NEWLINE.getBytes(StandardCharsets.UTF_8);
+
+    static boolean isBinaryRow(ByteBuffer row) {
+        return row.remaining() > 0 && row.get(row.position()) == BINARY_ROW_MARKER;
+    }
+
+    static byte[] encodeRow(JsonObject data, FieldDictionary dictionary) throws IOException {
+        final var fieldNames = new LinkedHashSet<String>();
+        collectFieldNames(data, fieldNames);
+        dictionary.internAll(fieldNames);
+        final var payload = new ByteArrayOutputStream();
+        writeValue(payload, data, dictionary);
+        final var row = new ByteArrayOutputStream(payload.size() + 6 + NEWLINE_BYTES.length);
+        row.write(BINARY_ROW_MARKER);
+        writeVarInt(row, payload.size());
+        payload.writeTo(row);
+        row.write(NEWLINE_BYTES);
+        return row.toByteArray();
+    }
+
+    // The row's whole document.
+    static JsonObject decodeRow(ByteBuffer row, FieldDictionary dictionary) {
+        enterPayload(row);
+        return readValue(row, dictionary).asJsonObject();
+    }
+
+    /**
+     * Decodes only what {@code JsonUtils.getFromPath(document, path)} would visit: the members named by the path
+     * parts, descending into object members and staying on the current object past a non-object one, and the
+     * whole value reached by the last part. The result is a sparse copy of the document on which
+     * {@code hasInPath}/{@code getFromPath} give the same answers as on the full document.
+     */
+    static JsonObject project(ByteBuffer row, FieldDictionary dictionary, String path) {
+        enterPayload(row);
+        final var result = new JsonObject();
+        if (row.get() != OBJECT) {
+            return result;
+        }
+        readVarInt(row);
+        var memberCount = readVarInt(row);
+        var membersStart = row.position();
+        var current = result;
+        final var parts = path.split("\\.");
+        for (var i = 0; i < parts.length; i++) {
+            final var fieldId = dictionary.idOf(parts[i]);
+            if (fieldId < 0 || !seekMember(row, membersStart, memberCount, fieldId)) {
+                break;
+            }
+            final var isLast = i == parts.length - 1;
+            if (!isLast && row.get(row.position()) == OBJECT) {
+                row.get();
+                readVarInt(row);
+                memberCount = readVarInt(row);
+                membersStart = row.position();
+                final var child = new JsonObject();
+                current.add(parts[i], child);
+                current = child;
+            } else {
+                current.add(parts[i], readValue(row, dictionary));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The end (exclusive) of the row starting at {@code offset}: past the payload and line break of a binary row,
+     * past the next line break for a JSON or blanked row, {@code limit} for a row torn by a crash.
+     */
+    static int rowEnd(byte[] page, int offset, int limit) {
+        if (page[offset] == BINARY_ROW_MARKER) {
+            try {
+                final var header = ByteBuffer.wrap(page, offset + 1, limit - offset - 1);
+                final var payloadLength = readVarInt(header);
+                final var payloadEnd = (long) header.position() + payloadLength;
+                if (payloadLength >= 0 && payloadEnd + NEWLINE_BYTES.length <= limit) {
+                    return (int) payloadEnd + NEWLINE_BYTES.length;
+                }
+            } catch (RuntimeException e) {
+                // fall through: a torn header
+            }
+            return limit;
+        }
+        for (var i = offset; i < limit; i++) {
+            if (page[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static void enterPayload(ByteBuffer row) {
+        if (row.get() != BINARY_ROW_MARKER) {
+            throw new IllegalArgumentException("Not a binary row");
+        }
+        final var payloadLength = readVarInt(row);
+        if (payloadLength > row.remaining()) {
+            throw new IllegalArgumentException("Truncated binary row");
+        }
+    }
+
+    // Positions the buffer on the value of member fieldId, if the object has it.
+    private static boolean seekMember(ByteBuffer row, int membersStart, int memberCount, int fieldId) {
+        row.position(membersStart);
+        for (var i = 0; i < memberCount; i++) {
+            if (readVarInt(row) == fieldId) {
+                return true;
+            }
+            skipValue(row);
+        }
+        return false;
+    }
+
+    private static void skipValue(ByteBuffer row) {
+        final var tag = row.get();
+        switch (tag) {
+            case NULL, FALSE, TRUE -> {
+            }
+            case INT -> readVarLong(row);
+            case DOUBLE -> row.position(row.position() + Double.BYTES);
+            case STRING, CUSTOM, ARRAY, OBJECT -> {
+                final var length = readVarInt(row);
+                row.position(row.position() + length);
+            }
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    private static void collectFieldNames(JsonBaseElement element, Set<String> fieldNames) {
+        if (element instanceof JsonObject object) {
+            for (var member : object.entrySet()) {
+                fieldNames.add(member.getKey());
+                collectFieldNames(member.getValue(), fieldNames);
+            }
+        } else if (element instanceof JsonArray array) {
+            for (var item : array) {
+                collectFieldNames(item, fieldNames);
+            }
+        }
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, JsonBaseElement element, FieldDictionary dictionary) {
+        switch (element) {
+            case null -> out.write(NULL);
+            case JsonNull _ -> out.write(NULL);
+            case JsonBoolean bool -> out.write(Boolean.TRUE.equals(bool.getValue()) ? TRUE : FALSE);
+            case JsonNumber number -> writeNumber(out, number.getValue());
+            case JsonCustom<?> custom -> writeString(out, CUSTOM, custom.getValue());
+            case JsonString string -> writeString(out, STRING, string.getValue());
+            case JsonArray array -> {
+                final var items = new ByteArrayOutputStream();
+                writeVarInt(items, array.size());
+                for (var item : array) {
+                    writeValue(items, item, dictionary);
+                }
+                out.write(ARRAY);
+                writeVarInt(out, items.size());
+                out.writeBytes(items.toByteArray());
+            }
+            case JsonObject object -> {
+                final var members = new ByteArrayOutputStream();
+                writeVarInt(members, object.size());
+                for (Map.Entry<String, JsonBaseElement> member : object.entrySet()) {
+                    writeVarInt(members, dictionary.idOf(member.getKey()));
+                    writeValue(members, member.getValue(), dictionary);
+                }
+                out.write(OBJECT);
+                writeVarInt(out, members.size());
+                out.writeBytes(members.toByteArray());
+            }
+            default -> throw new IllegalArgumentException("Cannot encode " + element.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, Number value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.write(INT);
+            writeVarLong(out, value.longValue());
+        } else {
+            out.write(DOUBLE);
+            final var bits = Double.doubleToLongBits(value == null ? 0 : value.doubleValue());
+            for (var shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, byte tag, String value) {
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(tag);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static JsonBaseElement readValue(ByteBuffer row, FieldDictionary dictionary) {
+        final var tag = row.get();
+        return switch (tag) {
+            case NULL -> JsonNull.INSTANCE;
+            case FALSE -> new JsonBoolean(false);
+            case TRUE -> new JsonBoolean(true);
+            case INT -> {
+                final var value = readVarLong(row);
+                yield new JsonNumber(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Number) (int) value
+                        : (Number) value);
+            }
+            case DOUBLE -> {
+                final var value = Double.longBitsToDouble(row.getLong());
+                // Whole numbers come back as Integer, as they do when a JSON row is parsed.
+                yield new JsonNumber(value % 1.0 == 0 && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE
+                        ? (Number) (int) value
+                        : (Number) value);
+            }
+            case STRING -> new JsonString(readString(row));
+            case CUSTOM -> CustomTypeFactory.getCustomTypeInstance(readString(row));
+            case ARRAY -> {
+                readVarInt(row);
+                final var count = readVarInt(row);
+                final var array = new JsonArray();
+                for (var i = 0; i < count; i++) {
+                    array.add(readValue(row, dictionary));
+                }
+                yield array;
+            }
+            case OBJECT -> {
+                readVarInt(row);
+                final var count = readVarInt(row);
+                final var object = new JsonObject();
+                for (var i = 0; i < count; i++) {
+                    final var name = dictionary.nameOf(readVarInt(row));
+                    object.add(name, readValue(row, dictionary));
+                }
+                yield object;
+            }
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag);
+        };
+    }
+
+    private static String readString(ByteBuffer row) {
+        final var length = readVarInt(row);
+        if (row.hasArray()) {
+            final var value = new String(row.array(), row.arrayOffset() + row.position(), length,
+                    StandardCharsets.UTF_8);
+            row.position(row.position() + length);
+            return value;
+        }
+        final var bytes = new byte[length];
+        row.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        writeUnsignedVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        final var value = readUnsignedVarLong(in);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Length out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    // Zig-zag, so small negative numbers stay short.
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        writeUnsignedVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        final var encoded = readUnsignedVarLong(in);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private static void writeUnsignedVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readUnsignedVarLong(ByteBuffer in) {
+        long result = 0;
+        for (var shift = 0; shift < 64; shift += 7) {
+            final var b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
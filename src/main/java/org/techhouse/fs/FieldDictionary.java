@@ -0,0 +1,131 @@
+package org.techhouse.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.techhouse.log.Logger;
+
+/**
+ * The interned field names of a binary collection ({@code {coll}.fields}): binary rows store a varint id instead
+ * of every field name. Ids are assigned in order of first use and never change, so the file is append-only (one
+ * varint-length-prefixed UTF-8 name per id). New names are forced to disk before any row using them is written,
+ * so a row on disk never references an id the dictionary lost.
+ */
+final class FieldDictionary {
+    private static final Logger logger = Logger.logFor(FieldDictionary.class);
+    private final Path file;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Replaced (never mutated) under the instance lock, so decoders read it without locking.
+    private volatile String[] names = new String[0];
+
+    private FieldDictionary(Path file) {
+        this.file = file;
+    }
+
+    static FieldDictionary load(Path file) throws IOException {
+        final var dictionary = new FieldDictionary(file);
+        if (!Files.exists(file)) {
+            return dictionary;
+        }
+        final var buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        final var loaded = new ArrayList<String>();
+        var validLength = 0;
+        while (buffer.hasRemaining()) {
+            try {
+                final var length = DocumentCodec.readVarInt(buffer);
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                final var bytes = new byte[length];
+                buffer.get(bytes);
+                final var name = new String(bytes, StandardCharsets.UTF_8);
+                dictionary.ids.put(name, loaded.size());
+                loaded.add(name);
+                validLength = buffer.position();
+            } catch (RuntimeException e) {
+                break;
+            }
+        }
+        if (validLength < buffer.capacity()) {
+            // A torn append from a crash: no row can use the lost name, since names are forced before rows.
+            logger.warning("Dropping a torn field name at the end of " + file.getFileName());
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        dictionary.names = loaded.toArray(String[]::new);
+        return dictionary;
+    }
+
+    // The id of an already interned name, -1 if no document of the collection ever used it.
+    int idOf(String name) {
+        final var id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    String nameOf(int id) {
+        final var current = names;
+        if (id < 0 || id >= current.length) {
+            throw new IllegalStateException("Unknown field id " + id + " in " + file.getFileName());
+        }
+        return current[id];
+    }
+
+    /**
+     * Makes sure every name has an id, appending (and forcing) the new ones in a single write.
+     */
+    void internAll(Collection<String> fieldNames) throws IOException {
+        var allKnown = true;
+        for (var name : fieldNames) {
+            if (!ids.containsKey(name)) {
+                allKnown = false;
+                break;
+            }
+        }
+        if (allKnown) {
+            return;
+        }
+        synchronized (this) {
+            final var current = names;
+            final var added = new ArrayList<String>();
+            final var record = new ByteArrayOutputStream();
+            for (var name : fieldNames) {
+                if (!ids.containsKey(name) && !added.contains(name)) {
+                    final var bytes = name.getBytes(StandardCharsets.UTF_8);
+                    DocumentCodec.writeVarInt(record, bytes.length);
+                    record.write(bytes, 0, bytes.length);
+                    added.add(name);
+                }
+            }
+            if (added.isEmpty()) {
+                return;
+            }
+            try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                final var buffer = ByteBuffer.wrap(record.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            final var grown = Arrays.copyOf(current, current.length + added.size());
+            for (var i = 0; i < added.size(); i++) {
+                grown[current.length + i] = added.get(i);
+            }
+            names = grown;
+            for (var i = 0; i < added.size(); i++) {
+                ids.put(added.get(i), current.length + i);
+            }
+        }
+    }
+}
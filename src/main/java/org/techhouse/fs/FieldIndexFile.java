@@ -0,0 +1,390 @@
+package org.techhouse.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.techhouse.data.IndexKind;
+import org.techhouse.ejson.custom_types.CustomTypeFactory;
+import org.techhouse.ejson.elements.JsonCustom;
+
+/**
+ * Binary, block-structured layout of a field index file ({@code {coll}-{field}-{type}.idx}). Entries (an index
+ * value plus the ids holding it) are kept sorted by value across a sequence of blocks of roughly
+ * {@link #TARGET_BLOCK_BYTES}:
+ * <ul>
+ * <li>header (16 bytes): magic, format version and the offset of the block directory;</li>
+ * <li>blocks: varint entry count, then per entry the value and its ids, all varint-length-prefixed UTF-8;</li>
+ * <li>block directory: varint block count, then per block its offset, length and first value. It is sparse (one
+ * value per block), so a lookup binary-searches it and reads a single block.</li>
+ * </ul>
+ * Updates are log-structured: the rewritten block and a new directory are appended, then the header is pointed at
+ * the new directory. That header write is the commit point, so a torn append is never referenced. Superseded
+ * blocks and directories are dead weight until the file is compacted (rewritten with only the live blocks).
+ *
+ * <p>Values are stored in their index string form and ordered by their type: numbers numerically, booleans false
+ * first, custom types by their own comparison and everything else (strings, object/array hashes) ignoring case,
+ * with exact order as the tie-break. That is a refinement of the order {@link org.techhouse.utils.SearchUtils}
+ * binary-searches with, so blocks are read back already sorted.
+ */
+final class FieldIndexFile {
+    private FieldIndexFile() {
+    }
+
+    static final int MAGIC = 0x4C574958; // "LWIX"
+    private static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int TARGET_BLOCK_BYTES = 8 * 1024;
+    // Files with less dead weight than this are not worth compacting, whatever their dead ratio.
+    private static final long MIN_COMPACTION_DEAD_BYTES = 64 * 1024;
+
+    record Entry(String value, Set<String> ids) {
+    }
+
+    record Block(long offset, int length, String firstValue) {
+    }
+
+    /**
+     * The live blocks of a file (in value order) and the bytes they plus the directory occupy. {@code fileLength}
+     * and {@code lastModified} identify the file state it was read from, so a cached copy can be validated.
+     */
+    record Directory(List<Block> blocks, long liveBytes, long fileLength, long lastModified) {
+        boolean isCurrent(Path file) {
+            final var asFile = file.toFile();
+            return asFile.length() == fileLength && asFile.lastModified() == lastModified;
+        }
+    }
+
+    // Value order of an index type (see the class comment). The coarse order is the one SearchUtils uses; the
+    // total order breaks its ties so distinct values never compare equal.
+    record KeyOrder(Comparator<String> coarse, Comparator<String> total) {
+    }
+
+    static KeyOrder keyOrder(String typeLabel) {
+        final Comparator<String> coarse;
+        if (IndexKind.NUMBER.label().equals(typeLabel)) {
+            coarse = Comparator.comparingDouble(Double::parseDouble);
+        } else if (IndexKind.BOOLEAN.label().equals(typeLabel)) {
+            coarse = Comparator.comparing(Boolean::parseBoolean);
+        } else if (isCustomTypeLabel(typeLabel)) {
+            coarse = FieldIndexFile::compareCustom;
+        } else {
+            coarse = String.CASE_INSENSITIVE_ORDER;
+        }
+        return new KeyOrder(coarse, coarse.thenComparing(Comparator.naturalOrder()));
+    }
+
+    private static boolean isCustomTypeLabel(String typeLabel) {
+        return CustomTypeFactory.getCustomTypes().values().stream().anyMatch(c -> c.getSimpleName().equals(typeLabel));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareCustom(String a, String b) {
+        final JsonCustom first = CustomTypeFactory.getCustomTypeInstance(a);
+        final JsonCustom second = CustomTypeFactory.getCustomTypeInstance(b);
+        return first.compare(second.getCustomValue());
+    }
+
+    static boolean isBlockFormat(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            final var magic = ByteBuffer.allocate(Integer.BYTES);
+            readFully(channel, magic, 0);
+            return magic.flip().getInt() == MAGIC;
+        }
+    }
+
+    // Writes a whole file from entries already sorted in total order, through a temporary file moved over the
+    // target, and returns its directory.
+    static Directory writeAll(Path file, List<Entry> entries) throws IOException {
+        final var tmp = file.resolveSibling(file.getFileName() + ".rewrite");
+        final List<Block> blocks;
+        final long liveBytes;
+        try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_BYTES);
+            blocks = appendBlocks(channel, entries);
+            final var directoryOffset = channel.position();
+            final var directory = encodeDirectory(blocks);
+            writeFully(channel, ByteBuffer.wrap(directory), directoryOffset);
+            writeHeader(channel, directoryOffset);
+            // The new file must be whole on disk before the move makes it the index.
+            channel.force(false);
+            liveBytes = HEADER_BYTES + directory.length + blocks.stream().mapToLong(Block::length).sum();
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // ATOMIC_MOVE can fail across filesystems or on platforms that don't support it.
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return stamp(file, blocks, liveBytes);
+    }
+
+    static Directory readDirectory(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a block field index file: " + file.getFileName());
+            }
+            final var version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported field index version " + version + ": " + file.getFileName());
+            }
+            final var directoryOffset = header.getLong();
+            final var raw = ByteBuffer.allocate((int) (channel.size() - directoryOffset));
+            readFully(channel, raw, directoryOffset);
+            raw.flip();
+            final var count = DocumentCodec.readVarInt(raw);
+            final var blocks = new ArrayList<Block>(count);
+            long liveBytes = HEADER_BYTES;
+            for (var i = 0; i < count; i++) {
+                final var offset = raw.getLong();
+                final var length = raw.getInt();
+                blocks.add(new Block(offset, length, readString(raw)));
+                liveBytes += length;
+            }
+            liveBytes += raw.position();
+            return stamp(file, blocks, liveBytes);
+        }
+    }
+
+    static List<Entry> readAll(Path file, Directory directory) throws IOException {
+        return readBlocks(file, directory.blocks());
+    }
+
+    // Entries of every block that can hold a value within [lower, upper] in the coarse order (a null bound is
+    // open). The result is a contiguous, sorted slice of the index, so SearchUtils can run on it unchanged.
+    static List<Entry> readRange(Path file, Directory directory, Comparator<String> coarse, String lower,
+            String upper) throws IOException {
+        final var blocks = directory.blocks();
+        var from = 0;
+        if (lower != null) {
+            // Skip the blocks whose successor already starts strictly below the lower bound.
+            while (from + 1 < blocks.size() && coarse.compare(blocks.get(from + 1).firstValue(), lower) < 0) {
+                from++;
+            }
+        }
+        var to = blocks.size();
+        if (upper != null) {
+            while (to > from && coarse.compare(blocks.get(to - 1).firstValue(), upper) > 0) {
+                to--;
+            }
+        }
+        return readBlocks(file, blocks.subList(from, to));
+    }
+
+    /**
+     * Sets the ids of {@code value} (removing the value when {@code ids} is empty) by rewriting the one block
+     * covering it. With {@code onlyIfPresent} an absent value is left absent. Returns the new directory, or the
+     * given one when nothing changed.
+     */
+    static Directory put(Path file, Directory directory, KeyOrder order, String value, Set<String> ids,
+            boolean onlyIfPresent) throws IOException {
+        final var blocks = new ArrayList<>(directory.blocks());
+        final var blockIndex = findBlock(blocks, order.total(), value);
+        final List<Entry> entries = blockIndex < 0
+                ? new ArrayList<>()
+                : readBlocks(file, List.of(blocks.get(blockIndex)));
+        var position = 0;
+        while (position < entries.size() && order.total().compare(entries.get(position).value(), value) < 0) {
+            position++;
+        }
+        final var present = position < entries.size() && entries.get(position).value().equals(value);
+        if (present) {
+            if (ids.isEmpty()) {
+                entries.remove(position);
+            } else {
+                entries.set(position, new Entry(value, ids));
+            }
+        } else if (onlyIfPresent || ids.isEmpty()) {
+            return directory;
+        } else {
+            entries.add(position, new Entry(value, ids));
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            channel.position(channel.size());
+            final var rewritten = appendBlocks(channel, entries);
+            long liveBytes = directory.liveBytes() + rewritten.stream().mapToLong(Block::length).sum();
+            if (blockIndex < 0) {
+                blocks.addAll(0, rewritten);
+            } else {
+                liveBytes -= blocks.get(blockIndex).length();
+                blocks.remove(blockIndex);
+                blocks.addAll(blockIndex, rewritten);
+            }
+            final var directoryOffset = channel.position();
+            final var encoded = encodeDirectory(blocks);
+            writeFully(channel, ByteBuffer.wrap(encoded), directoryOffset);
+            // The directory must be on disk before the header points at it.
+            channel.force(false);
+            writeHeader(channel, directoryOffset);
+            // The header write is the commit point, so the put isn't durable until it's on disk too.
+            channel.force(false);
+            liveBytes += encoded.length - directoryBytes(directory);
+            return stamp(file, blocks, liveBytes);
+        }
+    }
+
+    static boolean needsCompaction(Directory directory) {
+        final var dead = directory.fileLength() - directory.liveBytes();
+        return dead >= MIN_COMPACTION_DEAD_BYTES && dead > directory.liveBytes();
+    }
+
+    // The block a value belongs to: the last one whose first value is not after it, or the first block for a value
+    // before every block. -1 when there are no blocks.
+    private static int findBlock(List<Block> blocks, Comparator<String> total, String value) {
+        if (blocks.isEmpty()) {
+            return -1;
+        }
+        var low = 0;
+        var high = blocks.size() - 1;
+        while (low < high) {
+            final var mid = (low + high + 1) >>> 1;
+            if (total.compare(blocks.get(mid).firstValue(), value) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // The current directory's size: whatever the live bytes hold besides the header and the blocks.
+    private static long directoryBytes(Directory directory) {
+        return directory.liveBytes() - HEADER_BYTES - directory.blocks().stream().mapToLong(Block::length).sum();
+    }
+
+    private static List<Block> appendBlocks(FileChannel channel, List<Entry> entries) throws IOException {
+        final var blocks = new ArrayList<Block>();
+        final var out = new ByteArrayOutputStream(TARGET_BLOCK_BYTES);
+        final var body = new ByteArrayOutputStream(TARGET_BLOCK_BYTES);
+        var count = 0;
+        String firstValue = null;
+        for (var entry : entries) {
+            if (count == 0) {
+                firstValue = entry.value();
+            }
+            writeString(body, entry.value());
+            DocumentCodec.writeVarInt(body, entry.ids().size());
+            for (var id : entry.ids()) {
+                writeString(body, id);
+            }
+            count++;
+            if (body.size() >= TARGET_BLOCK_BYTES) {
+                blocks.add(flushBlock(channel, out, body, count, firstValue));
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            blocks.add(flushBlock(channel, out, body, count, firstValue));
+        }
+        return blocks;
+    }
+
+    private static Block flushBlock(FileChannel channel, ByteArrayOutputStream out, ByteArrayOutputStream body,
+            int count, String firstValue) throws IOException {
+        out.reset();
+        DocumentCodec.writeVarInt(out, count);
+        body.writeTo(out);
+        body.reset();
+        final var offset = channel.position();
+        final var bytes = out.toByteArray();
+        writeFully(channel, ByteBuffer.wrap(bytes), offset);
+        channel.position(offset + bytes.length);
+        return new Block(offset, bytes.length, firstValue);
+    }
+
+    private static List<Entry> readBlocks(Path file, List<Block> blocks) throws IOException {
+        final var entries = new ArrayList<Entry>();
+        if (blocks.isEmpty()) {
+            return entries;
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (var block : blocks) {
+                final var raw = ByteBuffer.allocate(block.length());
+                readFully(channel, raw, block.offset());
+                raw.flip();
+                final var count = DocumentCodec.readVarInt(raw);
+                for (var i = 0; i < count; i++) {
+                    final var value = readString(raw);
+                    final var idCount = DocumentCodec.readVarInt(raw);
+                    final var ids = new LinkedHashSet<String>(Math.max(4, idCount * 2));
+                    for (var j = 0; j < idCount; j++) {
+                        ids.add(readString(raw));
+                    }
+                    entries.add(new Entry(value, ids));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] encodeDirectory(List<Block> blocks) {
+        final var out = new ByteArrayOutputStream();
+        DocumentCodec.writeVarInt(out, blocks.size());
+        final var fixed = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        for (var block : blocks) {
+            fixed.clear();
+            fixed.putLong(block.offset()).putInt(block.length());
+            out.write(fixed.array(), 0, fixed.position());
+            writeString(out, block.firstValue());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(FileChannel channel, long directoryOffset) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(directoryOffset);
+        writeFully(channel, header.flip(), 0);
+    }
+
+    private static Directory stamp(Path file, List<Block> blocks, long liveBytes) {
+        final var asFile = file.toFile();
+        return new Directory(List.copyOf(blocks), liveBytes, asFile.length(), asFile.lastModified());
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        DocumentCodec.writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final var length = DocumentCodec.readVarInt(in);
+        final var value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        var at = position;
+        while (buffer.hasRemaining()) {
+            final var read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException("Unexpected end of field index file");
+            }
+            at += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        var at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+}
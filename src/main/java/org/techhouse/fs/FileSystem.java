@@ -1,29 +1,47 @@
 package org.techhouse.fs;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.techhouse.bckg_ops.BackgroundTaskManager;
+import org.techhouse.bckg_ops.events.PageCompactionEvent;
+import org.techhouse.concurrency.ReadSnapshot;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
@@ -32,9 +50,11 @@ import org.techhouse.data.IndexKind;
 import org.techhouse.data.IndexedDbEntry;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.custom_types.CustomTypeFactory;
 import org.techhouse.ejson.elements.JsonCustom;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ex.DirectoryNotFoundException;
+import org.techhouse.fs.WalRecord.WalOperation;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.log.Logger;
 import org.techhouse.utils.ReflectionUtils;
@@ -42,20 +62,50 @@ import org.techhouse.utils.ReflectionUtils;
 public class FileSystem {
     private static final Logger logger = Logger.logFor(FileSystem.class);
     private final EJson eJson = IocContainer.get(EJson.class);
+    private final WriteAheadLog wal = IocContainer.get(WriteAheadLog.class);
+    private final BackgroundTaskManager taskManager = IocContainer.get(BackgroundTaskManager.class);
+    private final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
     private String dbPath;
+    // Read-only page mappings for reads by PK; null unless mmapReadsEnabled.
+    private MappedPagePool mappedPages;
 
     // Per-file read/write locks guaranteeing physical-I/O atomicity: a file's bytes are never read
     // while they are being rewritten. This is the finer-grained tier below the collection-level
     // locks in ResourceLocking, and is what makes dirty reads safe (a dirty read skips the
     // collection lock but still serializes against the in-progress physical write of each file).
     private static final Map<String, ReentrantReadWriteLock> fileLocks = new ConcurrentHashMap<>();
+    // Dead records (superseded entries, tombstones) appended to each PK index file since it was last merged; an
+    // estimate, since records left by a previous run are only found by the next full load.
+    private static final Map<String, AtomicInteger> pkIndexDeadRecords = new ConcurrentHashMap<>();
+    private static final int PK_INDEX_MERGE_THRESHOLD = 4096;
+    // Page files are append-only: an update appends the new version and blanks the old row, a delete blanks the
+    // row. These track the blanked (dead) bytes per page file, and the pages already queued for compaction.
+    private static final Map<String, AtomicLong> pageDeadBytes = new ConcurrentHashMap<>();
+    private static final Set<String> pendingPageCompactions = ConcurrentHashMap.newKeySet();
+    // Pages with less dead weight than this are not worth rewriting, whatever their dead ratio.
+    private static final long MIN_COMPACTION_DEAD_BYTES = 4096;
+    private static final long COMPACTION_RETRY_SECONDS = 5;
+    // A compacted page is written to {page}.dat.compacting, renamed to {page}.dat.compacted once complete (the
+    // commit point) and moved over the page after the PK index records its new positions.
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String COMPACTED_SUFFIX = ".compacted";
+    // Storage format and field dictionary of each collection, keyed by collection folder; loaded on first use.
+    private static final Map<String, CollectionStorage> collectionStorage = new ConcurrentHashMap<>();
+
+    // Block directory of each field index file, keyed by path; revalidated against the file before use.
+    private static final Map<String, FieldIndexFile.Directory> fieldIndexDirectories = new ConcurrentHashMap<>();
+
+    private record CollectionStorage(StorageFormat format, FieldDictionary dictionary) {
+    }
 
     private ReentrantReadWriteLock fileLock(File file) {
         return fileLocks.computeIfAbsent(file.getAbsolutePath(), _ -> new ReentrantReadWriteLock());
     }
 
     public void createBaseDbPath() {
-        dbPath = Configuration.getInstance().getFilePath();
+        final var config = Configuration.getInstance();
+        dbPath = config.getFilePath();
+        mappedPages = config.isMmapReadsEnabled() ? new MappedPagePool(config.getMmapMaxMappedPages()) : null;
         final var directory = new File(dbPath);
         if (!directory.exists()) {
             var result = directory.mkdir();
@@ -63,6 +113,64 @@ public class FileSystem {
                 throw new DirectoryNotFoundException(directory.getAbsolutePath());
             }
         }
+        deleteLeftoverSpillFiles();
+    }
+
+    // Sort runs and join partitions of a query interrupted by a crash or a shutdown are never read back, so they
+    // are dropped on startup.
+    private void deleteLeftoverSpillFiles() {
+        final var leftovers = new File(dbPath, Globals.SPILL_FOLDER_NAME)
+                .listFiles((_, name) -> name.endsWith(Globals.SORT_RUN_FILE_EXTENSION)
+                        || name.endsWith(Globals.JOIN_PARTITION_FILE_EXTENSION));
+        if (leftovers == null) {
+            return;
+        }
+        for (var leftover : leftovers) {
+            if (!leftover.delete()) {
+                logger.warning("Could not delete leftover spill file " + leftover.getName());
+            }
+        }
+    }
+
+    /**
+     * Creates a new, empty scratch file under the database path for a SORT or JOIN that spills to disk. The caller
+     * deletes the file once it is read back.
+     */
+    public File createSpillFile(String prefix, String extension) throws IOException {
+        final var folder = new File(dbPath, Globals.SPILL_FOLDER_NAME);
+        if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+            throw new DirectoryNotFoundException(folder.getAbsolutePath());
+        }
+        return File.createTempFile(prefix, extension, folder);
+    }
+
+    public BufferedWriter openSpillWriter(File file) throws IOException {
+        return new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8), Globals.BUFFER_SIZE);
+    }
+
+    // Spill files hold one document per line.
+    public void writeSpillDocument(BufferedWriter writer, JsonObject document) throws IOException {
+        eJson.toJson(document, writer);
+        writer.newLine();
+    }
+
+    // Writes one sorted run of an external SORT to a new spill file.
+    public File writeSortRun(List<JsonObject> documents) throws IOException {
+        final var file = createSpillFile("sort", Globals.SORT_RUN_FILE_EXTENSION);
+        try (var writer = openSpillWriter(file)) {
+            for (var document : documents) {
+                writeSpillDocument(writer, document);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return file;
+    }
+
+    // The documents of a spill file, read lazily in order; closing the stream closes the file.
+    public Stream<JsonObject> readSpillFile(File file) throws IOException {
+        return Files.lines(file.toPath(), StandardCharsets.UTF_8).map(line -> eJson.fromJson(line, JsonObject.class));
     }
 
     public void createAdminDatabase() throws IOException {
@@ -97,9 +205,21 @@ public class FileSystem {
         final var dbFolder = new File(dbPath + Globals.FILE_SEPARATOR + dbName);
         final var fileDeletionResult = new ArrayList<Boolean>();
         if (dbFolder.exists()) {
+            wal.close(dbName);
+            if (mappedPages != null) {
+                mappedPages.invalidateUnder(dbFolder);
+            }
+            final var dbPrefix = dbFolder.getAbsolutePath() + File.separator;
+            collectionStorage.keySet().removeIf(key -> key.startsWith(dbPrefix));
+            fieldIndexDirectories.keySet().removeIf(key -> key.startsWith(dbPrefix));
             final var dbFolders = dbFolder.listFiles();
             if (dbFolders != null) {
                 for (var collFolder : dbFolders) {
+                    if (collFolder.isFile()) {
+                        // The database's write-ahead log lives next to its collection folders.
+                        fileDeletionResult.add(collFolder.delete());
+                        continue;
+                    }
                     final var collFiles = collFolder.listFiles();
                     if (collFiles != null) {
                         for (var file : collFiles) {
@@ -126,10 +246,21 @@ public class FileSystem {
     }
 
     public boolean createCollectionFile(String dbName, String collectionName) throws IOException {
+        return createCollectionFile(dbName, collectionName, StorageFormat.JSON);
+    }
+
+    // The storage format only applies to a collection created by this call; an existing one keeps its own.
+    public boolean createCollectionFile(String dbName, String collectionName, StorageFormat format)
+            throws IOException {
         final var collectionFile = getCollectionFile(dbName, collectionName, 0);
         final var collectionFolder = new File(collectionFile.getParent());
         if (!collectionFolder.exists()) {
             if (collectionFolder.mkdir()) {
+                // Forget whatever a previous collection of the same name used.
+                collectionStorage.remove(collectionFolder.getAbsolutePath());
+                if (format != StorageFormat.JSON) {
+                    writeStorageFormat(dbName, collectionName, format);
+                }
                 return collectionFile.createNewFile();
             } else {
                 return false;
@@ -142,11 +273,108 @@ public class FileSystem {
         }
     }
 
+    public StorageFormat getStorageFormat(String dbName, String collectionName) throws IOException {
+        return storageOf(dbName, collectionName).format();
+    }
+
+    private CollectionStorage storageOf(String dbName, String collectionName) throws IOException {
+        final var folder = getCollectionFolder(dbName, collectionName);
+        final var key = folder.getAbsolutePath();
+        final var known = collectionStorage.get(key);
+        if (known != null) {
+            return known;
+        }
+        synchronized (collectionStorage) {
+            final var loaded = collectionStorage.get(key);
+            if (loaded != null) {
+                return loaded;
+            }
+            final var formatFile = getCollectionMetadataFile(dbName, collectionName,
+                    Globals.STORAGE_FORMAT_FILE_EXTENSION);
+            final var format = formatFile.exists()
+                    ? StorageFormat.valueOf(Files.readString(formatFile.toPath(), StandardCharsets.UTF_8).trim())
+                    : StorageFormat.JSON;
+            final var dictionary = FieldDictionary.load(
+                    getCollectionMetadataFile(dbName, collectionName, Globals.FIELD_DICTIONARY_FILE_EXTENSION)
+                            .toPath());
+            final var storage = new CollectionStorage(format, dictionary);
+            // A collection whose folder is gone is not remembered, so re-creating it starts from its new files.
+            if (folder.exists()) {
+                collectionStorage.put(key, storage);
+            }
+            return storage;
+        }
+    }
+
+    private void writeStorageFormat(String dbName, String collectionName, StorageFormat format) throws IOException {
+        final var formatFile = getCollectionMetadataFile(dbName, collectionName,
+                Globals.STORAGE_FORMAT_FILE_EXTENSION);
+        final var tmp = formatFile.toPath().resolveSibling(formatFile.getName() + COMPACTING_SUFFIX);
+        writeAndForce(tmp, format.name().getBytes(StandardCharsets.UTF_8));
+        moveIntoPlace(tmp, formatFile.toPath());
+        synchronized (collectionStorage) {
+            final var key = getCollectionFolder(dbName, collectionName).getAbsolutePath();
+            final var current = collectionStorage.get(key);
+            if (current != null) {
+                collectionStorage.put(key, new CollectionStorage(format, current.dictionary()));
+            }
+        }
+    }
+
+    private File getCollectionMetadataFile(String dbName, String collectionName, String extension) {
+        return new File(getCollectionFolder(dbName, collectionName), collectionName + extension);
+    }
+
+    // The page row of a document: its JSON text (the string also written to the write-ahead log) or, for a
+    // binary collection, its DocumentCodec encoding. Both end with a line break.
+    private byte[] toRow(String dbName, String collectionName, JsonObject data, String serialized)
+            throws IOException {
+        final var storage = storageOf(dbName, collectionName);
+        if (storage.format() == StorageFormat.BINARY) {
+            return DocumentCodec.encodeRow(data, storage.dictionary());
+        }
+        return (serialized + Globals.NEWLINE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Decodes a row of either format; the row identifies its own encoding.
+    private JsonObject decodeRow(String dbName, String collectionName, ByteBuffer row) throws IOException {
+        if (DocumentCodec.isBinaryRow(row)) {
+            return DocumentCodec.decodeRow(row, storageOf(dbName, collectionName).dictionary());
+        }
+        return eJson.fromJson(row, JsonObject.class);
+    }
+
+    private static boolean isBlankRow(ByteBuffer row) {
+        for (var i = row.position(); i < row.limit(); i++) {
+            final var b = row.get(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlankRow(byte[] page, int start, int end) {
+        for (var i = start; i < end; i++) {
+            final var b = page[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public boolean deleteCollectionFiles(String dbName, String collectionName) {
         final var collectionFile = getCollectionFile(dbName, collectionName, 0);
         final var collectionFolder = new File(collectionFile.getParent());
         final var fileDeletionResult = new ArrayList<Boolean>();
         if (collectionFolder.exists()) {
+            if (mappedPages != null) {
+                mappedPages.invalidateUnder(collectionFolder);
+            }
+            collectionStorage.remove(collectionFolder.getAbsolutePath());
+            final var collectionPrefix = collectionFolder.getAbsolutePath() + File.separator;
+            fieldIndexDirectories.keySet().removeIf(key -> key.startsWith(collectionPrefix));
             for (var file : Objects.requireNonNull(collectionFolder.listFiles())) {
                 fileDeletionResult.add(file.delete());
             }
@@ -162,13 +390,22 @@ public class FileSystem {
                 + Globals.INDEX_FILE_NAME_SEPARATOR + indexType + Globals.INDEX_FILE_EXTENSION);
     }
 
+    private File getPkIndexFile(String dbName, String collectionName) {
+        return getIndexFile(dbName, collectionName, Globals.PK_FIELD, Globals.PK_FIELD_TYPE);
+    }
+
     public DbEntry getById(PkIndexEntry pkIndexEntry) throws Exception {
         final var file = getCollectionFile(pkIndexEntry.getDatabaseName(), pkIndexEntry.getCollectionName(),
                 pkIndexEntry.getPage());
         final var lock = fileLock(file).readLock();
         lock.lock();
-        try (var reader = new RandomAccessFile(file, Globals.R_PERMISSIONS)) {
-            return readEntryFromOpenFile(reader, pkIndexEntry);
+        try {
+            if (mappedPages != null) {
+                return readEntryFromMappedPage(file, pkIndexEntry);
+            }
+            try (var reader = new RandomAccessFile(file, Globals.R_PERMISSIONS)) {
+                return readEntryFromOpenFile(reader, pkIndexEntry);
+            }
         } finally {
             lock.unlock();
         }
@@ -179,8 +416,21 @@ public class FileSystem {
         final var entryLength = (int) pkIndexEntry.getLength();
         byte[] buffer = new byte[entryLength];
         reader.readFully(buffer, 0, entryLength);
-        final var strEntry = new String(buffer);
-        final var jsonObject = eJson.fromJson(strEntry, JsonObject.class);
+        return toDbEntry(ByteBuffer.wrap(buffer), pkIndexEntry);
+    }
+
+    // Decodes the row straight out of the page mapping: no file open/close and no intermediate byte[] per read.
+    private DbEntry readEntryFromMappedPage(File file, PkIndexEntry pkIndexEntry) throws IOException {
+        final var row = mappedPages.slice(file, pkIndexEntry.getPosition(), (int) pkIndexEntry.getLength());
+        return toDbEntry(row, pkIndexEntry);
+    }
+
+    // Null for a blanked row: a snapshot read can hold the position of a version retired since (see ReadSnapshot).
+    private DbEntry toDbEntry(ByteBuffer row, PkIndexEntry pkIndexEntry) throws IOException {
+        if (isBlankRow(row)) {
+            return null;
+        }
+        final var jsonObject = decodeRow(pkIndexEntry.getDatabaseName(), pkIndexEntry.getCollectionName(), row);
         final var entry = new DbEntry();
         entry.setDatabaseName(pkIndexEntry.getDatabaseName());
         entry.setCollectionName(pkIndexEntry.getCollectionName());
@@ -189,6 +439,11 @@ public class FileSystem {
         return entry;
     }
 
+    // Decodes a row kept by a snapshot (see SnapshotDelta#rowAt).
+    public DbEntry decodeEntry(String dbName, String collectionName, byte[] row) throws IOException {
+        return DbEntry.fromJsonObject(dbName, collectionName, decodeRow(dbName, collectionName, ByteBuffer.wrap(row)));
+    }
+
     public List<DbEntry> getByIndexEntries(List<PkIndexEntry> entries) throws IOException {
         final var result = new ArrayList<DbEntry>();
         if (entries == null || entries.isEmpty()) {
@@ -203,9 +458,17 @@ public class FileSystem {
                     .sorted(Comparator.comparingLong(PkIndexEntry::getPosition)).toList();
             final var lock = fileLock(file).readLock();
             lock.lock();
-            try (var reader = new RandomAccessFile(file, Globals.R_PERMISSIONS)) {
-                for (var pkEntry : pageEntries) {
-                    result.add(readEntryFromOpenFile(reader, pkEntry));
+            try {
+                if (mappedPages != null) {
+                    for (var pkEntry : pageEntries) {
+                        addIfPresent(result, readEntryFromMappedPage(file, pkEntry));
+                    }
+                    continue;
+                }
+                try (var reader = new RandomAccessFile(file, Globals.R_PERMISSIONS)) {
+                    for (var pkEntry : pageEntries) {
+                        addIfPresent(result, readEntryFromOpenFile(reader, pkEntry));
+                    }
                 }
             } finally {
                 lock.unlock();
@@ -214,8 +477,29 @@ public class FileSystem {
         return result;
     }
 
+    private static void addIfPresent(List<DbEntry> result, DbEntry entry) {
+        if (entry != null) {
+            result.add(entry);
+        }
+    }
+
     public <T extends DbEntry> List<IndexedDbEntry> bulkInsertIntoCollection(final String dbName, final String collName,
             final List<T> entries) throws IOException {
+        // Serialize once: the same string is logged and appended to the page.
+        final var serialized = new IdentityHashMap<DbEntry, String>(entries.size());
+        final var logLines = new ArrayList<String>(entries.size());
+        for (var entry : entries) {
+            final var strData = entry.toFileEntry();
+            serialized.put(entry, strData);
+            logLines.add(WalRecord.toLogLine(WalOperation.SAVE, collName, entry.get_id(), entry.getPage(), strData));
+        }
+        try (var ticket = wal.log(dbName, logLines)) {
+            return applyBulkInsert(dbName, collName, entries, serialized, ticket);
+        }
+    }
+
+    private <T extends DbEntry> List<IndexedDbEntry> applyBulkInsert(String dbName, String collName, List<T> entries,
+            Map<DbEntry, String> serialized, WriteAheadLog.Ticket ticket) throws IOException {
         final var indexEntries = new ArrayList<IndexedDbEntry>();
         final var pkEntriesToIndex = new ArrayList<PkIndexEntry>();
         final var entrySet = entries.stream().collect(Collectors.groupingBy(DbEntry::getPage)).entrySet();
@@ -223,16 +507,17 @@ public class FileSystem {
             final var page = groupedEntry.getKey();
             final var pageEntries = groupedEntry.getValue();
             final var file = getCollectionFile(dbName, collName, page);
+            ticket.touched(file);
             final var lock = fileLock(file).writeLock();
             lock.lock();
-            try (var writer = new BufferedWriter(new FileWriter(file, true), Globals.BUFFER_SIZE)) {
+            try (var writer = new BufferedOutputStream(new FileOutputStream(file, true), Globals.BUFFER_SIZE)) {
                 var currentOffset = file.length();
                 for (var entry : pageEntries) {
-                    final var strData = entry.toFileEntry() + Globals.NEWLINE;
-                    final var bytes = strData.getBytes(StandardCharsets.UTF_8);
+                    final var bytes = toRow(dbName, collName, entry.getData(), serialized.get(entry));
                     final var length = bytes.length;
-                    writer.append(strData);
+                    writer.write(bytes);
                     final var pkEntry = new PkIndexEntry(dbName, collName, entry.get_id(), currentOffset, length, page);
+                    snapshots.created(dbName, collName, entry.get_id(), page, currentOffset);
                     pkEntriesToIndex.add(pkEntry);
                     final var indexedEntry = new IndexedDbEntry();
                     indexedEntry.setIndex(pkEntry);
@@ -247,6 +532,7 @@ public class FileSystem {
                 lock.unlock();
             }
         }
+        ticket.touched(getPkIndexFile(dbName, collName));
         bulkIndexNewPKValues(dbName, collName, pkEntriesToIndex);
         return indexEntries;
     }
@@ -266,19 +552,31 @@ public class FileSystem {
     }
 
     public PkIndexEntry insertIntoCollection(DbEntry entry) throws IOException {
+        final var strData = entry.toFileEntry();
+        final var logLine = WalRecord.toLogLine(WalOperation.SAVE, entry.getCollectionName(), entry.get_id(),
+                entry.getPage(), strData);
+        try (var ticket = wal.log(entry.getDatabaseName(), List.of(logLine))) {
+            return applyInsert(entry, strData, ticket);
+        }
+    }
+
+    private PkIndexEntry applyInsert(DbEntry entry, String serialized, WriteAheadLog.Ticket ticket)
+            throws IOException {
         final var dbName = entry.getDatabaseName();
         final var collName = entry.getCollectionName();
         final var page = entry.getPage();
         final var file = getCollectionFile(dbName, collName, page);
+        ticket.touched(file);
+        ticket.touched(getPkIndexFile(dbName, collName));
         final var lock = fileLock(file).writeLock();
         lock.lock();
-        try (var writer = new BufferedWriter(new FileWriter(file, true), Globals.BUFFER_SIZE)) {
-            final var strData = entry.toFileEntry() + Globals.NEWLINE;
-            final var bytes = strData.getBytes(StandardCharsets.UTF_8);
+        try (var writer = new FileOutputStream(file, true)) {
+            final var bytes = toRow(dbName, collName, entry.getData(), serialized);
             final var length = bytes.length;
             var totalFileLength = file.length();
-            writer.append(strData);
+            writer.write(bytes);
             final var entryId = entry.get_id();
+            snapshots.created(dbName, collName, entryId, page, totalFileLength);
             return indexNewPKValue(entry.getDatabaseName(), entry.getCollectionName(), entryId, totalFileLength, length,
                     page);
         } finally {
@@ -302,253 +600,585 @@ public class FileSystem {
     }
 
     /**
-     * Deletes the entry from its page, compacting the survivors. Returns the {@link PkCompaction}
-     * describing the shift (so the caller can fix the in-memory PK positions via
-     * {@code Cache.shiftPkPositionsAfterCompaction}), or {@code null} when no survivor moved.
+     * Deletes the entry by blanking its row in place (see {@link #blankRow}) and appending a tombstone to the PK
+     * index. No other row moves, so the cost depends only on the entry's own length; the dead bytes are
+     * reclaimed later by {@link #compactPage}.
      */
-    public PkCompaction deleteFromCollection(PkIndexEntry pkIndexEntry) {
+    public void deleteFromCollection(PkIndexEntry pkIndexEntry) {
+        final var logLine = WalRecord.toLogLine(WalOperation.DELETE, pkIndexEntry.getCollectionName(),
+                pkIndexEntry.getValue(), pkIndexEntry.getPage(), null);
+        try (var ticket = wal.log(pkIndexEntry.getDatabaseName(), List.of(logLine))) {
+            applyDelete(pkIndexEntry, ticket);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void applyDelete(PkIndexEntry pkIndexEntry, WriteAheadLog.Ticket ticket) throws IOException {
         final var dbName = pkIndexEntry.getDatabaseName();
         final var collName = pkIndexEntry.getCollectionName();
         final var page = pkIndexEntry.getPage();
         final var file = getCollectionFile(dbName, collName, page);
+        ticket.touched(file);
+        ticket.touched(getPkIndexFile(dbName, collName));
         final var lock = fileLock(file).writeLock();
         lock.lock();
+        long deadBytes;
         try (var writer = new RandomAccessFile(file, Globals.RW_PERMISSIONS)) {
-            final long totalFileLength = file.length();
-            final var compacted = shiftOtherEntriesToStart(writer, pkIndexEntry, totalFileLength);
-            writer.setLength(totalFileLength - pkIndexEntry.getLength());
-            deleteIndexValue(pkIndexEntry);
-            return compacted ? compactionFor(pkIndexEntry) : null;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            final var totalFileLength = file.length();
+            retainRow(writer, pkIndexEntry, totalFileLength);
+            deadBytes = blankRow(writer, pkIndexEntry, totalFileLength);
+            // Superseding the entry with a tombstone leaves two dead records.
+            appendPkIndexRecords(dbName, collName,
+                    List.of(PkIndexLog.tombstoneLine(pkIndexEntry.getValue(), pkIndexEntry.getPage())), 2);
         } finally {
             lock.unlock();
         }
+        addPageDeadBytes(dbName, collName, page, file, deadBytes);
     }
 
-    private static PkCompaction compactionFor(PkIndexEntry pkIndexEntry) {
-        return new PkCompaction(pkIndexEntry.getDatabaseName(), pkIndexEntry.getCollectionName(),
-                pkIndexEntry.getPage(), pkIndexEntry.getPosition(), pkIndexEntry.getLength());
-    }
-
-    private static void shiftIfAfter(PkIndexEntry entry, PkCompaction compaction) {
-        if (entry.getPage() == compaction.page() && entry.getPosition() > compaction.removedPosition()) {
-            entry.setPosition(entry.getPosition() - compaction.removedLength());
+    // Records the row about to be blanked for the snapshots reading the collection (see SnapshotManager); only a
+    // write section of the collection (see ResourceLocking) can have any.
+    private void retainRow(RandomAccessFile file, PkIndexEntry pkIndexEntry, long totalFileLength)
+            throws IOException {
+        final var dbName = pkIndexEntry.getDatabaseName();
+        final var collName = pkIndexEntry.getCollectionName();
+        final var length = (int) pkIndexEntry.getLength();
+        if (length <= 0 || pkIndexEntry.getPosition() + length > totalFileLength
+                || !snapshots.isWriting(dbName, collName)) {
+            return;
         }
-    }
-
-    private void deleteIndexValue(PkIndexEntry pkIndexEntry) throws IOException {
-        internalUpdatePKIndex(pkIndexEntry.getDatabaseName(), pkIndexEntry.getCollectionName(), pkIndexEntry.getValue(),
-                null);
+        final var row = new byte[length];
+        file.seek(pkIndexEntry.getPosition());
+        file.readFully(row);
+        snapshots.retired(dbName, collName, pkIndexEntry.getValue(), pkIndexEntry.getPage(), pkIndexEntry.getPosition(),
+                row);
     }
 
     /**
-     * Shifts the entries after {@code pkIndexEntry} toward the start of the page, overwriting its
-     * slot. Returns {@code true} when entries were actually moved (so the caller must fix the
-     * in-memory PK positions of the survivors), {@code false} when there was nothing to shift — the
-     * removed entry was the last one, or its position is already past the end of the file (a stale
-     * position from a concurrent compaction/drop), in which case allocating the buffer is skipped.
+     * Overwrites the row of {@code pkIndexEntry} with spaces, keeping its line break, so the row reads as a blank
+     * line: the in-place tombstone of a deleted or superseded version, which full-page reads skip. Returns the
+     * number of bytes blanked, {@code 0} when the position lies past the end of the file (a stale position, in
+     * which case nothing is written).
      */
-    private boolean shiftOtherEntriesToStart(RandomAccessFile writer, PkIndexEntry pkIndexEntry, long totalFileLength)
+    private static long blankRow(RandomAccessFile writer, PkIndexEntry pkIndexEntry, long totalFileLength)
             throws IOException {
-        final int otherEntriesLength = (int) (totalFileLength - pkIndexEntry.getPosition() - pkIndexEntry.getLength());
-        if (otherEntriesLength <= 0) {
-            return false;
+        final var length = (int) pkIndexEntry.getLength();
+        if (length <= 0 || pkIndexEntry.getPosition() + length > totalFileLength) {
+            return 0;
+        }
+        final var blank = new byte[length];
+        Arrays.fill(blank, (byte) ' ');
+        final var newline = Globals.NEWLINE.getBytes(StandardCharsets.UTF_8);
+        if (length >= newline.length) {
+            System.arraycopy(newline, 0, blank, length - newline.length, newline.length);
         }
-        writer.seek(pkIndexEntry.getPosition() + pkIndexEntry.getLength());
-        byte[] buffer = new byte[otherEntriesLength];
-        writer.readFully(buffer, 0, otherEntriesLength);
         writer.seek(pkIndexEntry.getPosition());
-        writer.write(buffer, 0, otherEntriesLength);
-        return true;
+        writer.write(blank, 0, length);
+        return length;
     }
 
     /**
-     * Updates many entries by delegating to the single-entry {@link #updateFromCollection}, which keeps
-     * the page file and PK index file correct for each row. Earlier updates shift the file positions of
-     * later same-page entries, so this drives each {@code updateFromCollection} with a private,
-     * progressively-adjusted copy of the target's index entry (never mutating the caller's cached
-     * {@link PkIndexEntry} objects). The returned {@link BulkUpdateResult} carries the new entries plus
-     * the ordered compactions the caller must apply to fix the in-memory positions of the surviving
-     * (non-updated) entries.
+     * Updates many entries with the same append-only scheme as {@link #updateFromCollection}; the whole batch is
+     * logged as one group first. Per page, the old rows are blanked and the new versions are appended with a
+     * single write, and the PK index gets one batch of records. Returns the updated entries (in input order) with
+     * their new {@link PkIndexEntry}; the caller's cached index entries are never mutated.
      */
-    public BulkUpdateResult bulkUpdateFromCollection(String dbName, String collName, List<IndexedDbEntry> entries)
+    public List<IndexedDbEntry> bulkUpdateFromCollection(String dbName, String collName, List<IndexedDbEntry> entries)
             throws IOException {
-        final var updated = new ArrayList<IndexedDbEntry>();
-        final var compactions = new ArrayList<PkCompaction>();
-        // Private copies of the target index entries; their positions are adjusted as earlier updates
-        // compact the page, so each delegated update sees the current on-disk position.
-        final var working = new ArrayList<PkIndexEntry>(entries.size());
+        final var serialized = new ArrayList<String>(entries.size());
+        final var logLines = new ArrayList<String>(entries.size());
         for (final var entry : entries) {
-            final var idx = entry.getIndex();
-            working.add(new PkIndexEntry(idx.getDatabaseName(), idx.getCollectionName(), idx.getValue(),
-                    idx.getPosition(), idx.getLength(), idx.getPage()));
+            final var strData = entry.toFileEntry();
+            serialized.add(strData);
+            logLines.add(WalRecord.toLogLine(WalOperation.SAVE, collName, entry.get_id(), entry.getIndex().getPage(),
+                    strData));
+        }
+        try (var ticket = wal.log(dbName, logLines)) {
+            return applyBulkUpdate(dbName, collName, entries, serialized, ticket);
         }
+    }
+
+    private List<IndexedDbEntry> applyBulkUpdate(String dbName, String collName, List<IndexedDbEntry> entries,
+            List<String> serialized, WriteAheadLog.Ticket ticket) throws IOException {
+        final var updated = new IndexedDbEntry[entries.size()];
+        final var byPage = new LinkedHashMap<Long, List<Integer>>();
         for (int i = 0; i < entries.size(); i++) {
-            final var entry = entries.get(i);
-            final var target = working.get(i);
-            final var result = updateFromCollection(entry.toDbEntry(), target);
-            final var updatedIndexEntry = new IndexedDbEntry();
-            updatedIndexEntry.setIndex(result.indexEntry());
-            updatedIndexEntry.set_id(entry.get_id());
-            updatedIndexEntry.setCollectionName(collName);
-            updatedIndexEntry.setDatabaseName(dbName);
-            updatedIndexEntry.setData(entry.getData());
-            updatedIndexEntry.setPreviousByteSize(target.getLength());
-            updated.add(updatedIndexEntry);
-            final var compaction = result.compaction();
-            if (compaction != null) {
-                compactions.add(compaction);
-                // This update relocated the row to the end and shifted later same-page entries toward
-                // the start. Apply the same shift to the still-to-be-processed working copies (so the
-                // next update sees the current on-disk position) and to the already-relocated entries
-                // from earlier iterations (so their reported new positions stay correct), but not to
-                // the row we just relocated.
-                for (int j = i + 1; j < working.size(); j++) {
-                    shiftIfAfter(working.get(j), compaction);
-                }
-                for (int k = 0; k < i; k++) {
-                    shiftIfAfter(updated.get(k).getIndex(), compaction);
+            byPage.computeIfAbsent(entries.get(i).getIndex().getPage(), _ -> new ArrayList<>()).add(i);
+        }
+        ticket.touched(getPkIndexFile(dbName, collName));
+        for (var pageGroup : byPage.entrySet()) {
+            final var page = pageGroup.getKey();
+            final var file = getCollectionFile(dbName, collName, page);
+            ticket.touched(file);
+            final var pkLines = new ArrayList<String>(pageGroup.getValue().size());
+            final var lock = fileLock(file).writeLock();
+            lock.lock();
+            long deadBytes = 0;
+            try (var writer = new RandomAccessFile(file, Globals.RW_PERMISSIONS)) {
+                final long totalFileLength = file.length();
+                final var appended = new ByteArrayOutputStream();
+                for (var i : pageGroup.getValue()) {
+                    final var entry = entries.get(i);
+                    final var target = entry.getIndex();
+                    retainRow(writer, target, totalFileLength);
+                    deadBytes += blankRow(writer, target, totalFileLength);
+                    final var bytes = toRow(dbName, collName, entry.getData(), serialized.get(i));
+                    final var pkEntry = new PkIndexEntry(dbName, collName, entry.get_id(),
+                            totalFileLength + appended.size(), bytes.length, page);
+                    snapshots.created(dbName, collName, entry.get_id(), page, pkEntry.getPosition());
+                    appended.write(bytes, 0, bytes.length);
+                    pkLines.add(pkEntry.toFileEntry());
+                    final var updatedIndexEntry = new IndexedDbEntry();
+                    updatedIndexEntry.setIndex(pkEntry);
+                    updatedIndexEntry.set_id(entry.get_id());
+                    updatedIndexEntry.setCollectionName(collName);
+                    updatedIndexEntry.setDatabaseName(dbName);
+                    updatedIndexEntry.setData(entry.getData());
+                    updatedIndexEntry.setPreviousByteSize(target.getLength());
+                    updated[i] = updatedIndexEntry;
                 }
+                writer.seek(totalFileLength);
+                writer.write(appended.toByteArray());
+                appendPkIndexRecords(dbName, collName, pkLines, pkLines.size());
+            } finally {
+                lock.unlock();
             }
+            addPageDeadBytes(dbName, collName, page, file, deadBytes);
         }
-        return new BulkUpdateResult(updated, compactions);
+        return Arrays.asList(updated);
     }
 
     /**
-     * Updates the entry in place, relocating it to the end of its page and compacting the survivors.
-     * Returns the new {@link PkIndexEntry} together with the {@link PkCompaction} the caller must
-     * apply to the in-memory PK positions (or a null compaction when no survivor moved).
+     * Updates the entry by appending the new version to the end of its page and blanking the old row in place
+     * (see {@link #blankRow}), then appending the new location to the PK index. No other row moves, so the cost
+     * depends only on the entry's own length. Returns the new {@link PkIndexEntry}.
      */
-    public UpdateResult updateFromCollection(DbEntry entry, PkIndexEntry pkIndexEntry) throws IOException {
+    public PkIndexEntry updateFromCollection(DbEntry entry, PkIndexEntry pkIndexEntry) throws IOException {
+        final var strData = entry.toFileEntry();
+        final var logLine = WalRecord.toLogLine(WalOperation.SAVE, entry.getCollectionName(), entry.get_id(),
+                entry.getPage(), strData);
+        try (var ticket = wal.log(entry.getDatabaseName(), List.of(logLine))) {
+            return applyUpdate(entry, pkIndexEntry, strData, ticket);
+        }
+    }
+
+    private PkIndexEntry applyUpdate(DbEntry entry, PkIndexEntry pkIndexEntry, String serialized,
+            WriteAheadLog.Ticket ticket) throws IOException {
         final var dbName = entry.getDatabaseName();
         final var collName = entry.getCollectionName();
         final var page = entry.getPage();
         final var file = getCollectionFile(dbName, collName, page);
+        ticket.touched(file);
+        ticket.touched(getPkIndexFile(dbName, collName));
         final var lock = fileLock(file).writeLock();
         lock.lock();
+        final PkIndexEntry updated;
+        long deadBytes;
         try (var writer = new RandomAccessFile(file, Globals.RW_PERMISSIONS)) {
             final long totalFileLength = file.length();
-            final var compacted = shiftOtherEntriesToStart(writer, pkIndexEntry, totalFileLength);
-            writer.seek(totalFileLength - pkIndexEntry.getLength());
-            final var strData = entry.toFileEntry() + Globals.NEWLINE;
-            final var bytes = strData.getBytes(StandardCharsets.UTF_8);
-            final var length = bytes.length;
-            writer.write(bytes, 0, length);
-            writer.setLength(totalFileLength - pkIndexEntry.getLength() + length);
+            retainRow(writer, pkIndexEntry, totalFileLength);
+            deadBytes = blankRow(writer, pkIndexEntry, totalFileLength);
+            final var bytes = toRow(dbName, collName, entry.getData(), serialized);
+            writer.seek(totalFileLength);
+            writer.write(bytes, 0, bytes.length);
+            snapshots.created(dbName, collName, entry.get_id(), page, totalFileLength);
             entry.setPreviousByteSize(pkIndexEntry.getLength());
-            final var updated = updateIndexValues(entry.getDatabaseName(), entry.getCollectionName(), entry.get_id(),
-                    totalFileLength, length, page);
-            return new UpdateResult(updated, compacted ? compactionFor(pkIndexEntry) : null);
+            updated = new PkIndexEntry(dbName, collName, entry.get_id(), totalFileLength, bytes.length, page);
+            appendPkIndexRecords(dbName, collName, List.of(updated.toFileEntry()), 1);
         } finally {
             lock.unlock();
         }
+        addPageDeadBytes(dbName, collName, page, file, deadBytes);
+        return updated;
     }
 
-    private PkIndexEntry updateIndexValues(String dbName, String collectionName, String value, long position,
-            int length, long page) throws IOException {
-        final var newIndexEntry = new PkIndexEntry(dbName, collectionName, value, position, length, page);
-        internalUpdatePKIndex(dbName, collectionName, value, newIndexEntry);
-        return newIndexEntry;
+    /**
+     * Records updates or deletes in the log-structured PK index (see {@link PkIndexLog}): the new locations or
+     * tombstones of the ids are appended, so the cost no longer depends on the size of the collection. The file
+     * is merged back into a sorted run once enough dead records (the {@code deadRecords} these lines leave
+     * behind, superseded entries and tombstones) pile up.
+     */
+    private void appendPkIndexRecords(String dbName, String collectionName, List<String> lines, int deadRecords)
+            throws IOException {
+        final var indexFile = getPkIndexFile(dbName, collectionName);
+        final var lock = fileLock(indexFile).writeLock();
+        lock.lock();
+        try {
+            try (var writer = new BufferedWriter(new FileWriter(indexFile, true), Globals.BUFFER_SIZE)) {
+                for (var line : lines) {
+                    writer.append(line);
+                    writer.newLine();
+                }
+            }
+            addPkIndexDeadRecords(dbName, collectionName, indexFile, deadRecords);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void internalUpdatePKIndex(String dbName, String collectionName, String value, PkIndexEntry newPkIndexEntry)
+    // Called with the PK index write lock held.
+    private void addPkIndexDeadRecords(String dbName, String collectionName, File indexFile, int deadRecords)
             throws IOException {
-        final var indexFile = getIndexFile(dbName, collectionName, Globals.PK_FIELD, Globals.PK_FIELD_TYPE);
-        final var lock = fileLock(indexFile).writeLock();
+        final var totalDeadRecords = pkIndexDeadRecords
+                .computeIfAbsent(indexFile.getAbsolutePath(), _ -> new AtomicInteger())
+                .addAndGet(deadRecords);
+        if (totalDeadRecords >= PK_INDEX_MERGE_THRESHOLD) {
+            mergePkIndex(dbName, collectionName);
+        }
+    }
+
+    private void addPageDeadBytes(String dbName, String collName, long page, File file, long deadBytes) {
+        if (deadBytes <= 0) {
+            return;
+        }
+        final var key = file.getAbsolutePath();
+        final var total = pageDeadBytes.computeIfAbsent(key, _ -> new AtomicLong()).addAndGet(deadBytes);
+        scheduleCompactionIfNeeded(dbName, collName, page, key, total, file.length());
+    }
+
+    // Queues a background compaction of the page once its dead bytes cross pageCompactionDeadPercent of the file;
+    // at most one compaction per page is queued at a time.
+    private void scheduleCompactionIfNeeded(String dbName, String collName, long page, String key, long deadBytes,
+            long fileLength) {
+        final var percent = Configuration.getInstance().getPageCompactionDeadPercent();
+        if (deadBytes >= MIN_COMPACTION_DEAD_BYTES && deadBytes * 100 >= fileLength * percent
+                && pendingPageCompactions.add(key)) {
+            taskManager.submitBackgroundTask(new PageCompactionEvent(dbName, collName, page));
+        }
+    }
+
+    // A compaction given up while snapshots read the collection: queued again after a while rather than on the
+    // next write to the page, which may never come. The page stays pending until then, so writes do not queue it
+    // twice.
+    public void retryPageCompaction(String dbName, String collName, long page) {
+        CompletableFuture.delayedExecutor(COMPACTION_RETRY_SECONDS, TimeUnit.SECONDS)
+                .execute(() -> taskManager.submitBackgroundTask(new PageCompactionEvent(dbName, collName, page)));
+    }
+
+    /**
+     * Rewrites the page with only its live rows (the ones the PK index points to), dropping blanked and orphaned
+     * rows, and records the moved rows' new positions in the PK index. The caller must hold the collection write
+     * lock and apply the returned {@link PageCompaction} to the cached PK entries; returns {@code null} when the
+     * page was not rewritten.
+     *
+     * <p>Crash safety: the compacted page only replaces the original after it is complete and the PK index records
+     * pointing into it are durable. A leftover {@code .compacting} file was never committed and is discarded, a
+     * leftover {@code .compacted} file is finished by {@link #recoverInterruptedPageCompactions}.
+     */
+    public PageCompaction compactPage(String dbName, String collName, long page) throws IOException {
+        final var file = getCollectionFile(dbName, collName, page);
+        final var key = file.getAbsolutePath();
+        pendingPageCompactions.remove(key);
+        final var lock = fileLock(file).writeLock();
         lock.lock();
         try {
-            final List<String> existingLines = indexFile.exists() ? Files.readAllLines(indexFile.toPath()) : List.of();
-            // Parse every entry, pulling out the one being updated/deleted. The remaining entries
-            // ("others") have their on-disk positions corrected per page (see reindexPks); the file is
-            // rewritten in full because the entries needing a shift are not contiguous in the
-            // id-sorted file (a same-page, later-positioned row can sort before the updated id).
-            final var others = new ArrayList<PkIndexEntry>(existingLines.size());
-            PkIndexEntry oldEntry = null;
-            for (final var line : existingLines) {
-                if (line.isBlank()) {
-                    continue;
+            if (!file.exists()) {
+                pageDeadBytes.remove(key);
+                return null;
+            }
+            final var bytes = Files.readAllBytes(file.toPath());
+            final var live = new ArrayList<PkIndexEntry>();
+            for (var entry : replayPkIndex(dbName, collName)) {
+                if (entry.getPage() == page) {
+                    if (entry.getPosition() + entry.getLength() > bytes.length) {
+                        logger.warning("Skipping compaction of " + file.getName() + ": the PK entry of '"
+                                + entry.getValue() + "' points past the end of the page");
+                        return null;
+                    }
+                    live.add(entry);
                 }
-                final var entry = PkIndexEntry.fromIndexFileEntry(dbName, collectionName, line);
-                if (entry.getValue().equals(value)) {
-                    oldEntry = entry;
+            }
+            live.sort(Comparator.comparingLong(PkIndexEntry::getPosition));
+            final var compacted = new ByteArrayOutputStream(bytes.length);
+            final var newPositions = new HashMap<String, Long>();
+            final var pkLines = new ArrayList<String>();
+            for (var entry : live) {
+                final long newPosition = compacted.size();
+                compacted.write(bytes, (int) entry.getPosition(), (int) entry.getLength());
+                if (newPosition != entry.getPosition()) {
+                    newPositions.put(entry.getValue(), newPosition);
+                    pkLines.add(new PkIndexEntry(dbName, collName, entry.getValue(), newPosition, entry.getLength(),
+                            page).toFileEntry());
+                }
+            }
+            pageDeadBytes.remove(key);
+            if (compacted.size() == bytes.length) {
+                return null;
+            }
+            replacePage(dbName, collName, file, compacted.toByteArray(), pkLines);
+            logger.info("Compacted page " + file.getName() + ": " + bytes.length + " -> " + compacted.size()
+                    + " bytes");
+            return new PageCompaction(dbName, collName, page, newPositions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Swaps a page file for {@code newBytes}, whose rows moved as recorded by {@code pkLines}. Crash-safe: the new
+     * page is forced to a {@code .compacting} file and renamed to {@code .compacted} (the commit point), the PK
+     * records are forced, and only then is the page replaced; {@link #recoverInterruptedPageCompactions} finishes
+     * the swap from the {@code .compacted} file alone. The caller holds the page's write lock.
+     */
+    private void replacePage(String dbName, String collName, File file, byte[] newBytes, List<String> pkLines)
+            throws IOException {
+        final var compacting = file.toPath().resolveSibling(file.getName() + COMPACTING_SUFFIX);
+        final var committed = file.toPath().resolveSibling(file.getName() + COMPACTED_SUFFIX);
+        writeAndForce(compacting, newBytes);
+        Files.move(compacting, committed, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        appendDurablePkIndexRecords(dbName, collName, pkLines);
+        moveIntoPlace(committed, file.toPath());
+        if (mappedPages != null) {
+            mappedPages.invalidate(file);
+        }
+    }
+
+    /**
+     * Rewrites every live row of the collection in {@code format} and makes it the format of later writes. Each
+     * page is rewritten like a compaction (see {@link #replacePage}), so blanked rows are dropped along the way;
+     * pages already in the target format are left alone. The caller holds the collection's write lock and evicts
+     * the cached collection afterwards. Returns how many documents were converted.
+     */
+    public int migrateCollection(String dbName, String collName, StorageFormat format) throws IOException {
+        if (!getCollectionFolder(dbName, collName).exists()) {
+            throw new DirectoryNotFoundException(getCollectionFolder(dbName, collName).getPath());
+        }
+        // New writes use the target format from here on, so a crash mid-way leaves pages the next run finishes.
+        writeStorageFormat(dbName, collName, format);
+        final var storage = storageOf(dbName, collName);
+        final var byPage = new HashMap<Long, List<PkIndexEntry>>();
+        for (var entry : replayPkIndex(dbName, collName)) {
+            byPage.computeIfAbsent(entry.getPage(), _ -> new ArrayList<>()).add(entry);
+        }
+        var converted = 0;
+        for (var pageGroup : byPage.entrySet()) {
+            converted += migratePage(dbName, collName, pageGroup.getKey(), pageGroup.getValue(), storage);
+        }
+        logger.info("Migrated " + converted + " documents of " + dbName + "/" + collName + " to " + format);
+        return converted;
+    }
+
+    private int migratePage(String dbName, String collName, long page, List<PkIndexEntry> entries,
+            CollectionStorage storage) throws IOException {
+        final var file = getCollectionFile(dbName, collName, page);
+        final var lock = fileLock(file).writeLock();
+        lock.lock();
+        try {
+            final var bytes = Files.readAllBytes(file.toPath());
+            final var toBinary = storage.format() == StorageFormat.BINARY;
+            final var live = new ArrayList<>(entries);
+            live.sort(Comparator.comparingLong(PkIndexEntry::getPosition));
+            final var migrated = new ByteArrayOutputStream(bytes.length);
+            final var pkLines = new ArrayList<String>();
+            var converted = 0;
+            for (var entry : live) {
+                final var row = ByteBuffer.wrap(bytes, (int) entry.getPosition(), (int) entry.getLength());
+                final long newPosition = migrated.size();
+                final byte[] newRow;
+                if (DocumentCodec.isBinaryRow(row) == toBinary) {
+                    newRow = Arrays.copyOfRange(bytes, (int) entry.getPosition(),
+                            (int) (entry.getPosition() + entry.getLength()));
                 } else {
-                    others.add(entry);
+                    final var data = decodeRow(dbName, collName, row);
+                    newRow = toBinary
+                            ? DocumentCodec.encodeRow(data, storage.dictionary())
+                            : (eJson.toJson(data) + Globals.NEWLINE).getBytes(StandardCharsets.UTF_8);
+                    converted++;
                 }
+                migrated.write(newRow, 0, newRow.length);
+                if (newPosition != entry.getPosition() || newRow.length != entry.getLength()) {
+                    pkLines.add(new PkIndexEntry(dbName, collName, entry.getValue(), newPosition, newRow.length,
+                            page).toFileEntry());
+                }
+            }
+            if (converted > 0) {
+                replacePage(dbName, collName, file, migrated.toByteArray(), pkLines);
+                pageDeadBytes.remove(file.getAbsolutePath());
             }
-            final var reIndexedEntries = reindexPks(oldEntry, newPkIndexEntry, others);
-            final var lines = reIndexedEntries.stream().map(PkIndexEntry::toFileEntry).toList();
-            rewriteFileAtomically(indexFile.toPath(), lines);
+            return converted;
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * Recomputes the on-disk PK index after the entry identified by {@code oldEntry} is relocated
-     * (update) or removed (delete). Removing/relocating that row compacts its page, so every other
-     * entry <em>on the same page</em> whose position is past the removed slot shifts toward the start
-     * of the page by the old row's length — the same per-page rule the in-memory PK index uses
-     * ({@code UserCache.shiftPkPositionsAfterCompaction}). Entries on other pages are untouched. For
-     * an update, {@code newPkIndexEntry} carries the relocated row's page-file length as its position;
-     * subtracting the old length yields the row's new start (where {@link #updateFromCollection} wrote
-     * it). {@code newPkIndexEntry} is {@code null} for a delete. {@code oldEntry} may be {@code null}
-     * if the value was not present (defensive), in which case no shift is applied.
+     * Finishes (or discards) page compactions interrupted by a crash. Must run on startup before the write-ahead
+     * log is replayed and before any PK index is loaded.
      */
-    private List<PkIndexEntry> reindexPks(PkIndexEntry oldEntry, PkIndexEntry newPkIndexEntry,
-            List<PkIndexEntry> others) {
-        if (oldEntry != null) {
-            for (final var entry : others) {
-                if (entry.getPage() == oldEntry.getPage() && entry.getPosition() > oldEntry.getPosition()) {
-                    entry.setPosition(entry.getPosition() - oldEntry.getLength());
+    public void recoverInterruptedPageCompactions() throws IOException {
+        final var dbFolders = new File(dbPath).listFiles(File::isDirectory);
+        if (dbFolders == null) {
+            return;
+        }
+        for (var dbFolder : dbFolders) {
+            final var collFolders = dbFolder.listFiles(File::isDirectory);
+            if (collFolders == null) {
+                continue;
+            }
+            for (var collFolder : collFolders) {
+                final var leftovers = collFolder.listFiles((_, name) -> name.endsWith(COMPACTING_SUFFIX)
+                        || name.endsWith(COMPACTED_SUFFIX));
+                if (leftovers == null) {
+                    continue;
+                }
+                for (var leftover : leftovers) {
+                    if (leftover.getName().endsWith(COMPACTING_SUFFIX)) {
+                        Files.delete(leftover.toPath());
+                    } else {
+                        finishPageCompaction(dbFolder.getName(), collFolder.getName(), leftover);
+                    }
                 }
             }
         }
-        if (newPkIndexEntry != null) {
-            if (oldEntry != null) {
-                newPkIndexEntry.setPosition(newPkIndexEntry.getPosition() - oldEntry.getLength());
+    }
+
+    // The .compacted file holds exactly the page's live rows, so their positions can be rebuilt from it alone:
+    // re-recording them in the PK index is idempotent whether or not the interrupted run got that far.
+    private void finishPageCompaction(String dbName, String collName, File committed) throws IOException {
+        final var pageFileName = committed.getName().substring(0,
+                committed.getName().length() - COMPACTED_SUFFIX.length());
+        final var fileParts = pageFileName.replace(Globals.DB_FILE_EXTENSION, "").split(Globals.FILE_PAGE_SEPARATOR);
+        final var page = Long.parseLong(fileParts[fileParts.length - 1]);
+        final var pkLines = new ArrayList<String>();
+        final var bytes = Files.readAllBytes(committed.toPath());
+        var position = 0;
+        while (position < bytes.length) {
+            final var end = DocumentCodec.rowEnd(bytes, position, bytes.length);
+            if (!isBlankRow(bytes, position, end)) {
+                final var row = ByteBuffer.wrap(bytes, position, end - position);
+                final var data = DocumentCodec.isBinaryRow(row)
+                        ? DocumentCodec.project(row, storageOf(dbName, collName).dictionary(), Globals.PK_FIELD)
+                        : decodeRow(dbName, collName, row);
+                final var id = data.get(Globals.PK_FIELD).asJsonString().getValue();
+                pkLines.add(new PkIndexEntry(dbName, collName, id, position, end - position, page).toFileEntry());
             }
-            others.add(newPkIndexEntry);
+            position = end;
+        }
+        appendDurablePkIndexRecords(dbName, collName, pkLines);
+        final var pageFile = committed.toPath().resolveSibling(pageFileName);
+        moveIntoPlace(committed.toPath(), pageFile);
+        if (mappedPages != null) {
+            mappedPages.invalidate(pageFile.toFile());
+        }
+        logger.warning("Finished interrupted compaction of page " + pageFileName + " in " + dbName + "/" + collName);
+    }
+
+    // Appends PK index records and forces them to disk, for records that must be durable before a page file is
+    // swapped.
+    private void appendDurablePkIndexRecords(String dbName, String collectionName, List<String> lines)
+            throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        final var indexFile = getPkIndexFile(dbName, collectionName);
+        final var lock = fileLock(indexFile).writeLock();
+        lock.lock();
+        try {
+            final var builder = new StringBuilder();
+            for (var line : lines) {
+                builder.append(line).append(Globals.NEWLINE);
+            }
+            try (var channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                final var buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            addPkIndexDeadRecords(dbName, collectionName, indexFile, lines.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeAndForce(Path path, byte[] bytes) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // ATOMIC_MOVE can fail on platforms that don't support it; fall back to a non-atomic move.
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Rewrites the PK index file as just its sorted live entries, dropping superseded records, tombstones and
+    // compaction records. Returns the live entries.
+    private List<PkIndexEntry> mergePkIndex(String dbName, String collectionName) throws IOException {
+        final var indexFile = getPkIndexFile(dbName, collectionName);
+        final var lock = fileLock(indexFile).writeLock();
+        lock.lock();
+        try {
+            if (!indexFile.exists()) {
+                return new ArrayList<>();
+            }
+            final var replay = PkIndexLog.replay(dbName, collectionName, Files.readAllLines(indexFile.toPath()),
+                    indexFile.getName());
+            if (replay.deadRecords() > 0) {
+                rewriteFileAtomically(indexFile.toPath(),
+                        replay.entries().stream().map(PkIndexEntry::toFileEntry).toList());
+            }
+            pkIndexDeadRecords.remove(indexFile.getAbsolutePath());
+            return replay.entries();
+        } finally {
+            lock.unlock();
         }
-        others.sort(Comparator.comparing(PkIndexEntry::getValue));
-        return others;
     }
 
     public void writeIndexFile(String dbName, String collName, String fieldName,
             Map<Class<?>, List<FieldIndexEntry<?>>> indexEntryMap) {
         for (var indexTypeList : indexEntryMap.entrySet()) {
             final var type = IndexKind.fileLabel(indexTypeList.getKey());
-            final var indexFile = getIndexFile(dbName, collName, fieldName, type);
-            final var lock = fileLock(indexFile).writeLock();
-            lock.lock();
-            try (var writer = new BufferedWriter(new FileWriter(indexFile, true), Globals.BUFFER_SIZE)) {
-                var strData = indexTypeList.getValue().stream().map(FieldIndexEntry::toFileEntry)
-                        .collect(Collectors.joining(Globals.NEWLINE));
-                strData += Globals.NEWLINE;
-                writer.append(strData);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            } finally {
-                lock.unlock();
-            }
+            mergeIntoFieldIndex(dbName, collName, fieldName, type, indexTypeList.getValue());
         }
     }
 
-    // Hash index counterpart of writeIndexFile: appends the element-match entries (value = hex hash)
-    // for a single kind (object or array) to its own {coll}-{field}-Object.idx / -Array.idx file.
+    // Hash index counterpart of writeIndexFile: adds the element-match entries (value = hex hash) for a
+    // single kind (object or array) to its own {coll}-{field}-Object.idx / -Array.idx file.
     public void writeHashIndexFile(String dbName, String collName, String fieldName, IndexKind kind,
             List<FieldIndexEntry<String>> entries) {
         if (entries.isEmpty()) {
             return;
         }
-        final var indexFile = getIndexFile(dbName, collName, fieldName, kind.label());
+        mergeIntoFieldIndex(dbName, collName, fieldName, kind.label(), entries);
+    }
+
+    // Adds entries to a field index file, merging the ids of values already present, and rewrites it as a
+    // whole (this is the bulk path used by CREATE_INDEX).
+    private void mergeIntoFieldIndex(String dbName, String collName, String fieldName, String typeLabel,
+            List<? extends FieldIndexEntry<?>> entries) {
+        final var indexFile = getIndexFile(dbName, collName, fieldName, typeLabel);
         final var lock = fileLock(indexFile).writeLock();
         lock.lock();
-        try (var writer = new BufferedWriter(new FileWriter(indexFile, true), Globals.BUFFER_SIZE)) {
-            var strData = entries.stream().map(FieldIndexEntry::toFileEntry)
-                    .collect(Collectors.joining(Globals.NEWLINE));
-            strData += Globals.NEWLINE;
-            writer.append(strData);
+        try {
+            final var order = FieldIndexFile.keyOrder(typeLabel);
+            final var merged = new TreeMap<String, Set<String>>(order.total());
+            if (indexFile.exists()) {
+                final var path = indexFile.toPath();
+                for (var existing : FieldIndexFile.readAll(path,
+                        writableFieldIndexDirectory(indexFile, typeLabel, dbName, collName))) {
+                    merged.put(existing.value(), new LinkedHashSet<>(existing.ids()));
+                }
+            }
+            for (var entry : entries) {
+                merged.computeIfAbsent(FieldIndexEntry.toIndexValue(entry.getValue()), _ -> new LinkedHashSet<>())
+                        .addAll(entry.getIds());
+            }
+            final var sorted = merged.entrySet().stream()
+                    .map(e -> new FieldIndexFile.Entry(e.getKey(), e.getValue())).toList();
+            fieldIndexDirectories.put(indexFile.getAbsolutePath(),
+                    FieldIndexFile.writeAll(indexFile.toPath(), sorted));
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -556,152 +1186,178 @@ public class FileSystem {
         }
     }
 
-    // Hash index counterpart of updateIndexFiles: removes then (re)writes a single hash entry in the
-    // kind-specific index file. The entry value is already the hex hash, so getStringValue/
-    // searchIndexValue locate it the same way as for scalar indexes.
+    // Hash index counterpart of updateIndexFiles: rewrites (or drops, once emptied) the removed entry,
+    // then writes the inserted one, in the kind-specific index file.
     public void updateHashIndexFiles(String dbName, String collName, String fieldName, IndexKind kind,
             FieldIndexEntry<String> insertedEntry, FieldIndexEntry<String> removedEntry) throws IOException {
         final var indexFile = getIndexFile(dbName, collName, fieldName, kind.label());
+        updateFieldIndex(indexFile, kind.label(), dbName, collName, insertedEntry, removedEntry);
+    }
+
+    public <T, K> void updateIndexFiles(String dbName, String collName, String fieldName,
+            FieldIndexEntry<T> insertedEntry, FieldIndexEntry<K> removedEntry) throws IOException {
         if (removedEntry != null) {
-            final var lock = fileLock(indexFile).writeLock();
-            lock.lock();
-            try (var writer = new RandomAccessFile(indexFile, Globals.RW_PERMISSIONS)) {
-                final var strWholeFile = readFully(writer);
-                final var indexOfExisting = searchIndexValue(strWholeFile, removedEntry.getValue());
-                if (indexOfExisting >= 0) {
-                    shiftOtherEntries(writer, strWholeFile, indexOfExisting);
-                    if (!removedEntry.getIds().isEmpty()) {
-                        writer.writeBytes(removedEntry.toFileEntry());
-                        writer.writeBytes(Globals.NEWLINE);
-                    }
-                }
-            } finally {
-                lock.unlock();
-            }
+            final var typeLabel = IndexKind.fileLabel(removedEntry.getValue().getClass());
+            final var indexFile = getIndexFile(dbName, collName, fieldName, typeLabel);
+            updateFieldIndex(indexFile, typeLabel, dbName, collName, null, removedEntry);
         }
         if (insertedEntry != null) {
-            final var lock = fileLock(indexFile).writeLock();
-            lock.lock();
-            try (var writer = new RandomAccessFile(indexFile, Globals.RW_PERMISSIONS)) {
-                final var strWholeFile = readFully(writer);
-                final var indexOfExisting = searchIndexValue(strWholeFile, insertedEntry.getValue());
-                if (indexOfExisting >= 0) {
-                    shiftOtherEntries(writer, strWholeFile, indexOfExisting);
-                } else {
-                    writer.seek(strWholeFile.length());
-                }
-                writer.writeBytes(insertedEntry.toFileEntry());
-                writer.writeBytes(Globals.NEWLINE);
-            } finally {
-                lock.unlock();
-            }
+            final var typeLabel = IndexKind.fileLabel(insertedEntry.getValue().getClass());
+            final var indexFile = getIndexFile(dbName, collName, fieldName, typeLabel);
+            updateFieldIndex(indexFile, typeLabel, dbName, collName, insertedEntry, null);
         }
     }
 
-    private int searchIndexValue(String strWholeFile, String value) {
-        int lineStart = 0;
-        while (lineStart < strWholeFile.length()) {
-            final int lineEnd = strWholeFile.indexOf(Globals.NEWLINE, lineStart);
-            final int effectiveEnd = lineEnd == -1 ? strWholeFile.length() : lineEnd;
-            final var line = strWholeFile.substring(lineStart, effectiveEnd);
-            if (!line.isBlank()) {
-                final var separatorIdx = line.indexOf(Globals.ID_SEPARATOR);
-                if (separatorIdx >= 0 && line.substring(0, separatorIdx).equals(value)) {
-                    return lineStart == 0 ? 0 : lineStart - Globals.NEWLINE_CHAR_LENGTH;
-                }
+    // The removed entry carries the ids left for its value: they replace the stored ones, and an emptied value
+    // is dropped; a value no longer in the file stays absent. The inserted entry's ids are written as they are.
+    // Each touches the one block covering its value (see FieldIndexFile).
+    private void updateFieldIndex(File indexFile, String typeLabel, String dbName, String collName,
+            FieldIndexEntry<?> insertedEntry, FieldIndexEntry<?> removedEntry) throws IOException {
+        final var lock = fileLock(indexFile).writeLock();
+        lock.lock();
+        try {
+            final var path = indexFile.toPath();
+            final var order = FieldIndexFile.keyOrder(typeLabel);
+            var directory = writableFieldIndexDirectory(indexFile, typeLabel, dbName, collName);
+            if (removedEntry != null) {
+                directory = FieldIndexFile.put(path, directory, order,
+                        FieldIndexEntry.toIndexValue(removedEntry.getValue()), removedEntry.getIds(), true);
             }
-            if (lineEnd == -1)
-                break;
-            lineStart = lineEnd + Globals.NEWLINE_CHAR_LENGTH;
+            if (insertedEntry != null) {
+                directory = FieldIndexFile.put(path, directory, order,
+                        FieldIndexEntry.toIndexValue(insertedEntry.getValue()), insertedEntry.getIds(), false);
+            }
+            if (FieldIndexFile.needsCompaction(directory)) {
+                directory = FieldIndexFile.writeAll(path, FieldIndexFile.readAll(path, directory));
+            }
+            fieldIndexDirectories.put(indexFile.getAbsolutePath(), directory);
+        } finally {
+            lock.unlock();
         }
-        return -1;
     }
 
-    private <K> String getStringValue(FieldIndexEntry<K> entry) {
-        final var value = entry.getValue();
-        String strValue;
-        if (value instanceof JsonCustom<?> jsonCustom) {
-            strValue = jsonCustom.getValue();
-        } else if (value instanceof Number number) {
-            if (number.doubleValue() % 1 == 0) {
-                strValue = String.valueOf(number.longValue());
-            } else {
-                strValue = String.valueOf(number.doubleValue());
-            }
-        } else {
-            strValue = value.toString();
+    // Directory of a field index file for a writer holding its write lock: creates the (empty) file when missing
+    // and converts a file still in the line format.
+    private FieldIndexFile.Directory writableFieldIndexDirectory(File indexFile, String typeLabel, String dbName,
+            String collName) throws IOException {
+        final var path = indexFile.toPath();
+        if (!indexFile.exists()) {
+            final var created = FieldIndexFile.writeAll(path, List.of());
+            fieldIndexDirectories.put(indexFile.getAbsolutePath(), created);
+            return created;
+        }
+        final var cached = fieldIndexDirectories.get(indexFile.getAbsolutePath());
+        if (cached != null && cached.isCurrent(path)) {
+            return cached;
         }
-        return strValue;
+        final var directory = FieldIndexFile.isBlockFormat(path)
+                ? FieldIndexFile.readDirectory(path)
+                : convertLineFieldIndex(indexFile, typeLabel, dbName, collName);
+        fieldIndexDirectories.put(indexFile.getAbsolutePath(), directory);
+        return directory;
     }
 
-    public <T, K> void updateIndexFiles(String dbName, String collName, String fieldName,
-            FieldIndexEntry<T> insertedEntry, FieldIndexEntry<K> removedEntry) throws IOException {
-        if (removedEntry != null) {
-            final var strIndexType = IndexKind.fileLabel(removedEntry.getValue().getClass());
-            final var indexFile = getIndexFile(dbName, collName, fieldName, strIndexType);
-            final var lock = fileLock(indexFile).writeLock();
-            lock.lock();
-            try (var writer = new RandomAccessFile(indexFile, Globals.RW_PERMISSIONS)) {
-                final var strWholeFile = readFully(writer);
-                final var strValue = getStringValue(removedEntry);
-                final var indexOfExisting = searchIndexValue(strWholeFile, strValue);
-                if (indexOfExisting >= 0) {
-                    shiftOtherEntries(writer, strWholeFile, indexOfExisting);
-                    if (!removedEntry.getIds().isEmpty()) {
-                        final var toWriteLine = removedEntry.toFileEntry();
-                        writer.writeBytes(toWriteLine);
-                        writer.writeBytes(Globals.NEWLINE);
-                    }
-                }
-            } finally {
-                lock.unlock();
+    // Directory of a field index file for a reader holding its read lock; null when the file does not exist.
+    // Callers run upgradeLineFieldIndex first, so the file is in the block format.
+    private FieldIndexFile.Directory readableFieldIndexDirectory(File indexFile) throws IOException {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        final var path = indexFile.toPath();
+        final var cached = fieldIndexDirectories.get(indexFile.getAbsolutePath());
+        if (cached != null && cached.isCurrent(path)) {
+            return cached;
+        }
+        final var directory = FieldIndexFile.readDirectory(path);
+        fieldIndexDirectories.put(indexFile.getAbsolutePath(), directory);
+        return directory;
+    }
+
+    // Readers can't convert under their read lock, so a file not known to be in the block format is checked
+    // (and converted when needed) under the write lock first.
+    private void upgradeLineFieldIndex(File indexFile, String typeLabel, String dbName, String collName)
+            throws IOException {
+        final var cached = fieldIndexDirectories.get(indexFile.getAbsolutePath());
+        if (!indexFile.exists() || (cached != null && cached.isCurrent(indexFile.toPath()))) {
+            return;
+        }
+        final var lock = fileLock(indexFile).writeLock();
+        lock.lock();
+        try {
+            if (indexFile.exists()) {
+                writableFieldIndexDirectory(indexFile, typeLabel, dbName, collName);
             }
+        } finally {
+            lock.unlock();
         }
-        if (insertedEntry != null) {
-            final var strIndexType = IndexKind.fileLabel(insertedEntry.getValue().getClass());
-            final var indexFile = getIndexFile(dbName, collName, fieldName, strIndexType);
-            final var lock = fileLock(indexFile).writeLock();
-            lock.lock();
-            try (var writer = new RandomAccessFile(indexFile, Globals.RW_PERMISSIONS)) {
-                final var strWholeFile = readFully(writer);
-                final var strValue = getStringValue(insertedEntry);
-                final var indexOfExisting = searchIndexValue(strWholeFile, strValue);
-                final var toWriteLine = insertedEntry.toFileEntry();
-                if (indexOfExisting >= 0) {
-                    shiftOtherEntries(writer, strWholeFile, indexOfExisting);
-                } else {
-                    writer.seek(strWholeFile.length());
-                }
-                writer.writeBytes(toWriteLine);
-                writer.writeBytes(Globals.NEWLINE);
-            } finally {
-                lock.unlock();
+    }
+
+    // Field index files written before the block format hold one "value|id|id..." line per value, unsorted. They
+    // are converted in place on first use: a torn or otherwise malformed line is skipped and logged (it was
+    // written non-atomically), and lines for the same value are merged.
+    private FieldIndexFile.Directory convertLineFieldIndex(File indexFile, String typeLabel, String dbName,
+            String collName) throws IOException {
+        final var valueClass = indexValueClass(typeLabel);
+        final var merged = new TreeMap<String, Set<String>>(FieldIndexFile.keyOrder(typeLabel).total());
+        for (var line : Files.readAllLines(indexFile.toPath())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                final var entry = FieldIndexEntry.fromIndexFileEntry(dbName, collName, line, valueClass);
+                merged.computeIfAbsent(FieldIndexEntry.toIndexValue(entry.getValue()), _ -> new LinkedHashSet<>())
+                        .addAll(entry.getIds());
+            } catch (Exception e) {
+                logger.warning("Removing malformed field index entry in " + indexFile.getName() + ": "
+                        + e.getMessage());
             }
         }
+        logger.info("Converting field index " + indexFile.getName() + " to the block format");
+        return FieldIndexFile.writeAll(indexFile.toPath(), merged.entrySet().stream()
+                .map(e -> new FieldIndexFile.Entry(e.getKey(), e.getValue())).toList());
     }
 
-    private void shiftOtherEntries(RandomAccessFile writer, String strWholeFile, int indexOfExisting)
-            throws IOException {
-        var replacementIndex = indexOfExisting;
-        var fromExistingEntry = strWholeFile.substring(indexOfExisting);
-        if (fromExistingEntry.startsWith(Globals.NEWLINE)) {
-            fromExistingEntry = fromExistingEntry.substring(Globals.NEWLINE_CHAR_LENGTH);
-            replacementIndex += Globals.NEWLINE_CHAR_LENGTH;
+    // The Java type index values of a file label parse into. Object/array hashes and nulls are plain strings.
+    private static Class<?> indexValueClass(String typeLabel) {
+        if (IndexKind.NUMBER.label().equals(typeLabel)) {
+            return Number.class;
+        } else if (IndexKind.BOOLEAN.label().equals(typeLabel)) {
+            return Boolean.class;
         }
-        var otherEntries = fromExistingEntry.substring(fromExistingEntry.indexOf(Globals.NEWLINE));
-        if (otherEntries.startsWith(Globals.NEWLINE)) {
-            otherEntries = otherEntries.substring(Globals.NEWLINE_CHAR_LENGTH);
+        for (var customType : CustomTypeFactory.getCustomTypes().values()) {
+            if (customType.getSimpleName().equals(typeLabel)) {
+                return customType;
+            }
         }
-        writer.seek(replacementIndex);
-        writer.writeBytes(otherEntries);
-        writer.setLength(replacementIndex + otherEntries.length());
+        return String.class;
     }
 
-    private String readFully(RandomAccessFile writer) throws IOException {
-        final var fileLength = (int) writer.length();
-        byte[] buffer = new byte[fileLength];
-        writer.readFully(buffer, 0, fileLength);
-        return new String(buffer);
+    private <T> List<FieldIndexEntry<T>> readFieldIndexEntries(File indexFile, String typeLabel, String dbName,
+            String collName, Class<T> valueClass, String lower, String upper, boolean range) throws IOException {
+        if (!getCollectionFolder(dbName, collName).exists() || !indexFile.exists()) {
+            return null;
+        }
+        upgradeLineFieldIndex(indexFile, typeLabel, dbName, collName);
+        final var lock = fileLock(indexFile).readLock();
+        lock.lock();
+        try {
+            final var directory = readableFieldIndexDirectory(indexFile);
+            if (directory == null) {
+                return null;
+            }
+            final var path = indexFile.toPath();
+            final var raw = range
+                    ? FieldIndexFile.readRange(path, directory, FieldIndexFile.keyOrder(typeLabel).coarse(), lower,
+                            upper)
+                    : FieldIndexFile.readAll(path, directory);
+            final var entries = new ArrayList<FieldIndexEntry<T>>(raw.size());
+            for (var entry : raw) {
+                entries.add(FieldIndexEntry.fromIndexValue(dbName, collName, entry.value(), entry.ids(), valueClass));
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public boolean dropIndex(String dbName, String collName, String fieldName) {
@@ -712,6 +1368,7 @@ public class FileSystem {
             if (indexFiles != null) {
                 final var deleted = new ArrayList<Boolean>();
                 for (var index : indexFiles) {
+                    fieldIndexDirectories.remove(index.getAbsolutePath());
                     deleted.add(index.delete());
                 }
                 return deleted.stream().allMatch(aBoolean -> aBoolean);
@@ -727,142 +1384,64 @@ public class FileSystem {
             final var indexFiles = collectionFolder.listFiles((_, name) -> name.endsWith(Globals.INDEX_FILE_EXTENSION)
                     && !name.contains(Globals.PK_FIELD) && name.contains(fieldName));
             if (indexFiles != null) {
-                return Arrays.stream(indexFiles).map(file -> {
-                    final var lock = fileLock(file).readLock();
-                    lock.lock();
+                final var result = new ConcurrentHashMap<String, List<FieldIndexEntry<?>>>();
+                for (var file : indexFiles) {
+                    final var type = file.getName().split("-")[2].split("\\.")[0];
+                    final var clazz = ReflectionUtils.getClassFromSimpleName(type);
                     try {
-                        final var fileName = file.getName();
-                        final var type = fileName.split("-")[2].split("\\.")[0];
-                        return new AbstractMap.SimpleEntry<>(type, Files.readAllLines(file.toPath()));
+                        final var entries = readFieldIndexEntries(file, type, dbName, collName, clazz, null, null,
+                                false);
+                        if (entries != null) {
+                            result.put(type, new ArrayList<>(entries));
+                        }
                     } catch (IOException e) {
-                        return null;
-                    } finally {
-                        lock.unlock();
+                        logger.warning("Could not read field index " + file.getName() + ": " + e.getMessage());
                     }
-                }).filter(Objects::nonNull)
-                        .map((AbstractMap.SimpleEntry<String, List<String>> stringListSimpleEntry) -> {
-                            final var className = stringListSimpleEntry.getKey();
-                            final var clazz = ReflectionUtils.getClassFromSimpleName(className);
-                            return new AbstractMap.SimpleEntry<>(className,
-                                    stringListSimpleEntry.getValue().stream()
-                                            .map(s -> FieldIndexEntry.fromIndexFileEntry(dbName, collName, s, clazz))
-                                            .collect(Collectors.toList()));
-                        }).collect(Collectors.toConcurrentMap(AbstractMap.SimpleEntry::getKey,
-                                classListSimpleEntry -> new ArrayList<>(classListSimpleEntry.getValue())));
+                }
+                return result;
             }
         }
         return null;
     }
 
+    // Loads every entry of a field index file, already sorted in the order SearchUtils binary-searches with.
     public <T> List<FieldIndexEntry<T>> readWholeFieldIndexFiles(String dbName, String collName, String fieldName,
             Class<T> indexType) throws IOException {
-        final var collectionFolder = getCollectionFolder(dbName, collName);
-        if (collectionFolder.exists()) {
-            final var strIndexType = IndexKind.fileLabel(indexType);
-            final var indexFile = getIndexFile(dbName, collName, fieldName, strIndexType);
-            if (indexFile.exists()) {
-                final var lock = fileLock(indexFile).readLock();
-                lock.lock();
-                final List<String> lines;
-                try {
-                    lines = Files.readAllLines(indexFile.toPath());
-                } finally {
-                    lock.unlock();
-                }
-                // Field index files are written non-atomically (append / in-place rewrite), so a crash
-                // mid-write can leave a torn final line. Skip-and-log malformed lines and self-heal the
-                // file, mirroring readWholePkIndexFile, instead of letting one bad line fail every read.
-                final var entries = new ArrayList<FieldIndexEntry<T>>();
-                final var keepLines = new ArrayList<String>();
-                var dropped = false;
-                for (var line : lines) {
-                    if (line.isBlank()) {
-                        continue;
-                    }
-                    try {
-                        entries.add(FieldIndexEntry.fromIndexFileEntry(dbName, collName, line, indexType));
-                        keepLines.add(line);
-                    } catch (Exception e) {
-                        dropped = true;
-                        logger.warning("Removing malformed field index entry in " + indexFile.getName() + ": "
-                                + e.getMessage());
-                    }
-                }
-                if (dropped) {
-                    rewriteFileAtomically(indexFile.toPath(), keepLines);
-                }
-                entries.sort((o1, o2) -> switch ((Object) o1.getValue()) {
-                    case Number n -> Double.compare(n.doubleValue(), ((Number) o2.getValue()).doubleValue());
-                    case Boolean b -> Boolean.compare(b, (Boolean) o2.getValue());
-                    case JsonCustom<?> c -> {
-                        final var customClass = c.getClass();
-                        //noinspection unchecked
-                        yield customClass.cast(c).compare(customClass.cast(o2.getValue()).getCustomValue());
-                    }
-                    default -> ((String) o1.getValue()).compareToIgnoreCase((String) o2.getValue());
-                });
-                return entries;
-            }
-        }
-        return null;
+        final var typeLabel = IndexKind.fileLabel(indexType);
+        final var indexFile = getIndexFile(dbName, collName, fieldName, typeLabel);
+        return readFieldIndexEntries(indexFile, typeLabel, dbName, collName, indexType, null, null, false);
+    }
+
+    // Reads only the blocks of a field index file that can hold a value within [lower, upper] (a null bound is
+    // open): a contiguous, sorted slice of what readWholeFieldIndexFiles returns, holding every matching entry,
+    // so a range or equality search runs on it unchanged without loading the whole index.
+    public <T> List<FieldIndexEntry<T>> readFieldIndexRange(String dbName, String collName, String fieldName,
+            Class<T> indexType, T lower, T upper) throws IOException {
+        final var typeLabel = IndexKind.fileLabel(indexType);
+        final var indexFile = getIndexFile(dbName, collName, fieldName, typeLabel);
+        return readFieldIndexEntries(indexFile, typeLabel, dbName, collName, indexType,
+                lower == null ? null : FieldIndexEntry.toIndexValue(lower),
+                upper == null ? null : FieldIndexEntry.toIndexValue(upper), true);
+    }
+
+    // On-disk size of a field index file (0 when missing); a cheap estimate of what loading it would cost.
+    public long fieldIndexFileSize(String dbName, String collName, String fieldName, Class<?> indexType) {
+        return getIndexFile(dbName, collName, fieldName, IndexKind.fileLabel(indexType)).length();
     }
 
-    // Hash index counterpart of readWholeFieldIndexFiles: loads every element-match entry (value =
-    // hex hash) for the given kind, sorted by hash so SearchUtils' binary search works.
+    // Hash index counterpart of readWholeFieldIndexFiles: loads every element-match entry (value = hex hash) for
+    // the given kind, sorted by hash so SearchUtils' binary search works.
     public List<FieldIndexEntry<String>> readWholeHashIndexFile(String dbName, String collName, String fieldName,
             IndexKind kind) throws IOException {
-        final var collectionFolder = getCollectionFolder(dbName, collName);
-        if (collectionFolder.exists()) {
-            final var indexFile = getIndexFile(dbName, collName, fieldName, kind.label());
-            if (indexFile.exists()) {
-                final var lock = fileLock(indexFile).readLock();
-                lock.lock();
-                final List<String> lines;
-                try {
-                    lines = Files.readAllLines(indexFile.toPath());
-                } finally {
-                    lock.unlock();
-                }
-                // Hash index files are written non-atomically, so self-heal a torn line rather than
-                // failing the whole read (see readWholeFieldIndexFiles / readWholePkIndexFile).
-                final var entries = new ArrayList<FieldIndexEntry<String>>();
-                final var keepLines = new ArrayList<String>();
-                var dropped = false;
-                for (var line : lines) {
-                    if (line.isBlank()) {
-                        continue;
-                    }
-                    try {
-                        entries.add(FieldIndexEntry.fromIndexFileEntry(dbName, collName, line, String.class));
-                        keepLines.add(line);
-                    } catch (Exception e) {
-                        dropped = true;
-                        logger.warning("Removing malformed hash index entry in " + indexFile.getName() + ": "
-                                + e.getMessage());
-                    }
-                }
-                if (dropped) {
-                    rewriteFileAtomically(indexFile.toPath(), keepLines);
-                }
-                entries.sort(Comparator.comparing(FieldIndexEntry::getValue, String::compareToIgnoreCase));
-                return entries;
-            }
-        }
-        return null;
+        final var indexFile = getIndexFile(dbName, collName, fieldName, kind.label());
+        return readFieldIndexEntries(indexFile, kind.label(), dbName, collName, String.class, null, null, false);
     }
 
     public List<PkIndexEntry> readWholePkIndexFile(String dbName, String collectionName) throws IOException {
-        final var indexFile = getIndexFile(dbName, collectionName, Globals.PK_FIELD, Globals.PK_FIELD_TYPE);
+        final var indexFile = getPkIndexFile(dbName, collectionName);
         if (!indexFile.exists()) {
             return new ArrayList<>();
         }
-        // Keyed by PK value, preserving first-seen order. A non-atomic write interrupted mid-rewrite can leave
-        // a torn line (handled by skip-and-log) or a duplicate line for the same id (handled by keeping the
-        // last occurrence — the freshest position). Either way we self-heal by rewriting the survivors, so a
-        // single bad/duplicate line never fails every PK-index-backed read.
-        final var byValue = new LinkedHashMap<String, PkIndexEntry>();
-        final var lineByValue = new LinkedHashMap<String, String>();
-        boolean dropped = false;
         final var lock = fileLock(indexFile).readLock();
         lock.lock();
         final List<String> indexLines;
@@ -871,32 +1450,123 @@ public class FileSystem {
         } finally {
             lock.unlock();
         }
-        for (var line : indexLines) {
-            if (line.isEmpty())
-                continue;
-            try {
-                final var entry = PkIndexEntry.fromIndexFileEntry(dbName, collectionName, line);
-                if (byValue.put(entry.getValue(), entry) != null) {
-                    dropped = true;
-                    logger.warning("Removing duplicate PK index entry for '" + entry.getValue() + "' in "
-                            + indexFile.getName() + ", keeping the last occurrence");
+        final var replay = PkIndexLog.replay(dbName, collectionName, indexLines, indexFile.getName());
+        if (replay.deadRecords() > 0) {
+            // A full load pays for reading every record anyway, so fold the accumulated deltas (and any torn
+            // lines) back into a sorted run now. The merge re-reads under the write lock, so appends that raced
+            // with the read above are kept.
+            return mergePkIndex(dbName, collectionName);
+        }
+        return replay.entries();
+    }
+
+    /**
+     * Replays the write-ahead log of every database whose last run did not checkpoint cleanly, so page and PK
+     * index files reflect every acknowledged write before any cache is loaded. Records are idempotent (see
+     * {@link WalRecord}), so a record whose effect already reached the files is skipped. Admin page sizes are
+     * not adjusted for re-applied records; they are best-effort metadata used only for page selection.
+     */
+    public void recoverFromWriteAheadLog() throws IOException {
+        for (var dbName : wal.databasesWithLog()) {
+            // Only the last record per document matters: each one carries the document's full final state.
+            final var latest = new LinkedHashMap<String, WalRecord>();
+            for (var walRecord : wal.readCommittedRecords(dbName)) {
+                final var key = walRecord.collName() + Globals.COLL_IDENTIFIER_SEPARATOR + walRecord.id();
+                latest.remove(key);
+                latest.put(key, walRecord);
+            }
+            final var ticket = WriteAheadLog.Ticket.forRecovery();
+            // Each collection's PK index is replayed once: every document is re-applied at most once, so the entries
+            // the replay writes are never looked up again.
+            final var pkIndexes = new HashMap<String, Map<String, PkIndexEntry>>();
+            var replayed = 0;
+            for (var walRecord : latest.values()) {
+                final var collName = walRecord.collName();
+                if (!getCollectionFolder(dbName, collName).exists()) {
+                    // The collection was dropped after the write was logged.
+                    continue;
+                }
+                var entries = pkIndexes.get(collName);
+                if (entries == null) {
+                    entries = pkIndexById(dbName, collName);
+                    pkIndexes.put(collName, entries);
+                }
+                if (replayRecord(dbName, walRecord, entries.get(walRecord.id()), ticket)) {
+                    replayed++;
                 }
-                lineByValue.put(entry.getValue(), line);
-            } catch (Exception e) {
-                dropped = true;
-                logger.warning("Removing malformed PK index entry in " + indexFile.getName() + ": " + e.getMessage());
+            }
+            wal.truncateAfterRecovery(dbName, ticket.getTouchedFiles());
+            if (replayed > 0) {
+                logger.warning("Recovered database " + dbName + " from its write-ahead log: re-applied " + replayed
+                        + " of " + latest.size() + " logged documents");
             }
         }
-        if (dropped) {
-            rewriteFileAtomically(indexFile.toPath(), new ArrayList<>(lineByValue.values()));
+    }
+
+    private Map<String, PkIndexEntry> pkIndexById(String dbName, String collName) throws IOException {
+        final var entries = new HashMap<String, PkIndexEntry>();
+        for (var entry : replayPkIndex(dbName, collName)) {
+            entries.put(entry.getValue(), entry);
         }
-        final var entries = new ArrayList<>(byValue.values());
-        entries.sort(Comparator.comparing(PkIndexEntry::getValue));
         return entries;
     }
 
+    private boolean replayRecord(String dbName, WalRecord walRecord, PkIndexEntry existing,
+            WriteAheadLog.Ticket ticket) throws IOException {
+        final var collName = walRecord.collName();
+        if (walRecord.operation() == WalOperation.DELETE) {
+            if (existing == null) {
+                return false;
+            }
+            applyDelete(existing, ticket);
+            return true;
+        }
+        final var entry = DbEntry.fromJsonObject(dbName, collName, walRecord.data());
+        if (existing == null) {
+            entry.setPage(walRecord.page());
+            applyInsert(entry, entry.toFileEntry(), ticket);
+            return true;
+        }
+        try {
+            if (getById(existing).getData().equals(walRecord.data())) {
+                return false;
+            }
+        } catch (Exception e) {
+            // The page bytes at the indexed position are torn or stale: rewrite the row from the log.
+        }
+        entry.setPage(existing.getPage());
+        applyUpdate(entry, existing, entry.toFileEntry(), ticket);
+        return true;
+    }
+
     public Map<String, DbEntry> readWholeCollectionPage(String dbName, String collectionName, long page)
             throws IOException {
+        return scanCollectionPage(dbName, collectionName, page, null, null, null);
+    }
+
+    // The page as the snapshot sees it: rows written since are skipped, rows blanked since are put back.
+    public Map<String, DbEntry> readWholeCollectionPage(String dbName, String collectionName, long page,
+            ReadSnapshot snapshot) throws IOException {
+        return scanCollectionPage(dbName, collectionName, page, null, null, snapshot);
+    }
+
+    /**
+     * Like {@link #readWholeCollectionPage} but keeps only the documents matching {@code test}, which only looks at
+     * {@code fieldName}, or at any field when it is null. Given a field, the test runs on a projection of it for
+     * binary rows (see {@link DocumentCodec#project}), so only the matching rows are fully decoded.
+     */
+    public Map<String, DbEntry> readCollectionPageMatching(String dbName, String collectionName, long page,
+            String fieldName, Predicate<JsonObject> test) throws IOException {
+        return scanCollectionPage(dbName, collectionName, page, fieldName, test, null);
+    }
+
+    public Map<String, DbEntry> readCollectionPageMatching(String dbName, String collectionName, long page,
+            String fieldName, Predicate<JsonObject> test, ReadSnapshot snapshot) throws IOException {
+        return scanCollectionPage(dbName, collectionName, page, fieldName, test, snapshot);
+    }
+
+    private Map<String, DbEntry> scanCollectionPage(String dbName, String collectionName, long page,
+            String fieldName, Predicate<JsonObject> test, ReadSnapshot snapshot) throws IOException {
         final var collectionFile = getCollectionFile(dbName, collectionName, page);
         if (!collectionFile.exists()) {
             return new HashMap<>();
@@ -904,30 +1574,86 @@ public class FileSystem {
         final var result = new HashMap<String, DbEntry>();
         final var lock = fileLock(collectionFile).readLock();
         lock.lock();
-        final List<String> pageLines;
+        final byte[] pageBytes;
+        final long fileLength;
         try {
-            pageLines = Files.readAllLines(collectionFile.toPath());
+            pageBytes = Files.readAllBytes(collectionFile.toPath());
+            fileLength = pageBytes.length;
         } finally {
             lock.unlock();
         }
-        for (var line : pageLines) {
-            if (line.isEmpty())
+        // Taken after the read: every change the bytes show was recorded before they were written.
+        final var delta = snapshot != null ? snapshot.delta(dbName, collectionName) : null;
+        long deadBytes = 0;
+        var offset = 0;
+        while (offset < pageBytes.length) {
+            final var start = offset;
+            offset = DocumentCodec.rowEnd(pageBytes, start, pageBytes.length);
+            if (isBlankRow(pageBytes, start, offset)) {
+                // A blanked row: a deleted or superseded version waiting for compaction.
+                deadBytes += offset - start;
+                continue;
+            }
+            if (delta != null && delta.createdAt(page, start)) {
                 continue;
+            }
             try {
-                final var entry = DbEntry.fromString(dbName, collectionName, line);
-                result.put(entry.get_id(), entry);
+                final var entry = decodeMatching(dbName, collectionName, ByteBuffer.wrap(pageBytes, start,
+                        offset - start), fieldName, test);
+                if (entry != null) {
+                    result.put(entry.get_id(), entry);
+                }
             } catch (Exception e) {
                 // Skip-and-log only. We deliberately do NOT rewrite the .dat
                 // file here: the .idx file stores byte offsets into the .dat,
                 // so removing lines would invalidate every entry's recorded
-                // position. Compacting both atomically is a separate concern
-                // (a real compaction operation, not a read-side side effect).
+                // position. compactPage drops such rows (no PK entry points
+                // to them) together with the PK update, under the write lock.
                 logger.warning("Skipping malformed entry in " + collectionFile.getName() + ": " + e.getMessage());
             }
         }
+        if (delta != null) {
+            for (var retired : delta.retiredOn(page)) {
+                final var start = (int) retired.position();
+                final var end = start + retired.row().length;
+                // A row the bytes read still show was read as it is.
+                if (end <= pageBytes.length && isBlankRow(pageBytes, start, end)) {
+                    final var entry = decodeMatching(dbName, collectionName, ByteBuffer.wrap(retired.row()), fieldName,
+                            test);
+                    if (entry != null) {
+                        result.put(entry.get_id(), entry);
+                    }
+                }
+            }
+        }
+        if (deadBytes > 0) {
+            // A full read knows the page's exact dead weight, which also covers blanks left by a previous run.
+            final var key = collectionFile.getAbsolutePath();
+            pageDeadBytes.put(key, new AtomicLong(deadBytes));
+            scheduleCompactionIfNeeded(dbName, collectionName, page, key, deadBytes, fileLength);
+        }
         return result;
     }
 
+    // The row's entry, or null when it does not pass the test.
+    private DbEntry decodeMatching(String dbName, String collectionName, ByteBuffer row, String fieldName,
+            Predicate<JsonObject> test) throws IOException {
+        final JsonObject data;
+        if (test != null && fieldName != null && DocumentCodec.isBinaryRow(row)) {
+            final var dictionary = storageOf(dbName, collectionName).dictionary();
+            if (!test.test(DocumentCodec.project(row.slice(), dictionary, fieldName))) {
+                return null;
+            }
+            data = DocumentCodec.decodeRow(row, dictionary);
+        } else {
+            data = decodeRow(dbName, collectionName, row);
+            if (test != null && !test.test(data)) {
+                return null;
+            }
+        }
+        return DbEntry.fromJsonObject(dbName, collectionName, data);
+    }
+
     private void rewriteFileAtomically(Path path, List<String> lines) throws IOException {
         final var tmp = path.resolveSibling(path.getFileName() + ".repair");
         Files.write(tmp, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
@@ -942,6 +1668,11 @@ public class FileSystem {
     }
 
     public Stream<Map<String, DbEntry>> streamPages(String dbName, String collName) throws IOException {
+        return streamPages(dbName, collName, null);
+    }
+
+    public Stream<Map<String, DbEntry>> streamPages(String dbName, String collName, ReadSnapshot snapshot)
+            throws IOException {
         final var collectionFolder = getCollectionFolder(dbName, collName).toPath();
         if (!Files.exists(collectionFolder)) {
             return Stream.empty();
@@ -952,7 +1683,7 @@ public class FileSystem {
             final var fileParts = fileName.replace(Globals.DB_FILE_EXTENSION, "").split(Globals.FILE_PAGE_SEPARATOR);
             final var page = Long.parseLong(fileParts[fileParts.length - 1]);
             try {
-                return readWholeCollectionPage(dbName, collName, page);
+                return scanCollectionPage(dbName, collName, page, null, null, snapshot);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -963,10 +1694,21 @@ public class FileSystem {
         return streamPages(dbName, collName).flatMap(map -> map.values().stream());
     }
 
+    public Stream<DbEntry> streamEntries(String dbName, String collName, ReadSnapshot snapshot) throws IOException {
+        return streamPages(dbName, collName, snapshot).flatMap(map -> map.values().stream());
+    }
+
     public PkIndexEntry findPkIndexEntry(String dbName, String collName, String id) throws IOException {
-        final var indexFile = getIndexFile(dbName, collName, Globals.PK_FIELD, Globals.PK_FIELD_TYPE);
+        final var entries = replayPkIndex(dbName, collName);
+        final var index = Collections.binarySearch(entries, id);
+        return index >= 0 ? entries.get(index) : null;
+    }
+
+    // The live PK entries (sorted by id) without merging the file.
+    private List<PkIndexEntry> replayPkIndex(String dbName, String collName) throws IOException {
+        final var indexFile = getPkIndexFile(dbName, collName);
         if (!indexFile.exists()) {
-            return null;
+            return new ArrayList<>();
         }
         final var lock = fileLock(indexFile).readLock();
         lock.lock();
@@ -976,8 +1718,6 @@ public class FileSystem {
         } finally {
             lock.unlock();
         }
-        return lines.stream().filter(line -> !line.isEmpty())
-                .map(line -> PkIndexEntry.fromIndexFileEntry(dbName, collName, line))
-                .filter(entry -> entry.getValue().equals(id)).findFirst().orElse(null);
+        return PkIndexLog.replay(dbName, collName, lines, indexFile.getName()).entries();
     }
 }
@@ -0,0 +1,100 @@
+package org.techhouse.fs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used pool of read-only mappings of collection page files, used by the mmap read path of
+ * {@link FileSystem#getById} and {@link FileSystem#getByIndexEntries}. A page is mapped once and every later read of
+ * it is a slice of that mapping, so lookups skip the per-call open/seek/close and the copy into a heap buffer.
+ *
+ * <p>Page files only grow in place (updates append, deletes blank rows) and are otherwise replaced by a rename, so a
+ * mapping never points past the end of its file: a read beyond the mapped size remaps the (grown) file, and the
+ * operations that swap or remove page files drop the stale mapping with {@link #invalidate} or
+ * {@link #invalidateUnder}. Blanked rows are visible through the mapping since it shares the page cache with the
+ * writers. Callers hold the page file's read lock while reading a slice, as with the {@code RandomAccessFile} path.
+ *
+ * <p>An evicted mapping is unmapped once the garbage collector reclaims it; readers still holding a slice of it keep
+ * reading valid (if possibly stale) bytes of the old file.
+ */
+final class MappedPagePool {
+    private final int maxMappedPages;
+    private final Map<String, MappedByteBuffer> mappings;
+
+    MappedPagePool(int maxMappedPages) {
+        this.maxMappedPages = maxMappedPages;
+        this.mappings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MappedByteBuffer> eldest) {
+                return size() > MappedPagePool.this.maxMappedPages;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only view of the {@code length} bytes of {@code file} starting at {@code position}, mapping the
+     * file (again, if it grew since it was mapped) when needed.
+     */
+    ByteBuffer slice(File file, long position, int length) throws IOException {
+        final var end = position + length;
+        final var key = file.getAbsolutePath();
+        MappedByteBuffer mapping;
+        synchronized (mappings) {
+            mapping = mappings.get(key);
+        }
+        if (mapping == null || mapping.capacity() < end) {
+            mapping = map(file, end);
+            synchronized (mappings) {
+                final var current = mappings.get(key);
+                // Another reader may have remapped the file concurrently; keep whichever mapping covers more.
+                if (current == null || current.capacity() < mapping.capacity()) {
+                    mappings.put(key, mapping);
+                }
+            }
+        }
+        // slice(index, length) leaves the shared mapping's position untouched, so concurrent readers don't interfere.
+        return mapping.slice((int) position, length);
+    }
+
+    void invalidate(File file) {
+        synchronized (mappings) {
+            mappings.remove(file.getAbsolutePath());
+        }
+    }
+
+    // Drops the mappings of every page file inside the folder (a dropped collection or database).
+    void invalidateUnder(File folder) {
+        final var prefix = folder.getAbsolutePath() + File.separator;
+        synchronized (mappings) {
+            mappings.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    int size() {
+        synchronized (mappings) {
+            return mappings.size();
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long requiredSize) throws IOException {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final var fileSize = channel.size();
+            if (fileSize < requiredSize) {
+                throw new EOFException("Reading past the end of " + file.getName() + ": " + requiredSize + " > "
+                        + fileSize);
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Page file " + file.getName() + " is too large to be mapped: " + fileSize);
+            }
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+    }
+}
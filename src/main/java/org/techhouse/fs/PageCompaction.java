@@ -0,0 +1,12 @@
+package org.techhouse.fs;
+
+import java.util.Map;
+
+/**
+ * Describes a background page compaction so the caller can keep the in-memory PK index consistent with the
+ * rewritten page file: every cached entry on {@code page} of {@code dbName}/{@code collName} whose id is a key of
+ * {@code newPositions} now starts at the mapped position. Returned by {@link FileSystem#compactPage}; a
+ * {@code null} value means the page was not rewritten.
+ */
+public record PageCompaction(String dbName, String collName, long page, Map<String, Long> newPositions) {
+}
@@ -0,0 +1,75 @@
+package org.techhouse.fs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.techhouse.config.Globals;
+import org.techhouse.data.PkIndexEntry;
+import org.techhouse.log.Logger;
+
+/**
+ * Line format of the log-structured PK index file ({@code {coll}-_id-String.idx}). The file is a sorted base run
+ * (written by the last merge) followed by delta records appended by writes, so inserting, updating or deleting a
+ * single id is one append instead of a whole-file rewrite:
+ * <ul>
+ * <li>{@code id|position|length|page}: the current location of {@code id} (an insert, or an update superseding
+ * any earlier record for the same id);</li>
+ * <li>{@code id|-1|-1|page}: a tombstone, {@code id} was deleted.</li>
+ * </ul>
+ * A background page compaction (see {@link FileSystem#compactPage}) simply appends the new location of every row
+ * it moved.
+ *
+ * <p>Replaying the lines in order yields the live index. FileSystem merges the file (rewrites just the sorted live
+ * entries) once enough dead records accumulate, and whenever a full load finds any.
+ */
+final class PkIndexLog {
+    private PkIndexLog() {
+    }
+
+    private static final Logger logger = Logger.logFor(PkIndexLog.class);
+    private static final long TOMBSTONE = -1;
+
+    /**
+     * The live entries (sorted by id) of a replayed PK index file, plus how many of the file's records are dead
+     * weight (superseded entries, tombstones and malformed lines) that a merge would drop.
+     */
+    record Replay(List<PkIndexEntry> entries, int deadRecords) {
+    }
+
+    static String tombstoneLine(String value, long page) {
+        return value + Globals.INDEX_ENTRY_SEPARATOR + TOMBSTONE + Globals.INDEX_ENTRY_SEPARATOR + TOMBSTONE
+                + Globals.INDEX_ENTRY_SEPARATOR + page;
+    }
+
+    static Replay replay(String dbName, String collectionName, List<String> lines, String fileName) {
+        final var live = new LinkedHashMap<String, PkIndexEntry>();
+        var dead = 0;
+        for (var line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            final PkIndexEntry record;
+            try {
+                record = PkIndexEntry.fromIndexFileEntry(dbName, collectionName, line);
+            } catch (Exception e) {
+                dead++;
+                logger.warning("Dropping malformed PK index entry in " + fileName + ": " + e.getMessage());
+                continue;
+            }
+            if (record.getLength() == TOMBSTONE) {
+                dead++;
+                if (live.remove(record.getValue()) != null) {
+                    dead++;
+                }
+            } else {
+                if (live.put(record.getValue(), record) != null) {
+                    dead++;
+                }
+            }
+        }
+        final var entries = new ArrayList<>(live.values());
+        entries.sort(Comparator.comparing(PkIndexEntry::getValue));
+        return new Replay(entries, dead);
+    }
+}
@@ -0,0 +1,8 @@
+package org.techhouse.fs;
+
+// How a collection's page files encode new and rewritten documents, chosen at CREATE_COLLECTION and changed with
+// MIGRATE_COLLECTION. JSON rows are the document's JSON text; BINARY rows use the length-prefixed, typed encoding
+// of DocumentCodec. Every row identifies its own encoding, so a page may hold both while a migration is underway.
+public enum StorageFormat {
+    JSON, BINARY
+}
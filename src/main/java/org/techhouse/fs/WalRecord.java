@@ -0,0 +1,60 @@
+package org.techhouse.fs;
+
+import org.techhouse.config.Globals;
+import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ioc.IocContainer;
+
+/**
+ * A single logical change recorded in a database's write-ahead log. A {@link WalOperation#SAVE} carries the full
+ * document as it must exist after the write (insert and update are both "this id now looks like this"), and a
+ * {@link WalOperation#DELETE} only the id, so replaying a record is idempotent: recovery compares it against the
+ * page and PK index files and only re-applies what is missing.
+ */
+public record WalRecord(WalOperation operation, String collName, String id, long page, JsonObject data) {
+    private static final EJson eJson = IocContainer.get(EJson.class);
+    private static final String OP_FIELD = "op";
+    private static final String COLL_FIELD = "coll";
+    private static final String ID_FIELD = "id";
+    private static final String PAGE_FIELD = "page";
+    private static final String DATA_FIELD = "data";
+
+    public enum WalOperation {
+        SAVE, DELETE
+    }
+
+    public static WalRecord save(String collName, String id, long page, JsonObject data) {
+        return new WalRecord(WalOperation.SAVE, collName, id, page, data);
+    }
+
+    public static WalRecord delete(String collName, String id, long page) {
+        return new WalRecord(WalOperation.DELETE, collName, id, page, null);
+    }
+
+    // Builds the log line around the already-serialized document (the same string that is appended to the page
+    // file), so logging a write does not serialize the document a second time.
+    public static String toLogLine(WalOperation operation, String collName, String id, long page,
+            String serializedData) {
+        final var builder = new StringBuilder(64 + (serializedData == null ? 0 : serializedData.length()));
+        builder.append("{\"").append(OP_FIELD).append("\":\"").append(operation.name()).append("\",\"")
+                .append(COLL_FIELD).append("\":\"").append(collName).append("\",\"").append(ID_FIELD)
+                .append("\":\"").append(id).append("\",\"").append(PAGE_FIELD).append("\":").append(page);
+        if (serializedData != null) {
+            builder.append(",\"").append(DATA_FIELD).append("\":").append(serializedData);
+        }
+        return builder.append('}').toString();
+    }
+
+    public static WalRecord fromLogLine(String line) {
+        final var json = eJson.fromJson(line, JsonObject.class);
+        final var operation = WalOperation.valueOf(json.get(OP_FIELD).asJsonString().getValue());
+        final var collName = json.get(COLL_FIELD).asJsonString().getValue();
+        final var id = json.get(ID_FIELD).asJsonString().getValue();
+        final var page = json.get(PAGE_FIELD).asJsonNumber().getValue().longValue();
+        final var data = json.has(DATA_FIELD) ? json.get(DATA_FIELD).asJsonObject() : null;
+        if (operation == WalOperation.SAVE && (data == null || !data.has(Globals.PK_FIELD))) {
+            throw new IllegalStateException("SAVE record for '" + id + "' has no document");
+        }
+        return new WalRecord(operation, collName, id, page, data);
+    }
+}
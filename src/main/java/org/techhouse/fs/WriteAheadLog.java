@@ -0,0 +1,472 @@
+package org.techhouse.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.techhouse.config.Configuration;
+import org.techhouse.config.Globals;
+import org.techhouse.log.Logger;
+
+/**
+ * Per-database append-only write-ahead log. Every SAVE/BULK_SAVE/DELETE write is recorded here, and made durable,
+ * before FileSystem touches the page and PK index files; those files are then only forced to disk by the
+ * checkpointer, which drops the log's records up to the last one whose write, and every earlier one, has been
+ * applied, once the files they touched are on disk.
+ *
+ * <p>Concurrent writers on the same database share a group commit: the first writer to find no flush in progress
+ * becomes the leader, optionally waits for the group-commit window so other writers can join, and then writes every
+ * queued record with a single sequential write and a single {@code force}. Followers just wait until the leader's
+ * flush covers their records.
+ *
+ * <p>Each line is {@code crc32|record}; a torn or corrupt tail (a write that was never acknowledged) is skipped on
+ * recovery.
+ */
+public class WriteAheadLog {
+    private static final Logger logger = Logger.logFor(WriteAheadLog.class);
+    private static final char CRC_SEPARATOR = '|';
+
+    private final Map<String, DatabaseLog> logs = new ConcurrentHashMap<>();
+    private ScheduledExecutorService checkpointer;
+
+    private static Configuration config() {
+        return Configuration.getInstance();
+    }
+
+    public boolean isEnabled() {
+        return config().isWalEnabled();
+    }
+
+    private File getLogFile(String dbName) {
+        return new File(config().getFilePath() + Globals.FILE_SEPARATOR + dbName + Globals.FILE_SEPARATOR + dbName
+                + Globals.WAL_FILE_EXTENSION);
+    }
+
+    private DatabaseLog logFor(String dbName) {
+        return logs.computeIfAbsent(dbName, _ -> new DatabaseLog(getLogFile(dbName).toPath()));
+    }
+
+    /**
+     * Appends the given log lines (see {@link WalRecord#toLogLine}) and returns once they are durable. The caller
+     * must apply the change to the page/index files and then close the returned ticket, registering the files it
+     * touched so the next checkpoint forces them before truncating the log.
+     */
+    public Ticket log(String dbName, List<String> lines) throws IOException {
+        if (!isEnabled() || lines.isEmpty()) {
+            return new Ticket(null, 0, false);
+        }
+        final var databaseLog = logFor(dbName);
+        final var seq = databaseLog.append(lines);
+        return new Ticket(databaseLog, seq, true);
+    }
+
+    /**
+     * The committed records of the database's log, in write order. A corrupt line ends the read: anything after
+     * it was never acknowledged to a client.
+     */
+    public List<WalRecord> readCommittedRecords(String dbName) throws IOException {
+        final var file = getLogFile(dbName);
+        final var records = new ArrayList<WalRecord>();
+        if (!file.exists()) {
+            return records;
+        }
+        for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final var separator = line.indexOf(CRC_SEPARATOR);
+            try {
+                final var payload = line.substring(separator + 1);
+                if (separator <= 0 || Long.parseLong(line.substring(0, separator), 16) != crcOf(payload)) {
+                    throw new IllegalStateException("checksum mismatch");
+                }
+                records.add(WalRecord.fromLogLine(payload));
+            } catch (Exception e) {
+                logger.warning("Ignoring torn write-ahead log tail in " + file.getName() + ": " + e.getMessage());
+                break;
+            }
+        }
+        return records;
+    }
+
+    // Databases that have a non-empty log on disk, i.e. whose last run did not checkpoint cleanly.
+    public List<String> databasesWithLog() {
+        final var result = new ArrayList<String>();
+        final var dbFolders = new File(config().getFilePath()).listFiles(File::isDirectory);
+        if (dbFolders != null) {
+            for (var dbFolder : dbFolders) {
+                final var logFile = getLogFile(dbFolder.getName());
+                if (logFile.exists() && logFile.length() > 0) {
+                    result.add(dbFolder.getName());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forces every page/index file written since the last checkpoint and drops the records of the log up to the last
+     * one whose write, and every earlier one, has been applied: a record after a write still being applied is kept,
+     * since its effect may not be on disk yet, and the next run picks it up. Returns whether the log was emptied.
+     */
+    public boolean checkpoint(String dbName) throws IOException {
+        final var databaseLog = logs.get(dbName);
+        return databaseLog == null || databaseLog.checkpoint();
+    }
+
+    // Recovery has re-applied the log and forced the files it touched, so the log can be emptied.
+    public void truncateAfterRecovery(String dbName, Set<File> touchedFiles) throws IOException {
+        forceAll(touchedFiles);
+        final var file = getLogFile(dbName);
+        if (file.exists()) {
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+                channel.force(true);
+            }
+        }
+    }
+
+    public void checkpointAll() {
+        for (var dbName : logs.keySet()) {
+            try {
+                checkpoint(dbName);
+            } catch (IOException e) {
+                logger.error("Write-ahead log checkpoint failed for database " + dbName, e);
+            }
+        }
+    }
+
+    // Closes and forgets the database's log (dropping the database deletes the file with the folder).
+    public void close(String dbName) {
+        final var databaseLog = logs.remove(dbName);
+        if (databaseLog != null) {
+            databaseLog.close();
+        }
+    }
+
+    public void closeAll() {
+        for (var dbName : logs.keySet()) {
+            close(dbName);
+        }
+    }
+
+    public void startCheckpointThread() {
+        if (!isEnabled()) {
+            return;
+        }
+        final var interval = config().getWalCheckpointIntervalSeconds();
+        checkpointer = Executors.newScheduledThreadPool(1, r -> {
+            final var t = new Thread(r, "wal-checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleAtFixedRate(this::checkpointAll, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public void stopCheckpointThread() {
+        if (checkpointer != null) {
+            checkpointer.shutdownNow();
+            checkpointer = null;
+        }
+    }
+
+    private static long crcOf(String payload) {
+        final var crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static void forceAll(Set<File> files) throws IOException {
+        for (var file : files) {
+            if (file.exists()) {
+                try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handed back by {@link #log}; closing it marks the logged write as applied to the data files.
+     */
+    public static final class Ticket implements AutoCloseable {
+        private final DatabaseLog databaseLog;
+        private final long seq;
+        private final boolean tracking;
+        private final Set<File> touched = new HashSet<>();
+
+        private Ticket(DatabaseLog databaseLog, long seq, boolean tracking) {
+            this.databaseLog = databaseLog;
+            this.seq = seq;
+            this.tracking = tracking;
+        }
+
+        // A ticket for recovery replay: nothing is logged, but the touched files are collected so they can be
+        // forced before the log is truncated.
+        public static Ticket forRecovery() {
+            return new Ticket(null, 0, true);
+        }
+
+        public void touched(File file) {
+            if (tracking) {
+                touched.add(file);
+            }
+        }
+
+        public Set<File> getTouchedFiles() {
+            return touched;
+        }
+
+        @Override
+        public void close() {
+            if (databaseLog != null) {
+                databaseLog.applied(seq, touched);
+            }
+        }
+    }
+
+    private static final class DatabaseLog {
+        private final Path path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition flushed = lock.newCondition();
+        // Each queued write's lines, in sequence order.
+        private List<List<byte[]>> queued = new ArrayList<>();
+        private final Set<File> dirtyFiles = new HashSet<>();
+        private FileChannel channel;
+        private long appendedSeq;
+        private long durableSeq;
+        private boolean flushing;
+        // Sequence up to which a flush failed; those writers get the failure instead of waiting forever.
+        private long failedSeq;
+        private IOException failure;
+        // Writes that are logged, or being logged, but not yet applied to the page/index files.
+        private final TreeSet<Long> unapplied = new TreeSet<>();
+        // Writers waiting for their records to be durable, the leader included.
+        private int waiting;
+        // Bytes in the log file, and where the records of each durable write not yet checkpointed end in it.
+        private long logLength;
+        private final TreeMap<Long, Long> endOffsets = new TreeMap<>();
+
+        private DatabaseLog(Path path) {
+            this.path = path;
+        }
+
+        private long append(List<String> lines) throws IOException {
+            final var bytes = new ArrayList<byte[]>(lines.size());
+            for (var line : lines) {
+                bytes.add((Long.toHexString(crcOf(line)) + CRC_SEPARATOR + line + Globals.NEWLINE)
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            lock.lock();
+            try {
+                queued.add(bytes);
+                final var mySeq = ++appendedSeq;
+                unapplied.add(mySeq);
+                waiting++;
+                try {
+                    while (durableSeq < mySeq) {
+                        if (failedSeq >= mySeq) {
+                            throw new IOException("Write-ahead log append failed for " + path.getFileName(), failure);
+                        }
+                        if (flushing) {
+                            flushed.awaitUninterruptibly();
+                        } else {
+                            flushAsLeader();
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    unapplied.remove(mySeq);
+                    throw e;
+                } finally {
+                    waiting--;
+                }
+                return mySeq;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called with the lock held; releases it while waiting for followers and while writing.
+        private void flushAsLeader() throws IOException {
+            flushing = true;
+            try {
+                final var window = config().getWalGroupCommitMillis();
+                // Only worth delaying the leader when other writers are waiting to be logged too: a writer already
+                // durable and applying its change cannot join the group.
+                if (window > 0 && waiting > 1) {
+                    lock.unlock();
+                    try {
+                        Thread.sleep(window);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        lock.lock();
+                    }
+                }
+                final var batch = queued;
+                final var batchSeq = appendedSeq;
+                final var firstSeq = batchSeq - batch.size() + 1;
+                queued = new ArrayList<>();
+                lock.unlock();
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    lock.lock();
+                    failedSeq = batchSeq;
+                    failure = e;
+                    syncLogLength();
+                    throw e;
+                }
+                lock.lock();
+                for (var i = 0; i < batch.size(); i++) {
+                    for (var line : batch.get(i)) {
+                        logLength += line.length;
+                    }
+                    endOffsets.put(firstSeq + i, logLength);
+                }
+                durableSeq = batchSeq;
+            } finally {
+                flushing = false;
+                flushed.signalAll();
+            }
+        }
+
+        private void write(List<List<byte[]>> batch) throws IOException {
+            var total = 0;
+            for (var lines : batch) {
+                for (var line : lines) {
+                    total += line.length;
+                }
+            }
+            final var buffer = ByteBuffer.allocate(total);
+            for (var lines : batch) {
+                for (var line : lines) {
+                    buffer.put(line);
+                }
+            }
+            buffer.flip();
+            final var logChannel = channel();
+            while (buffer.hasRemaining()) {
+                logChannel.write(buffer);
+            }
+            logChannel.force(false);
+        }
+
+        private FileChannel channel() throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                if (endOffsets.isEmpty()) {
+                    logLength = channel.size();
+                }
+            }
+            return channel;
+        }
+
+        // A failed write may have left part of the batch in the log; the offsets of later records count it.
+        private void syncLogLength() {
+            try {
+                logLength = channel().size();
+            } catch (IOException e) {
+                logger.warning("Could not read the size of write-ahead log " + path.getFileName() + ": "
+                        + e.getMessage());
+            }
+        }
+
+        private void applied(long seq, Set<File> files) {
+            lock.lock();
+            try {
+                dirtyFiles.addAll(files);
+                unapplied.remove(seq);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean checkpoint() throws IOException {
+            lock.lock();
+            try {
+                // A flush in progress writes without the lock; new ones cannot start while it is held.
+                while (flushing) {
+                    flushed.awaitUninterruptibly();
+                }
+                if (channel == null) {
+                    // Nothing was logged for this database since startup.
+                    return true;
+                }
+                // Every write up to here has been applied, so the files hold their effect once forced.
+                final var appliedSeq = unapplied.isEmpty() ? durableSeq : Math.min(unapplied.first() - 1, durableSeq);
+                final var cut = endOffsets.floorEntry(appliedSeq);
+                if (cut == null) {
+                    return logLength == 0;
+                }
+                forceAll(dirtyFiles);
+                dirtyFiles.clear();
+                final var offset = cut.getValue();
+                if (offset == logLength) {
+                    channel().truncate(0);
+                    channel().force(true);
+                } else {
+                    dropPrefix(offset);
+                }
+                logLength -= offset;
+                final var remaining = new TreeMap<Long, Long>();
+                endOffsets.tailMap(cut.getKey(), false).forEach((seq, end) -> remaining.put(seq, end - offset));
+                endOffsets.clear();
+                endOffsets.putAll(remaining);
+                return logLength == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Replaces the log with its records after the offset, so a crash leaves either the old or the new one.
+        private void dropPrefix(long offset) throws IOException {
+            final var tail = path.resolveSibling(path.getFileName() + ".tail");
+            try (var source = FileChannel.open(path, StandardOpenOption.READ);
+                    var target = FileChannel.open(tail, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                var position = offset;
+                while (position < logLength) {
+                    position += source.transferTo(position, logLength - position, target);
+                }
+                target.force(true);
+            }
+            channel.close();
+            channel = null;
+            Files.move(tail, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to close write-ahead log " + path.getFileName() + ": " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -77,13 +77,24 @@ public class ListenProcessorThread implements Runnable {
         final var updateResponse = new ListenResponse(listenId.toString(), results, newHash, true);
         writerLock.lock();
         try {
-            writer.write(eJson.toJson(updateResponse));
+            eJson.toJson(updateResponse, writer);
             writer.newLine();
             writer.flush();
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            // Part of the update may already be written: closing the writer closes the connection, so no other
+            // response follows half a line.
             manager.unregister(listenId);
+            closeQuietly(writer);
         } finally {
             writerLock.unlock();
         }
     }
+
+    private static void closeQuietly(java.io.BufferedWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
 }
@@ -1,6 +1,9 @@
 package org.techhouse.listen;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
@@ -16,10 +19,11 @@ public final class ResultHasher {
 
     public static String hash(List<JsonObject> results) {
         final var wrapper = new ResultWrapper(results);
-        final var json = eJson.toJson(wrapper);
         try {
             final var digest = MessageDigest.getInstance("SHA-256");
-            final var bytes = digest.digest(json.getBytes(StandardCharsets.UTF_8));
+            // The JSON is fed to the digest as it is written instead of being built as a string first.
+            eJson.toJson(wrapper, new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            final var bytes = digest.digest();
             final var sb = new StringBuilder(64);
             for (var b : bytes) {
                 sb.append(String.format("%02x", b));
@@ -27,6 +31,9 @@ public final class ResultHasher {
             return sb.toString();
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 not available", e);
+        } catch (IOException e) {
+            // The null stream never fails
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -13,6 +13,7 @@ import org.techhouse.cache.MemoryManagement;
 import org.techhouse.concurrency.ResourceLocking;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.data.FieldStatistics;
 import org.techhouse.data.IndexedDbEntry;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.data.admin.AdminCollEntry;
@@ -201,11 +202,8 @@ public final class AdminOperationHelper {
             indexedEntriesToUpdate.add(indexedEntry);
         }
         if (!indexedEntriesToUpdate.isEmpty()) {
-            final var bulkResult = fs.bulkUpdateFromCollection(Globals.ADMIN_DB_NAME, pagesPerCollectionName,
+            final var updated = fs.bulkUpdateFromCollection(Globals.ADMIN_DB_NAME, pagesPerCollectionName,
                     indexedEntriesToUpdate);
-            final var updated = bulkResult.updated();
-            // Fix the in-memory positions of non-updated admin-page survivors shifted by the batch.
-            bulkResult.compactions().forEach(cache::shiftPkPositionsAfterCompaction);
             for (var ie : updated) {
                 pkIdxList.removeIf(pk -> pk.getValue().equals(ie.get_id()));
                 pkIdxList.add(ie.getIndex());
@@ -221,9 +219,7 @@ public final class AdminOperationHelper {
             PkIndexEntry adminDbEntry;
             if (adminIndexPkDbEntry != null) {
                 dbEntry.setPage(adminIndexPkDbEntry.getPage());
-                final var updateResult = fs.updateFromCollection(dbEntry, adminIndexPkDbEntry);
-                adminDbEntry = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
+                adminDbEntry = fs.updateFromCollection(dbEntry, adminIndexPkDbEntry);
             } else {
                 dbEntry.setPage(cache.selectPageForInsert(Globals.ADMIN_DB_NAME,
                         Globals.ADMIN_DATABASES_COLLECTION_NAME, dbEntry.byteSize()));
@@ -254,8 +250,7 @@ public final class AdminOperationHelper {
                 //      will change the database entry
                 adminIndexPkDbEntry = cache.getPkIndexAdminDbEntry(dbName);
                 adminDbEntry.setPreviousByteSize(adminIndexPkDbEntry.getLength());
-                final var compaction = fs.deleteFromCollection(adminIndexPkDbEntry);
-                cache.shiftPkPositionsAfterCompaction(compaction);
+                fs.deleteFromCollection(adminIndexPkDbEntry);
                 cache.removeAdminDbEntry(dbName);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_DATABASES_COLLECTION_NAME, EventType.DELETED,
                         List.of(adminDbEntry), false);
@@ -302,9 +297,7 @@ public final class AdminOperationHelper {
             PkIndexEntry pkIndexEntry;
             if (adminIndexPkCollEntry != null) {
                 dbEntry.setPage(adminIndexPkCollEntry.getPage());
-                final var updateResult = fs.updateFromCollection(dbEntry, adminIndexPkCollEntry);
-                pkIndexEntry = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
+                pkIndexEntry = fs.updateFromCollection(dbEntry, adminIndexPkCollEntry);
             } else {
                 dbEntry.setPage(cache.selectPageForInsert(Globals.ADMIN_DB_NAME,
                         Globals.ADMIN_COLLECTIONS_COLLECTION_NAME, dbEntry.byteSize()));
@@ -320,9 +313,7 @@ public final class AdminOperationHelper {
             collections.add(split[1]);
             adminDbEntry.setCollections(collections);
             adminDbEntry.setPage(adminDbPkIndexEntry.getPage());
-            final var dbUpdateResult = fs.updateFromCollection(adminDbEntry, adminDbPkIndexEntry);
-            adminDbPkIndexEntry = dbUpdateResult.indexEntry();
-            cache.shiftPkPositionsAfterCompaction(dbUpdateResult.compaction());
+            adminDbPkIndexEntry = fs.updateFromCollection(adminDbEntry, adminDbPkIndexEntry);
             cache.putPkIndexAdminDbEntry(adminDbPkIndexEntry);
             baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_DATABASES_COLLECTION_NAME, EventType.UPDATED,
                     List.of(adminDbEntry), false);
@@ -344,8 +335,7 @@ public final class AdminOperationHelper {
             try {
                 final var adminCollEntry = cache.getAdminCollectionEntry(dbName, collName);
                 adminCollEntry.setPreviousByteSize(adminIndexPkCollEntry.getLength());
-                final var compaction = fs.deleteFromCollection(adminIndexPkCollEntry);
-                cache.shiftPkPositionsAfterCompaction(compaction);
+                fs.deleteFromCollection(adminIndexPkCollEntry);
                 cache.removeAdminCollEntry(collIdentifier);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_COLLECTIONS_COLLECTION_NAME,
                         EventType.DELETED, List.of(adminCollEntry), false);
@@ -355,9 +345,8 @@ public final class AdminOperationHelper {
                 otherCollections.remove(collName);
                 adminDbEntry.setCollections(otherCollections);
                 adminDbEntry.setPage(adminIndexPkDbEntry.getPage());
-                final var dbUpdateResult = fs.updateFromCollection(adminDbEntry, adminIndexPkDbEntry);
-                cache.shiftPkPositionsAfterCompaction(dbUpdateResult.compaction());
-                cache.putAdminDbEntry(adminDbEntry, dbUpdateResult.indexEntry());
+                final var updatedPkIndexEntry = fs.updateFromCollection(adminDbEntry, adminIndexPkDbEntry);
+                cache.putAdminDbEntry(adminDbEntry, updatedPkIndexEntry);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_DATABASES_COLLECTION_NAME, EventType.UPDATED,
                         List.of(adminDbEntry), false);
             } finally {
@@ -371,18 +360,20 @@ public final class AdminOperationHelper {
         return cache.getAdminCollectionEntry(dbName, collName);
     }
 
-    public static void saveNewIndex(String dbName, String collName, String fieldName)
+    // Registers the index (a no-op when it already is, as on a rebuild) along with the statistics of its build.
+    public static void saveNewIndex(String dbName, String collName, String fieldName, FieldStatistics statistics)
             throws IOException, InterruptedException {
-        internalUpdateAdminColl(dbName, collName, fieldName, true);
+        internalUpdateAdminColl(dbName, collName, fieldName, statistics);
     }
 
     public static void deleteIndex(String dbName, String collName, String fieldName)
             throws IOException, InterruptedException {
-        internalUpdateAdminColl(dbName, collName, fieldName, false);
+        internalUpdateAdminColl(dbName, collName, fieldName, null);
     }
 
-    private static void internalUpdateAdminColl(String dbName, String collName, String fieldName, boolean add)
-            throws IOException, InterruptedException {
+    // Adds the index with its statistics, or removes both when statistics is null.
+    private static void internalUpdateAdminColl(String dbName, String collName, String fieldName,
+            FieldStatistics statistics) throws IOException, InterruptedException {
         final var collIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         var adminIndexPkCollEntry = cache.getPkIndexAdminCollEntry(collIdentifier);
         if (adminIndexPkCollEntry != null) {
@@ -390,16 +381,18 @@ public final class AdminOperationHelper {
             try {
                 var adminCollEntry = cache.getAdminCollectionEntry(dbName, collName);
                 final var indexes = new HashSet<>(adminCollEntry.getIndexes());
-                if (add) {
+                final var fieldStatistics = new HashMap<>(adminCollEntry.getStatistics());
+                if (statistics != null) {
                     indexes.add(fieldName);
+                    fieldStatistics.put(fieldName, statistics);
                 } else {
                     indexes.remove(fieldName);
+                    fieldStatistics.remove(fieldName);
                 }
                 adminCollEntry.setIndexes(indexes);
+                adminCollEntry.setStatistics(fieldStatistics);
                 adminCollEntry.setPage(adminIndexPkCollEntry.getPage());
-                final var updateResult = fs.updateFromCollection(adminCollEntry, adminIndexPkCollEntry);
-                adminIndexPkCollEntry = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
+                adminIndexPkCollEntry = fs.updateFromCollection(adminCollEntry, adminIndexPkCollEntry);
                 cache.putAdminCollectionEntry(adminCollEntry, adminIndexPkCollEntry);
                 cache.putPkIndexAdminCollEntry(adminIndexPkCollEntry);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_COLLECTIONS_COLLECTION_NAME,
@@ -425,9 +418,7 @@ public final class AdminOperationHelper {
             PkIndexEntry adminUserEntry;
             if (adminIndexPkUserEntry != null) {
                 userEntry.setPage(adminIndexPkUserEntry.getPage());
-                final var updateResult = fs.updateFromCollection(userEntry, adminIndexPkUserEntry);
-                adminUserEntry = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
+                adminUserEntry = fs.updateFromCollection(userEntry, adminIndexPkUserEntry);
             } else {
                 userEntry.setPage(cache.selectPageForInsert(Globals.ADMIN_DB_NAME, Globals.ADMIN_USERS_COLLECTION_NAME,
                         userEntry.byteSize()));
@@ -473,9 +464,7 @@ public final class AdminOperationHelper {
             if (existingPk != null) {
                 usageEntry.setPage(existingPk.getPage());
                 usageEntry.setPreviousByteSize(existingPk.getLength());
-                final var updateResult = fs.updateFromCollection(usageEntry, existingPk);
-                savedPk = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
+                savedPk = fs.updateFromCollection(usageEntry, existingPk);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_COLLECTION_USAGE_NAME, EventType.UPDATED,
                         List.of(usageEntry), false);
             } else {
@@ -510,8 +499,7 @@ public final class AdminOperationHelper {
                 final var usage = AdminCollectionUsageEntry.fromJsonObject(data);
                 if (usage.getLastAccessMillis() < threshold) {
                     usage.setPreviousByteSize(pk.getLength());
-                    final var compaction = fs.deleteFromCollection(pk);
-                    cache.shiftPkPositionsAfterCompaction(compaction);
+                    fs.deleteFromCollection(pk);
                     cache.removePkIndexCollectionUsage(pk.getValue());
                     memoryManagement.clearCounter(usage.getKind(), usage.getDbName(), usage.getCollName(),
                             usage.getIndexKey());
@@ -531,8 +519,7 @@ public final class AdminOperationHelper {
             try {
                 final var adminUserEntry = cache.getAdminUserEntry(username);
                 adminUserEntry.setPreviousByteSize(adminIndexPkUserEntry.getLength());
-                final var compaction = fs.deleteFromCollection(adminIndexPkUserEntry);
-                cache.shiftPkPositionsAfterCompaction(compaction);
+                fs.deleteFromCollection(adminIndexPkUserEntry);
                 cache.removeAdminUserEntry(username);
                 baseUpdateEntryCount(Globals.ADMIN_DB_NAME, Globals.ADMIN_USERS_COLLECTION_NAME, EventType.DELETED,
                         List.of(adminUserEntry), false);
@@ -2,19 +2,14 @@ package org.techhouse.ops;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.techhouse.analyze.AnalyzeContext;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
-import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
-import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBaseElement;
 import org.techhouse.ejson.elements.JsonCustom;
 import org.techhouse.ejson.elements.JsonNull;
@@ -35,7 +30,6 @@ import org.techhouse.utils.JsonUtils;
 public final class AggregationOperationHelper {
     private AggregationOperationHelper() {
     }
-    private static final String GROUP_FIELD_NAME = "group";
     private static final Cache cache = IocContainer.get(Cache.class);
 
     public static List<JsonObject> processStepsOnStream(List<BaseAggregationStep> steps,
@@ -47,8 +41,33 @@ public final class AggregationOperationHelper {
         return applySteps(request.getAggregationSteps(), null, request.getDatabaseName(), request.getCollectionName());
     }
 
+    /**
+     * The results of the aggregation as a lazy stream, for callers that read them a batch at a time. The stream reads
+     * the collection as it is consumed, so it must be consumed under the same locks as {@link #processAggregation}.
+     */
+    public static Stream<JsonObject> streamAggregation(AggregateRequest request) throws IOException {
+        return buildStream(request.getAggregationSteps(), null, request.getDatabaseName(),
+                request.getCollectionName());
+    }
+
     private static List<JsonObject> applySteps(List<BaseAggregationStep> steps, Stream<JsonObject> initialStream,
             String dbName, String collName) throws IOException {
+        // Closing the result releases what its steps hold open, such as the runs of an external SORT.
+        try (var resultStream = buildStream(steps, initialStream, dbName, collName)) {
+            return resultStream.toList();
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Stream<JsonObject> buildStream(List<BaseAggregationStep> requestedSteps,
+            Stream<JsonObject> initialStream, String dbName, String collName) throws IOException {
+        final var plan = QueryPlanner.plan(requestedSteps, dbName, collName, initialStream == null);
+        final var analyzeContext = AnalyzeContext.current();
+        if (analyzeContext != null) {
+            analyzeContext.setPlan(plan);
+        }
+        final var steps = plan.steps();
         Stream<JsonObject> resultStream = initialStream;
         var startIndex = 0;
         if (resultStream == null) {
@@ -62,31 +81,44 @@ public final class AggregationOperationHelper {
         }
         for (var i = startIndex; i < steps.size(); i++) {
             final var step = steps.get(i);
-            resultStream = switch (step.getType()) {
-                case FILTER -> processFilterStep(step, resultStream, dbName, collName);
-                case MAP -> processMapStep(step, resultStream, dbName, collName);
-                case GROUP_BY -> processGroupByStep(step, resultStream, dbName, collName);
-                case JOIN -> processJoinStep(step, resultStream, dbName, collName);
-                case COUNT -> processCountStep(resultStream, dbName, collName);
-                case DISTINCT -> processDistinctStep(step, resultStream, dbName, collName);
-                case LIMIT -> processLimitStep(step, resultStream, dbName, collName);
-                case SKIP -> processSkipStep(step, resultStream, dbName, collName);
-                case SORT -> processSortStep(step, resultStream, dbName, collName);
-            };
-        }
-        try {
-            if (resultStream == null) {
-                // No step produced a stream (empty aggregationSteps): return the whole collection,
-                // as documented. A null collName means a step-on-stream call with no source to load.
-                if (collName == null || collName.isEmpty()) {
-                    return new ArrayList<>();
+            // A scan started by the source step may hand back pages as they are read, unless a LIMIT or SKIP
+            // picks documents by their position.
+            final var source = resultStream == null;
+            if (source) {
+                cache.allowUnorderedScans(!dependsOnScanOrder(steps.subList(i, steps.size())));
+            }
+            try {
+                resultStream = switch (step.getType()) {
+                    case FILTER -> processFilterStep(step, resultStream, dbName, collName);
+                    case MAP -> processMapStep(step, resultStream, dbName, collName);
+                    case GROUP_BY -> processGroupByStep(step, resultStream, dbName, collName);
+                    case JOIN -> processJoinStep(step, resultStream, dbName, collName);
+                    case COUNT -> processCountStep(resultStream, dbName, collName);
+                    case DISTINCT -> processDistinctStep(step, resultStream, dbName, collName);
+                    case LIMIT -> processLimitStep(step, resultStream, dbName, collName);
+                    case SKIP -> processSkipStep(step, resultStream, dbName, collName);
+                    case SORT -> processSortStep(step, resultStream, dbName, collName);
+                };
+            } finally {
+                if (source) {
+                    cache.allowUnorderedScans(false);
                 }
-                resultStream = cache.initializeStreamIfNecessary(null, dbName, collName);
             }
-            return resultStream.toList();
-        } catch (java.io.UncheckedIOException e) {
-            throw e.getCause();
         }
+        if (resultStream == null) {
+            // No step produced a stream (empty aggregationSteps): return the whole collection,
+            // as documented. A null collName means a step-on-stream call with no source to load.
+            if (collName == null || collName.isEmpty()) {
+                return Stream.empty();
+            }
+            resultStream = cache.initializeStreamIfNecessary(null, dbName, collName);
+        }
+        return resultStream;
+    }
+
+    private static boolean dependsOnScanOrder(List<BaseAggregationStep> steps) {
+        return steps.stream().anyMatch(step -> step instanceof LimitAggregationStep
+                || step instanceof SkipAggregationStep || step instanceof QueryPlanner.TopKSortStep);
     }
 
     private static Stream<JsonObject> processCountStep(Stream<JsonObject> resultStream, String dbName,
@@ -98,6 +130,9 @@ public final class AggregationOperationHelper {
             Stream<JsonObject> resultStream, String dbName, String collName) throws IOException {
         final var filterStep = (FilterAggregationStep) baseFilterStep;
         final var filterOperator = filterStep.getOperator();
+        if (resultStream == null && filterStep instanceof QueryPlanner.ScanFilterStep) {
+            return FilterOperatorHelper.processOperatorByScan(filterOperator, dbName, collName);
+        }
         return FilterOperatorHelper.processOperator(filterOperator, resultStream, dbName, collName);
     }
 
@@ -117,121 +152,20 @@ public final class AggregationOperationHelper {
     private static Stream<JsonObject> processGroupByStep(BaseAggregationStep baseGroupByStep,
             Stream<JsonObject> resultStream, String dbName, String collName) throws IOException {
         final var groupByStep = (GroupByAggregationStep) baseGroupByStep;
-        final var fieldName = groupByStep.getFieldName();
         if (resultStream == null) {
-            final var indexEntries = IndexHelper.getIndexEntriesForField(dbName, collName, fieldName);
+            final var indexEntries = IndexHelper.getIndexEntriesForField(dbName, collName, groupByStep.getFieldName());
             if (indexEntries != null) {
-                return groupByViaIndex(indexEntries, dbName, collName, fieldName);
+                return GroupByOperatorHelper.groupByIndex(groupByStep, indexEntries, dbName, collName);
             }
         }
         resultStream = cache.initializeStreamIfNecessary(resultStream, dbName, collName);
-        return resultStream.filter(jsonObject -> JsonUtils.hasInPath(jsonObject, groupByStep.getFieldName()))
-                .collect(Collectors
-                        .groupingBy(jsonObject -> JsonUtils.getFromPath(jsonObject, groupByStep.getFieldName())))
-                .entrySet().stream().map(jsonElementListEntry -> {
-                    final var groupedEntry = new JsonObject();
-                    groupedEntry.add(groupByStep.getFieldName(), jsonElementListEntry.getKey());
-                    final var values = jsonElementListEntry.getValue().stream().reduce(new JsonArray(),
-                            (jsonArray, jsonObject) -> {
-                                jsonArray.add(jsonObject);
-                                return jsonArray;
-                            }, (jsonArray, _) -> jsonArray);
-                    groupedEntry.add(GROUP_FIELD_NAME, values);
-                    return groupedEntry;
-                });
-    }
-
-    // Index-backed GROUP_BY: the field index already maps each value to the set of matching ids.
-    // All group IDs are collected into a single batch fetch (one cache/IO pass) rather than one
-    // getEntriesByIds call per group, then the resulting documents are bucketed by their group.
-    private static Stream<JsonObject> groupByViaIndex(List<FieldIndexEntry<?>> indexEntries, String dbName,
-            String collName, String fieldName) throws IOException {
-        final var allIds = new HashSet<String>();
-        for (var indexEntry : indexEntries) {
-            allIds.addAll(indexEntry.getIds());
-        }
-        final var docById = new HashMap<String, JsonObject>();
-        for (var dbEntry : cache.getEntriesByIds(dbName, collName, allIds)) {
-            docById.put(dbEntry.get_id(), dbEntry.getData());
-        }
-        final var grouped = new ArrayList<JsonObject>();
-        for (var indexEntry : indexEntries) {
-            final var values = new JsonArray();
-            for (var id : indexEntry.getIds()) {
-                final var doc = docById.get(id);
-                if (doc != null) {
-                    values.add(doc);
-                }
-            }
-            if (values.isEmpty()) {
-                continue;
-            }
-            final var groupedEntry = new JsonObject();
-            groupedEntry.add(fieldName, IndexHelper.indexValueToElement(indexEntry.getValue()));
-            groupedEntry.add(GROUP_FIELD_NAME, values);
-            grouped.add(groupedEntry);
-        }
-        return grouped.stream();
+        return GroupByOperatorHelper.groupBy(groupByStep, resultStream);
     }
 
     private static Stream<JsonObject> processJoinStep(BaseAggregationStep baseJoinStep, Stream<JsonObject> resultStream,
             String dbName, String collName) throws IOException {
         resultStream = cache.initializeStreamIfNecessary(resultStream, dbName, collName);
-        final var joinStep = (JoinAggregationStep) baseJoinStep;
-        final var joinCollectionName = joinStep.getJoinCollection();
-        final var joinCollectionLocalField = joinStep.getLocalField();
-        final var joinCollectionRemoteField = joinStep.getRemoteField();
-        final var as = joinStep.getAsField();
-        // Blocking step (documented exception): JOIN groups the remote side in memory before the
-        // per-row attach, so the left side is materialized here to drive the remote lookup.
-        final var leftEntries = resultStream.toList();
-        final var joinedCollection = buildJoinLookup(dbName, joinCollectionName, joinCollectionRemoteField, leftEntries,
-                joinCollectionLocalField);
-        return leftEntries.stream().map(jsonObject -> {
-            if (JsonUtils.hasInPath(jsonObject, joinCollectionLocalField)) {
-                final var copy = jsonObject.deepCopy();
-                final var found = joinedCollection.get(JsonUtils.getFromPath(copy, joinCollectionLocalField));
-                copy.add(as, found);
-                return copy;
-            }
-            return jsonObject;
-        });
-    }
-
-    // Builds the remote-side lookup (remote field value -> matching remote documents) for a JOIN.
-    // When the remote field is indexed, getMatchingIdsForJoin does one binary-search-backed lookup
-    // per distinct local value instead of deep-copying every index entry and doing a linear scan.
-    // Falls back to the whole-collection group when no index exists on the remote field.
-    private static Map<JsonBaseElement, JsonArray> buildJoinLookup(String dbName, String joinCollectionName,
-            String remoteField, List<JsonObject> leftEntries, String localField) throws IOException {
-        final var localValues = new HashSet<JsonBaseElement>();
-        for (var left : leftEntries) {
-            if (JsonUtils.hasInPath(left, localField)) {
-                localValues.add(JsonUtils.getFromPath(left, localField));
-            }
-        }
-        final var matchingIds = IndexHelper.getMatchingIdsForJoin(dbName, joinCollectionName, remoteField, localValues);
-        if (matchingIds == null) {
-            final var joinCollectionMap = cache.getWholeCollection(dbName, joinCollectionName);
-            return joinCollectionMap.values().stream().map(DbEntry::getData)
-                    .filter(jsonObject -> JsonUtils.hasInPath(jsonObject, remoteField))
-                    .collect(Collectors.groupingBy(jsonObject -> JsonUtils.getFromPath(jsonObject, remoteField),
-                            HashMap::new, Collectors.collectingAndThen(Collectors.toList(), jsonObjects -> {
-                                final var jsonArray = new JsonArray();
-                                jsonObjects.forEach(jsonArray::add);
-                                return jsonArray;
-                            })));
-        }
-        final var matchedDocs = cache.getEntriesByIds(dbName, joinCollectionName, matchingIds);
-        final var lookup = new HashMap<JsonBaseElement, JsonArray>();
-        for (var dbEntry : matchedDocs) {
-            final var data = dbEntry.getData();
-            if (JsonUtils.hasInPath(data, remoteField)) {
-                final var key = JsonUtils.getFromPath(data, remoteField);
-                lookup.computeIfAbsent(key, _ -> new JsonArray()).add(data);
-            }
-        }
-        return lookup;
+        return JoinOperatorHelper.join((JoinAggregationStep) baseJoinStep, resultStream, dbName);
     }
 
     private static Stream<JsonObject> processDistinctStep(BaseAggregationStep baseDistinctStep,
@@ -287,18 +221,19 @@ public final class AggregationOperationHelper {
         final var sortStep = (SortAggregationStep) baseSortStep;
         final var fieldName = sortStep.getFieldName();
         final var ascending = sortStep.getAscending();
+        final var topK = sortStep instanceof QueryPlanner.TopKSortStep fused ? fused : null;
         if (resultStream == null) {
             final var indexEntries = IndexHelper.getIndexEntriesForField(dbName, collName, fieldName);
             if (indexEntries != null) {
-                return sortViaIndex(indexEntries, dbName, collName, ascending);
+                final var sorted = sortViaIndex(indexEntries, dbName, collName, ascending);
+                return topK == null ? sorted : sorted.skip(topK.getSkip()).limit(topK.getLimit());
             }
         }
         resultStream = cache.initializeStreamIfNecessary(resultStream, dbName, collName);
-        if (ascending) {
-            return resultStream.sorted((o1, o2) -> JsonUtils.sortFunctionAscending(o1, o2, fieldName));
-        } else {
-            return resultStream.sorted((o1, o2) -> JsonUtils.sortFunctionDescending(o1, o2, fieldName));
+        if (topK != null) {
+            return SortOperatorHelper.topK(resultStream, fieldName, ascending, topK.getSkip(), topK.getLimit());
         }
+        return SortOperatorHelper.sort(resultStream, fieldName, ascending);
     }
 
     // Index-backed SORT: index entries are sorted with an allocation-free comparator (no JsonObject
@@ -35,11 +35,15 @@ public final class AnalyzeHelper {
         result.setIndexesUsed(indexesUsed);
         result.setDocumentsScanned(context.getDocumentsScanned());
         result.setLocksAcquired(new ArrayList<>(context.getLocksAcquired()));
-        result.setSuggestions(buildSuggestions(request, indexUsed));
+        final var plan = context.getPlan();
+        result.setPlan(plan == null ? List.of() : plan.description());
+        result.setPlanRewrites(plan == null ? List.of() : plan.rewrites());
+        result.setJoinStrategies(new ArrayList<>(context.getJoinStrategies()));
+        result.setSuggestions(buildSuggestions(request, plan, indexUsed));
         return result;
     }
 
-    private static List<String> buildSuggestions(AggregateRequest request, boolean indexUsed) {
+    private static List<String> buildSuggestions(AggregateRequest request, QueryPlan plan, boolean indexUsed) {
         final var suggestions = new ArrayList<String>();
         final var steps = request.getAggregationSteps();
         if (steps == null) {
@@ -54,12 +58,15 @@ public final class AnalyzeHelper {
                         + String.join(", ", candidateFields) + ".");
             }
         }
-        for (var i = 0; i < steps.size(); i++) {
-            if (i > 0 && steps.get(i) instanceof FilterAggregationStep filterStep) {
+        // Once planned, only the FILTERs the planner could not move to the top are worth pointing out.
+        final var plannedSteps = plan == null ? steps : plan.steps();
+        for (var i = 0; i < plannedSteps.size(); i++) {
+            if (i > 0 && plannedSteps.get(i) instanceof FilterAggregationStep filterStep) {
                 final var fields = new LinkedHashSet<String>();
                 collectFilterFields(filterStep.getOperator(), fields);
                 final var fieldLabel = fields.isEmpty() ? "" : " on field '" + String.join(", ", fields) + "'";
-                suggestions.add("FILTER step" + fieldLabel + " at step " + (i + 1)
+                final var position = plan == null ? " at step " + (i + 1) : " at step " + (i + 1) + " of the plan";
+                suggestions.add("FILTER step" + fieldLabel + position
                         + " is not the first step; move it to the top of the pipeline so it can use an index"
                         + " and reduce documents scanned.");
             }
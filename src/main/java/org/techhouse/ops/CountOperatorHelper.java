@@ -3,11 +3,11 @@ package org.techhouse.ops;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Stream;
 import org.techhouse.cache.Cache;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.req.agg.AggregationStepType;
@@ -42,8 +42,8 @@ public final class CountOperatorHelper {
     // Optimization: when the pipeline source is a collection (no upstream stream), a COUNT can be
     // answered from the indexes alone — without reading any documents — as long as every step before
     // it either filters via an index or leaves the document count unchanged:
-    // - FILTER steps are resolved to id-sets via their indexes; sequential filters compose as AND, so
-    //   the count is the size of the intersection of their id-sets.
+    // - FILTER steps are resolved to row-id bitmaps via their indexes; sequential filters compose as AND,
+    //   so the count is the cardinality of the intersection of their bitmaps.
     // - MAP, JOIN and SORT keep one output row per input row, so they do not affect the count and are
     //   skipped (a COUNT discards the transformed/augmented documents anyway). JOIN permissions are
     //   checked before execution, so skipping the step here does not bypass them.
@@ -59,7 +59,8 @@ public final class CountOperatorHelper {
             // No COUNT, or COUNT is the first step (the whole-collection count path handles that).
             return null;
         }
-        final var filterSets = new ArrayList<Set<String>>();
+        final var rowIds = cache.getRowIdDictionary(dbName, collName);
+        final var filterRows = new ArrayList<RowIdBitmap>();
         var documentsModified = false;
         for (var i = 0; i < countIndex; i++) {
             final var step = steps.get(i);
@@ -69,11 +70,11 @@ public final class CountOperatorHelper {
                         return null; // a MAP/JOIN may have changed the field this FILTER tests
                     }
                     final var operator = ((FilterAggregationStep) step).getOperator();
-                    final var ids = FilterOperatorHelper.resolveIdsViaIndex(operator, dbName, collName);
-                    if (ids == null) {
+                    final var rows = FilterOperatorHelper.resolveRowsViaIndex(operator, dbName, collName, rowIds);
+                    if (rows == null) {
                         return null; // a leaf is not index-resolvable
                     }
-                    filterSets.add(ids);
+                    filterRows.add(rows);
                 }
                 case MAP, JOIN -> documentsModified = true; // count-preserving; transforms documents
                 case SORT -> {
@@ -84,7 +85,9 @@ public final class CountOperatorHelper {
                 }
             }
         }
-        final var count = filterSets.isEmpty() ? wholeCollectionCount(dbName, collName) : intersectionSize(filterSets);
+        final var count = filterRows.isEmpty()
+                ? wholeCollectionCount(dbName, collName)
+                : FilterOperatorHelper.intersection(filterRows).cardinality();
         final var result = new JsonObject();
         result.addProperty(COUNT_FIELD_NAME, (long) count);
         return new FastCount(result, countIndex + 1);
@@ -99,22 +102,12 @@ public final class CountOperatorHelper {
         return -1;
     }
 
-    // Size of the intersection of the filter id-sets. Starts from the smallest set so the retainAll
-    // passes shrink work as fast as possible, and stops early once the running intersection is empty.
-    private static int intersectionSize(List<Set<String>> filterSets) {
-        final var ordered = filterSets.stream().sorted(Comparator.comparingInt(Set::size)).toList();
-        final var intersection = new HashSet<>(ordered.getFirst());
-        for (var i = 1; i < ordered.size() && !intersection.isEmpty(); i++) {
-            intersection.retainAll(ordered.get(i));
-        }
-        return intersection.size();
-    }
-
     // The PK index is maintained synchronously on save/delete (unlike the admin page entry counts,
-    // which the background updates), so its size is the exact, currently-consistent document count.
+    // which the background updates), so its size is the exact, currently-consistent document count
+    // (corrected to the AGGREGATE's snapshot).
     private static int wholeCollectionCount(String dbName, String collName) {
         try {
-            return cache.getPkIndexAndLoadIfNecessary(dbName, collName).size();
+            return cache.countDocuments(dbName, collName);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -4,6 +4,7 @@ import java.lang.management.ManagementFactory;
 import java.util.Set;
 import org.techhouse.cache.Cache;
 import org.techhouse.cache.CacheableResource;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonObject;
@@ -13,6 +14,7 @@ import org.techhouse.ops.resp.OperationResponse;
 
 public final class DatabaseStatsHelper {
     private static final Cache cache = IocContainer.get(Cache.class);
+    private static final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
 
     private DatabaseStatsHelper() {
     }
@@ -49,6 +51,7 @@ public final class DatabaseStatsHelper {
             userCacheBytes += r.estimatedSizeBytes();
         }
         memory.addProperty("userCacheBytes", userCacheBytes);
+        memory.addProperty("snapshotBytes", snapshots.retainedBytes());
         memory.addProperty("maxMemoryBytes", config.getMaxMemoryBytes());
         memory.addProperty("cachingDisabled", config.isCachingDisabled());
         memory.addProperty("cacheUnlimited", config.isCacheUnlimited());
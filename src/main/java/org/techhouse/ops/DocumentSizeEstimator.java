@@ -0,0 +1,26 @@
+package org.techhouse.ops;
+
+import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ioc.IocContainer;
+
+// Running estimate of the heap held by documents buffered by a spilling step. The serialized size stands in for the
+// heap footprint, and only every SAMPLE_INTERVAL-th document is serialized, which keeps the cost off most rows.
+final class DocumentSizeEstimator {
+    private static final EJson eJson = IocContainer.get(EJson.class);
+    private static final int SAMPLE_INTERVAL = 32;
+
+    private long documents;
+    private long sampledBytes;
+    private long samples;
+    private long documentBytes;
+
+    // The estimated size of the document, from the average of the sampled ones.
+    long estimate(JsonObject document) {
+        if (documents++ % SAMPLE_INTERVAL == 0) {
+            sampledBytes += eJson.toJson(document).length();
+            documentBytes = sampledBytes / ++samples;
+        }
+        return documentBytes;
+    }
+}
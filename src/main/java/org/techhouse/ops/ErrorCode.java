@@ -27,6 +27,7 @@ public enum ErrorCode {
                                             "No index registered for the specified field",
                                             OperationStatus.NOT_FOUND), LISTEN_NOT_FOUND("404-7",
                                                     "Listen registration not found", OperationStatus.NOT_FOUND),
+    CURSOR_NOT_FOUND("404-8", "Cursor not found, exhausted or expired", OperationStatus.NOT_FOUND),
 
     // ── 409 Conflict ──────────────────────────────────────────────────────
     USER_ALREADY_EXISTS("409-1", "User already exists", OperationStatus.ERROR), DATABASE_ALREADY_EXISTS("409-2",
@@ -85,6 +86,8 @@ public enum ErrorCode {
                                                                                                                                                                                     "500-23",
                                                                                                                                                                                     "Error while processing listen operation",
                                                                                                                                                                                     OperationStatus.ERROR),
+    ERROR_MIGRATING_COLLECTION("500-24", "Error while migrating the collection's storage format", OperationStatus.ERROR),
+    ERROR_READING_CURSOR("500-25", "Error while reading the next batch of the cursor", OperationStatus.ERROR),
 
     // ── 503 Service Unavailable ───────────────────────────────────────────
     MAX_CONNECTIONS_REACHED("503-1", "Max number of connections reached", OperationStatus.ERROR);
@@ -2,20 +2,20 @@ package org.techhouse.ops;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiPredicate;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.techhouse.analyze.AnalyzeContext;
 import org.techhouse.bckg_ops.PendingIndexWrites;
 import org.techhouse.cache.Cache;
-import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBoolean;
 import org.techhouse.ejson.elements.JsonCustom;
@@ -24,6 +24,7 @@ import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ejson.elements.JsonString;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.req.agg.BaseOperator;
+import org.techhouse.ops.req.agg.ConjunctionOperatorType;
 import org.techhouse.ops.req.agg.FieldOperatorType;
 import org.techhouse.ops.req.agg.OperatorType;
 import org.techhouse.ops.req.agg.operators.ConjunctionOperator;
@@ -44,65 +45,95 @@ public class FilterOperatorHelper {
         return resultStream;
     }
 
+    // Evaluates the whole tree in one pass over the documents. Without an upstream stream the indexes narrow
+    // it first: every index-resolvable subtree becomes a row-id bitmap, the bitmaps are combined, and only
+    // the surviving documents are read, in one batch. The predicates the indexes could not resolve are then
+    // applied as a streaming filter.
     private static Stream<JsonObject> processConjunctionOperator(ConjunctionOperator operator,
             Stream<JsonObject> resultStream, String dbName, String collName) throws IOException {
-        List<Stream<JsonObject>> combinationResult = new ArrayList<>();
-        for (var step : operator.getOperators()) {
-            Stream<JsonObject> partialResults;
-            if (step.getType() == OperatorType.CONJUNCTION) {
-                partialResults = processConjunctionOperator((ConjunctionOperator) step, resultStream, dbName, collName);
-            } else {
-                partialResults = processFieldOperator((FieldOperator) step, resultStream, dbName, collName);
-            }
-            combinationResult.add(partialResults);
+        final var matcher = matcher(operator);
+        if (resultStream != null) {
+            return resultStream.filter(matcher);
         }
-        return switch (operator.getConjunctionType()) {
-            case AND -> andXorConjunction(combinationResult, operator.getOperators().size());
-            case OR -> orConjunction(combinationResult);
-            case XOR -> andXorConjunction(combinationResult, 1);
-            case NOR -> {
-                final var combined = orConjunction(combinationResult);
-                yield norNandAllStreamAggregation(combined, resultStream, dbName, collName);
-            }
-            case NAND -> {
-                final var combined = andXorConjunction(combinationResult, operator.getOperators().size());
-                yield norNandAllStreamAggregation(combined, resultStream, dbName, collName);
-            }
-        };
+        final var rowIds = cache.getRowIdDictionary(dbName, collName);
+        final var candidates = candidateRows(operator, dbName, collName, rowIds);
+        if (candidates != null) {
+            // Re-testing the candidates against the whole tree applies the residual predicates and confirms
+            // hash index hits, as internalBaseFiltering does for a single field.
+            return cache.getEntriesByIds(dbName, collName, rowIds.idsOf(candidates)).stream()
+                    .map(DbEntry::getData).filter(matcher);
+        }
+        return processOperatorByScan(operator, dbName, collName);
     }
 
-    private static Stream<JsonObject> andXorConjunction(List<Stream<JsonObject>> combinationResult, int matches) {
-        return combinationResult.stream().flatMap(jsonObjectStream -> jsonObjectStream)
-                .collect(Collectors.groupingBy(jsonObject -> {
-                    final var id = jsonObject.get(Globals.PK_FIELD);
-                    if (id == null) {
-                        throw new IllegalStateException("Document missing _id in conjunction grouping");
-                    }
-                    return id;
-                })).entrySet().stream()
-                .filter(jsonElementListEntry -> jsonElementListEntry.getValue().size() == matches)
-                .flatMap(jsonElementListEntry -> jsonElementListEntry.getValue().stream()).distinct();
+    // Answers the whole operator tree with one scan of the collection, without consulting any index. The page
+    // reads apply the tree, so a parallel scan filters on its reading threads, and when the tree only looks at one
+    // field they can decode just that field until a row matches.
+    public static Stream<JsonObject> processOperatorByScan(BaseOperator operator, String dbName, String collName)
+            throws IOException {
+        final var matcher = matcher(operator);
+        final var fields = new HashSet<String>();
+        collectFields(operator, fields);
+        final var field = fields.size() == 1 ? fields.iterator().next() : null;
+        return cache.streamCollectionMatching(dbName, collName, field, matcher).map(DbEntry::getData);
     }
 
-    private static Stream<JsonObject> orConjunction(List<Stream<JsonObject>> combinationResult) {
-        return combinationResult.stream().flatMap(jsonObjectStream -> jsonObjectStream).distinct();
+    // A superset of the rows matching operator, from the indexes only, or null when they cannot narrow it.
+    // Supersets are fine under AND and OR since every candidate is re-tested: an AND only needs one
+    // narrowable child (the rest stay residual) and an OR needs all of them. XOR, NOR and NAND are not
+    // monotone, so a superset of a child says nothing about the result and they must resolve exactly.
+    private static RowIdBitmap candidateRows(BaseOperator operator, String dbName, String collName,
+            RowIdDictionary rowIds) throws IOException {
+        if (operator.getType() == OperatorType.FIELD) {
+            return indexMatchingRows((FieldOperator) operator, dbName, collName, rowIds);
+        }
+        final var conjunction = (ConjunctionOperator) operator;
+        final var conjunctionType = conjunction.getConjunctionType();
+        if (conjunctionType != ConjunctionOperatorType.AND && conjunctionType != ConjunctionOperatorType.OR) {
+            return resolveConjunctionRows(conjunction, dbName, collName, rowIds);
+        }
+        final var childRows = new ArrayList<RowIdBitmap>();
+        for (var child : conjunction.getOperators()) {
+            final var rows = candidateRows(child, dbName, collName, rowIds);
+            if (rows != null) {
+                childRows.add(rows);
+            } else if (conjunctionType == ConjunctionOperatorType.OR) {
+                return null;
+            }
+        }
+        if (childRows.isEmpty()) {
+            return null;
+        }
+        return conjunctionType == ConjunctionOperatorType.AND ? intersection(childRows) : union(childRows);
     }
 
-    private static Stream<JsonObject> norNandAllStreamAggregation(Stream<JsonObject> combined,
-            Stream<JsonObject> resultStream, String dbName, String collName) {
-        if (resultStream == null) {
-            // Blocking step (documented exception): NOR/NAND must diff against the full
-            // collection, so it loads the whole collection rather than streaming.
-            resultStream = cache.getWholeCollection(dbName, collName).values().stream().map(DbEntry::getData);
+    // The operator tree as a test of one document.
+    private static Predicate<JsonObject> matcher(BaseOperator operator) {
+        if (operator.getType() == OperatorType.FIELD) {
+            final var fieldOperator = (FieldOperator) operator;
+            final var tester = getTester(fieldOperator, fieldOperator.getFieldOperatorType());
+            final var fieldName = fieldOperator.getField();
+            return data -> tester.test(data, fieldName);
         }
-        return Stream.concat(resultStream, combined).collect(Collectors.groupingBy(jsonObject -> {
-            final var id = jsonObject.get(Globals.PK_FIELD);
-            if (id == null) {
-                throw new IllegalStateException("Document missing _id in conjunction grouping");
+        final var conjunction = (ConjunctionOperator) operator;
+        final var children = conjunction.getOperators().stream().map(FilterOperatorHelper::matcher).toList();
+        return switch (conjunction.getConjunctionType()) {
+            case AND -> data -> children.stream().allMatch(child -> child.test(data));
+            case OR -> data -> children.stream().anyMatch(child -> child.test(data));
+            case XOR -> data -> children.stream().filter(child -> child.test(data)).count() == 1;
+            case NOR -> data -> children.stream().noneMatch(child -> child.test(data));
+            case NAND -> data -> !children.stream().allMatch(child -> child.test(data));
+        };
+    }
+
+    static void collectFields(BaseOperator operator, Set<String> fields) {
+        if (operator.getType() == OperatorType.FIELD) {
+            fields.add(((FieldOperator) operator).getField());
+        } else {
+            for (var child : ((ConjunctionOperator) operator).getOperators()) {
+                collectFields(child, fields);
             }
-            return id;
-        })).entrySet().stream().filter(jsonElementListEntry -> jsonElementListEntry.getValue().size() == 1)
-                .flatMap(jsonElementListEntry -> jsonElementListEntry.getValue().stream());
+        }
     }
 
     private static Stream<JsonObject> processFieldOperator(FieldOperator operator, Stream<JsonObject> resultStream,
@@ -232,9 +263,10 @@ public class FilterOperatorHelper {
             return cache.getEntriesByIds(dbName, collName, matchingValues).stream().map(DbEntry::getData)
                     .filter(data -> test.test(data, fieldName));
         }
-        // No index: scan the collection page-by-page (memory-aware) rather than materializing it all.
-        return cache.streamCollection(dbName, collName).map(DbEntry::getData)
-                .filter(data -> test.test(data, fieldName));
+        // No index: scan the collection page-by-page (memory-aware) rather than materializing it all. The test
+        // goes down to the page reads so binary rows only decode the filtered field until they match.
+        return cache.streamCollectionMatching(dbName, collName, fieldName, data -> test.test(data, fieldName))
+                .map(DbEntry::getData);
     }
 
     // Resolves the matching document ids for a filter operator using ONLY indexes (and, for
@@ -244,6 +276,15 @@ public class FilterOperatorHelper {
     // answered from the size of this set.
     public static Set<String> resolveIdsViaIndex(BaseOperator operator, String dbName, String collName)
             throws IOException {
+        final var rowIds = cache.getRowIdDictionary(dbName, collName);
+        final var rows = resolveRowsViaIndex(operator, dbName, collName, rowIds);
+        return rows == null ? null : rowIds.idsOf(rows);
+    }
+
+    // resolveIdsViaIndex working on row ids of the given dictionary: every AND/OR/XOR/NOR/NAND is a bitmap
+    // operation, and the ids are only needed again (if at all) for the final result.
+    public static RowIdBitmap resolveRowsViaIndex(BaseOperator operator, String dbName, String collName,
+            RowIdDictionary rowIds) throws IOException {
         return switch (operator.getType()) {
             case FIELD -> {
                 final var fieldOperator = (FieldOperator) operator;
@@ -254,9 +295,9 @@ public class FilterOperatorHelper {
                 if (usesHashIndex(fieldOperator)) {
                     yield null;
                 }
-                yield indexMatchingIds(fieldOperator, dbName, collName);
+                yield indexMatchingRows(fieldOperator, dbName, collName, rowIds);
             }
-            case CONJUNCTION -> resolveConjunctionIds((ConjunctionOperator) operator, dbName, collName);
+            case CONJUNCTION -> resolveConjunctionRows((ConjunctionOperator) operator, dbName, collName, rowIds);
         };
     }
 
@@ -289,11 +330,18 @@ public class FilterOperatorHelper {
     // scan. Empty when there are no recent writes, so this is a no-op on the steady-state read path.
     private static Set<String> indexMatchingIds(FieldOperator operator, String dbName, String collName)
             throws IOException {
-        final var raw = rawIndexMatchingIds(operator, dbName, collName);
+        final var rowIds = cache.getRowIdDictionary(dbName, collName);
+        final var rows = indexMatchingRows(operator, dbName, collName, rowIds);
+        return rows == null ? null : rowIds.idsOf(rows);
+    }
+
+    private static RowIdBitmap indexMatchingRows(FieldOperator operator, String dbName, String collName,
+            RowIdDictionary rowIds) throws IOException {
+        final var raw = rawIndexMatchingRows(operator, dbName, collName, rowIds);
         if (raw == null) {
             return null;
         }
-        // The field index was consulted (and its read lock taken in getIdsFromIndex) to resolve this
+        // The field index was consulted (and its read lock taken in getRowIdsFromIndex) to resolve this
         // operator. Record it for analyze mode; covers both FILTER and the index-only COUNT fast path.
         final var analyzeContext = AnalyzeContext.current();
         if (analyzeContext != null) {
@@ -307,88 +355,83 @@ public class FilterOperatorHelper {
             return raw;
         }
         final var fieldName = operator.getField();
-        final var corrected = new HashSet<>(raw);
-        corrected.removeAll(pendingIds);
+        final var corrected = raw.andNot(rowIds.rowsOf(pendingIds));
         final var tester = getTester(operator, operator.getFieldOperatorType());
         for (var dbEntry : cache.getEntriesByIds(dbName, collName, pendingIds)) {
             if (tester.test(dbEntry.getData(), fieldName)) {
-                corrected.add(dbEntry.get_id());
+                corrected.add(rowIds.rowOf(dbEntry.get_id()));
             }
         }
         return corrected;
     }
 
-    private static Set<String> rawIndexMatchingIds(FieldOperator operator, String dbName, String collName)
-            throws IOException {
+    private static RowIdBitmap rawIndexMatchingRows(FieldOperator operator, String dbName, String collName,
+            RowIdDictionary rowIds) throws IOException {
         final var fieldName = operator.getField();
         final var value = operator.getValue();
         return switch (value) {
-            case JsonObject jsonObject -> cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonObject);
-            case JsonArray jsonArray -> cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonArray);
+            case JsonObject jsonObject ->
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonObject, rowIds);
+            case JsonArray jsonArray ->
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonArray, rowIds);
             case JsonBoolean jsonBoolean ->
-                cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonBoolean.getValue());
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonBoolean.getValue(), rowIds);
             case JsonNumber jsonNumber ->
-                cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonNumber.getValue());
-            case JsonCustom<?> jsonCustom -> cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonCustom);
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonNumber.getValue(), rowIds);
+            case JsonCustom<?> jsonCustom ->
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonCustom, rowIds);
             case JsonString jsonString ->
-                cache.getIdsFromIndex(dbName, collName, fieldName, operator, jsonString.getValue());
+                cache.getRowIdsFromIndex(dbName, collName, fieldName, operator, jsonString.getValue(), rowIds);
             default -> null;
         };
     }
 
-    private static Set<String> resolveConjunctionIds(ConjunctionOperator operator, String dbName, String collName)
-            throws IOException {
-        final var childSets = new ArrayList<Set<String>>();
+    private static RowIdBitmap resolveConjunctionRows(ConjunctionOperator operator, String dbName,
+            String collName, RowIdDictionary rowIds) throws IOException {
+        final var childRows = new ArrayList<RowIdBitmap>();
         for (var child : operator.getOperators()) {
-            final var ids = resolveIdsViaIndex(child, dbName, collName);
-            if (ids == null) {
+            final var rows = resolveRowsViaIndex(child, dbName, collName, rowIds);
+            if (rows == null) {
                 return null; // a leaf isn't index-resolvable -> caller falls back to reading documents
             }
-            childSets.add(ids);
+            childRows.add(rows);
         }
         return switch (operator.getConjunctionType()) {
-            case AND -> occurringExactly(childSets, childSets.size());
-            case XOR -> occurringExactly(childSets, 1);
-            case OR -> union(childSets);
-            case NOR -> complement(union(childSets), dbName, collName);
-            case NAND -> complement(occurringExactly(childSets, childSets.size()), dbName, collName);
+            case AND -> intersection(childRows);
+            case XOR -> occurringOnce(childRows);
+            case OR -> union(childRows);
+            case NOR -> cache.getAllRowIds(dbName, collName, rowIds).andNot(union(childRows));
+            case NAND -> cache.getAllRowIds(dbName, collName, rowIds).andNot(intersection(childRows));
         };
     }
 
-    private static Set<String> union(List<Set<String>> sets) {
-        final var result = new HashSet<String>();
-        for (var set : sets) {
-            result.addAll(set);
+    private static RowIdBitmap union(List<RowIdBitmap> bitmaps) {
+        var result = new RowIdBitmap();
+        for (var bitmap : bitmaps) {
+            result = result.or(bitmap);
         }
         return result;
     }
 
-    // Tallies how many child sets each id appears in and keeps the ids whose count equals times.
-    // Models AND (times == number of operators) and XOR (times == 1) exactly like the stream-based
-    // andXorConjunction does.
-    private static Set<String> occurringExactly(List<Set<String>> sets, int times) {
-        final var counts = new HashMap<String, Integer>();
-        for (var set : sets) {
-            for (var id : set) {
-                counts.merge(id, 1, Integer::sum);
-            }
+    // Starts from the smallest bitmap and stops once the running intersection is empty.
+    public static RowIdBitmap intersection(List<RowIdBitmap> bitmaps) {
+        final var ordered = bitmaps.stream().sorted(Comparator.comparingInt(RowIdBitmap::cardinality)).toList();
+        var result = ordered.getFirst();
+        for (var i = 1; i < ordered.size() && !result.isEmpty(); i++) {
+            result = result.and(ordered.get(i));
         }
-        return counts.entrySet().stream().filter(entry -> entry.getValue() == times).map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        return result;
     }
 
-    // The complement of matched relative to every id in the collection. The full id set comes from
-    // the PK index (metadata only, no documents read), matching the stream-based NOR/NAND path that
-    // diffs against the whole collection.
-    private static Set<String> complement(Set<String> matched, String dbName, String collName) throws IOException {
-        final var pkIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
-        final var result = new HashSet<String>();
-        for (var entry : pkIndex) {
-            final var id = entry.getValue();
-            if (!matched.contains(id)) {
-                result.add(id);
-            }
+    // Rows present in exactly one of the bitmaps, which is how XOR is evaluated over any number of operands
+    // (like the stream-based andXorConjunction with matches == 1).
+    private static RowIdBitmap occurringOnce(List<RowIdBitmap> bitmaps) {
+        var seen = new RowIdBitmap();
+        var repeated = new RowIdBitmap();
+        for (var bitmap : bitmaps) {
+            repeated = repeated.or(seen.and(bitmap));
+            seen = seen.or(bitmap);
         }
-        return result;
+        return seen.andNot(repeated);
     }
 }
@@ -0,0 +1,180 @@
+package org.techhouse.ops;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+import org.techhouse.cache.Cache;
+import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonNull;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.ops.req.agg.mid_operators.MidOperationType;
+import org.techhouse.ops.req.agg.step.GroupByAggregationStep;
+import org.techhouse.utils.JsonUtils;
+
+/**
+ * GROUP_BY as a hash aggregation: a single pass over the input keeps, per distinct key, the running state of the
+ * step's accumulators in primitive slots, so memory grows with the number of groups instead of the number of
+ * documents. A group's documents are only kept when the step asks for them.
+ */
+public final class GroupByOperatorHelper {
+    private GroupByOperatorHelper() {
+    }
+
+    private static final Cache cache = IocContainer.get(Cache.class);
+
+    public static Stream<JsonObject> groupBy(GroupByAggregationStep step, Stream<JsonObject> resultStream) {
+        final var path = JsonUtils.splitPath(step.getFieldName());
+        final var slots = slotsOf(step);
+        final var groups = new LinkedHashMap<JsonBaseElement, GroupState>();
+        try (resultStream) {
+            resultStream.sequential().forEach(document -> {
+                if (!JsonUtils.hasInPath(document, path)) {
+                    return;
+                }
+                groups.computeIfAbsent(JsonUtils.getFromPath(document, path),
+                        _ -> new GroupState(slots.length, step.isIncludeDocuments())).add(document, slots);
+            });
+        }
+        return groups.entrySet().stream()
+                .map(group -> group.getValue().toJson(step.getFieldName(), group.getKey(), slots));
+    }
+
+    // Index-backed GROUP_BY: the field index already maps each value to the ids holding it. Counting documents
+    // needs nothing else; any other accumulator reads the documents of all groups in one batch.
+    public static Stream<JsonObject> groupByIndex(GroupByAggregationStep step, List<FieldIndexEntry<?>> indexEntries,
+            String dbName, String collName) throws IOException {
+        final var slots = slotsOf(step);
+        final var grouped = new ArrayList<JsonObject>();
+        if (!step.isIncludeDocuments() && countsOnly(slots)) {
+            for (var indexEntry : indexEntries) {
+                if (indexEntry.getIds().isEmpty()) {
+                    continue;
+                }
+                final var state = new GroupState(slots.length, false);
+                Arrays.fill(state.counts, indexEntry.getIds().size());
+                grouped.add(state.toJson(step.getFieldName(), IndexHelper.indexValueToElement(indexEntry.getValue()),
+                        slots));
+            }
+            return grouped.stream();
+        }
+        final var allIds = new HashSet<String>();
+        for (var indexEntry : indexEntries) {
+            allIds.addAll(indexEntry.getIds());
+        }
+        final var docById = new HashMap<String, JsonObject>();
+        for (var dbEntry : cache.getEntriesByIds(dbName, collName, allIds)) {
+            docById.put(dbEntry.get_id(), dbEntry.getData());
+        }
+        for (var indexEntry : indexEntries) {
+            final var state = new GroupState(slots.length, step.isIncludeDocuments());
+            var found = false;
+            for (var id : indexEntry.getIds()) {
+                final var doc = docById.get(id);
+                if (doc != null) {
+                    state.add(doc, slots);
+                    found = true;
+                }
+            }
+            if (found) {
+                grouped.add(state.toJson(step.getFieldName(), IndexHelper.indexValueToElement(indexEntry.getValue()),
+                        slots));
+            }
+        }
+        return grouped.stream();
+    }
+
+    private static Slot[] slotsOf(GroupByAggregationStep step) {
+        final var accumulators = step.getAccumulators() == null ? List.<Slot>of()
+                : step.getAccumulators().stream().map(accumulator -> new Slot(accumulator.getType(),
+                        accumulator.getFieldName(),
+                        accumulator.getOperand() == null ? null : JsonUtils.splitPath(accumulator.getOperand())))
+                        .toList();
+        return accumulators.toArray(Slot[]::new);
+    }
+
+    private static boolean countsOnly(Slot[] slots) {
+        for (var slot : slots) {
+            if (slot.type() != MidOperationType.SIZE || slot.operand() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Slot(MidOperationType type, String fieldName, String[] operand) {
+    }
+
+    // Running state of one group: per accumulator, how many values it took and their sum, minimum or maximum.
+    private static final class GroupState {
+        private final long[] counts;
+        private final double[] values;
+        private final JsonArray documents;
+
+        private GroupState(int slots, boolean includeDocuments) {
+            counts = new long[slots];
+            values = new double[slots];
+            documents = includeDocuments ? new JsonArray() : null;
+        }
+
+        private void add(JsonObject document, Slot[] slots) {
+            for (var i = 0; i < slots.length; i++) {
+                final var slot = slots[i];
+                final var value = slot.operand() == null ? null : JsonUtils.getFromPath(document, slot.operand());
+                if (slot.type() == MidOperationType.SIZE) {
+                    if (value == null || !value.isJsonNull()) {
+                        counts[i]++;
+                    }
+                    continue;
+                }
+                if (value == null || !value.isJsonNumber()) {
+                    continue;
+                }
+                final var number = value.asJsonNumber().getValue().doubleValue();
+                values[i] = switch (slot.type()) {
+                    case MIN -> counts[i] == 0 ? number : Math.min(values[i], number);
+                    case MAX -> counts[i] == 0 ? number : Math.max(values[i], number);
+                    default -> values[i] + number;
+                };
+                counts[i]++;
+            }
+            if (documents != null) {
+                documents.add(document);
+            }
+        }
+
+        private JsonObject toJson(String fieldName, JsonBaseElement key, Slot[] slots) {
+            final var result = new JsonObject();
+            result.add(fieldName, key);
+            for (var i = 0; i < slots.length; i++) {
+                final var slot = slots[i];
+                switch (slot.type()) {
+                    case SIZE -> result.addProperty(slot.fieldName(), counts[i]);
+                    case SUM -> result.addProperty(slot.fieldName(), values[i]);
+                    case AVG -> addIfAny(result, slot.fieldName(), i, values[i] / counts[i]);
+                    default -> addIfAny(result, slot.fieldName(), i, values[i]);
+                }
+            }
+            if (documents != null) {
+                result.add(GroupByAggregationStep.DOCUMENTS_FIELD_NAME, documents);
+            }
+            return result;
+        }
+
+        // AVG, MIN and MAX of a group without any numeric value are null.
+        private void addIfAny(JsonObject result, String fieldName, int slot, double value) {
+            if (counts[slot] == 0) {
+                result.add(fieldName, JsonNull.INSTANCE);
+            } else {
+                result.addProperty(fieldName, value);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.techhouse.ops;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -16,6 +17,7 @@ import org.techhouse.concurrency.ResourceLocking;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.FieldStatistics;
 import org.techhouse.data.IndexKind;
 import org.techhouse.ejson.custom_types.CustomTypeFactory;
 import org.techhouse.ejson.elements.JsonBaseElement;
@@ -40,7 +42,8 @@ public class IndexHelper {
     // The element-match (hashed) index families; the remaining IndexKind values are scalar.
     private static final IndexKind[] HASH_INDEX_KINDS = {IndexKind.OBJECT, IndexKind.ARRAY};
 
-    public static void createIndex(String dbName, String collName, String fieldName) {
+    // Builds the field's index files and returns the field's statistics as of this build, for the planner.
+    public static FieldStatistics createIndex(String dbName, String collName, String fieldName) {
         final var coll = cache.getWholeCollection(dbName, collName);
         final var entriesToBeIndexed = coll.values().stream().map(DbEntry::getData)
                 .filter(jsonObject -> JsonUtils.hasInPath(jsonObject, fieldName))
@@ -83,6 +86,8 @@ public class IndexHelper {
         fs.writeIndexFile(dbName, collName, fieldName, indexes);
         writeHashIndexes(dbName, collName, fieldName, entriesToBeIndexed);
         cache.evictFieldIndexAllTypes(dbName, collName, fieldName);
+        final var indexedDocuments = entriesToBeIndexed.values().stream().mapToLong(List::size).sum();
+        return new FieldStatistics(entriesToBeIndexed.size(), indexedDocuments);
     }
 
     // Object- and array-valued documents are reduced to a single hex hash (element-match key) and
@@ -392,7 +397,9 @@ public class IndexHelper {
             return;
         }
         rl.lockRead(dbName, collName);
+        Collection<Integer> documentStripes = List.of();
         try {
+            documentStripes = rl.lockDocuments(dbName, collName, ids);
             final var byId = new HashMap<String, DbEntry>();
             for (var doc : cache.getEntriesByIds(dbName, collName, new HashSet<>(ids))) {
                 byId.put(doc.get_id(), doc);
@@ -403,12 +410,12 @@ public class IndexHelper {
                     for (var id : ids) {
                         applyCurrentState(dbName, collName, fieldName, id, byId.get(id));
                     }
-                    cache.evictFieldIndexAllTypes(dbName, collName, fieldName);
                 } finally {
                     rl.releaseIndex(dbName, collName, fieldName);
                 }
             }
         } finally {
+            rl.releaseDocuments(documentStripes);
             rl.releaseRead(dbName, collName);
         }
     }
@@ -417,8 +424,9 @@ public class IndexHelper {
     // processed out of order by the worker pool, so rather than trusting the (possibly stale) event
     // snapshot we re-read the CURRENT committed document by id and index that — whichever event runs
     // last observes the final committed state, so the index converges regardless of processing order.
-    // The collection read lock gives a stable view of the document's existence and value (it blocks a
-    // concurrent commit until maintenance finishes; that commit then converges via its own event).
+    // The collection read lock keeps exclusive writers out, and the document's lock (see
+    // ResourceLocking#lockDocument) gives a stable view of its existence and value: it blocks a concurrent save or
+    // delete of it until maintenance finishes, and that write then converges via its own event.
     public static void updateIndexes(String dbName, String collName, String id)
             throws IOException, InterruptedException {
         final var existingIndexes = cache.getIndexesForCollection(dbName, collName);
@@ -427,28 +435,29 @@ public class IndexHelper {
         }
         rl.lockRead(dbName, collName);
         try {
+            rl.lockDocument(dbName, collName, id);
             final var current = cache.getEntriesByIds(dbName, collName, Set.of(id));
             final var doc = current.isEmpty() ? null : current.getFirst();
             for (var fieldName : existingIndexes) {
                 rl.lockIndex(dbName, collName, fieldName);
                 try {
                     applyCurrentState(dbName, collName, fieldName, id, doc);
-                    // The cached index now diverges from the rewritten .idx files; drop it so the next
-                    // read reloads the up-to-date index from disk.
-                    cache.evictFieldIndexAllTypes(dbName, collName, fieldName);
                 } finally {
                     rl.releaseIndex(dbName, collName, fieldName);
                 }
             }
         } finally {
+            rl.releaseDocument(dbName, collName, id);
             rl.releaseRead(dbName, collName);
         }
     }
 
     // Applies the current committed state of a document to one field index: upsert when the document
     // still exists (internalSelectIndexType clears the id from every family, then adds it to the
-    // current value), or remove the id from every family when it no longer exists (deleted). Must be
-    // called holding the field index write lock.
+    // current value), or remove the id from every family when it no longer exists (deleted). Every id
+    // move written to an .idx file is applied to the cached index as well, so the cache stays warm
+    // across writes instead of being evicted and reloaded. Must be called holding the field index
+    // write lock.
     private static void applyCurrentState(String dbName, String collName, String fieldName, String id, DbEntry doc)
             throws IOException {
         if (doc != null) {
@@ -509,12 +518,13 @@ public class IndexHelper {
                 ? null
                 : entries.stream().filter(e -> e.getValue().equals(hash)).findFirst().orElse(null);
         if (found != null) {
-            found.getIds().add(entryId);
-            fs.updateHashIndexFiles(dbName, collName, fieldName, kind, found, null);
+            fs.updateHashIndexFiles(dbName, collName, fieldName, kind, withId(found, entryId), null);
         } else {
             final var indexEntry = new FieldIndexEntry<>(dbName, collName, hash, new HashSet<>(Set.of(entryId)));
             fs.updateHashIndexFiles(dbName, collName, fieldName, kind, indexEntry, null);
         }
+        cache.addIdToCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, kind.label()), hash,
+                entryId);
     }
 
     private static void removeIdFromHashIndexes(String dbName, String collName, String fieldName, String entryId)
@@ -523,8 +533,10 @@ public class IndexHelper {
             final var entries = cache.getHashIndexAndLoadIfNecessary(dbName, collName, fieldName, kind);
             if (entries != null) {
                 for (var entry : entries) {
-                    if (entry.getIds().remove(entryId)) {
-                        fs.updateHashIndexFiles(dbName, collName, fieldName, kind, null, entry);
+                    if (entry.getIds().contains(entryId)) {
+                        fs.updateHashIndexFiles(dbName, collName, fieldName, kind, null, withoutId(entry, entryId));
+                        cache.removeIdFromCachedFieldIndex(dbName, collName,
+                                Cache.getIndexIdentifier(fieldName, kind.label()), entry.getValue(), entryId);
                         break;
                     }
                 }
@@ -591,15 +603,15 @@ public class IndexHelper {
             throws IOException {
         FieldIndexEntry<?> found = findMatchingEntryFromCustomJson(dbName, collName, fieldName, value);
         if (found != null) {
-            final var ids = found.getIds();
-            ids.add(entryId);
             updateFromFiles(dbName, collName, fieldName, toRemoveBoolean, toRemoveNumber, toRemoveString,
-                    toRemoveJsonCustom, found);
+                    toRemoveJsonCustom, withId(found, entryId));
         } else {
             FieldIndexEntry<?> indexEntry = new FieldIndexEntry<>(dbName, collName, value, Set.of(entryId));
             updateFromFiles(dbName, collName, fieldName, toRemoveBoolean, toRemoveNumber, toRemoveString,
                     toRemoveJsonCustom, indexEntry);
         }
+        cache.addIdToCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, value.getClass()), value,
+                entryId);
     }
 
     private static <T> void internalUpdateIndex(String dbName, String collName, String fieldName, String entryId,
@@ -608,15 +620,14 @@ public class IndexHelper {
             throws IOException {
         FieldIndexEntry<T> found = findMatchingEntry(dbName, collName, fieldName, value, tClass);
         if (found != null) {
-            final var ids = found.getIds();
-            ids.add(entryId);
             updateFromFiles(dbName, collName, fieldName, toRemoveBoolean, toRemoveNumber, toRemoveString,
-                    toRemoveJsonCustom, found);
+                    toRemoveJsonCustom, withId(found, entryId));
         } else {
             FieldIndexEntry<T> indexEntry = new FieldIndexEntry<>(dbName, collName, value, Set.of(entryId));
             updateFromFiles(dbName, collName, fieldName, toRemoveBoolean, toRemoveNumber, toRemoveString,
                     toRemoveJsonCustom, indexEntry);
         }
+        cache.addIdToCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, tClass), value, entryId);
     }
 
     private static FieldIndexEntry<?> findMatchingEntryFromCustomJson(String dbName, String collName, String fieldName,
@@ -631,8 +642,15 @@ public class IndexHelper {
         return null;
     }
 
+    @SuppressWarnings("unchecked")
     private static <T> FieldIndexEntry<T> findMatchingEntry(String dbName, String collName, String fieldName, T value,
             Class<T> tClass) throws IOException {
+        if (value instanceof Number number) {
+            // Looked up in the packed index directly rather than materializing every entry.
+            final var numericIndex = cache.getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
+            final var position = numericIndex == null ? -1 : numericIndex.indexOfKey(number.doubleValue());
+            return position < 0 ? null : (FieldIndexEntry<T>) numericIndex.entryAt(dbName, collName, position);
+        }
         final var indexEntries = cache.getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, tClass);
         if (indexEntries != null) {
             return indexEntries.stream().filter(indexEntry -> indexEntry.getValue().equals(value)).findFirst()
@@ -656,16 +674,44 @@ public class IndexHelper {
         }
     }
 
+    @SuppressWarnings("unchecked")
     private static <T> FieldIndexEntry<T> getExistingFieldIndexEntry(String dbName, String collName, String fieldName,
             String entityId, Class<T> tClass) throws IOException {
+        if (tClass == Number.class) {
+            final var numericIndex = cache.getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName);
+            final var position = numericIndex == null ? -1 : numericIndex.indexOfId(entityId);
+            if (position < 0) {
+                return null;
+            }
+            final var found = numericIndex.entryAt(dbName, collName, position);
+            found.getIds().remove(entityId);
+            cache.removeIdFromCachedFieldIndex(dbName, collName, Cache.getIndexIdentifier(fieldName, tClass),
+                    found.getValue(), entityId);
+            return (FieldIndexEntry<T>) found;
+        }
         final var fieldIndexEntry = cache.getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, tClass);
         if (fieldIndexEntry != null) {
             return fieldIndexEntry.stream().filter(tFieldIndexEntry -> tFieldIndexEntry.getIds().contains(entityId))
                     .findFirst().map(tFieldIndexEntry -> {
-                        tFieldIndexEntry.getIds().remove(entityId);
-                        return tFieldIndexEntry;
+                        cache.removeIdFromCachedFieldIndex(dbName, collName,
+                                Cache.getIndexIdentifier(fieldName, tClass), tFieldIndexEntry.getValue(), entityId);
+                        return withoutId(tFieldIndexEntry, entityId);
                     }).orElse(null);
         }
         return null;
     }
+
+    // Detached copies of an entry with the id added or removed, for the .idx files: entries read from a cached index
+    // share its id sets, which only the cache changes (see UserCache#addIdToCachedFieldIndex).
+    private static <T> FieldIndexEntry<T> withId(FieldIndexEntry<T> entry, String id) {
+        final var ids = new HashSet<>(entry.getIds());
+        ids.add(id);
+        return new FieldIndexEntry<>(entry.getDatabaseName(), entry.getCollectionName(), entry.getValue(), ids);
+    }
+
+    private static <T> FieldIndexEntry<T> withoutId(FieldIndexEntry<T> entry, String id) {
+        final var ids = new HashSet<>(entry.getIds());
+        ids.remove(id);
+        return new FieldIndexEntry<>(entry.getDatabaseName(), entry.getCollectionName(), entry.getValue(), ids);
+    }
 }
@@ -0,0 +1,442 @@
+package org.techhouse.ops;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.techhouse.analyze.AnalyzeContext;
+import org.techhouse.cache.Cache;
+import org.techhouse.cache.MemoryManagement;
+import org.techhouse.config.Configuration;
+import org.techhouse.config.Globals;
+import org.techhouse.data.DbEntry;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.fs.FileSystem;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.ops.req.agg.step.JoinAggregationStep;
+import org.techhouse.utils.JsonUtils;
+
+/**
+ * JOIN steps, run with one of three strategies picked when the result is first read:
+ * <ul>
+ * <li>an index nested-loop join when the remote field is indexed: the input streams through in batches and the keys
+ * of each batch are looked up in the remote index together, so only matching remote documents are read;</li>
+ * <li>otherwise a hash join built on the smaller side: on the input when it holds fewer documents than the remote
+ * collection, keeping only the remote documents that match one of its keys, or else on the remote collection, with
+ * the input streaming through as the probe side;</li>
+ * <li>a grace hash join when a remote hash table outgrows the memory budget: both sides are partitioned by key into
+ * spill files and joined one partition at a time.</li>
+ * </ul>
+ * Every strategy emits the input documents in their original order.
+ */
+public final class JoinOperatorHelper {
+    private JoinOperatorHelper() {
+    }
+
+    private static final Cache cache = IocContainer.get(Cache.class);
+    private static final FileSystem fs = IocContainer.get(FileSystem.class);
+    private static final Configuration configuration = Configuration.getInstance();
+    // Input documents whose keys are looked up in the remote index at once.
+    private static final int PROBE_BATCH_SIZE = 256;
+    private static final int MAX_PARTITIONS = 64;
+    // Input documents are spilled wrapped with their position, which restores the input order after the join.
+    private static final String POSITION_FIELD = "position";
+    private static final String DOCUMENT_FIELD = "document";
+
+    // The build budget is taken when the result is first read, so it reflects the cache at that time.
+    public static Stream<JsonObject> join(JoinAggregationStep step, Stream<JsonObject> resultStream, String dbName) {
+        return join(step, resultStream, dbName,
+                () -> IocContainer.get(MemoryManagement.class).spillBudgetBytes(configuration.getMaxPageSize()));
+    }
+
+    public static Stream<JsonObject> join(JoinAggregationStep step, Stream<JsonObject> resultStream, String dbName,
+            long buildBudgetBytes) {
+        return join(step, resultStream, dbName, () -> buildBudgetBytes);
+    }
+
+    private static Stream<JsonObject> join(JoinAggregationStep step, Stream<JsonObject> resultStream, String dbName,
+            LongSupplier buildBudget) {
+        final var run = new JoinRun(step, resultStream, dbName, buildBudget, AnalyzeContext.current());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(run, Spliterator.ORDERED), false)
+                .onClose(run::close);
+    }
+
+    private record Positioned(long position, JsonObject document, Iterator<JsonObject> rest) {
+    }
+
+    private static final class JoinRun implements Iterator<JsonObject> {
+        private final Stream<JsonObject> input;
+        private final String dbName;
+        private final String joinCollection;
+        private final String[] localPath;
+        private final String[] remotePath;
+        private final String remoteField;
+        private final String asField;
+        private final String label;
+        private final LongSupplier buildBudget;
+        private final AnalyzeContext analyzeContext;
+        private final List<File> spillFiles = new ArrayList<>();
+        private final List<Stream<JsonObject>> openSpills = new ArrayList<>();
+        private Iterator<JsonObject> output;
+        private boolean closed;
+
+        private JoinRun(JoinAggregationStep step, Stream<JsonObject> input, String dbName, LongSupplier buildBudget,
+                AnalyzeContext analyzeContext) {
+            this.input = input;
+            this.dbName = dbName;
+            this.joinCollection = step.getJoinCollection();
+            this.localPath = JsonUtils.splitPath(step.getLocalField());
+            this.remotePath = JsonUtils.splitPath(step.getRemoteField());
+            this.remoteField = step.getRemoteField();
+            this.asField = step.getAsField();
+            this.label = "JOIN " + step.getJoinCollection() + " as " + step.getAsField();
+            this.buildBudget = buildBudget;
+            this.analyzeContext = analyzeContext;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (output == null) {
+                start();
+            }
+            if (!output.hasNext()) {
+                // Exhausted: drop the spill files now rather than when the stream is closed.
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public JsonObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return output.next();
+        }
+
+        // The first batch of input decides between the index and the hash strategies: its keys either resolve
+        // through the remote index or tell that there is none.
+        private void start() {
+            try {
+                final var documents = input.iterator();
+                final var first = nextBatch(documents);
+                final var firstIds = IndexHelper.getMatchingIdsForJoin(dbName, joinCollection, remoteField,
+                        keysOf(first));
+                if (firstIds != null) {
+                    record("index nested-loop join on " + remoteField);
+                    output = Stream.concat(Stream.of(first),
+                                    Stream.generate(() -> nextBatch(documents)).takeWhile(batch -> !batch.isEmpty()))
+                            .flatMap(batch -> probeIndex(batch, batch == first ? firstIds : null)).iterator();
+                    return;
+                }
+                final var remoteCount = cache.getPkIndex(dbName, joinCollection).size();
+                final var buffered = new ArrayList<>(first);
+                while (buffered.size() <= remoteCount && documents.hasNext()) {
+                    buffered.add(documents.next());
+                }
+                if (buffered.size() <= remoteCount) {
+                    record("hash join built on the input");
+                    output = buildOnInput(buffered);
+                } else {
+                    output = buildOnRemote(buffered, documents, remoteCount);
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void record(String strategy) {
+            if (analyzeContext != null) {
+                analyzeContext.addJoinStrategy(label + ": " + strategy);
+            }
+        }
+
+        private List<JsonObject> nextBatch(Iterator<JsonObject> documents) {
+            final var batch = new ArrayList<JsonObject>(PROBE_BATCH_SIZE);
+            while (batch.size() < PROBE_BATCH_SIZE && documents.hasNext()) {
+                batch.add(documents.next());
+            }
+            return batch;
+        }
+
+        private Set<JsonBaseElement> keysOf(List<JsonObject> documents) {
+            final var keys = new HashSet<JsonBaseElement>();
+            for (var document : documents) {
+                if (JsonUtils.hasInPath(document, localPath)) {
+                    keys.add(JsonUtils.getFromPath(document, localPath));
+                }
+            }
+            return keys;
+        }
+
+        private Stream<JsonObject> probeIndex(List<JsonObject> batch, Set<String> knownIds) {
+            try {
+                final var ids = knownIds != null ? knownIds
+                        : IndexHelper.getMatchingIdsForJoin(dbName, joinCollection, remoteField, keysOf(batch));
+                final var lookup = new HashMap<JsonBaseElement, JsonArray>();
+                if (ids != null && !ids.isEmpty()) {
+                    for (var entry : cache.getEntriesByIds(dbName, joinCollection, ids)) {
+                        addToLookup(lookup, entry.getData());
+                    }
+                }
+                return batch.stream().map(document -> attach(document, lookup));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // The input is the smaller side: the table holds only the remote documents matching one of its keys.
+        private Iterator<JsonObject> buildOnInput(List<JsonObject> buffered) throws IOException {
+            final var keys = keysOf(buffered);
+            final var lookup = new HashMap<JsonBaseElement, JsonArray>();
+            if (!keys.isEmpty()) {
+                try (var remote = cache.streamCollection(dbName, joinCollection)) {
+                    remote.forEach(entry -> {
+                        final var data = entry.getData();
+                        if (JsonUtils.hasInPath(data, remotePath)
+                                && keys.contains(JsonUtils.getFromPath(data, remotePath))) {
+                            addToLookup(lookup, data);
+                        }
+                    });
+                }
+            }
+            return buffered.stream().map(document -> attach(document, lookup)).iterator();
+        }
+
+        // The remote collection is the smaller side: it is hashed by key and the input streams through it, unless
+        // the table outgrows the build budget, which turns the join into a grace hash join.
+        private Iterator<JsonObject> buildOnRemote(List<JsonObject> buffered, Iterator<JsonObject> documents,
+                int remoteCount) throws IOException {
+            final var budget = buildBudget.getAsLong();
+            final var lookup = new HashMap<JsonBaseElement, JsonArray>();
+            final var sizes = new DocumentSizeEstimator();
+            var tableBytes = 0L;
+            var tableDocuments = 0;
+            try (var remoteStream = cache.streamCollection(dbName, joinCollection)) {
+                final var remote = remoteStream.iterator();
+                while (remote.hasNext()) {
+                    final var data = remote.next().getData();
+                    if (!addToLookup(lookup, data) || budget == Long.MAX_VALUE) {
+                        continue;
+                    }
+                    tableDocuments++;
+                    tableBytes += sizes.estimate(data);
+                    if (tableBytes >= budget) {
+                        // Enough partitions for each to fit the budget if the rest of the collection looks alike.
+                        final var partitions = Math.min(MAX_PARTITIONS,
+                                Math.max(2, Math.ceilDiv(remoteCount, tableDocuments) + 1));
+                        record("grace hash join in " + partitions + " partitions");
+                        return graceJoin(partitions, lookup, remote, buffered, documents);
+                    }
+                }
+            }
+            record("hash join built on " + joinCollection);
+            final var probe = StreamSupport.stream(Spliterators.spliteratorUnknownSize(documents,
+                    Spliterator.ORDERED), false);
+            return Stream.concat(buffered.stream(), probe).map(document -> attach(document, lookup)).iterator();
+        }
+
+        // Writes both sides to partition files by key hash, so matching documents share a partition, and joins one
+        // partition at a time; only one partition's remote table is in memory. The joined input documents keep
+        // their position, and merging the per-partition results by position restores the input order.
+        private Iterator<JsonObject> graceJoin(int partitions, Map<JsonBaseElement, JsonArray> table,
+                Iterator<DbEntry> remote, List<JsonObject> buffered, Iterator<JsonObject> documents)
+                throws IOException {
+            final var remoteParts = createPartitions("joinr", partitions);
+            try (var writers = new PartitionWriters(remoteParts)) {
+                for (var matches : table.values()) {
+                    for (var match : matches) {
+                        final var data = match.asJsonObject();
+                        writers.write(partitionOf(JsonUtils.getFromPath(data, remotePath), partitions), data);
+                    }
+                }
+                table.clear();
+                while (remote.hasNext()) {
+                    final var data = remote.next().getData();
+                    if (JsonUtils.hasInPath(data, remotePath)) {
+                        writers.write(partitionOf(JsonUtils.getFromPath(data, remotePath), partitions), data);
+                    }
+                }
+            }
+            final var inputParts = createPartitions("joinl", partitions);
+            try (var writers = new PartitionWriters(inputParts)) {
+                var position = 0L;
+                final var pending = buffered.iterator();
+                while (pending.hasNext() || documents.hasNext()) {
+                    final var document = pending.hasNext() ? pending.next() : documents.next();
+                    // Documents without the local field pass through unjoined; any partition will do.
+                    final var partition = JsonUtils.hasInPath(document, localPath)
+                            ? partitionOf(JsonUtils.getFromPath(document, localPath), partitions) : 0;
+                    writers.write(partition, positioned(position++, document));
+                }
+                buffered.clear();
+            }
+            final var joinedParts = createPartitions("joined", partitions);
+            for (var i = 0; i < partitions; i++) {
+                final var lookup = new HashMap<JsonBaseElement, JsonArray>();
+                try (var remoteDocuments = fs.readSpillFile(remoteParts.get(i))) {
+                    remoteDocuments.forEach(data -> addToLookup(lookup, data));
+                }
+                try (var inputDocuments = fs.readSpillFile(inputParts.get(i));
+                        var writer = fs.openSpillWriter(joinedParts.get(i))) {
+                    final var pending = inputDocuments.iterator();
+                    while (pending.hasNext()) {
+                        final var wrapped = pending.next();
+                        final var joined = attach(wrapped.get(DOCUMENT_FIELD).asJsonObject(), lookup);
+                        fs.writeSpillDocument(writer, positioned(wrapped.get(POSITION_FIELD).asJsonNumber()
+                                .getValue().longValue(), joined));
+                    }
+                }
+                Files.deleteIfExists(remoteParts.get(i).toPath());
+                Files.deleteIfExists(inputParts.get(i).toPath());
+            }
+            return mergeByPosition(joinedParts);
+        }
+
+        private List<File> createPartitions(String prefix, int partitions) throws IOException {
+            final var files = new ArrayList<File>(partitions);
+            for (var i = 0; i < partitions; i++) {
+                final var file = fs.createSpillFile(prefix, Globals.JOIN_PARTITION_FILE_EXTENSION);
+                spillFiles.add(file);
+                files.add(file);
+            }
+            return files;
+        }
+
+        private static int partitionOf(JsonBaseElement key, int partitions) {
+            return Math.floorMod(key.hashCode(), partitions);
+        }
+
+        private static JsonObject positioned(long position, JsonObject document) {
+            final var wrapped = new JsonObject();
+            wrapped.addProperty(POSITION_FIELD, position);
+            wrapped.add(DOCUMENT_FIELD, document);
+            return wrapped;
+        }
+
+        // Each partition's joined documents are in input order, so a merge on the position restores it overall.
+        private Iterator<JsonObject> mergeByPosition(List<File> joinedParts) throws IOException {
+            final var heads = new PriorityQueue<>(Comparator.comparingLong(Positioned::position));
+            for (var part : joinedParts) {
+                final var documents = fs.readSpillFile(part);
+                openSpills.add(documents);
+                queue(heads, documents.iterator());
+            }
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return !heads.isEmpty();
+                }
+
+                @Override
+                public JsonObject next() {
+                    final var head = heads.remove();
+                    queue(heads, head.rest());
+                    return head.document();
+                }
+            };
+        }
+
+        private static void queue(PriorityQueue<Positioned> heads, Iterator<JsonObject> rest) {
+            if (rest.hasNext()) {
+                final var wrapped = rest.next();
+                heads.add(new Positioned(wrapped.get(POSITION_FIELD).asJsonNumber().getValue().longValue(),
+                        wrapped.get(DOCUMENT_FIELD).asJsonObject(), rest));
+            }
+        }
+
+        // Adds a remote document under its key; false when it has no value for the remote field.
+        private boolean addToLookup(Map<JsonBaseElement, JsonArray> lookup, JsonObject data) {
+            if (!JsonUtils.hasInPath(data, remotePath)) {
+                return false;
+            }
+            lookup.computeIfAbsent(JsonUtils.getFromPath(data, remotePath), _ -> new JsonArray()).add(data);
+            return true;
+        }
+
+        // An input document with the local field gets the matching remote documents (null when none match).
+        private JsonObject attach(JsonObject document, Map<JsonBaseElement, JsonArray> lookup) {
+            if (!JsonUtils.hasInPath(document, localPath)) {
+                return document;
+            }
+            final var copy = document.deepCopy();
+            copy.add(asField, lookup.get(JsonUtils.getFromPath(copy, localPath)));
+            return copy;
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            input.close();
+            openSpills.forEach(Stream::close);
+            for (var file : spillFiles) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException _) {
+                    // Left for the startup cleanup.
+                }
+            }
+            output = List.<JsonObject>of().iterator();
+        }
+    }
+
+    // One open writer per partition file, all closed together.
+    private static final class PartitionWriters implements AutoCloseable {
+        private final List<BufferedWriter> writers = new ArrayList<>();
+
+        private PartitionWriters(List<File> partitions) throws IOException {
+            try {
+                for (var partition : partitions) {
+                    writers.add(fs.openSpillWriter(partition));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void write(int partition, JsonObject document) throws IOException {
+            fs.writeSpillDocument(writers.get(partition), document);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (var writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
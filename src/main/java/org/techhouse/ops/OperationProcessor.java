@@ -1,11 +1,12 @@
 package org.techhouse.ops;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.techhouse.analyze.AnalyzeContext;
 import org.techhouse.bckg_ops.BackgroundTaskManager;
@@ -17,9 +18,12 @@ import org.techhouse.bckg_ops.events.EventType;
 import org.techhouse.cache.AccessKind;
 import org.techhouse.cache.Cache;
 import org.techhouse.cache.MemoryManagement;
+import org.techhouse.concurrency.ReadSnapshot;
 import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
+import org.techhouse.conn.AggregateCursor;
 import org.techhouse.conn.ClientTracker;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.IndexedDbEntry;
@@ -27,6 +31,7 @@ import org.techhouse.data.PkIndexEntry;
 import org.techhouse.data.admin.AdminCollEntry;
 import org.techhouse.data.admin.AdminDbEntry;
 import org.techhouse.fs.FileSystem;
+import org.techhouse.fs.StorageFormat;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.listen.ListenManager;
 import org.techhouse.listen.ResultHasher;
@@ -44,9 +49,12 @@ import org.techhouse.ops.req.DropCollectionRequest;
 import org.techhouse.ops.req.DropDatabaseRequest;
 import org.techhouse.ops.req.DropIndexRequest;
 import org.techhouse.ops.req.FindByIdRequest;
+import org.techhouse.ops.req.GetMoreRequest;
+import org.techhouse.ops.req.KillCursorRequest;
 import org.techhouse.ops.req.ListCollectionsRequest;
 import org.techhouse.ops.req.ListUsersRequest;
 import org.techhouse.ops.req.ListenRequest;
+import org.techhouse.ops.req.MigrateCollectionRequest;
 import org.techhouse.ops.req.OperationRequest;
 import org.techhouse.ops.req.ReindexRequest;
 import org.techhouse.ops.req.SaveRequest;
@@ -58,6 +66,7 @@ import org.techhouse.ops.resp.AggregateAnalyzeResponse;
 import org.techhouse.ops.resp.AggregateResponse;
 import org.techhouse.ops.resp.BulkSaveResponse;
 import org.techhouse.ops.resp.CloseConnectionResponse;
+import org.techhouse.ops.resp.CursorBatchResponse;
 import org.techhouse.ops.resp.CreateCollectionResponse;
 import org.techhouse.ops.resp.CreateDatabaseResponse;
 import org.techhouse.ops.resp.CreateIndexResponse;
@@ -66,10 +75,12 @@ import org.techhouse.ops.resp.DropCollectionResponse;
 import org.techhouse.ops.resp.DropDatabaseResponse;
 import org.techhouse.ops.resp.DropIndexResponse;
 import org.techhouse.ops.resp.FindByIdResponse;
+import org.techhouse.ops.resp.KillCursorResponse;
 import org.techhouse.ops.resp.ListCollectionsResponse;
 import org.techhouse.ops.resp.ListDatabasesResponse;
 import org.techhouse.ops.resp.ListUsersResponse;
 import org.techhouse.ops.resp.ListenResponse;
+import org.techhouse.ops.resp.MigrateCollectionResponse;
 import org.techhouse.ops.resp.OperationResponse;
 import org.techhouse.ops.resp.ReindexResponse;
 import org.techhouse.ops.resp.SaveResponse;
@@ -82,6 +93,7 @@ public class OperationProcessor {
     private final BackgroundTaskManager taskManager = IocContainer.get(BackgroundTaskManager.class);
     private final PendingIndexWrites pendingIndexWrites = IocContainer.get(PendingIndexWrites.class);
     private final ResourceLocking locks = IocContainer.get(ResourceLocking.class);
+    private final SnapshotManager snapshots = IocContainer.get(SnapshotManager.class);
     private final ClientTracker clientTracker = IocContainer.get(ClientTracker.class);
     private final MemoryManagement memoryManagement = IocContainer.get(MemoryManagement.class);
     private final ListenManager listenManager = IocContainer.get(ListenManager.class);
@@ -128,6 +140,12 @@ public class OperationProcessor {
         }
     }
 
+    // Pins the versions an AGGREGATE reads its collections at (see SnapshotManager): it then takes no collection
+    // lock, so it neither waits for writers nor holds them up. A dirty read has no snapshot.
+    private ReadSnapshot pinSnapshot(boolean dirtyRead, List<String> collIdentifiers) throws InterruptedException {
+        return dirtyRead ? null : snapshots.pin(collIdentifiers);
+    }
+
     private List<String> aggregateLockSet(AggregateRequest request) {
         final var dbName = request.getDatabaseName();
         final var identifiers = new ArrayList<String>();
@@ -151,7 +169,7 @@ public class OperationProcessor {
             case BULK_SAVE -> processBulkSaveOperation((BulkSaveRequest) operationRequest);
             case SAVE -> processSaveOperation((SaveRequest) operationRequest);
             case FIND_BY_ID -> processFindByIdOperation((FindByIdRequest) operationRequest);
-            case AGGREGATE -> processAggregateOperation((AggregateRequest) operationRequest);
+            case AGGREGATE -> processAggregateOperation((AggregateRequest) operationRequest, clientId);
             case DELETE -> processDeleteOperation((DeleteRequest) operationRequest);
             case CREATE_DATABASE -> processCreateDatabaseOperation((CreateDatabaseRequest) operationRequest, clientId);
             case DROP_DATABASE -> processDropDatabaseOperation((DropDatabaseRequest) operationRequest);
@@ -162,6 +180,7 @@ public class OperationProcessor {
             case CREATE_INDEX -> processCreateIndex((CreateIndexRequest) operationRequest);
             case DROP_INDEX -> processDropIndex((DropIndexRequest) operationRequest);
             case REINDEX -> processReindex((ReindexRequest) operationRequest);
+            case MIGRATE_COLLECTION -> processMigrateCollection((MigrateCollectionRequest) operationRequest);
             case CLOSE_CONNECTION -> new CloseConnectionResponse();
             case AUTHENTICATE ->
                 UserOperationHelper.processAuthenticate((AuthenticateRequest) operationRequest, clientId);
@@ -176,6 +195,8 @@ public class OperationProcessor {
             case GET_DATABASE_STATS -> DatabaseStatsHelper.processGetDatabaseStats();
             case LISTEN -> processListenOperation((ListenRequest) operationRequest, clientId);
             case STOP_LISTEN -> processStopListenOperation((StopListenRequest) operationRequest);
+            case GET_MORE -> processGetMoreOperation((GetMoreRequest) operationRequest, clientId);
+            case KILL_CURSOR -> processKillCursorOperation((KillCursorRequest) operationRequest, clientId);
         };
     }
 
@@ -204,16 +225,16 @@ public class OperationProcessor {
         }
         try {
             locks.lock(dbName, collName);
-            final var primaryKeyIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
+            final var primaryKeyIndex = cache.getPkIndex(dbName, collName);
             final var indexedDbEntriesToUpdate = new ArrayList<IndexedDbEntry>();
+            final var idsToUpdate = new HashSet<String>();
             for (var i : entries) {
                 final var data = i.getData();
                 if (data.has(Globals.PK_FIELD)) {
                     final var id = data.get(Globals.PK_FIELD).asJsonString().getValue();
                     i.set_id(id);
-                    final var foundIndexEntry = Collections.binarySearch(primaryKeyIndex, id);
-                    if (foundIndexEntry >= 0) {
-                        final var foundIndex = primaryKeyIndex.get(foundIndexEntry);
+                    final var foundIndex = primaryKeyIndex.get(id);
+                    if (foundIndex != null) {
                         final var indexedDbEntry = new IndexedDbEntry();
                         indexedDbEntry.setIndex(foundIndex);
                         indexedDbEntry.setDatabaseName(dbName);
@@ -221,22 +242,16 @@ public class OperationProcessor {
                         indexedDbEntry.set_id(id);
                         indexedDbEntry.setData(data);
                         indexedDbEntriesToUpdate.add(indexedDbEntry);
+                        idsToUpdate.add(id);
                     }
                 }
             }
             final List<IndexedDbEntry> updatedIndexEntries = new ArrayList<>();
             if (!indexedDbEntriesToUpdate.isEmpty()) {
-                final var bulkResult = fs.bulkUpdateFromCollection(dbName, collName, indexedDbEntriesToUpdate);
-                updatedIndexEntries.addAll(bulkResult.updated());
-                // Fix the in-memory positions of non-updated survivors shifted by the batch, then
-                // replace the updated entries with their new (relocated) index entries.
-                bulkResult.compactions().forEach(cache::shiftPkPositionsAfterCompaction);
-                primaryKeyIndex.removeIf(pkIndexEntry -> updatedIndexEntries.stream()
-                        .anyMatch(pkIndexEntry1 -> pkIndexEntry1.get_id().equals(pkIndexEntry.getValue())));
-            }
-            primaryKeyIndex.addAll(updatedIndexEntries.stream().map(IndexedDbEntry::getIndex).toList());
-            final var entriesToInsert = entries.stream().filter(dbEntry -> indexedDbEntriesToUpdate.stream()
-                    .noneMatch(indexedDbEntry -> indexedDbEntry.get_id().equals(dbEntry.get_id()))).toList();
+                updatedIndexEntries.addAll(fs.bulkUpdateFromCollection(dbName, collName, indexedDbEntriesToUpdate));
+            }
+            final var entriesToInsert = entries.stream().filter(dbEntry -> !idsToUpdate.contains(dbEntry.get_id()))
+                    .toList();
             List<IndexedDbEntry> insertedIndexEntries = new ArrayList<>();
             if (!entriesToInsert.isEmpty()) {
                 final var pendingPageBytes = new HashMap<Long, Long>();
@@ -251,8 +266,13 @@ public class OperationProcessor {
                     cache.updatePageSizeInMemory(dbName, collName, ie.getIndex().getPage(), ie.getIndex().getLength());
                 }
             }
-            primaryKeyIndex.addAll(insertedIndexEntries.stream().map(IndexedDbEntry::getIndex).toList());
-            primaryKeyIndex.sort(Comparator.comparing(PkIndexEntry::getValue));
+            // The updated entries' new locations replace their old ones.
+            for (var indexedEntry : updatedIndexEntries) {
+                cache.putPkEntry(dbName, collName, indexedEntry.getIndex());
+            }
+            for (var indexedEntry : insertedIndexEntries) {
+                cache.putPkEntry(dbName, collName, indexedEntry.getIndex());
+            }
             final var updatedDbEntries = updatedIndexEntries.stream().map(IndexedDbEntry::toDbEntry).toList();
             cache.addEntriesToCache(dbName, collName, updatedDbEntries);
             final var insertedDbEntries = insertedIndexEntries.stream().map(IndexedDbEntry::toDbEntry).toList();
@@ -286,40 +306,31 @@ public class OperationProcessor {
                             + " bytes exceeds the maximum allowed size of " + maxEntrySize + " bytes",
                     ErrorCode.ENTRY_TOO_LARGE);
         }
+        final var id = saveRequest.get_id();
         try {
-            locks.lock(dbName, collName);
-            final var primaryKeyIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
-            var foundIndexEntry = -1;
-            if (saveRequest.get_id() != null) {
-                foundIndexEntry = Collections.binarySearch(primaryKeyIndex, saveRequest.get_id());
+            // Saves of other documents run alongside (see ResourceLocking#lockSharedWrite); one without an id gets a
+            // fresh one, which no other writer can have.
+            locks.lockSharedWrite(dbName, collName);
+            if (id != null) {
+                locks.lockDocument(dbName, collName, id);
             }
+            final var idxEntry = id != null ? cache.getPkIndex(dbName, collName).get(id) : null;
             var eventType = EventType.CREATED;
             PkIndexEntry savedPkIndexEntry;
-            if (foundIndexEntry >= 0) {
-                final var idxEntry = primaryKeyIndex.get(foundIndexEntry);
+            if (idxEntry != null) {
                 if (wouldOverflowPage(dbName, collName, idxEntry, entry)) {
                     // The grown document no longer fits on its page; relocate it instead of rewriting in
                     // place (which would push the page past maxPageSize). Handled as a delete + insert so
                     // page metadata and field indexes stay correct via the standard background events.
-                    return relocateOnGrowUpdate(dbName, collName, entry, idxEntry, primaryKeyIndex);
+                    return relocateOnGrowUpdate(dbName, collName, entry, idxEntry);
                 }
                 entry.setPage(idxEntry.getPage());
-                final var updateResult = fs.updateFromCollection(entry, idxEntry);
-                savedPkIndexEntry = updateResult.indexEntry();
-                cache.shiftPkPositionsAfterCompaction(updateResult.compaction());
-                primaryKeyIndex.remove(idxEntry);
+                savedPkIndexEntry = fs.updateFromCollection(entry, idxEntry);
                 eventType = EventType.UPDATED;
             } else {
-                entry.setPage(cache.selectPageForInsert(dbName, collName, entry.byteSize()));
-                savedPkIndexEntry = fs.insertIntoCollection(entry);
-                cache.updatePageSizeInMemory(dbName, collName, savedPkIndexEntry.getPage(),
-                        savedPkIndexEntry.getLength());
+                savedPkIndexEntry = insertOnReservedPage(dbName, collName, entry);
             }
-            int insertAt = Collections.binarySearch(primaryKeyIndex, savedPkIndexEntry.getValue());
-            if (insertAt < 0) {
-                insertAt = -(insertAt + 1);
-            }
-            primaryKeyIndex.add(insertAt, savedPkIndexEntry);
+            cache.putPkEntry(dbName, collName, savedPkIndexEntry);
             cache.addEntryToCache(dbName, collName, entry);
             // Mark the id pending (committed, but its field-index update is asynchronous) before
             // releasing the write lock, so index-backed reads reconcile it until indexing completes.
@@ -331,7 +342,25 @@ public class OperationProcessor {
         } catch (Exception exception) {
             return new OperationResponse(OperationType.SAVE, ErrorCode.ERROR_SAVING);
         } finally {
-            locks.release(dbName, collName);
+            if (id != null) {
+                locks.releaseDocument(dbName, collName, id);
+            }
+            locks.releaseSharedWrite(dbName, collName);
+        }
+    }
+
+    // Inserts a new document on a page reserved for it (see AdminCache#reservePageForInsert), whose size has grown
+    // by the document's bytes by the time the reservation is released.
+    private PkIndexEntry insertOnReservedPage(String dbName, String collName, DbEntry entry) throws IOException {
+        final var size = entry.byteSize();
+        final var page = cache.reservePageForInsert(dbName, collName, size);
+        try {
+            entry.setPage(page);
+            final var inserted = fs.insertIntoCollection(entry);
+            cache.updatePageSizeInMemory(dbName, collName, inserted.getPage(), inserted.getLength());
+            return inserted;
+        } finally {
+            cache.releasePageReservation(dbName, collName, page, size);
         }
     }
 
@@ -347,31 +376,23 @@ public class OperationProcessor {
         return projectedPageSize > configuration.getMaxPageSize();
     }
 
-    // Relocates a grown document that no longer fits on its page: removes it from the current page
-    // (compacting the survivors) and re-inserts it into a fitting page. Modeled as a DELETE of the old
-    // version followed by a CREATE of the new one so per-page metadata (the old page loses the entry,
-    // the new page gains it) and the field indexes are maintained through the same background events the
-    // standalone delete/insert paths emit. Runs while the caller already holds the collection write lock.
-    private SaveResponse relocateOnGrowUpdate(String dbName, String collName, DbEntry entry, PkIndexEntry idxEntry,
-            List<PkIndexEntry> primaryKeyIndex) throws Exception {
+    // Relocates a grown document that no longer fits on its page: removes it from the current page and
+    // re-inserts it into a fitting page. Modeled as a DELETE of the old version followed by a CREATE of the
+    // new one so per-page metadata (the old page loses the entry, the new page gains it) and the field
+    // indexes are maintained through the same background events the standalone delete/insert paths emit.
+    // Runs while the caller already holds the document's lock.
+    private SaveResponse relocateOnGrowUpdate(String dbName, String collName, DbEntry entry, PkIndexEntry idxEntry)
+            throws Exception {
         final var oldEntry = cache.getById(dbName, collName, idxEntry);
         oldEntry.setPage(idxEntry.getPage());
-        final var compaction = fs.deleteFromCollection(idxEntry);
-        cache.shiftPkPositionsAfterCompaction(compaction);
-        primaryKeyIndex.remove(idxEntry);
+        fs.deleteFromCollection(idxEntry);
+        cache.removePkEntry(dbName, collName, idxEntry.getValue());
         cache.evictEntry(dbName, collName, entry.get_id());
         pendingIndexWrites.mark(dbName, collName, entry.get_id());
         taskManager.submitBackgroundTask(new EntityEvent(EventType.DELETED, dbName, collName, oldEntry));
 
-        entry.setPage(cache.selectPageForInsert(dbName, collName, entry.byteSize()));
-        final var relocatedPkIndexEntry = fs.insertIntoCollection(entry);
-        cache.updatePageSizeInMemory(dbName, collName, relocatedPkIndexEntry.getPage(),
-                relocatedPkIndexEntry.getLength());
-        int insertAt = Collections.binarySearch(primaryKeyIndex, relocatedPkIndexEntry.getValue());
-        if (insertAt < 0) {
-            insertAt = -(insertAt + 1);
-        }
-        primaryKeyIndex.add(insertAt, relocatedPkIndexEntry);
+        final var relocatedPkIndexEntry = insertOnReservedPage(dbName, collName, entry);
+        cache.putPkEntry(dbName, collName, relocatedPkIndexEntry);
         cache.addEntryToCache(dbName, collName, entry);
         pendingIndexWrites.mark(dbName, collName, entry.get_id());
         taskManager.submitBackgroundTask(new EntityEvent(EventType.CREATED, dbName, collName, entry));
@@ -384,39 +405,46 @@ public class OperationProcessor {
         final var dbName = findbyIdRequest.getDatabaseName();
         final var collName = findbyIdRequest.getCollectionName();
         final var id = findbyIdRequest.get_id();
-        List<String> readLocks = List.of();
+        ReadSnapshot snapshot = null;
         try {
-            readLocks = acquireReadLocks(findbyIdRequest.isDirtyRead(),
+            // Read as of a snapshot: writers of the collection no longer exclude each other (see
+            // ResourceLocking#lockSharedWrite), so its read lock would not keep this document still.
+            snapshot = pinSnapshot(findbyIdRequest.isDirtyRead(),
                     List.of(Cache.getCollectionIdentifier(dbName, collName)));
-            final var primaryKeyIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
-            final var foundIndexEntry = Collections.binarySearch(primaryKeyIndex, id);
-            if (foundIndexEntry >= 0) {
-                final var primaryKeyIndexEntry = primaryKeyIndex.get(foundIndexEntry);
-                final var entry = cache.getById(dbName, collName, primaryKeyIndexEntry);
+            ReadSnapshot.set(snapshot);
+            final var found = cache.getEntriesByIds(dbName, collName, Set.of(id));
+            if (!found.isEmpty()) {
                 recordPkIndexAccess(dbName, collName);
                 recordCollectionAccess(dbName, collName);
-                return new FindByIdResponse("Ok", entry.getData());
+                return new FindByIdResponse("Ok", found.getFirst().getData());
             } else {
                 return new OperationResponse(OperationType.FIND_BY_ID, ErrorCode.ENTRY_NOT_FOUND);
             }
         } catch (Exception exception) {
             return new OperationResponse(OperationType.FIND_BY_ID, ErrorCode.ERROR_RETRIEVING);
         } finally {
-            releaseReadLocks(readLocks);
+            ReadSnapshot.clear();
+            if (snapshot != null) {
+                snapshot.close();
+            }
         }
     }
 
-    private OperationResponse processAggregateOperation(AggregateRequest aggregateRequest) {
-        List<String> readLocks = List.of();
+    private OperationResponse processAggregateOperation(AggregateRequest aggregateRequest, UUID clientId) {
+        // Without a connection (internal callers) there is nowhere to keep a cursor, so everything is returned.
+        // Cursor batches carry no analyzeResult, so an analyze (rejected with a batchSize by RequestValidator,
+        // but internal callers skip it) is never batched either.
+        if (aggregateRequest.getBatchSize() > 0 && clientId != null && !aggregateRequest.isAnalyze()) {
+            return processBatchedAggregateOperation(aggregateRequest, clientId);
+        }
+        ReadSnapshot snapshot = null;
         final var analyzeContext = aggregateRequest.isAnalyze() ? new AnalyzeContext() : null;
         if (analyzeContext != null) {
             AnalyzeContext.set(analyzeContext);
         }
         try {
-            readLocks = acquireReadLocks(aggregateRequest.isDirtyRead(), aggregateLockSet(aggregateRequest));
-            if (analyzeContext != null) {
-                readLocks.forEach(analyzeContext::addLock);
-            }
+            snapshot = pinSnapshot(aggregateRequest.isDirtyRead(), aggregateLockSet(aggregateRequest));
+            ReadSnapshot.set(snapshot);
             final var results = AggregationOperationHelper.processAggregation(aggregateRequest);
             recordCollectionAccess(aggregateRequest.getDatabaseName(), aggregateRequest.getCollectionName());
             if (analyzeContext != null) {
@@ -431,28 +459,96 @@ public class OperationProcessor {
         } catch (Exception e) {
             return new OperationResponse(OperationType.AGGREGATE, ErrorCode.ERROR_AGGREGATING);
         } finally {
-            releaseReadLocks(readLocks);
+            ReadSnapshot.clear();
+            if (snapshot != null) {
+                snapshot.close();
+            }
             if (analyzeContext != null) {
                 AnalyzeContext.clear();
             }
         }
     }
 
+    // Returns the first batch and, when there is more, registers a cursor over the rest of the lazy result stream
+    // for GET_MORE. Only the batch is materialized.
+    private OperationResponse processBatchedAggregateOperation(AggregateRequest aggregateRequest, UUID clientId) {
+        ReadSnapshot snapshot = null;
+        AggregateCursor cursor = null;
+        try {
+            snapshot = pinSnapshot(aggregateRequest.isDirtyRead(), aggregateLockSet(aggregateRequest));
+            ReadSnapshot.set(snapshot);
+            cursor = new AggregateCursor(aggregateRequest,
+                    AggregationOperationHelper.streamAggregation(aggregateRequest), snapshot);
+            snapshot = null; // owned by the cursor from here on
+            final var batch = cursor.nextBatch(aggregateRequest.getBatchSize());
+            recordCollectionAccess(aggregateRequest.getDatabaseName(), aggregateRequest.getCollectionName());
+            if (batch.isEmpty()) {
+                return new OperationResponse(OperationType.AGGREGATE, ErrorCode.NO_RESULTS);
+            }
+            if (!cursor.hasMore() || !clientTracker.registerCursor(clientId, cursor)) {
+                return new CursorBatchResponse(OperationType.AGGREGATE, batch, null);
+            }
+            final var cursorId = cursor.getId().toString();
+            cursor = null; // registered: now owned by the client's registry
+            return new CursorBatchResponse(OperationType.AGGREGATE, batch, cursorId);
+        } catch (Exception e) {
+            return new OperationResponse(OperationType.AGGREGATE, ErrorCode.ERROR_AGGREGATING);
+        } finally {
+            ReadSnapshot.clear();
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    private OperationResponse processGetMoreOperation(GetMoreRequest request, UUID clientId) {
+        final var cursorId = UUID.fromString(request.getCursorId());
+        final var cursor = clientTracker.getCursor(clientId, cursorId);
+        if (cursor == null) {
+            return new OperationResponse(OperationType.GET_MORE, ErrorCode.CURSOR_NOT_FOUND);
+        }
+        final var aggregateRequest = cursor.getRequest();
+        try {
+            ReadSnapshot.set(cursor.getSnapshot());
+            final var batchSize = request.getBatchSize() > 0 ? request.getBatchSize() : cursor.getBatchSize();
+            final var batch = cursor.nextBatch(batchSize);
+            recordCollectionAccess(aggregateRequest.getDatabaseName(), aggregateRequest.getCollectionName());
+            if (!cursor.hasMore()) {
+                clientTracker.closeCursor(clientId, cursorId);
+                return new CursorBatchResponse(OperationType.GET_MORE, batch, null);
+            }
+            return new CursorBatchResponse(OperationType.GET_MORE, batch, cursorId.toString());
+        } catch (Exception e) {
+            // The stream can't be resumed after a failed read (e.g. the collection was dropped).
+            clientTracker.closeCursor(clientId, cursorId);
+            return new OperationResponse(OperationType.GET_MORE, ErrorCode.ERROR_READING_CURSOR);
+        } finally {
+            ReadSnapshot.clear();
+        }
+    }
+
+    private OperationResponse processKillCursorOperation(KillCursorRequest request, UUID clientId) {
+        final var closed = clientTracker.closeCursor(clientId, UUID.fromString(request.getCursorId()));
+        return closed
+                ? new KillCursorResponse()
+                : new OperationResponse(OperationType.KILL_CURSOR, ErrorCode.CURSOR_NOT_FOUND);
+    }
+
     private OperationResponse processDeleteOperation(DeleteRequest deleteRequest) {
         final var dbName = deleteRequest.getDatabaseName();
         final var collName = deleteRequest.getCollectionName();
+        final var id = deleteRequest.get_id();
         try {
-            locks.lock(dbName, collName);
-            final var primaryKeyIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
-            final var foundIndexEntry = primaryKeyIndex.stream()
-                    .filter(pkIndexEntry -> pkIndexEntry.getValue().equals(deleteRequest.get_id())).findFirst();
-            if (foundIndexEntry.isPresent()) {
-                final var idxEntry = foundIndexEntry.get();
+            locks.lockSharedWrite(dbName, collName);
+            locks.lockDocument(dbName, collName, id);
+            final var idxEntry = cache.getPkIndex(dbName, collName).get(id);
+            if (idxEntry != null) {
                 final var entryToBeDeleted = cache.getById(dbName, collName, idxEntry);
-                final var compaction = fs.deleteFromCollection(idxEntry);
-                cache.shiftPkPositionsAfterCompaction(compaction);
-                primaryKeyIndex.remove(idxEntry);
-                primaryKeyIndex.sort(Comparator.comparing(PkIndexEntry::getValue));
+                fs.deleteFromCollection(idxEntry);
+                cache.removePkEntry(dbName, collName, id);
                 cache.evictEntry(dbName, collName, entryToBeDeleted.get_id());
                 // Mark pending until the async index removal completes: the field index still maps the
                 // value to this id, so index-only reads that don't re-fetch the document (COUNT, DISTINCT)
@@ -470,7 +566,8 @@ public class OperationProcessor {
         } catch (Exception exception) {
             return new OperationResponse(OperationType.DELETE, ErrorCode.ERROR_DELETING);
         } finally {
-            locks.release(dbName, collName);
+            locks.releaseDocument(dbName, collName, id);
+            locks.releaseSharedWrite(dbName, collName);
         }
     }
 
@@ -565,7 +662,9 @@ public class OperationProcessor {
         try {
             final var dbName = createCollectionRequest.getDatabaseName();
             final var collName = createCollectionRequest.getCollectionName();
-            final var result = fs.createCollectionFile(dbName, collName);
+            final var storageFormat = createCollectionRequest.getStorageFormat() != null
+                    ? StorageFormat.valueOf(createCollectionRequest.getStorageFormat()) : StorageFormat.JSON;
+            final var result = fs.createCollectionFile(dbName, collName, storageFormat);
             if (result) {
                 // Register the collection's admin metadata (page collections + admin entry with its PK
                 // index entry) synchronously, so a subsequent CREATE_INDEX/SAVE observes it immediately.
@@ -653,8 +752,8 @@ public class OperationProcessor {
             // either commits before (and is captured by the whole-collection read) or after (and its
             // background index update sees the field already registered and indexes it).
             locks.lock(dbName, collName);
-            IndexHelper.createIndex(dbName, collName, fieldName);
-            AdminOperationHelper.saveNewIndex(dbName, collName, fieldName);
+            final var statistics = IndexHelper.createIndex(dbName, collName, fieldName);
+            AdminOperationHelper.saveNewIndex(dbName, collName, fieldName, statistics);
             return new CreateIndexResponse("Created index for field: " + fieldName);
         } catch (Exception e) {
             return new OperationResponse(OperationType.CREATE_INDEX, ErrorCode.ERROR_CREATING_INDEX);
@@ -711,7 +810,7 @@ public class OperationProcessor {
         final var collName = request.getCollectionName();
         try {
             // Hold the collection write lock for the entire rebuild so no concurrent save can commit
-            // between field rebuilds. Admin metadata is not changed — the indexes already exist.
+            // between field rebuilds. The indexes already exist, so only their statistics are refreshed.
             // If createIndex throws mid-loop (e.g. disk full), the catch returns ERROR; the operator
             // can retry once the underlying issue is resolved.
             locks.lock(dbName, collName);
@@ -732,7 +831,8 @@ public class OperationProcessor {
             }
             for (var fieldName : targets) {
                 IndexHelper.dropIndex(dbName, collName, fieldName);
-                IndexHelper.createIndex(dbName, collName, fieldName);
+                final var statistics = IndexHelper.createIndex(dbName, collName, fieldName);
+                AdminOperationHelper.saveNewIndex(dbName, collName, fieldName, statistics);
             }
             return new ReindexResponse("Rebuilt " + targets.size() + " index(es)", targets);
         } catch (Exception e) {
@@ -742,15 +842,45 @@ public class OperationProcessor {
         }
     }
 
+    private OperationResponse processMigrateCollection(MigrateCollectionRequest request) {
+        final var dbName = request.getDatabaseName();
+        final var collName = request.getCollectionName();
+        try {
+            // The write lock keeps saves and deletes out while pages are rewritten; the rewritten rows hold the
+            // same documents, so only the cached copies (whose PK entries point at the old positions) go stale.
+            // Taken exclusively: snapshot reads (open cursors too) hold row positions, so they are waited for
+            // before the write lock is taken.
+            locks.lockExclusive(dbName, collName);
+            if (AdminOperationHelper.getCollectionEntry(dbName, collName) == null) {
+                return new OperationResponse(OperationType.MIGRATE_COLLECTION, ErrorCode.ERROR_MIGRATING_COLLECTION,
+                        "Collection " + collName + " not found");
+            }
+            final var format = StorageFormat.valueOf(request.getStorageFormat());
+            final int migrated;
+            try {
+                migrated = fs.migrateCollection(dbName, collName, format);
+            } finally {
+                cache.evictCollection(dbName, collName);
+            }
+            return new MigrateCollectionResponse("Migrated " + migrated + " document(s) to " + format,
+                    format.name(), migrated);
+        } catch (Exception e) {
+            return new OperationResponse(OperationType.MIGRATE_COLLECTION, ErrorCode.ERROR_MIGRATING_COLLECTION);
+        } finally {
+            locks.release(dbName, collName);
+        }
+    }
+
     private OperationResponse processListenOperation(ListenRequest listenRequest, UUID clientId) {
-        List<String> readLocks = List.of();
+        ReadSnapshot snapshot = null;
         try {
             final var dbName = listenRequest.getDatabaseName();
             final var collName = listenRequest.getCollectionName();
             // Build an AggregateRequest so we can use the existing aggregation infrastructure.
             final var aggReq = new AggregateRequest(dbName, collName);
             aggReq.setAggregationSteps(listenRequest.getAggregationSteps());
-            readLocks = acquireReadLocks(false, aggregateLockSet(aggReq));
+            snapshot = pinSnapshot(false, aggregateLockSet(aggReq));
+            ReadSnapshot.set(snapshot);
             final var results = AggregationOperationHelper.processAggregation(aggReq);
             final var initialHash = ResultHasher.hash(results);
             // The re-run request uses dirty reads: timeliness matters more than strict consistency
@@ -764,7 +894,10 @@ public class OperationProcessor {
         } catch (Exception e) {
             return new OperationResponse(OperationType.LISTEN, ErrorCode.ERROR_LISTEN);
         } finally {
-            releaseReadLocks(readLocks);
+            ReadSnapshot.clear();
+            if (snapshot != null) {
+                snapshot.close();
+            }
         }
     }
 
@@ -0,0 +1,12 @@
+package org.techhouse.ops;
+
+import java.util.List;
+import org.techhouse.ops.req.agg.BaseAggregationStep;
+
+/**
+ * An AGGREGATE pipeline as {@link QueryPlanner} rewrote it: the steps to run, the rewrites applied to the
+ * requested steps and a one-line description of each step to run (with the chosen access path for the first
+ * one), for analyze mode.
+ */
+public record QueryPlan(List<BaseAggregationStep> steps, List<String> rewrites, List<String> description) {
+}
@@ -0,0 +1,327 @@
+package org.techhouse.ops;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.techhouse.cache.Cache;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.ops.req.agg.BaseAggregationStep;
+import org.techhouse.ops.req.agg.BaseOperator;
+import org.techhouse.ops.req.agg.ConjunctionOperatorType;
+import org.techhouse.ops.req.agg.OperatorType;
+import org.techhouse.ops.req.agg.operators.ConjunctionOperator;
+import org.techhouse.ops.req.agg.operators.FieldOperator;
+import org.techhouse.ops.req.agg.step.DistinctAggregationStep;
+import org.techhouse.ops.req.agg.step.FilterAggregationStep;
+import org.techhouse.ops.req.agg.step.GroupByAggregationStep;
+import org.techhouse.ops.req.agg.step.JoinAggregationStep;
+import org.techhouse.ops.req.agg.step.LimitAggregationStep;
+import org.techhouse.ops.req.agg.step.MapAggregationStep;
+import org.techhouse.ops.req.agg.step.SkipAggregationStep;
+import org.techhouse.ops.req.agg.step.SortAggregationStep;
+
+/**
+ * Rewrites an AGGREGATE pipeline before it runs. Only a step running first can use an index, so:
+ * <ul>
+ * <li>a FILTER moves ahead of SORT steps and of MAP/JOIN steps that do not write a field it reads, and adjacent
+ * FILTERs become one AND;</li>
+ * <li>adjacent LIMIT and SKIP steps are merged, with SKIP put first;</li>
+ * <li>a SORT followed by LIMIT (optionally with a SKIP between) becomes a single top-K sort;</li>
+ * <li>a leading FILTER runs on its index unless the {@link org.techhouse.data.FieldStatistics} of the fields it
+ * reads estimate it to match more than {@link #MAX_INDEX_SELECTIVITY} of the collection, where one sequential
+ * scan is cheaper than fetching the candidates one by one.</li>
+ * </ul>
+ * Requested steps are never modified: rewritten ones are new instances.
+ */
+public final class QueryPlanner {
+    private QueryPlanner() {
+    }
+
+    private static final Cache cache = IocContainer.get(Cache.class);
+    static final double MAX_INDEX_SELECTIVITY = 0.25;
+    // The usual default for a range comparison when nothing is known about the value distribution.
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    /** A SORT that only keeps {@code limit} documents after skipping {@code skip}: a fused SORT, SKIP, LIMIT. */
+    public static final class TopKSortStep extends SortAggregationStep {
+        private final int skip;
+        private final int limit;
+
+        public TopKSortStep(String fieldName, boolean ascending, int skip, int limit) {
+            super(fieldName, ascending);
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        public int getSkip() {
+            return skip;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    /** A leading FILTER the planner chose to answer with a scan although its fields are indexed. */
+    public static final class ScanFilterStep extends FilterAggregationStep {
+        public ScanFilterStep(BaseOperator operator) {
+            super(operator);
+        }
+    }
+
+    // fromCollection is false when the pipeline runs on a given stream, so no step can use an index.
+    public static QueryPlan plan(List<BaseAggregationStep> steps, String dbName, String collName,
+            boolean fromCollection) throws IOException {
+        final var planned = new ArrayList<>(steps);
+        final var rewrites = new ArrayList<String>();
+        pushDownFilters(planned, rewrites);
+        mergeFilters(planned, rewrites);
+        mergeLimitsAndSkips(planned, rewrites);
+        fuseTopK(planned, rewrites);
+        final var description = new ArrayList<String>();
+        for (var i = 0; i < planned.size(); i++) {
+            description.add(describe(planned.get(i)));
+        }
+        if (fromCollection && !planned.isEmpty() && collName != null && !collName.isEmpty()) {
+            final var accessPath = chooseAccessPath(planned, dbName, collName);
+            description.set(0, description.getFirst() + " [" + accessPath + "]");
+        }
+        return new QueryPlan(List.copyOf(planned), rewrites, description);
+    }
+
+    // Bubbles every FILTER up past the steps that cannot change what it sees.
+    private static void pushDownFilters(List<BaseAggregationStep> steps, List<String> rewrites) {
+        for (var i = 1; i < steps.size(); i++) {
+            if (!(steps.get(i) instanceof FilterAggregationStep filter)) {
+                continue;
+            }
+            final var fields = new LinkedHashSet<String>();
+            FilterOperatorHelper.collectFields(filter.getOperator(), fields);
+            final var passed = new ArrayList<String>();
+            var position = i;
+            while (position > 0 && commutes(steps.get(position - 1), fields)) {
+                passed.add(steps.get(position - 1).getType().name());
+                steps.set(position, steps.get(position - 1));
+                steps.set(position - 1, filter);
+                position--;
+            }
+            if (!passed.isEmpty()) {
+                rewrites.add("FILTER on " + String.join(", ", fields) + " moved ahead of "
+                        + String.join(", ", passed));
+            }
+        }
+    }
+
+    // SORT only reorders documents; MAP and JOIN keep one document per input and change only the fields they
+    // write, so a FILTER reading none of those sees the same values before them as after them.
+    private static boolean commutes(BaseAggregationStep step, Set<String> filterFields) {
+        return switch (step) {
+            case SortAggregationStep _ -> true;
+            case MapAggregationStep map -> map.getOperators().stream()
+                    .noneMatch(operator -> overlaps(operator.getFieldName(), filterFields));
+            case JoinAggregationStep join -> !overlaps(join.getAsField(), filterFields);
+            default -> false;
+        };
+    }
+
+    // Whether writing field can change any of fields, including a parent or child path of one of them.
+    private static boolean overlaps(String field, Set<String> fields) {
+        if (field == null) {
+            return true;
+        }
+        for (var other : fields) {
+            if (field.equals(other) || other.startsWith(field + ".") || field.startsWith(other + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void mergeFilters(List<BaseAggregationStep> steps, List<String> rewrites) {
+        for (var i = 0; i + 1 < steps.size(); i++) {
+            if (steps.get(i) instanceof FilterAggregationStep first
+                    && steps.get(i + 1) instanceof FilterAggregationStep second) {
+                final var operators = new ArrayList<BaseOperator>();
+                addAndOperands(first.getOperator(), operators);
+                addAndOperands(second.getOperator(), operators);
+                steps.set(i, new FilterAggregationStep(new ConjunctionOperator(ConjunctionOperatorType.AND,
+                        operators)));
+                steps.remove(i + 1);
+                rewrites.add("Adjacent FILTER steps merged into one AND filter");
+                i--;
+            }
+        }
+    }
+
+    private static void addAndOperands(BaseOperator operator, List<BaseOperator> operators) {
+        if (operator instanceof ConjunctionOperator conjunction
+                && conjunction.getConjunctionType() == ConjunctionOperatorType.AND) {
+            operators.addAll(conjunction.getOperators());
+        } else {
+            operators.add(operator);
+        }
+    }
+
+    // LIMIT a, LIMIT b keeps min(a, b); SKIP a, SKIP b skips a + b; LIMIT a, SKIP b is SKIP b, LIMIT a - b.
+    private static void mergeLimitsAndSkips(List<BaseAggregationStep> steps, List<String> rewrites) {
+        var i = 0;
+        while (i + 1 < steps.size()) {
+            final var first = steps.get(i);
+            final var second = steps.get(i + 1);
+            final List<BaseAggregationStep> merged;
+            if (first instanceof LimitAggregationStep a && second instanceof LimitAggregationStep b
+                    && a.getLimit() != null && b.getLimit() != null) {
+                merged = List.of(new LimitAggregationStep(Math.min(a.getLimit(), b.getLimit())));
+            } else if (first instanceof SkipAggregationStep a && second instanceof SkipAggregationStep b
+                    && a.getSkip() != null && b.getSkip() != null) {
+                merged = List.of(new SkipAggregationStep((int) Math.min(Integer.MAX_VALUE,
+                        (long) a.getSkip() + b.getSkip())));
+            } else if (first instanceof LimitAggregationStep a && second instanceof SkipAggregationStep b
+                    && a.getLimit() != null && b.getSkip() != null) {
+                merged = List.of(b, new LimitAggregationStep(Math.max(0, a.getLimit() - b.getSkip())));
+            } else {
+                i++;
+                continue;
+            }
+            rewrites.add(describe(first) + " and " + describe(second) + " merged into "
+                    + String.join(", ", merged.stream().map(QueryPlanner::describe).toList()));
+            steps.remove(i + 1);
+            steps.remove(i);
+            steps.addAll(i, merged);
+            // The merged steps may now merge with the step before them.
+            i = Math.max(0, i - 1);
+        }
+    }
+
+    private static void fuseTopK(List<BaseAggregationStep> steps, List<String> rewrites) {
+        for (var i = 0; i + 1 < steps.size(); i++) {
+            if (!(steps.get(i) instanceof SortAggregationStep sort) || sort instanceof TopKSortStep
+                    || sort.getAscending() == null) {
+                continue;
+            }
+            var skip = 0;
+            var limitAt = i + 1;
+            if (steps.get(limitAt) instanceof SkipAggregationStep skipStep && skipStep.getSkip() != null) {
+                skip = skipStep.getSkip();
+                limitAt++;
+            }
+            if (limitAt < steps.size() && steps.get(limitAt) instanceof LimitAggregationStep limit
+                    && limit.getLimit() != null) {
+                final var topK = new TopKSortStep(sort.getFieldName(), sort.getAscending(), skip, limit.getLimit());
+                rewrites.add("SORT on " + sort.getFieldName() + " and the following "
+                        + (skip > 0 ? "SKIP and LIMIT" : "LIMIT") + " fused into a top-K sort");
+                steps.subList(i, limitAt + 1).clear();
+                steps.add(i, topK);
+            }
+        }
+    }
+
+    // Picks how the first step reads the collection, swapping a leading FILTER for a scan when that is cheaper.
+    private static String chooseAccessPath(List<BaseAggregationStep> steps, String dbName, String collName)
+            throws IOException {
+        final var first = steps.getFirst();
+        return switch (first) {
+            case FilterAggregationStep filter -> {
+                final var share = estimateShare(filter.getOperator(), dbName, collName);
+                if (share == null) {
+                    yield "scan, no usable index";
+                }
+                if (share.isNaN()) {
+                    yield "index, no statistics";
+                }
+                final var documents = cache.getPkIndex(dbName, collName).size();
+                final var estimate = "~" + Math.round(share * documents) + " of " + documents + " documents";
+                if (share > MAX_INDEX_SELECTIVITY) {
+                    steps.set(0, new ScanFilterStep(filter.getOperator()));
+                    yield "scan, index estimate " + estimate;
+                }
+                yield "index, " + estimate;
+            }
+            case SortAggregationStep sort -> indexOrScan(dbName, collName, sort.getFieldName());
+            case GroupByAggregationStep groupBy -> indexOrScan(dbName, collName, groupBy.getFieldName());
+            case DistinctAggregationStep distinct -> indexOrScan(dbName, collName, distinct.getFieldName());
+            default -> "scan";
+        };
+    }
+
+    private static String indexOrScan(String dbName, String collName, String fieldName) {
+        return fieldName != null && !cache.hasNoIndex(dbName, collName, fieldName) ? "index" : "scan";
+    }
+
+    // Estimated share of the collection the index candidates of operator amount to, or null when the indexes
+    // cannot narrow it (mirroring how FilterOperatorHelper combines them). Children are assumed independent.
+    // An index built before statistics were kept gives NaN, which spreads through the arithmetic and never
+    // compares above the threshold, so such filters keep using their indexes.
+    static Double estimateShare(BaseOperator operator, String dbName, String collName) throws IOException {
+        if (operator.getType() == OperatorType.FIELD) {
+            return estimateFieldShare((FieldOperator) operator, dbName, collName);
+        }
+        final var conjunction = (ConjunctionOperator) operator;
+        final var shares = new ArrayList<Double>();
+        for (var child : conjunction.getOperators()) {
+            shares.add(estimateShare(child, dbName, collName));
+        }
+        final var known = shares.stream().filter(share -> share != null).toList();
+        if (known.isEmpty() || (known.size() < shares.size()
+                && conjunction.getConjunctionType() != ConjunctionOperatorType.AND)) {
+            return null;
+        }
+        final var product = known.stream().reduce(1.0, (a, b) -> a * b);
+        final var sum = Math.min(1.0, known.stream().mapToDouble(Double::doubleValue).sum());
+        return switch (conjunction.getConjunctionType()) {
+            case AND -> product;
+            case OR, XOR -> sum;
+            case NOR -> 1 - sum;
+            case NAND -> 1 - product;
+        };
+    }
+
+    private static Double estimateFieldShare(FieldOperator operator, String dbName, String collName)
+            throws IOException {
+        final var fieldName = operator.getField();
+        if (cache.hasNoIndex(dbName, collName, fieldName)) {
+            return null;
+        }
+        final var statistics = cache.getFieldStatistics(dbName, collName, fieldName);
+        final var documents = cache.getPkIndex(dbName, collName).size();
+        if (statistics == null || documents == 0) {
+            return Double.NaN;
+        }
+        final var withField = Math.min(1.0, (double) statistics.indexedDocuments() / documents);
+        final var perValue = Math.min(withField, statistics.documentsPerValue() / documents);
+        final var value = operator.getValue();
+        final var listSize = value != null && value.isJsonArray() ? value.asJsonArray().size() : 1;
+        return switch (operator.getFieldOperatorType()) {
+            case EQUALS -> perValue;
+            case NOT_EQUALS -> withField - perValue;
+            case IN -> Math.min(withField, listSize * perValue);
+            case NOT_IN -> Math.max(0, withField - listSize * perValue);
+            case GREATER_THAN, GREATER_THAN_EQUALS, SMALLER_THAN, SMALLER_THAN_EQUALS -> withField * RANGE_SELECTIVITY;
+            case CONTAINS -> withField;
+        };
+    }
+
+    static String describe(BaseAggregationStep step) {
+        return switch (step) {
+            case FilterAggregationStep filter -> {
+                final var fields = new LinkedHashSet<String>();
+                FilterOperatorHelper.collectFields(filter.getOperator(), fields);
+                yield "FILTER on " + String.join(", ", fields);
+            }
+            case TopKSortStep topK -> "SORT on " + topK.getFieldName() + (topK.getAscending() ? " ascending" :
+                    " descending") + ", top " + topK.getLimit() + (topK.getSkip() > 0 ? " after skipping "
+                    + topK.getSkip() : "");
+            case SortAggregationStep sort -> "SORT on " + sort.getFieldName()
+                    + (Boolean.TRUE.equals(sort.getAscending()) ? " ascending" : " descending");
+            case LimitAggregationStep limit -> "LIMIT " + limit.getLimit();
+            case SkipAggregationStep skip -> "SKIP " + skip.getSkip();
+            case GroupByAggregationStep groupBy -> "GROUP_BY " + groupBy.getFieldName();
+            case DistinctAggregationStep distinct -> distinct.getFieldName() == null ? "DISTINCT"
+                    : "DISTINCT " + distinct.getFieldName();
+            case JoinAggregationStep join -> "JOIN " + join.getJoinCollection() + " as " + join.getAsField();
+            default -> step.getType().name();
+        };
+    }
+}
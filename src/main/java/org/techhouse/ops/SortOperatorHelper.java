@@ -0,0 +1,223 @@
+package org.techhouse.ops;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.techhouse.cache.MemoryManagement;
+import org.techhouse.config.Configuration;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.fs.FileSystem;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.utils.JsonUtils;
+
+/**
+ * SORT steps that cannot be answered from an index. A plain SORT is an external merge sort: documents are buffered
+ * into runs as large as the memory budget allows, every full run is sorted and spilled to disk, and the runs are
+ * merged lazily as the result is read, so a sort larger than maxMemory costs disk I/O instead of heap. A SORT fused
+ * with SKIP/LIMIT keeps only the documents that can still make the page.
+ */
+public final class SortOperatorHelper {
+    private SortOperatorHelper() {
+    }
+
+    private static final FileSystem fs = IocContainer.get(FileSystem.class);
+    private static final Configuration configuration = Configuration.getInstance();
+
+    // The run budget is taken when the result is first read, so it reflects the cache at that time.
+    public static Stream<JsonObject> sort(Stream<JsonObject> resultStream, String fieldName, boolean ascending) {
+        return sort(resultStream, fieldName, ascending,
+                () -> IocContainer.get(MemoryManagement.class).spillBudgetBytes(configuration.getMaxPageSize()));
+    }
+
+    public static Stream<JsonObject> sort(Stream<JsonObject> resultStream, String fieldName, boolean ascending,
+            long runBudgetBytes) {
+        return sort(resultStream, fieldName, ascending, () -> runBudgetBytes);
+    }
+
+    private static Stream<JsonObject> sort(Stream<JsonObject> resultStream, String fieldName, boolean ascending,
+            LongSupplier runBudget) {
+        final var merge = new RunMerge(resultStream, JsonUtils.splitPath(fieldName), ranking(ascending), runBudget);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merge, Spliterator.ORDERED), false)
+                .onClose(merge::close);
+    }
+
+    // SORT fused with SKIP/LIMIT by the planner: a max-heap of the skip + limit best documents seen so far, filled
+    // as the input streams page by page, so memory is bounded by that count instead of the collection size and a
+    // document that cannot make the cut costs one comparison against the heap top.
+    public static Stream<JsonObject> topK(Stream<JsonObject> resultStream, String fieldName, boolean ascending,
+            int skip, int limit) {
+        final var keep = (int) Math.min(Integer.MAX_VALUE, (long) skip + limit);
+        if (keep == 0) {
+            resultStream.close();
+            return Stream.empty();
+        }
+        final var ranking = ranking(ascending);
+        final var path = JsonUtils.splitPath(fieldName);
+        final var heap = new PriorityQueue<>(ranking.reversed());
+        final var arrivals = new long[1];
+        try (resultStream) {
+            resultStream.sequential().forEach(document -> {
+                final var candidate = new Ranked(JsonUtils.getFromPath(document, path), document, arrivals[0]++);
+                if (heap.size() < keep) {
+                    heap.add(candidate);
+                } else if (ranking.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            });
+        }
+        // Polling the max-heap yields the kept documents worst first.
+        final var best = new JsonObject[heap.size()];
+        for (var i = best.length - 1; i >= 0; i--) {
+            best[i] = heap.poll().document();
+        }
+        return Arrays.stream(best, Math.min(skip, best.length), best.length);
+    }
+
+    // Orders by sort key, then by arrival, which keeps the order of equal keys as a stable sort would.
+    private static Comparator<Ranked> ranking(boolean ascending) {
+        return (a, b) -> {
+            final var compared = JsonUtils.compareSortValues(a.key(), b.key(), ascending);
+            return compared != 0 ? compared : Long.compare(a.arrival(), b.arrival());
+        };
+    }
+
+    // A document with its sort key, read once instead of on every comparison.
+    private record Ranked(JsonBaseElement key, JsonObject document, long arrival) {
+    }
+
+    private record RunHead(Ranked ranked, Iterator<Ranked> rest) {
+    }
+
+    private static final class RunMerge implements Iterator<JsonObject> {
+        private final Stream<JsonObject> input;
+        private final String[] path;
+        private final Comparator<Ranked> ranking;
+        private final LongSupplier runBudget;
+        private final List<File> spilledRuns = new ArrayList<>();
+        private final List<Stream<JsonObject>> openRuns = new ArrayList<>();
+        private PriorityQueue<RunHead> heads;
+        private boolean closed;
+
+        private RunMerge(Stream<JsonObject> input, String[] path, Comparator<Ranked> ranking, LongSupplier runBudget) {
+            this.input = input;
+            this.path = path;
+            this.ranking = ranking;
+            this.runBudget = runBudget;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (heads == null) {
+                start();
+            }
+            if (heads.isEmpty()) {
+                // Exhausted: drop the run files now rather than when the stream is closed.
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public JsonObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final var head = heads.poll();
+            queue(head.rest());
+            return head.ranked().document();
+        }
+
+        private Ranked rank(JsonObject document, long arrival) {
+            return new Ranked(JsonUtils.getFromPath(document, path), document, arrival);
+        }
+
+        // Reads the whole input into sorted runs, spilling each one that fills the budget, and queues the first
+        // document of every run. The last run stays in memory. Documents read back from a spilled run take the
+        // run's index as their arrival: runs hold consecutive stretches of the input, and every document of the
+        // in-memory run arrived after as many documents as were spilled, so ties still keep input order.
+        private void start() {
+            heads = new PriorityQueue<>(Comparator.comparing(RunHead::ranked, ranking));
+            final var budget = runBudget.getAsLong();
+            final var run = new ArrayList<Ranked>();
+            final var sizes = new DocumentSizeEstimator();
+            var runBytes = 0L;
+            var arrival = 0L;
+            try (input) {
+                final var documents = input.iterator();
+                while (documents.hasNext()) {
+                    final var document = documents.next();
+                    run.add(rank(document, arrival++));
+                    if (budget == Long.MAX_VALUE) {
+                        continue;
+                    }
+                    runBytes += sizes.estimate(document);
+                    if (runBytes >= budget) {
+                        spill(run);
+                        runBytes = 0;
+                    }
+                }
+                run.sort(ranking);
+                for (var i = 0; i < spilledRuns.size(); i++) {
+                    final var source = i;
+                    final var documentsOfRun = fs.readSpillFile(spilledRuns.get(i));
+                    openRuns.add(documentsOfRun);
+                    queue(documentsOfRun.map(document -> rank(document, source)).iterator());
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            queue(run.iterator());
+        }
+
+        private void spill(List<Ranked> run) throws IOException {
+            run.sort(ranking);
+            spilledRuns.add(fs.writeSortRun(run.stream().map(Ranked::document).toList()));
+            run.clear();
+        }
+
+        private void queue(Iterator<Ranked> run) {
+            if (run.hasNext()) {
+                heads.add(new RunHead(run.next(), run));
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            input.close();
+            openRuns.forEach(Stream::close);
+            for (var run : spilledRuns) {
+                try {
+                    Files.deleteIfExists(run.toPath());
+                } catch (IOException _) {
+                    // Left for the startup cleanup.
+                }
+            }
+            if (heads != null) {
+                heads.clear();
+            }
+        }
+    }
+}
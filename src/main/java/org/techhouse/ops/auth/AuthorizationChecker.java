@@ -17,8 +17,11 @@ public final class AuthorizationChecker {
     private static final Set<OperationType> ADMIN_ONLY_OPERATIONS = Set.of(OperationType.CREATE_USER,
             OperationType.DELETE_USER, OperationType.CHANGE_PERMISSIONS, OperationType.SET_DATABASE_OWNERS,
             OperationType.LIST_USERS, OperationType.GET_DATABASE_STATS);
+    // A cursor belongs to the connection that opened it and was authorized by that AGGREGATE, so reading or closing
+    // it needs no further check.
     private static final Set<OperationType> ALWAYS_ALLOWED_OPERATIONS = Set.of(OperationType.LIST_DATABASES,
-            OperationType.CLOSE_CONNECTION, OperationType.SET_PASSWORD, OperationType.STOP_LISTEN);
+            OperationType.CLOSE_CONNECTION, OperationType.SET_PASSWORD, OperationType.STOP_LISTEN,
+            OperationType.GET_MORE, OperationType.KILL_CURSOR);
 
     private AuthorizationChecker() {
     }
@@ -10,6 +10,9 @@ public class AggregateRequest extends OperationRequest {
     // the query ran (timing, index usage, documents scanned, locks acquired) plus suggestions.
     // Defaults to false, in which case the response is unchanged.
     private boolean analyze;
+    // Opt-in batching: when > 0 the response carries at most this many documents plus a cursorId to read the rest
+    // with GET_MORE. Defaults to 0, which returns every result in one response.
+    private int batchSize;
 
     public AggregateRequest(String databaseName, String collectionName) {
         super(OperationType.AGGREGATE, databaseName, collectionName);
@@ -30,4 +33,12 @@ public class AggregateRequest extends OperationRequest {
     public void setAnalyze(boolean analyze) {
         this.analyze = analyze;
     }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
 }
@@ -3,7 +3,23 @@ package org.techhouse.ops.req;
 import org.techhouse.ops.OperationType;
 
 public class CreateCollectionRequest extends OperationRequest {
+    // A StorageFormat name; JSON when absent.
+    private String storageFormat;
+
     public CreateCollectionRequest(String databaseName, String collectionName) {
         super(OperationType.CREATE_COLLECTION, databaseName, collectionName);
     }
+
+    public CreateCollectionRequest(String databaseName, String collectionName, String storageFormat) {
+        super(OperationType.CREATE_COLLECTION, databaseName, collectionName);
+        this.storageFormat = storageFormat;
+    }
+
+    public String getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(String storageFormat) {
+        this.storageFormat = storageFormat;
+    }
 }
@@ -0,0 +1,29 @@
+package org.techhouse.ops.req;
+
+import org.techhouse.ops.OperationType;
+
+public class GetMoreRequest extends OperationRequest {
+    private String cursorId;
+    // 0 keeps the batchSize of the AGGREGATE that opened the cursor.
+    private int batchSize;
+
+    public GetMoreRequest() {
+        super(OperationType.GET_MORE, null, null);
+    }
+
+    public String getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(String cursorId) {
+        this.cursorId = cursorId;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
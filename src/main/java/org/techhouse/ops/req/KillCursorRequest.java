@@ -0,0 +1,19 @@
+package org.techhouse.ops.req;
+
+import org.techhouse.ops.OperationType;
+
+public class KillCursorRequest extends OperationRequest {
+    private String cursorId;
+
+    public KillCursorRequest() {
+        super(OperationType.KILL_CURSOR, null, null);
+    }
+
+    public String getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(String cursorId) {
+        this.cursorId = cursorId;
+    }
+}
@@ -0,0 +1,25 @@
+package org.techhouse.ops.req;
+
+import org.techhouse.ops.OperationType;
+
+public class MigrateCollectionRequest extends OperationRequest {
+    // A StorageFormat name.
+    private String storageFormat;
+
+    public MigrateCollectionRequest() {
+        super(OperationType.MIGRATE_COLLECTION, null, null);
+    }
+
+    public MigrateCollectionRequest(String databaseName, String collectionName, String storageFormat) {
+        super(OperationType.MIGRATE_COLLECTION, databaseName, collectionName);
+        this.storageFormat = storageFormat;
+    }
+
+    public String getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(String storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+}
@@ -10,6 +10,9 @@ public class OperationRequest {
     // proceed even while a writer holds the collection. Physical per-file locks still guarantee that
     // every file read returns valid (never half-written) data. Defaults to false (fully locked read).
     private boolean dirtyRead;
+    // Opt-in pipelining: a request with an id may be processed alongside the connection's other requests with
+    // one, and its response carries the id, possibly out of order (see MessageProcessor).
+    private String requestId;
 
     public OperationRequest(OperationType type, String databaseName, String collectionName) {
         this.type = type;
@@ -29,6 +32,14 @@ public class OperationRequest {
         this.dirtyRead = dirtyRead;
     }
 
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
     public String getDatabaseName() {
         return databaseName;
     }
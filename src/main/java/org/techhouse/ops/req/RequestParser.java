@@ -5,9 +5,11 @@ import java.util.List;
 import org.techhouse.config.Globals;
 import org.techhouse.ejson.EJson;
 import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ex.InvalidCommandException;
 import org.techhouse.ioc.IocContainer;
+import org.techhouse.ops.OperationType;
 import org.techhouse.ops.req.agg.AggregationStepType;
 import org.techhouse.ops.req.agg.BaseAggregationStep;
 import org.techhouse.ops.req.agg.BaseOperator;
@@ -30,6 +32,7 @@ import org.techhouse.ops.req.agg.step.LimitAggregationStep;
 import org.techhouse.ops.req.agg.step.MapAggregationStep;
 import org.techhouse.ops.req.agg.step.SkipAggregationStep;
 import org.techhouse.ops.req.agg.step.SortAggregationStep;
+import org.techhouse.ops.req.agg.step.group.GroupAccumulator;
 import org.techhouse.ops.req.agg.step.map.AddFieldMapOperator;
 import org.techhouse.ops.req.agg.step.map.MapOperator;
 import org.techhouse.ops.req.agg.step.map.RemoveFieldMapOperator;
@@ -42,83 +45,85 @@ public final class RequestParser {
 
     public static OperationRequest parseRequest(final String message) throws InvalidCommandException {
         try {
-            final var baseReq = eJson.fromJson(message, OperationRequest.class);
-            return switch (baseReq.getType()) {
-                case BULK_SAVE -> eJson.fromJson(message, BulkSaveRequest.class);
+            // Lexed once: the type, the request and its aggregation steps are all bound from this tree.
+            final var tree = eJson.fromJson(message, JsonObject.class);
+            return switch (eJson.fromJson(tree.get("type"), OperationType.class)) {
+                case BULK_SAVE -> eJson.fromJson(tree, BulkSaveRequest.class);
                 case SAVE -> {
-                    final var parsed = eJson.fromJson(message, SaveRequest.class);
+                    final var parsed = eJson.fromJson(tree, SaveRequest.class);
                     if (parsed.getObject().has(Globals.PK_FIELD)) {
                         parsed.set_id(parsed.getObject().get(Globals.PK_FIELD).asJsonString().getValue());
                     }
                     yield parsed;
                 }
-                case FIND_BY_ID -> eJson.fromJson(message, FindByIdRequest.class);
-                case AGGREGATE -> parseAggregationRequest(message);
-                case DELETE -> eJson.fromJson(message, DeleteRequest.class);
-                case CREATE_DATABASE -> eJson.fromJson(message, CreateDatabaseRequest.class);
-                case DROP_DATABASE -> eJson.fromJson(message, DropDatabaseRequest.class);
-                case LIST_DATABASES -> eJson.fromJson(message, ListDatabasesRequest.class);
-                case CREATE_COLLECTION -> eJson.fromJson(message, CreateCollectionRequest.class);
-                case LIST_COLLECTIONS -> eJson.fromJson(message, ListCollectionsRequest.class);
-                case DROP_COLLECTION -> eJson.fromJson(message, DropCollectionRequest.class);
-                case CREATE_INDEX -> eJson.fromJson(message, CreateIndexRequest.class);
-                case DROP_INDEX -> eJson.fromJson(message, DropIndexRequest.class);
-                case REINDEX -> eJson.fromJson(message, ReindexRequest.class);
-                case CLOSE_CONNECTION -> eJson.fromJson(message, CloseConnectionRequest.class);
-                case AUTHENTICATE -> eJson.fromJson(message, AuthenticateRequest.class);
-                case CREATE_USER -> eJson.fromJson(message, CreateUserRequest.class);
-                case DELETE_USER -> eJson.fromJson(message, DeleteUserRequest.class);
-                case CHANGE_PERMISSIONS -> eJson.fromJson(message, ChangePermissionsRequest.class);
-                case SET_DATABASE_OWNERS -> eJson.fromJson(message, SetDatabaseOwnersRequest.class);
-                case LIST_USERS -> parseListUsersRequest(message);
-                case SET_PASSWORD -> eJson.fromJson(message, SetPasswordRequest.class);
-                case GET_DATABASE_STATS -> eJson.fromJson(message, GetDatabaseStatsRequest.class);
-                case LISTEN -> parseListenRequest(message);
-                case STOP_LISTEN -> eJson.fromJson(message, StopListenRequest.class);
+                case FIND_BY_ID -> eJson.fromJson(tree, FindByIdRequest.class);
+                case AGGREGATE -> parseAggregationRequest(tree);
+                case DELETE -> eJson.fromJson(tree, DeleteRequest.class);
+                case CREATE_DATABASE -> eJson.fromJson(tree, CreateDatabaseRequest.class);
+                case DROP_DATABASE -> eJson.fromJson(tree, DropDatabaseRequest.class);
+                case LIST_DATABASES -> eJson.fromJson(tree, ListDatabasesRequest.class);
+                case CREATE_COLLECTION -> eJson.fromJson(tree, CreateCollectionRequest.class);
+                case LIST_COLLECTIONS -> eJson.fromJson(tree, ListCollectionsRequest.class);
+                case DROP_COLLECTION -> eJson.fromJson(tree, DropCollectionRequest.class);
+                case CREATE_INDEX -> eJson.fromJson(tree, CreateIndexRequest.class);
+                case DROP_INDEX -> eJson.fromJson(tree, DropIndexRequest.class);
+                case REINDEX -> eJson.fromJson(tree, ReindexRequest.class);
+                case MIGRATE_COLLECTION -> eJson.fromJson(tree, MigrateCollectionRequest.class);
+                case CLOSE_CONNECTION -> eJson.fromJson(tree, CloseConnectionRequest.class);
+                case AUTHENTICATE -> eJson.fromJson(tree, AuthenticateRequest.class);
+                case CREATE_USER -> eJson.fromJson(tree, CreateUserRequest.class);
+                case DELETE_USER -> eJson.fromJson(tree, DeleteUserRequest.class);
+                case CHANGE_PERMISSIONS -> eJson.fromJson(tree, ChangePermissionsRequest.class);
+                case SET_DATABASE_OWNERS -> eJson.fromJson(tree, SetDatabaseOwnersRequest.class);
+                case LIST_USERS -> parseListUsersRequest(tree);
+                case SET_PASSWORD -> eJson.fromJson(tree, SetPasswordRequest.class);
+                case GET_DATABASE_STATS -> eJson.fromJson(tree, GetDatabaseStatsRequest.class);
+                case LISTEN -> parseListenRequest(tree);
+                case STOP_LISTEN -> eJson.fromJson(tree, StopListenRequest.class);
+                case GET_MORE -> eJson.fromJson(tree, GetMoreRequest.class);
+                case KILL_CURSOR -> eJson.fromJson(tree, KillCursorRequest.class);
             };
         } catch (Exception e) {
             throw new InvalidCommandException(e);
         }
     }
 
-    private static OperationRequest parseAggregationRequest(final String message) {
-        final var aggRequest = eJson.fromJson(message, AggregateRequest.class);
-        final var steps = new ArrayList<BaseAggregationStep>();
-        final var roughlyParsedAggSteps = aggRequest.getAggregationSteps();
-        final var crudeArrayElements = eJson.fromJson(message, JsonObject.class);
-        final var jsonArray = crudeArrayElements.get("aggregationSteps").asJsonArray();
-        for (var i = 0; i < roughlyParsedAggSteps.size(); i++) {
-            final var type = roughlyParsedAggSteps.get(i).getType();
-            steps.add(parseAggregationStep(type, jsonArray, i));
-        }
-        aggRequest.setAggregationSteps(steps);
+    private static OperationRequest parseAggregationRequest(final JsonObject tree) {
+        final var steps = detachAggregationSteps(tree);
+        final var aggRequest = eJson.fromJson(tree, AggregateRequest.class);
+        aggRequest.setAggregationSteps(parseAggregationSteps(steps.asJsonArray()));
         return aggRequest;
     }
 
-    private static OperationRequest parseListenRequest(final String message) {
-        final var listenRequest = eJson.fromJson(message, ListenRequest.class);
-        final var roughlyParsedSteps = listenRequest.getAggregationSteps();
-        if (roughlyParsedSteps == null || roughlyParsedSteps.isEmpty()) {
-            return listenRequest;
+    private static OperationRequest parseListenRequest(final JsonObject tree) {
+        final var steps = detachAggregationSteps(tree);
+        final var listenRequest = eJson.fromJson(tree, ListenRequest.class);
+        if (steps != null && !steps.isJsonNull()) {
+            listenRequest.setAggregationSteps(parseAggregationSteps(steps.asJsonArray()));
         }
+        return listenRequest;
+    }
+
+    // Taken out of the tree before the request is bound, so the steps are only bound once, to their concrete types.
+    private static JsonBaseElement detachAggregationSteps(final JsonObject tree) {
+        final var steps = tree.get("aggregationSteps");
+        tree.remove("aggregationSteps");
+        return steps;
+    }
+
+    private static List<BaseAggregationStep> parseAggregationSteps(final JsonArray jsonArray) {
         final var steps = new ArrayList<BaseAggregationStep>();
-        final var crudeArrayElements = eJson.fromJson(message, JsonObject.class);
-        final var jsonArray = crudeArrayElements.get("aggregationSteps").asJsonArray();
-        for (var i = 0; i < roughlyParsedSteps.size(); i++) {
-            final var type = roughlyParsedSteps.get(i).getType();
-            steps.add(parseAggregationStep(type, jsonArray, i));
+        for (var step : jsonArray.asList()) {
+            steps.add(parseAggregationStep(step.asJsonObject()));
         }
-        listenRequest.setAggregationSteps(steps);
-        return listenRequest;
+        return steps;
     }
 
-    private static BaseAggregationStep parseAggregationStep(final AggregationStepType type, final JsonArray jsonArray,
-            final int index) {
-        final var obj = jsonArray.get(index).asJsonObject();
-        return switch (type) {
+    private static BaseAggregationStep parseAggregationStep(final JsonObject obj) {
+        return switch (eJson.fromJson(obj.get("type"), AggregationStepType.class)) {
             case FILTER -> parseFilterStep(obj);
             case MAP -> parseMapStep(obj);
-            case GROUP_BY -> eJson.fromJson(obj, GroupByAggregationStep.class);
+            case GROUP_BY -> parseGroupByStep(obj);
             case JOIN -> eJson.fromJson(obj, JoinAggregationStep.class);
             case COUNT -> eJson.fromJson(obj, CountAggregationStep.class);
             case DISTINCT -> eJson.fromJson(obj, DistinctAggregationStep.class);
@@ -156,6 +161,27 @@ public final class RequestParser {
         return mapOperators;
     }
 
+    private static BaseAggregationStep parseGroupByStep(final JsonObject obj) {
+        final var fieldName = obj.get("fieldName");
+        final var includeDocuments = obj.get("includeDocuments");
+        final var accumulators = new ArrayList<GroupAccumulator>();
+        final var accumulatorArray = obj.get("accumulators");
+        if (accumulatorArray != null && !accumulatorArray.isJsonNull()) {
+            for (var accumulator : accumulatorArray.asJsonArray().asList()) {
+                final var accumulatorObj = accumulator.asJsonObject();
+                final var operand = accumulatorObj.get("operand");
+                accumulators.add(new GroupAccumulator(accumulatorObj.get("fieldName").asJsonString().getValue(),
+                        eJson.fromJson(accumulatorObj.get("type"), MidOperationType.class),
+                        operand == null || operand.isJsonNull() ? null : operand.asJsonString().getValue()));
+            }
+        }
+        // Without accumulators the documents are all a group holds, so they are kept unless explicitly left out.
+        return new GroupByAggregationStep(fieldName == null || fieldName.isJsonNull() ? null
+                : fieldName.asJsonString().getValue(), accumulators,
+                includeDocuments == null || includeDocuments.isJsonNull() ? accumulators.isEmpty()
+                        : includeDocuments.asJsonBoolean().getValue());
+    }
+
     private static BaseMidOperator parseMidOperator(final JsonObject obj) {
         final var midOperationType = eJson.fromJson(obj.get("type"), MidOperationType.class);
         return switch (midOperationType) {
@@ -199,26 +225,12 @@ public final class RequestParser {
         return parsedOperator;
     }
 
-    private static ListUsersRequest parseListUsersRequest(final String message) {
-        final var req = eJson.fromJson(message, ListUsersRequest.class);
-        final var raw = eJson.fromJson(message, JsonObject.class);
-        final var stepsEl = raw.get("aggregationSteps");
-        if (stepsEl == null || stepsEl.isJsonNull()) {
-            return req;
-        }
-        final var jsonArray = stepsEl.asJsonArray();
-        if (jsonArray.asList().isEmpty()) {
-            return req;
-        }
-        final var roughSteps = req.getAggregationSteps();
-        if (roughSteps == null || roughSteps.isEmpty()) {
-            return req;
-        }
-        final var steps = new ArrayList<BaseAggregationStep>();
-        for (var i = 0; i < roughSteps.size(); i++) {
-            steps.add(parseAggregationStep(roughSteps.get(i).getType(), jsonArray, i));
+    private static ListUsersRequest parseListUsersRequest(final JsonObject tree) {
+        final var steps = detachAggregationSteps(tree);
+        final var req = eJson.fromJson(tree, ListUsersRequest.class);
+        if (steps != null && !steps.isJsonNull()) {
+            req.setAggregationSteps(parseAggregationSteps(steps.asJsonArray()));
         }
-        req.setAggregationSteps(steps);
         return req;
     }
 }
@@ -1,14 +1,30 @@
 package org.techhouse.ops.req.agg.step;
 
+import java.util.List;
 import org.techhouse.ops.req.agg.AggregationStepType;
 import org.techhouse.ops.req.agg.BaseAggregationStep;
+import org.techhouse.ops.req.agg.step.group.GroupAccumulator;
 
 public class GroupByAggregationStep extends BaseAggregationStep {
+    // Field of a group result holding the group's documents when includeDocuments is set.
+    public static final String DOCUMENTS_FIELD_NAME = "group";
+
     private String fieldName;
+    private List<GroupAccumulator> accumulators;
+    // Whether each group also carries every one of its documents, which costs memory for the whole input. A group
+    // without accumulators carries them unless told otherwise, as a plain GROUP_BY always did.
+    private boolean includeDocuments;
 
     public GroupByAggregationStep(final String fieldName) {
+        this(fieldName, List.of(), true);
+    }
+
+    public GroupByAggregationStep(final String fieldName, final List<GroupAccumulator> accumulators,
+            final boolean includeDocuments) {
         super(AggregationStepType.GROUP_BY);
         this.fieldName = fieldName;
+        this.accumulators = accumulators;
+        this.includeDocuments = includeDocuments;
     }
 
     public String getFieldName() {
@@ -18,4 +34,20 @@ public class GroupByAggregationStep extends BaseAggregationStep {
     public void setFieldName(String fieldName) {
         this.fieldName = fieldName;
     }
+
+    public List<GroupAccumulator> getAccumulators() {
+        return accumulators;
+    }
+
+    public void setAccumulators(List<GroupAccumulator> accumulators) {
+        this.accumulators = accumulators;
+    }
+
+    public boolean isIncludeDocuments() {
+        return includeDocuments;
+    }
+
+    public void setIncludeDocuments(boolean includeDocuments) {
+        this.includeDocuments = includeDocuments;
+    }
 }
@@ -0,0 +1,32 @@
+package org.techhouse.ops.req.agg.step.group;
+
+import org.techhouse.ops.req.agg.mid_operators.MidOperationType;
+
+/**
+ * One value a GROUP_BY computes per group, written to {@code fieldName} of the group's result. SUM, AVG, MIN and MAX
+ * fold the numeric values of {@code operand} across the group's documents; SIZE counts the documents, or only those
+ * holding {@code operand} when one is given.
+ */
+public class GroupAccumulator {
+    private final String fieldName;
+    private final MidOperationType type;
+    private final String operand;
+
+    public GroupAccumulator(String fieldName, MidOperationType type, String operand) {
+        this.fieldName = fieldName;
+        this.type = type;
+        this.operand = operand;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public MidOperationType getType() {
+        return type;
+    }
+
+    public String getOperand() {
+        return operand;
+    }
+}
@@ -1,5 +1,6 @@
 package org.techhouse.ops.req.validations;
 
+import java.util.HashSet;
 import org.techhouse.ops.req.agg.BaseAggregationStep;
 import org.techhouse.ops.req.agg.BaseOperator;
 import org.techhouse.ops.req.agg.OperatorType;
@@ -74,6 +75,38 @@ public class AggregationStepValidator {
         if (step.getFieldName() == null || step.getFieldName().isBlank()) {
             return ValidationResult.fail("GROUP_BY step requires a non-blank fieldName");
         }
+        if (step.getAccumulators() == null) {
+            return ValidationResult.ok();
+        }
+        final var outputFields = new HashSet<String>();
+        for (var accumulator : step.getAccumulators()) {
+            if (accumulator.getFieldName() == null || accumulator.getFieldName().isBlank()) {
+                return ValidationResult.fail("GROUP_BY accumulator requires a non-blank fieldName");
+            }
+            if (accumulator.getFieldName().equals(step.getFieldName())
+                    || (step.isIncludeDocuments()
+                            && accumulator.getFieldName().equals(GroupByAggregationStep.DOCUMENTS_FIELD_NAME))
+                    || !outputFields.add(accumulator.getFieldName())) {
+                return ValidationResult.fail("GROUP_BY accumulator fieldName '" + accumulator.getFieldName()
+                        + "' is already used in the group");
+            }
+            if (accumulator.getType() == null) {
+                return ValidationResult.fail("GROUP_BY accumulator requires a type");
+            }
+            switch (accumulator.getType()) {
+                case SUM, AVG, MIN, MAX -> {
+                    if (accumulator.getOperand() == null || accumulator.getOperand().isBlank()) {
+                        return ValidationResult
+                                .fail("GROUP_BY " + accumulator.getType() + " accumulator requires a non-blank operand");
+                    }
+                }
+                case SIZE -> {
+                }
+                default -> {
+                    return ValidationResult.fail("GROUP_BY accumulator type must be one of SUM, AVG, MIN, MAX or SIZE");
+                }
+            }
+        }
         return ValidationResult.ok();
     }
 
@@ -1,23 +1,29 @@
 package org.techhouse.ops.req.validations;
 
+import java.util.Arrays;
 import java.util.List;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
 import org.techhouse.data.auth.PermissionLevel;
 import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.fs.StorageFormat;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.req.AggregateRequest;
 import org.techhouse.ops.req.AuthenticateRequest;
 import org.techhouse.ops.req.BulkSaveRequest;
 import org.techhouse.ops.req.ChangePermissionsRequest;
+import org.techhouse.ops.req.CreateCollectionRequest;
 import org.techhouse.ops.req.CreateIndexRequest;
 import org.techhouse.ops.req.CreateUserRequest;
 import org.techhouse.ops.req.DeleteRequest;
 import org.techhouse.ops.req.DeleteUserRequest;
 import org.techhouse.ops.req.DropIndexRequest;
 import org.techhouse.ops.req.FindByIdRequest;
+import org.techhouse.ops.req.GetMoreRequest;
+import org.techhouse.ops.req.KillCursorRequest;
 import org.techhouse.ops.req.ListUsersRequest;
 import org.techhouse.ops.req.ListenRequest;
+import org.techhouse.ops.req.MigrateCollectionRequest;
 import org.techhouse.ops.req.OperationRequest;
 import org.techhouse.ops.req.ReindexRequest;
 import org.techhouse.ops.req.SaveRequest;
@@ -43,11 +49,13 @@ public class RequestValidator {
             case AGGREGATE -> validateAggregate((AggregateRequest) request);
             case CREATE_DATABASE, DROP_DATABASE -> validateDbOnly(request, true);
             case LIST_DATABASES, CLOSE_CONNECTION, GET_DATABASE_STATS -> ValidationResult.ok();
-            case CREATE_COLLECTION, DROP_COLLECTION -> validateDbAndColl(request, true);
+            case CREATE_COLLECTION -> validateCreateCollection((CreateCollectionRequest) request);
+            case DROP_COLLECTION -> validateDbAndColl(request, true);
             case LIST_COLLECTIONS -> validateDbOnly(request, false);
             case CREATE_INDEX -> validateCreateIndex((CreateIndexRequest) request);
             case DROP_INDEX -> validateDropIndex((DropIndexRequest) request);
             case REINDEX -> validateReindex((ReindexRequest) request);
+            case MIGRATE_COLLECTION -> validateMigrateCollection((MigrateCollectionRequest) request);
             case AUTHENTICATE -> validateAuthenticate((AuthenticateRequest) request);
             case CREATE_USER -> validateCreateUser((CreateUserRequest) request);
             case DELETE_USER -> validateDeleteUser((DeleteUserRequest) request);
@@ -57,6 +65,8 @@ public class RequestValidator {
             case SET_PASSWORD -> validateSetPassword((SetPasswordRequest) request);
             case LISTEN -> validateListen((ListenRequest) request);
             case STOP_LISTEN -> validateStopListen((StopListenRequest) request);
+            case GET_MORE -> validateGetMore((GetMoreRequest) request);
+            case KILL_CURSOR -> validateCursorId(((KillCursorRequest) request).getCursorId(), "KILL_CURSOR");
         };
     }
 
@@ -141,6 +151,13 @@ public class RequestValidator {
         if (request.getAggregationSteps() == null) {
             return ValidationResult.fail("AGGREGATE request requires an aggregationSteps array");
         }
+        if (request.getBatchSize() < 0) {
+            return ValidationResult.fail("AGGREGATE batchSize must be a non-negative number");
+        }
+        // The analyze diagnostic describes the whole run, which a batched read spreads across requests.
+        if (request.getBatchSize() > 0 && request.isAnalyze()) {
+            return ValidationResult.fail("AGGREGATE batchSize can't be combined with analyze");
+        }
         return validateAggregationSteps(request.getAggregationSteps());
     }
 
@@ -196,6 +213,34 @@ public class RequestValidator {
         return ValidationResult.ok();
     }
 
+    private static ValidationResult validateCreateCollection(CreateCollectionRequest request) {
+        final var base = validateDbAndColl(request, true);
+        if (!base.isValid()) {
+            return base;
+        }
+        if (request.getStorageFormat() != null && !isStorageFormat(request.getStorageFormat())) {
+            return ValidationResult.fail("CREATE_COLLECTION storageFormat must be one of "
+                    + Arrays.toString(StorageFormat.values()));
+        }
+        return ValidationResult.ok();
+    }
+
+    private static ValidationResult validateMigrateCollection(MigrateCollectionRequest request) {
+        final var base = validateDbAndColl(request, true);
+        if (!base.isValid()) {
+            return base;
+        }
+        if (!isStorageFormat(request.getStorageFormat())) {
+            return ValidationResult.fail("MIGRATE_COLLECTION request requires a storageFormat, one of "
+                    + Arrays.toString(StorageFormat.values()));
+        }
+        return ValidationResult.ok();
+    }
+
+    private static boolean isStorageFormat(String value) {
+        return value != null && Arrays.stream(StorageFormat.values()).anyMatch(f -> f.name().equals(value));
+    }
+
     private static ValidationResult validateDbName(String dbName, boolean rejectAdmin) {
         if (dbName == null || dbName.isBlank()) {
             return ValidationResult.fail("databaseName is required");
@@ -333,6 +378,29 @@ public class RequestValidator {
         return ValidationResult.ok();
     }
 
+    private static ValidationResult validateGetMore(GetMoreRequest request) {
+        final var cursorResult = validateCursorId(request.getCursorId(), "GET_MORE");
+        if (!cursorResult.isValid()) {
+            return cursorResult;
+        }
+        if (request.getBatchSize() < 0) {
+            return ValidationResult.fail("GET_MORE batchSize must be a non-negative number");
+        }
+        return ValidationResult.ok();
+    }
+
+    private static ValidationResult validateCursorId(String cursorId, String operation) {
+        if (cursorId == null || cursorId.isBlank()) {
+            return ValidationResult.fail(operation + " request requires a cursorId");
+        }
+        try {
+            java.util.UUID.fromString(cursorId);
+        } catch (IllegalArgumentException e) {
+            return ValidationResult.fail(operation + " cursorId must be a valid UUID");
+        }
+        return ValidationResult.ok();
+    }
+
     private static ValidationResult validateRawPermissionMaps(JsonObject databasePermissions,
             JsonObject collectionPermissions) {
         if (databasePermissions != null) {
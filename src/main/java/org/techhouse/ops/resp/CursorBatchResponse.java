@@ -0,0 +1,35 @@
+package org.techhouse.ops.resp;
+
+import java.util.List;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ops.OperationStatus;
+import org.techhouse.ops.OperationType;
+
+// One batch of a cursor: the first (type AGGREGATE) or a later one (type GET_MORE). cursorId is null once the
+// results are exhausted, in which case the cursor no longer exists.
+public class CursorBatchResponse extends OperationResponse {
+    public List<JsonObject> results;
+    public String cursorId;
+
+    public CursorBatchResponse(OperationType type, List<JsonObject> results, String cursorId) {
+        super(type, OperationStatus.OK, "Ok");
+        this.results = results;
+        this.cursorId = cursorId;
+    }
+
+    public List<JsonObject> getResults() {
+        return results;
+    }
+
+    public void setResults(List<JsonObject> results) {
+        this.results = results;
+    }
+
+    public String getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(String cursorId) {
+        this.cursorId = cursorId;
+    }
+}
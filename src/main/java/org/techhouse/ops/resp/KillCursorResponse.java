@@ -0,0 +1,10 @@
+package org.techhouse.ops.resp;
+
+import org.techhouse.ops.OperationStatus;
+import org.techhouse.ops.OperationType;
+
+public class KillCursorResponse extends OperationResponse {
+    public KillCursorResponse() {
+        super(OperationType.KILL_CURSOR, OperationStatus.OK, "Cursor closed");
+    }
+}
@@ -0,0 +1,31 @@
+package org.techhouse.ops.resp;
+
+import org.techhouse.ops.OperationStatus;
+import org.techhouse.ops.OperationType;
+
+public class MigrateCollectionResponse extends OperationResponse {
+    private String storageFormat;
+    private int migratedDocuments;
+
+    public MigrateCollectionResponse(String message, String storageFormat, int migratedDocuments) {
+        super(OperationType.MIGRATE_COLLECTION, OperationStatus.OK, message);
+        this.storageFormat = storageFormat;
+        this.migratedDocuments = migratedDocuments;
+    }
+
+    public String getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(String storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    public int getMigratedDocuments() {
+        return migratedDocuments;
+    }
+
+    public void setMigratedDocuments(int migratedDocuments) {
+        this.migratedDocuments = migratedDocuments;
+    }
+}
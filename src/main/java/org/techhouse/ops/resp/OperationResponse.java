@@ -1,5 +1,6 @@
 package org.techhouse.ops.resp;
 
+import org.techhouse.ejson.annotations.OmitIfNull;
 import org.techhouse.ops.ErrorCode;
 import org.techhouse.ops.OperationStatus;
 import org.techhouse.ops.OperationType;
@@ -9,6 +10,9 @@ public class OperationResponse {
     private final OperationStatus status;
     private final String message;
     private final String errorCode;
+    // The requestId of the request answered, if it had one; left out of the response otherwise.
+    @OmitIfNull
+    private String requestId;
 
     private OperationResponse(OperationType type, OperationStatus status, String message, String errorCode) {
         this.type = type;
@@ -52,4 +56,12 @@ public class OperationResponse {
     public String getErrorCode() {
         return errorCode;
     }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
 }
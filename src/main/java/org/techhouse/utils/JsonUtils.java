@@ -107,8 +107,11 @@ public final class JsonUtils {
     }
 
     public static boolean hasInPath(JsonObject obj, String path) {
+        return hasInPath(obj, splitPath(path));
+    }
+
+    public static boolean hasInPath(JsonObject obj, String[] parts) {
         var currentPart = obj;
-        final var parts = path.split("\\.");
         for (String part : parts) {
             final var step = currentPart.get(part);
             if (step == null) {
@@ -121,9 +124,17 @@ public final class JsonUtils {
     }
 
     public static JsonBaseElement getFromPath(JsonObject obj, String path) {
+        return getFromPath(obj, splitPath(path));
+    }
+
+    // A dotted path split once, for callers that resolve the same path against many documents.
+    public static String[] splitPath(String path) {
+        return path.split("\\.");
+    }
+
+    public static JsonBaseElement getFromPath(JsonObject obj, String[] parts) {
         JsonBaseElement result = JsonNull.INSTANCE;
         var currentPart = obj;
-        final var parts = path.split("\\.");
         for (String part : parts) {
             final var step = currentPart.get(part);
             if (step == null) {
@@ -137,43 +148,16 @@ public final class JsonUtils {
     }
 
     public static int sortFunctionAscending(JsonObject o1, JsonObject o2, String fieldName) {
-        final var o1Field = JsonUtils.getFromPath(o1, fieldName);
-        final var o2Field = JsonUtils.getFromPath(o2, fieldName);
-        if (o1Field == JsonNull.INSTANCE && o2Field == JsonNull.INSTANCE) {
-            return 0;
-        } else if (o1Field == JsonNull.INSTANCE) {
-            return 1;
-        } else if (o2Field == JsonNull.INSTANCE) {
-            return -1;
-        } else {
-            if (o1Field.isJsonPrimitive()) {
-                if (o2Field.isJsonPrimitive()) {
-                    final var o1Primitive = o1Field.asJsonPrimitive();
-                    final var o2Primitive = o2Field.asJsonPrimitive();
-                    if (o1Primitive.isJsonCustom() && o2Primitive.isJsonCustom()
-                            && o1Primitive.getClass().isAssignableFrom(o2Primitive.getClass())) {
-                        return o1Primitive.asJsonCustom().getValue().compareTo(o2Primitive.asJsonCustom().getValue());
-                    } else if (o1Primitive.isJsonString() && o2Primitive.isJsonString()) {
-                        return o1Primitive.asJsonString().getValue().compareTo(o2Primitive.asJsonString().getValue());
-                    } else if (o1Primitive.isJsonNumber() && o2Primitive.isJsonNumber()) {
-                        return Double.compare(o1Primitive.asJsonNumber().getValue().doubleValue(),
-                                o2Primitive.asJsonNumber().getValue().doubleValue());
-                    } else if (o1Primitive.isJsonBoolean() && o2Primitive.isJsonBoolean()) {
-                        return o1Primitive.asJsonBoolean().getValue() ? -1 : 1;
-                    }
-                    return 1;
-                } else {
-                    return 1;
-                }
-            } else {
-                return -1;
-            }
-        }
+        return compareSortValues(JsonUtils.getFromPath(o1, fieldName), JsonUtils.getFromPath(o2, fieldName), true);
     }
 
     public static int sortFunctionDescending(JsonObject o1, JsonObject o2, String fieldName) {
-        final var o1Field = JsonUtils.getFromPath(o1, fieldName);
-        final var o2Field = JsonUtils.getFromPath(o2, fieldName);
+        return compareSortValues(JsonUtils.getFromPath(o1, fieldName), JsonUtils.getFromPath(o2, fieldName), false);
+    }
+
+    // SORT order of two field values already taken from their documents (JsonNull when missing): missing values
+    // last in both directions, then values of the same type compared by their natural order.
+    public static int compareSortValues(JsonBaseElement o1Field, JsonBaseElement o2Field, boolean ascending) {
         if (o1Field == JsonNull.INSTANCE && o2Field == JsonNull.INSTANCE) {
             return 0;
         } else if (o1Field == JsonNull.INSTANCE) {
@@ -185,16 +169,19 @@ public final class JsonUtils {
                 if (o2Field.isJsonPrimitive()) {
                     final var o1Primitive = o1Field.asJsonPrimitive();
                     final var o2Primitive = o2Field.asJsonPrimitive();
+                    final var first = ascending ? o1Primitive : o2Primitive;
+                    final var second = ascending ? o2Primitive : o1Primitive;
                     if (o1Primitive.isJsonCustom() && o2Primitive.isJsonCustom()
                             && o1Primitive.getClass().isAssignableFrom(o2Primitive.getClass())) {
-                        return o2Primitive.asJsonCustom().getValue().compareTo(o1Primitive.asJsonCustom().getValue());
+                        return first.asJsonCustom().getValue().compareTo(second.asJsonCustom().getValue());
                     } else if (o1Primitive.isJsonString() && o2Primitive.isJsonString()) {
-                        return o2Primitive.asJsonString().getValue().compareTo(o1Primitive.asJsonString().getValue());
+                        return first.asJsonString().getValue().compareTo(second.asJsonString().getValue());
                     } else if (o1Primitive.isJsonNumber() && o2Primitive.isJsonNumber()) {
-                        return Double.compare(o2Primitive.asJsonNumber().getValue().doubleValue(),
-                                o1Primitive.asJsonNumber().getValue().doubleValue());
+                        return Double.compare(first.asJsonNumber().getValue().doubleValue(),
+                                second.asJsonNumber().getValue().doubleValue());
                     } else if (o1Primitive.isJsonBoolean() && o2Primitive.isJsonBoolean()) {
-                        return o2Primitive.asJsonBoolean().getValue() ? 1 : -1;
+                        return ascending ? (o1Primitive.asJsonBoolean().getValue() ? -1 : 1)
+                                : (o2Primitive.asJsonBoolean().getValue() ? 1 : -1);
                     }
                     return 1;
                 } else {
@@ -1,12 +1,13 @@
 package org.techhouse.utils;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.NumericFieldIndex;
 import org.techhouse.ejson.elements.JsonCustom;
 import org.techhouse.ops.req.agg.FieldOperatorType;
 
@@ -16,155 +17,176 @@ public final class SearchUtils {
 
     public static <T> Set<String> findingByOperator(List<FieldIndexEntry<T>> entries, FieldOperatorType operatorType,
             T value) {
-        return switch (operatorType) {
-            case EQUALS -> findingEquals(entries, value);
-            case NOT_EQUALS -> findingNotEquals(entries, value);
-            case GREATER_THAN -> findingGreaterThan(entries, value);
-            case GREATER_THAN_EQUALS -> findingGreaterThanEquals(entries, value);
-            case SMALLER_THAN -> findingLessThan(entries, value);
-            case SMALLER_THAN_EQUALS -> findingLessThanEquals(entries, value);
-            case IN, NOT_IN -> throw new UnsupportedOperationException();
-            case CONTAINS -> findingContains(entries, value);
-        };
+        return idsAt(entries, matchingEntries(entries, operatorType, value));
     }
 
-    private static <T> Set<String> findingEquals(List<FieldIndexEntry<T>> entries, T value) {
-        final var indexIndex = Collections.binarySearch(entries, value);
-        return indexIndex >= 0 ? entries.get(indexIndex).getIds() : Set.of();
+    public static Set<String> findingByOperator(NumericFieldIndex index, FieldOperatorType operatorType,
+            Number value) {
+        return index.idsAt(matchingKeys(index, operatorType, value));
     }
 
-    private static <T> Set<String> findingNotEquals(List<FieldIndexEntry<T>> entries, T value) {
-        final var indexIndex = Collections.binarySearch(entries, value);
-        Stream<FieldIndexEntry<T>> resultStream;
-        if (indexIndex >= 0) {
-            final var auxList = new ArrayList<>(entries.subList(0, indexIndex));
-            if (indexIndex <= entries.size() + 1) {
-                auxList.addAll(entries.subList(indexIndex + 1, entries.size()));
-            }
-            resultStream = auxList.stream();
-        } else {
-            resultStream = entries.stream();
-        }
-        return resultStream.flatMap(tFieldIndexEntry -> tFieldIndexEntry.getIds().stream()).collect(Collectors.toSet());
+    public static <T> Set<String> findingInNotIn(List<FieldIndexEntry<T>> entries, FieldOperatorType operatorType,
+            List<T> value) {
+        return idsAt(entries, matchingEntriesInNotIn(entries, operatorType, value));
     }
 
-    private static <T, K> List<FieldIndexEntry<K>> castToJsonCustomList(List<FieldIndexEntry<T>> entries,
-            Class<K> jsonCustomClass) {
-        return entries.stream().map(entry -> new FieldIndexEntry<>(entry.getDatabaseName(), entry.getCollectionName(),
-                jsonCustomClass.cast(entry.getValue()), entry.getIds())).toList();
+    public static Set<String> findingInNotIn(NumericFieldIndex index, FieldOperatorType operatorType,
+            List<Number> value) {
+        return index.idsAt(matchingKeysInNotIn(index, operatorType, value));
     }
 
-    private static <T> List<FieldIndexEntry<Double>> castToDoubleList(List<FieldIndexEntry<T>> entries) {
-        return entries.stream()
-                .map(doubleFieldIndexEntry -> new FieldIndexEntry<>(doubleFieldIndexEntry.getDatabaseName(),
-                        doubleFieldIndexEntry.getCollectionName(),
-                        ((Number) doubleFieldIndexEntry.getValue()).doubleValue(), doubleFieldIndexEntry.getIds()))
-                .toList();
+    // Positions of the entries matching the operator. The finders above union their ids; a cached index ORs the
+    // row bitmaps it keeps for the same positions instead.
+    public static <T> BitSet matchingEntries(List<FieldIndexEntry<T>> entries, FieldOperatorType operatorType,
+            T value) {
+        return switch (operatorType) {
+            case EQUALS -> matchingEquals(entries, value);
+            case NOT_EQUALS -> matchingNotEquals(entries, value);
+            case GREATER_THAN -> matchingGreater(entries, value, GreaterSmallerEqualsType.GREATER_THAN);
+            case GREATER_THAN_EQUALS -> matchingGreater(entries, value, GreaterSmallerEqualsType.GREATER_THAN_EQUALS);
+            case SMALLER_THAN -> matchingSmaller(entries, value, GreaterSmallerEqualsType.SMALLER_THAN);
+            case SMALLER_THAN_EQUALS -> matchingSmaller(entries, value, GreaterSmallerEqualsType.SMALLER_THAN_EQUALS);
+            case IN, NOT_IN -> throw new UnsupportedOperationException();
+            case CONTAINS -> matchingContains(entries, value);
+        };
     }
 
-    private static <T> Set<String> findingGreaterThan(List<FieldIndexEntry<T>> entries, T value) {
-        if (value instanceof Number n) {
-            int index = internalGreaterSmallerEquals(castToDoubleList(entries), n.doubleValue(),
-                    GreaterSmallerEqualsType.GREATER_THAN);
-            if (index >= 0) {
-                return toIdSet(entries, index, entries.size());
+    public static BitSet matchingKeys(NumericFieldIndex index, FieldOperatorType operatorType, Number value) {
+        final var number = value.doubleValue();
+        final var result = new BitSet(index.size());
+        switch (operatorType) {
+            case EQUALS -> result.set(index.firstAtLeast(number), index.firstAbove(number));
+            case NOT_EQUALS -> {
+                result.set(0, index.firstAtLeast(number));
+                result.set(index.firstAbove(number), index.size());
             }
-        } else if (value instanceof JsonCustom<?> as) {
-            //noinspection unchecked
-            int index = internalGreaterSmallerEquals(castToJsonCustomList(entries, as.getClass()), as,
-                    GreaterSmallerEqualsType.GREATER_THAN);
-            if (index >= 0) {
-                return toIdSet(entries, index, entries.size());
+            case GREATER_THAN -> result.set(index.firstAbove(number), index.size());
+            case GREATER_THAN_EQUALS -> result.set(index.firstAtLeast(number), index.size());
+            case SMALLER_THAN -> result.set(0, index.firstAtLeast(number));
+            case SMALLER_THAN_EQUALS -> result.set(0, index.firstAbove(number));
+            case IN, NOT_IN -> throw new UnsupportedOperationException();
+            case CONTAINS -> {
             }
         }
-        return Set.of();
+        return result;
     }
 
-    private static <T> Set<String> findingGreaterThanEquals(List<FieldIndexEntry<T>> entries, T value) {
-        if (value instanceof Number n) {
-            int index = internalGreaterSmallerEquals(castToDoubleList(entries), n.doubleValue(),
-                    GreaterSmallerEqualsType.GREATER_THAN_EQUALS);
-            if (index >= 0) {
-                return toIdSet(entries, index, entries.size());
-            }
-        } else if (value instanceof JsonCustom<?> as) {
-            //noinspection unchecked
-            int index = internalGreaterSmallerEquals(castToJsonCustomList(entries, as.getClass()), as,
-                    GreaterSmallerEqualsType.GREATER_THAN_EQUALS);
-            if (index >= 0) {
-                return toIdSet(entries, index, entries.size());
+    public static <T> BitSet matchingEntriesInNotIn(List<FieldIndexEntry<T>> entries, FieldOperatorType operatorType,
+            List<T> value) {
+        final var include = switch (operatorType) {
+            case EQUALS, GREATER_THAN, GREATER_THAN_EQUALS, NOT_EQUALS, SMALLER_THAN, SMALLER_THAN_EQUALS, CONTAINS ->
+                throw new UnsupportedOperationException();
+            case IN -> true;
+            case NOT_IN -> false;
+        };
+        final var result = new BitSet(entries.size());
+        for (var i = 0; i < entries.size(); i++) {
+            if (value.contains(entries.get(i).getValue()) == include) {
+                result.set(i);
             }
         }
-        return Set.of();
+        return result;
     }
 
-    private static <T> Set<String> findingLessThan(List<FieldIndexEntry<T>> entries, T value) {
-        if (value instanceof Number n) {
-            int index = internalGreaterSmallerEquals(castToDoubleList(entries), n.doubleValue(),
-                    GreaterSmallerEqualsType.SMALLER_THAN);
-            if (index >= 0) {
-                return toIdSet(entries, 0, ++index);
+    public static BitSet matchingKeysInNotIn(NumericFieldIndex index, FieldOperatorType operatorType,
+            List<Number> value) {
+        final var result = new BitSet(index.size());
+        switch (operatorType) {
+            case IN -> {
+                for (var number : value) {
+                    final var position = index.indexOfKey(number.doubleValue());
+                    if (position >= 0) {
+                        result.set(position);
+                    }
+                }
             }
-        } else if (value instanceof JsonCustom<?> as) {
-            //noinspection unchecked
-            int index = internalGreaterSmallerEquals(castToJsonCustomList(entries, as.getClass()), as,
-                    GreaterSmallerEqualsType.SMALLER_THAN);
-            if (index >= 0) {
-                return toIdSet(entries, 0, ++index);
+            case NOT_IN -> {
+                final var excluded = value.stream().map(Number::doubleValue).collect(Collectors.toSet());
+                for (var i = 0; i < index.size(); i++) {
+                    if (!excluded.contains(index.keyAt(i))) {
+                        result.set(i);
+                    }
+                }
             }
+            default -> throw new UnsupportedOperationException();
         }
-        return Set.of();
+        return result;
     }
 
-    private static <T> Set<String> findingLessThanEquals(List<FieldIndexEntry<T>> entries, T value) {
-        if (value instanceof Number n) {
-            int index = internalGreaterSmallerEquals(castToDoubleList(entries), n.doubleValue(),
-                    GreaterSmallerEqualsType.SMALLER_THAN_EQUALS);
-            if (index >= 0) {
-                return toIdSet(entries, 0, ++index);
-            }
-        } else if (value instanceof JsonCustom<?> as) {
-            //noinspection unchecked
-            int index = internalGreaterSmallerEquals(castToJsonCustomList(entries, as.getClass()), as,
-                    GreaterSmallerEqualsType.SMALLER_THAN_EQUALS);
-            if (index >= 0) {
-                return toIdSet(entries, 0, ++index);
-            }
+    public static Set<String> idsAt(List<? extends FieldIndexEntry<?>> entries, BitSet positions) {
+        final var result = new HashSet<String>();
+        for (var i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            result.addAll(entries.get(i).getIds());
         }
-        return Set.of();
+        return result;
     }
 
-    private static <T> Set<String> toIdSet(List<FieldIndexEntry<T>> entries, int start, int foundIndex) {
-        return entries.subList(start, foundIndex).stream()
-                .flatMap(tFieldIndexEntry -> tFieldIndexEntry.getIds().stream()).collect(Collectors.toSet());
+    private static <T> BitSet matchingEquals(List<FieldIndexEntry<T>> entries, T value) {
+        final var result = new BitSet(entries.size());
+        final var indexIndex = Collections.binarySearch(entries, value);
+        if (indexIndex >= 0) {
+            result.set(indexIndex);
+        }
+        return result;
     }
 
-    public static <T> Set<String> findingInNotIn(List<FieldIndexEntry<T>> entries, FieldOperatorType operatorType,
-            List<T> value) {
-        return switch (operatorType) {
-            case EQUALS, GREATER_THAN, GREATER_THAN_EQUALS, NOT_EQUALS, SMALLER_THAN, SMALLER_THAN_EQUALS, CONTAINS ->
-                throw new UnsupportedOperationException();
-            case IN -> findingIn(entries, value);
-            case NOT_IN -> findingNotIn(entries, value);
-        };
+    private static <T> BitSet matchingNotEquals(List<FieldIndexEntry<T>> entries, T value) {
+        final var result = new BitSet(entries.size());
+        result.set(0, entries.size());
+        final var indexIndex = Collections.binarySearch(entries, value);
+        if (indexIndex >= 0) {
+            result.clear(indexIndex);
+        }
+        return result;
     }
 
-    private static <T> Set<String> findingIn(List<FieldIndexEntry<T>> entries, List<T> value) {
-        return entries.stream().filter(tFieldIndexEntry -> value.contains(tFieldIndexEntry.getValue()))
-                .flatMap(tFieldIndexEntry -> tFieldIndexEntry.getIds().stream()).collect(Collectors.toSet());
+    private static <T, K> List<FieldIndexEntry<K>> castToJsonCustomList(List<FieldIndexEntry<T>> entries,
+            Class<K> jsonCustomClass) {
+        return entries.stream().map(entry -> new FieldIndexEntry<>(entry.getDatabaseName(), entry.getCollectionName(),
+                jsonCustomClass.cast(entry.getValue()), entry.getIds())).toList();
     }
 
-    private static <T> Set<String> findingNotIn(List<FieldIndexEntry<T>> entries, List<T> value) {
-        return entries.stream().filter(tFieldIndexEntry -> !value.contains(tFieldIndexEntry.getValue()))
-                .flatMap(tFieldIndexEntry -> tFieldIndexEntry.getIds().stream()).collect(Collectors.toSet());
+    // Position of the first (GREATER_THAN*) or last (SMALLER_THAN*) entry matching, or -1.
+    private static <T> int boundary(List<FieldIndexEntry<T>> entries, T value, GreaterSmallerEqualsType type) {
+        if (value instanceof Number n) {
+            return internalGreaterSmallerEquals(entries, n.doubleValue(), type);
+        } else if (value instanceof JsonCustom<?> as) {
+            //noinspection unchecked
+            return internalGreaterSmallerEquals(castToJsonCustomList(entries, as.getClass()), as, type);
+        }
+        return -1;
+    }
+
+    private static <T> BitSet matchingGreater(List<FieldIndexEntry<T>> entries, T value,
+            GreaterSmallerEqualsType type) {
+        final var result = new BitSet(entries.size());
+        final var index = boundary(entries, value, type);
+        if (index >= 0) {
+            result.set(index, entries.size());
+        }
+        return result;
+    }
+
+    private static <T> BitSet matchingSmaller(List<FieldIndexEntry<T>> entries, T value,
+            GreaterSmallerEqualsType type) {
+        final var result = new BitSet(entries.size());
+        final var index = boundary(entries, value, type);
+        if (index >= 0) {
+            result.set(0, index + 1);
+        }
+        return result;
     }
 
-    private static <T> Set<String> findingContains(List<FieldIndexEntry<T>> entries, T value) {
+    private static <T> BitSet matchingContains(List<FieldIndexEntry<T>> entries, T value) {
+        final var result = new BitSet(entries.size());
         if (value instanceof String s) {
-            return entries.stream().filter(tFieldIndexEntry -> ((String) tFieldIndexEntry.getValue()).contains(s))
-                    .flatMap(tFieldIndexEntry -> tFieldIndexEntry.getIds().stream()).collect(Collectors.toSet());
+            for (var i = 0; i < entries.size(); i++) {
+                if (((String) entries.get(i).getValue()).contains(s)) {
+                    result.set(i);
+                }
+            }
         }
-        return Set.of();
+        return result;
     }
 
     private static <T extends JsonCustom<K>, K> int internalGreaterSmallerEquals(List<FieldIndexEntry<T>> entries,
@@ -235,7 +257,8 @@ public final class SearchUtils {
         return ans;
     }
 
-    private static int internalGreaterSmallerEquals(List<FieldIndexEntry<Double>> entries, Double value,
+    // Number entries are compared through doubleValue() in place, whatever boxed type they hold.
+    private static <T> int internalGreaterSmallerEquals(List<FieldIndexEntry<T>> entries, double value,
             GreaterSmallerEqualsType type) {
         int start = 0;
         int end = entries.size() - 1;
@@ -248,25 +271,25 @@ public final class SearchUtils {
         switch (type) {
             case SMALLER_THAN -> {
                 var entry = entries.get(end);
-                if (value > entry.getValue()) {
+                if (value > numberValue(entry)) {
                     return end;
                 }
             }
             case SMALLER_THAN_EQUALS -> {
                 var entry = entries.get(end);
-                if (value >= entry.getValue()) {
+                if (value >= numberValue(entry)) {
                     return end;
                 }
             }
             case GREATER_THAN -> {
                 var entry = entries.get(start);
-                if (value < entry.getValue()) {
+                if (value < numberValue(entry)) {
                     return start;
                 }
             }
             case GREATER_THAN_EQUALS -> {
                 var entry = entries.get(start);
-                if (value <= entry.getValue()) {
+                if (value <= numberValue(entry)) {
                     return start;
                 }
             }
@@ -277,7 +300,7 @@ public final class SearchUtils {
         if (type == GreaterSmallerEqualsType.SMALLER_THAN || type == GreaterSmallerEqualsType.SMALLER_THAN_EQUALS) {
             while (start <= end) {
                 int mid = (start + end) / 2; // Move to the left side if the target is smaller
-                final var midValue = entries.get(mid).getValue();
+                final var midValue = numberValue(entries.get(mid));
                 if (type == GreaterSmallerEqualsType.SMALLER_THAN && midValue >= value || midValue > value) {
                     end = mid - 1;
                 } else { // Move right side
@@ -288,7 +311,7 @@ public final class SearchUtils {
         } else {
             while (start <= end) {
                 int mid = (start + end) / 2;
-                final var midValue = entries.get(mid).getValue();
+                final var midValue = numberValue(entries.get(mid));
                 // Move to right side if target is greater.
                 if (type == GreaterSmallerEqualsType.GREATER_THAN && midValue <= value || midValue < value) {
                     start = mid + 1;
@@ -301,6 +324,10 @@ public final class SearchUtils {
         return ans;
     }
 
+    private static double numberValue(FieldIndexEntry<?> entry) {
+        return ((Number) entry.getValue()).doubleValue();
+    }
+
     private enum GreaterSmallerEqualsType {
         GREATER_THAN, GREATER_THAN_EQUALS, SMALLER_THAN, SMALLER_THAN_EQUALS,
     }
@@ -6,16 +6,20 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.techhouse.bckg_ops.PendingIndexWrites;
 import org.techhouse.cache.AdminCache;
 import org.techhouse.cache.Cache;
+import org.techhouse.cache.DocumentCache;
 import org.techhouse.cache.UserCache;
 import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Configuration;
 import org.techhouse.data.admin.AdminCollEntry;
 import org.techhouse.data.admin.AdminDbEntry;
 import org.techhouse.fs.FileSystem;
+import org.techhouse.fs.WriteAheadLog;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.AdminOperationHelper;
 import org.techhouse.utils.ReflectionUtils;
@@ -47,14 +51,17 @@ public class TestUtils {
         TestUtils.setPrivateField(adminCache, "databasesPkIndex", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(adminCache, "collectionsPkIndex", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(adminCache, "usersPkIndex", new ConcurrentHashMap<>());
-        TestUtils.setPrivateField(userCache, "collectionMap", new ConcurrentHashMap<>());
+        TestUtils.setPrivateField(userCache, "documentCache", new DocumentCache());
         TestUtils.setPrivateField(userCache, "fieldIndexMap", new ConcurrentHashMap<>());
+        TestUtils.setPrivateField(userCache, "numericIndexMap", new ConcurrentHashMap<>());
+        TestUtils.setPrivateField(userCache, "rowIdMap", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(userCache, "pkIndexMap", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(adminCache, "pages", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(adminCache, "pagesPkIndexes", new ConcurrentHashMap<>());
         TestUtils.setPrivateField(adminCache, "collectionUsagePkIndex", new ConcurrentHashMap<>());
         PendingIndexWrites pendingIndexWrites = IocContainer.get(PendingIndexWrites.class);
         TestUtils.setPrivateField(pendingIndexWrites, "pending", new ConcurrentHashMap<>());
+        IocContainer.get(WriteAheadLog.class).closeAll();
     }
 
     private static void deleteDir(File file) {
@@ -133,5 +140,13 @@ public class TestUtils {
             }
         }
         locks.clear();
+        for (var documentLock : TestUtils.getPrivateField(locker, "documentLocks", ReentrantLock[].class)) {
+            while (documentLock.isHeldByCurrentThread()) {
+                documentLock.unlock();
+            }
+        }
+        final var historiesType = new ReflectionUtils.TypeToken<Map<String, ?>>() {
+        };
+        TestUtils.getPrivateField(IocContainer.get(SnapshotManager.class), "histories", historiesType).clear();
     }
 }
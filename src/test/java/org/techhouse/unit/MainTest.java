@@ -12,6 +12,7 @@ import org.techhouse.bckg_ops.BackgroundTaskManager;
 import org.techhouse.cache.MemoryManagement;
 import org.techhouse.config.Configuration;
 import org.techhouse.ex.InvalidPortException;
+import org.techhouse.fs.WriteAheadLog;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.test.TestGlobals;
 import org.techhouse.test.TestUtils;
@@ -24,6 +25,7 @@ public class MainTest {
         // JVM fork (a leaked worker writing admin/collection_usage was corrupting other tests' state).
         IocContainer.get(BackgroundTaskManager.class).stopBackgroundWorkers();
         IocContainer.get(MemoryManagement.class).stopSweepThread();
+        IocContainer.get(WriteAheadLog.class).stopCheckpointThread();
         final var dbPath = new File(TestGlobals.PATH);
         if (dbPath.exists()) {
             TestUtils.deleteFolder(dbPath);
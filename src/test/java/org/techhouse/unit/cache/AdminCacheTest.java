@@ -276,10 +276,10 @@ public class AdminCacheTest {
         assertFalse(cache.hasIndex(dbName, collName, "missing"));
     }
 
-    // shiftPkPositionsAfterCompaction dispatches to the collections PK map and shifts only same-page
-    // entries after the removed position, in place.
+    // applyPageCompaction dispatches to the collections PK map and moves only the listed same-page
+    // entries, in place.
     @Test
-    public void test_shift_pk_positions_for_collections_map() throws NoSuchFieldException, IllegalAccessException {
+    public void test_apply_page_compaction_for_collections_map() throws NoSuchFieldException, IllegalAccessException {
         AdminCache cache = new AdminCache();
         final var before = new PkIndexEntry(Globals.ADMIN_DB_NAME, Globals.ADMIN_COLLECTIONS_COLLECTION_NAME, "c1", 0,
                 10, 0);
@@ -291,15 +291,15 @@ public class AdminCacheTest {
         map.put("c1", before);
         map.put("c2", after);
 
-        cache.shiftPkPositionsAfterCompaction(Globals.ADMIN_COLLECTIONS_COLLECTION_NAME, 0, 0, 10);
+        cache.applyPageCompaction(Globals.ADMIN_COLLECTIONS_COLLECTION_NAME, 0, Map.of("c2", 0L));
 
         assertEquals(0, before.getPosition());
-        assertEquals(0, after.getPosition(), "entry after removed position shifts left by removed length");
+        assertEquals(0, after.getPosition(), "moved entry takes its new position");
     }
 
-    // shiftPkPositionsAfterCompaction dispatches to the per-collection pages PK list for a pages_* name.
+    // applyPageCompaction dispatches to the per-collection pages PK list for a pages_* name.
     @Test
-    public void test_shift_pk_positions_for_pages_collection() throws NoSuchFieldException, IllegalAccessException {
+    public void test_apply_page_compaction_for_pages_collection() throws NoSuchFieldException, IllegalAccessException {
         AdminCache cache = new AdminCache();
         final var pagesCollName = String.format(Globals.ADMIN_PAGES_PER_COLLECTION_NAME, "db", "coll");
         final var entry = new PkIndexEntry(Globals.ADMIN_DB_NAME, pagesCollName, "p1", 30, 10, 0);
@@ -308,17 +308,17 @@ public class AdminCacheTest {
         TestUtils.getPrivateField(cache, "pagesPkIndexes", type).put(
                 Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, pagesCollName), new ArrayList<>(List.of(entry)));
 
-        cache.shiftPkPositionsAfterCompaction(pagesCollName, 0, 0, 10);
+        cache.applyPageCompaction(pagesCollName, 0, Map.of("p1", 20L));
 
         assertEquals(20, entry.getPosition());
     }
 
     // An unknown pages_* collection that is not cached is a no-op (does not throw).
     @Test
-    public void test_shift_pk_positions_for_unknown_pages_collection_is_noop() {
+    public void test_apply_page_compaction_for_unknown_pages_collection_is_noop() {
         AdminCache cache = new AdminCache();
-        assertDoesNotThrow(() -> cache.shiftPkPositionsAfterCompaction(
-                String.format(Globals.ADMIN_PAGES_PER_COLLECTION_NAME, "no", "coll"), 0, 0, 10));
+        assertDoesNotThrow(() -> cache.applyPageCompaction(
+                String.format(Globals.ADMIN_PAGES_PER_COLLECTION_NAME, "no", "coll"), 0, Map.of("p1", 0L)));
     }
 
     // Successfully adds AdminDbEntry and PkIndexEntry to respective maps
@@ -553,6 +553,48 @@ public class AdminCacheTest {
         assertEquals(1L, target2, "Pending bytes can push selection to a new page");
     }
 
+    // Concurrent inserts are spread over the idle pages with room; a busy page is only shared once none is idle.
+    @Test
+    public void test_reserve_page_for_insert_prefers_idle_pages() throws NoSuchFieldException, IllegalAccessException {
+        AdminCache cache = new AdminCache();
+        final var p0 = new AdminPageEntry("myDb", "myColl", 0L);
+        p0.setPageSize(1_000_000L);
+        final var p1 = new AdminPageEntry("myDb", "myColl", 1L);
+        p1.setPageSize(1_000_000L);
+        final var type = new ReflectionUtils.TypeToken<Map<String, List<AdminPageEntry>>>() {
+        };
+        TestUtils.getPrivateField(cache, "pages", type)
+                .put(Cache.getCollectionIdentifier("myDb", "myColl"), new ArrayList<>(List.of(p0, p1)));
+
+        assertEquals(0L, cache.reservePageForInsert("myDb", "myColl", 100));
+        assertEquals(1L, cache.reservePageForInsert("myDb", "myColl", 100), "page 0 is busy, page 1 is idle");
+        assertEquals(0L, cache.reservePageForInsert("myDb", "myColl", 100), "both busy: the first with room");
+
+        cache.releasePageReservation("myDb", "myColl", 0L, 100);
+        cache.releasePageReservation("myDb", "myColl", 1L, 100);
+        assertEquals(1L, cache.reservePageForInsert("myDb", "myColl", 100), "page 0 still has one reservation");
+        cache.releasePageReservation("myDb", "myColl", 0L, 100);
+        cache.releasePageReservation("myDb", "myColl", 1L, 100);
+        assertEquals(0L, cache.selectPageForInsert("myDb", "myColl", 100), "all reservations released");
+    }
+
+    // Reserved bytes count against a page's room, so concurrent inserts never overfill it together.
+    @Test
+    public void test_reserved_bytes_count_against_page_room() throws NoSuchFieldException, IllegalAccessException {
+        AdminCache cache = new AdminCache();
+        final var p0 = new AdminPageEntry("myDb", "myColl", 0L);
+        p0.setPageSize(1_000_000L);
+        final var type = new ReflectionUtils.TypeToken<Map<String, List<AdminPageEntry>>>() {
+        };
+        TestUtils.getPrivateField(cache, "pages", type)
+                .put(Cache.getCollectionIdentifier("myDb", "myColl"), new ArrayList<>(List.of(p0)));
+
+        assertEquals(0L, cache.reservePageForInsert("myDb", "myColl", 900_000));
+        // 1MB existing + 900KB reserved + 200KB new exceeds the 2MB cap.
+        assertEquals(1L, cache.reservePageForInsert("myDb", "myColl", 200_000));
+        assertEquals(2L, cache.selectPageForInsert("myDb", "myColl", 1_950_000), "reserved pages are known pages");
+    }
+
     @Test
     public void test_remove_admin_page_entries_clears_both_maps() {
         AdminCache cache = new AdminCache();
@@ -9,12 +9,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.techhouse.cache.Cache;
+import org.techhouse.cache.DocumentCache;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
@@ -134,15 +135,8 @@ public class CacheTest {
         DbEntry entry2 = new DbEntry();
         entry2.set_id("2");
 
-        Map<String, DbEntry> wholeCollection = new HashMap<>();
-        wholeCollection.put("1", entry1);
-        wholeCollection.put("2", entry2);
-
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var userCache = IocContainer.get(org.techhouse.cache.UserCache.class);
-        final var collectionMap = TestUtils.getPrivateField(userCache, "collectionMap", typeCollMap);
-        collectionMap.put(collectionIdentifier, wholeCollection);
+        injectCachedEntry(dbName, collName, entry1);
+        injectCachedEntry(dbName, collName, entry2);
 
         Map<String, DbEntry> result = cache.getWholeCollection(dbName, collName);
 
@@ -227,7 +221,8 @@ public class CacheTest {
         final var collId = Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL);
         final var cachedObj = new JsonObject();
         cachedObj.addProperty(Globals.PK_FIELD, "id1");
-        injectCachedEntry(collId, DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, cachedObj));
+        injectCachedEntry(TestGlobals.DB, TestGlobals.COLL,
+                DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, cachedObj));
         // A lagging page count of 1 would previously have wrongly accepted the 1-entry cache as complete.
         final var pageEntry = new org.techhouse.data.admin.AdminPageEntry(TestGlobals.DB, TestGlobals.COLL, 0);
         pageEntry.setEntryCount(1);
@@ -252,11 +247,8 @@ public class CacheTest {
             final var stream = cache.initializeStreamIfNecessary(null, TestGlobals.DB, TestGlobals.COLL);
             assertNotNull(stream);
             stream.close();
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
             final var userCache = IocContainer.get(org.techhouse.cache.UserCache.class);
-            final var collectionMap = TestUtils.getPrivateField(userCache, "collectionMap", collType);
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL)));
+            assertNull(userCache.getCachedCollection(TestGlobals.DB, TestGlobals.COLL));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -264,15 +256,12 @@ public class CacheTest {
 
     // ── getEntriesByIds / streamCollection (page-streaming read path) ─────────
 
-    private static void injectCachedEntry(String collId, DbEntry entry)
+    private static void injectCachedEntry(String dbName, String collName, DbEntry entry)
             throws NoSuchFieldException, IllegalAccessException {
-        final var type = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
         // Document cache lives on the UserCache singleton, which the facade reads through.
         final var userCache = IocContainer.get(org.techhouse.cache.UserCache.class);
-        final var collectionMap = TestUtils.getPrivateField(userCache, "collectionMap", type);
-        final var inner = collectionMap.computeIfAbsent(collId, _ -> new ConcurrentHashMap<>());
-        inner.put(entry.get_id(), entry);
+        TestUtils.getPrivateField(userCache, "documentCache", DocumentCache.class)
+                .admit(dbName, collName, entry, Long.MAX_VALUE);
     }
 
     private static void injectPages(String collId, List<org.techhouse.data.admin.AdminPageEntry> pageList)
@@ -294,7 +283,7 @@ public class CacheTest {
         final var collId = Cache.getCollectionIdentifier("userDb", "c1");
         final var obj = new JsonObject();
         obj.addProperty(Globals.PK_FIELD, "id1");
-        injectCachedEntry(collId, DbEntry.fromJsonObject("userDb", "c1", obj));
+        injectCachedEntry("userDb", "c1", DbEntry.fromJsonObject("userDb", "c1", obj));
         final var pageEntry = new org.techhouse.data.admin.AdminPageEntry("userDb", "c1", 0);
         pageEntry.setEntryCount(1);
         injectPages(collId, new ArrayList<>(List.of(pageEntry)));
@@ -378,7 +367,7 @@ public class CacheTest {
             // Even though an entry is cached, caching-disabled must bypass the cache branch.
             final var cachedObj = new JsonObject();
             cachedObj.addProperty(Globals.PK_FIELD, "stale");
-            injectCachedEntry(collId, DbEntry.fromJsonObject("userDb", "c1", cachedObj));
+            injectCachedEntry("userDb", "c1", DbEntry.fromJsonObject("userDb", "c1", cachedObj));
             final var pageEntry = new org.techhouse.data.admin.AdminPageEntry("userDb", "c1", 0);
             pageEntry.setEntryCount(1);
             injectPages(collId, new ArrayList<>(List.of(pageEntry)));
@@ -401,24 +390,140 @@ public class CacheTest {
         }
     }
 
-    // shiftPkPositionsAfterCompaction routes to the admin cache for the admin database and to the user
-    // cache otherwise.
+    // Pages 0..count-1 of c1, each holding the document "p<page>"; page 0 is read last when delayed.
+    private static FileSystem pagedCollection(int count, boolean delayFirstPage) throws Exception {
+        final var fsMock = mock(FileSystem.class);
+        final var pageList = new ArrayList<org.techhouse.data.admin.AdminPageEntry>();
+        for (var i = 0; i < count; i++) {
+            final var pageEntry = new org.techhouse.data.admin.AdminPageEntry("userDb", "c1", i);
+            pageEntry.setEntryCount(1);
+            pageEntry.setPageSize(100L);
+            pageList.add(pageEntry);
+        }
+        injectPages(Cache.getCollectionIdentifier("userDb", "c1"), pageList);
+        when(fsMock.readWholeCollectionPage(eq("userDb"), eq("c1"), anyLong())).thenAnswer(invocation -> {
+            final long page = invocation.getArgument(2);
+            if (page == 0 && delayFirstPage) {
+                Thread.sleep(300);
+            }
+            final var obj = new JsonObject();
+            obj.addProperty(Globals.PK_FIELD, "p" + page);
+            return new HashMap<>(Map.of("p" + page, DbEntry.fromJsonObject("userDb", "c1", obj)));
+        });
+        return fsMock;
+    }
+
+    private static List<String> streamIds(Cache cache) throws IOException {
+        try (var stream = cache.streamCollection("userDb", "c1")) {
+            return stream.map(DbEntry::get_id).toList();
+        }
+    }
+
+    // A parallel scan hands pages back in page order unless the caller allows otherwise
+    @Test
+    public void test_streamCollection_parallel_scan_keeps_page_order() throws Exception {
+        final var config = Configuration.getInstance();
+        final var original = TestUtils.getPrivateField(config, "scanThreads", Integer.class);
+        TestUtils.setPrivateField(config, "scanThreads", 4);
+        try {
+            Cache cache = new Cache();
+            final var fsMock = pagedCollection(6, true);
+            TestUtils.setPrivateField(cache, "fs", fsMock);
+
+            assertEquals(List.of("p0", "p1", "p2", "p3", "p4", "p5"), streamIds(cache));
+            verify(fsMock, times(6)).readWholeCollectionPage(eq("userDb"), eq("c1"), anyLong());
+        } finally {
+            TestUtils.setPrivateField(config, "scanThreads", original);
+        }
+    }
+
+    // An unordered scan does not wait for a slow page before handing back the others
+    @Test
+    public void test_streamCollection_unordered_parallel_scan_returns_pages_as_read() throws Exception {
+        final var config = Configuration.getInstance();
+        final var original = TestUtils.getPrivateField(config, "scanThreads", Integer.class);
+        TestUtils.setPrivateField(config, "scanThreads", 4);
+        Cache cache = new Cache();
+        cache.allowUnorderedScans(true);
+        try {
+            TestUtils.setPrivateField(cache, "fs", pagedCollection(6, true));
+
+            final var ids = streamIds(cache);
+
+            assertEquals(6, ids.size());
+            assertEquals(Set.of("p0", "p1", "p2", "p3", "p4", "p5"), Set.copyOf(ids));
+            assertNotEquals("p0", ids.getFirst());
+        } finally {
+            cache.allowUnorderedScans(false);
+            TestUtils.setPrivateField(config, "scanThreads", original);
+        }
+    }
+
+    // With no room left for read-ahead the pages are read one at a time, each making room for itself
+    @Test
+    public void test_streamCollection_parallel_scan_reads_ahead_within_memory() throws Exception {
+        final var config = Configuration.getInstance();
+        final var original = TestUtils.getPrivateField(config, "scanThreads", Integer.class);
+        TestUtils.setPrivateField(config, "scanThreads", 4);
+        try {
+            Cache cache = new Cache();
+            TestUtils.setPrivateField(cache, "fs", pagedCollection(3, false));
+            final var mmMock = mock(org.techhouse.cache.MemoryManagement.class);
+            when(mmMock.spillBudgetBytes(anyLong())).thenReturn(0L);
+            TestUtils.setPrivateField(cache, "memoryManagement", mmMock);
+
+            assertEquals(List.of("p0", "p1", "p2"), streamIds(cache));
+            verify(mmMock, times(3)).ensureHeadroomForBytes(100L);
+        } finally {
+            TestUtils.setPrivateField(config, "scanThreads", original);
+        }
+    }
+
+    // A single scan thread keeps the sequential page stream
+    @Test
+    public void test_streamCollection_single_scan_thread_reads_sequentially() throws Exception {
+        final var config = Configuration.getInstance();
+        final var original = TestUtils.getPrivateField(config, "scanThreads", Integer.class);
+        TestUtils.setPrivateField(config, "scanThreads", 1);
+        try {
+            Cache cache = new Cache();
+            final var fsMock = pagedCollection(3, false);
+            TestUtils.setPrivateField(cache, "fs", fsMock);
+            final var reader = new ArrayList<Thread>();
+            when(fsMock.readWholeCollectionPage(eq("userDb"), eq("c1"), anyLong())).thenAnswer(invocation -> {
+                reader.add(Thread.currentThread());
+                final var obj = new JsonObject();
+                obj.addProperty(Globals.PK_FIELD, "p" + invocation.getArgument(2));
+                return new HashMap<>(Map.of("x", DbEntry.fromJsonObject("userDb", "c1", obj)));
+            });
+
+            assertEquals(List.of("p0", "p1", "p2"), streamIds(cache));
+            assertTrue(reader.stream().allMatch(thread -> thread == Thread.currentThread()));
+        } finally {
+            TestUtils.setPrivateField(config, "scanThreads", original);
+        }
+    }
+
+    // applyPageCompaction routes to the admin cache for the admin database and to the user cache
+    // otherwise.
     @Test
-    public void test_shift_pk_positions_routes_admin_vs_user() throws NoSuchFieldException, IllegalAccessException {
+    public void test_apply_page_compaction_routes_admin_vs_user() throws NoSuchFieldException, IllegalAccessException {
         Cache cache = new Cache();
         final var adminMock = mock(org.techhouse.cache.AdminCache.class);
         final var userMock = mock(org.techhouse.cache.UserCache.class);
         TestUtils.setPrivateField(cache, "adminCache", adminMock);
         TestUtils.setPrivateField(cache, "userCache", userMock);
 
-        cache.shiftPkPositionsAfterCompaction(
-                new org.techhouse.fs.PkCompaction(Globals.ADMIN_DB_NAME, "collections", 0, 10, 5));
-        cache.shiftPkPositionsAfterCompaction(new org.techhouse.fs.PkCompaction("userDb", "userColl", 1, 20, 7));
-        // A null compaction (no survivor moved) is a no-op.
-        cache.shiftPkPositionsAfterCompaction(null);
+        final var adminMoves = Map.of("c1", 5L);
+        final var userMoves = Map.of("u1", 7L);
+        cache.applyPageCompaction(new org.techhouse.fs.PageCompaction(Globals.ADMIN_DB_NAME, "collections", 0,
+                adminMoves));
+        cache.applyPageCompaction(new org.techhouse.fs.PageCompaction("userDb", "userColl", 1, userMoves));
+        // A null compaction (page not rewritten) is a no-op.
+        cache.applyPageCompaction(null);
 
-        verify(adminMock).shiftPkPositionsAfterCompaction("collections", 0, 10, 5);
-        verify(userMock).shiftPkPositionsAfterCompaction("userDb", "userColl", 1, 20, 7);
+        verify(adminMock).applyPageCompaction("collections", 0, adminMoves);
+        verify(userMock).applyPageCompaction("userDb", "userColl", 1, userMoves);
         verifyNoMoreInteractions(adminMock, userMock);
     }
 }
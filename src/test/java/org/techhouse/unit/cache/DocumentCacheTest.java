@@ -0,0 +1,169 @@
+package org.techhouse.unit.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.techhouse.cache.Cache;
+import org.techhouse.cache.DocumentCache;
+import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.config.Globals;
+import org.techhouse.data.DbEntry;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.test.TestUtils;
+
+public class DocumentCacheTest {
+    private static final String DB = "userDb";
+    private static final String COLL = "coll";
+
+    private DocumentCache cache;
+
+    @BeforeEach
+    public void setUp() throws NoSuchFieldException, IllegalAccessException, IOException {
+        TestUtils.standardInitialSetup();
+        cache = new DocumentCache();
+    }
+
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        TestUtils.standardTearDown();
+    }
+
+    // Same-length ids, so every document has the same size.
+    private static DbEntry entry(String dbName, String collName, String id) {
+        final var obj = new JsonObject();
+        obj.addProperty(Globals.PK_FIELD, id);
+        obj.addProperty("v", "x".repeat(32));
+        return DbEntry.fromJsonObject(dbName, collName, obj);
+    }
+
+    private static long documentBytes() {
+        return entry(DB, COLL, "doc-000").byteSize();
+    }
+
+    // A document read often stays cached while a scan of documents read once goes through the cache
+    @Test
+    public void test_frequently_read_document_survives_scan() {
+        final var budget = 20 * documentBytes();
+        cache.admit(DB, COLL, entry(DB, COLL, "hot-000"), budget);
+        for (var i = 0; i < 5; i++) {
+            cache.get(DB, COLL, "hot-000");
+        }
+
+        for (var i = 0; i < 200; i++) {
+            cache.admit(DB, COLL, entry(DB, COLL, "doc-%03d".formatted(i)), budget);
+        }
+
+        assertNotNull(cache.get(DB, COLL, "hot-000"));
+        assertTrue(cache.bytesOf(Cache.getCollectionIdentifier(DB, COLL)) <= budget);
+    }
+
+    @Test
+    public void test_admit_keeps_documents_within_budget() {
+        final var budget = 10 * documentBytes();
+        for (var i = 0; i < 50; i++) {
+            cache.admit(DB, COLL, entry(DB, COLL, "doc-%03d".formatted(i)), budget);
+        }
+
+        assertTrue(cache.bytesOf(Cache.getCollectionIdentifier(DB, COLL)) <= budget);
+        assertTrue(cache.documents(DB, COLL).size() <= 10);
+        // The newest document is always kept.
+        assertNotNull(cache.documents(DB, COLL).get("doc-049"));
+    }
+
+    @Test
+    public void test_admit_rejects_document_larger_than_budget() {
+        assertFalse(cache.admit(DB, COLL, entry(DB, COLL, "doc-000"), documentBytes() - 1));
+        assertNull(cache.documents(DB, COLL));
+    }
+
+    @Test
+    public void test_removeCollection_drops_only_that_collection() {
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-000"), Long.MAX_VALUE);
+        cache.admit(DB, "other", entry(DB, "other", "doc-000"), Long.MAX_VALUE);
+
+        cache.removeCollection(DB, COLL);
+
+        assertNull(cache.documents(DB, COLL));
+        assertEquals(0L, cache.bytesOf(Cache.getCollectionIdentifier(DB, COLL)));
+        assertNotNull(cache.get(DB, "other", "doc-000"));
+    }
+
+    // With room to spare every document stays in the window, where the least recently read goes first
+    @Test
+    public void test_evict_frees_least_recently_read_first() {
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-000"), Long.MAX_VALUE);
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-001"), Long.MAX_VALUE);
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-002"), Long.MAX_VALUE);
+        cache.get(DB, COLL, "doc-000");
+
+        assertEquals(documentBytes(), cache.evict(1L));
+
+        final var documents = cache.documents(DB, COLL);
+        assertFalse(documents.containsKey("doc-001"));
+        assertTrue(documents.containsKey("doc-000"));
+        assertTrue(documents.containsKey("doc-002"));
+    }
+
+    @Test
+    public void test_evict_skips_collection_held_by_reader() throws InterruptedException {
+        cache.admit(DB, "locked", entry(DB, "locked", "doc-000"), Long.MAX_VALUE);
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-000"), Long.MAX_VALUE);
+        final var locks = IocContainer.get(ResourceLocking.class);
+        locks.lockRead(DB, "locked");
+        try {
+            assertEquals(documentBytes(), cache.evict(Long.MAX_VALUE));
+        } finally {
+            locks.releaseRead(DB, "locked");
+        }
+
+        assertNotNull(cache.get(DB, "locked", "doc-000"));
+        assertNull(cache.documents(DB, COLL));
+    }
+
+    // A read neither waits for an admission in progress nor gets lost: it is applied once the cache's lock is free
+    @Test
+    public void test_get_does_not_wait_for_admission() throws Exception {
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-000"), Long.MAX_VALUE);
+        cache.admit(DB, COLL, entry(DB, COLL, "doc-001"), Long.MAX_VALUE);
+        final var admitting = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        try (var executor = Executors.newFixedThreadPool(2)) {
+            final var admission = executor.submit(() ->
+                    cache.admitAll(DB, COLL, List.of(entry(DB, COLL, "doc-002")), Long.MAX_VALUE, () -> {
+                        admitting.countDown();
+                        try {
+                            return release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                    }));
+            assertTrue(admitting.await(10, TimeUnit.SECONDS));
+            try {
+                assertNotNull(executor.submit(() -> cache.get(DB, COLL, "doc-000")).get(5, TimeUnit.SECONDS));
+            } finally {
+                release.countDown();
+            }
+            admission.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(documentBytes(), cache.evict(1L));
+        assertFalse(cache.documents(DB, COLL).containsKey("doc-001"));
+        assertTrue(cache.documents(DB, COLL).containsKey("doc-000"));
+    }
+
+    @Test
+    public void test_pinned_documents_are_never_evicted() {
+        cache.pin(Globals.ADMIN_DB_NAME, "databases", entry(Globals.ADMIN_DB_NAME, "databases", "doc-000"));
+
+        assertEquals(0L, cache.evict(Long.MAX_VALUE));
+        assertNotNull(cache.get(Globals.ADMIN_DB_NAME, "databases", "doc-000"));
+    }
+}
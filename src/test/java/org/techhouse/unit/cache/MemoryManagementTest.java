@@ -15,12 +15,14 @@ import org.techhouse.cache.AccessKind;
 import org.techhouse.cache.AdmissionDecision;
 import org.techhouse.cache.Cache;
 import org.techhouse.cache.CacheableResource;
+import org.techhouse.cache.DocumentCache;
 import org.techhouse.cache.MemoryManagement;
 import org.techhouse.cache.UsageCounter;
 import org.techhouse.config.Configuration;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ioc.IocContainer;
@@ -185,11 +187,8 @@ public class MemoryManagementTest {
         seedRawCollection();
         final var mm = IocContainer.get(MemoryManagement.class);
         mm.runEvictionSweep();
-        final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(IocContainer.get(org.techhouse.cache.UserCache.class),
-                "collectionMap", type);
-        assertTrue(collectionMap.containsKey(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases")));
+        assertNotNull(IocContainer.get(org.techhouse.cache.UserCache.class)
+                .getCachedCollection(Globals.ADMIN_DB_NAME, "databases"));
     }
 
     @Test
@@ -439,6 +438,35 @@ public class MemoryManagementTest {
                 "cold should be evicted first to make headroom");
     }
 
+    @Test
+    public void test_spillBudgetBytes_unbounded_without_budget() throws Exception {
+        final var mm = IocContainer.get(MemoryManagement.class);
+        setMaxMemory(0L);
+        assertEquals(Long.MAX_VALUE, mm.spillBudgetBytes(100L));
+        setMaxMemory(-1L);
+        assertEquals(Long.MAX_VALUE, mm.spillBudgetBytes(100L));
+    }
+
+    @Test
+    public void test_spillBudgetBytes_is_headroom_under_max_memory() throws Exception {
+        setMaxMemory(10L * 1024L * 1024L);
+        final var cache = IocContainer.get(Cache.class);
+        seedCollectionCache("userColl", 10);
+        final var mm = IocContainer.get(MemoryManagement.class);
+        assertEquals(10L * 1024L * 1024L - mm.userCacheBytes(), mm.spillBudgetBytes(100L));
+        assertEquals(1, cache.listCacheableResources().size());
+    }
+
+    @Test
+    public void test_spillBudgetBytes_evicts_to_free_the_minimum() throws Exception {
+        final var cache = IocContainer.get(Cache.class);
+        seedCollectionCache("userColl", 10);
+        setMaxMemory(1L);
+        final var mm = IocContainer.get(MemoryManagement.class);
+        assertEquals(1L, mm.spillBudgetBytes(1L));
+        assertTrue(cache.listCacheableResources().isEmpty());
+    }
+
     private void seedFieldIndex(String collName) throws NoSuchFieldException, IllegalAccessException {
         final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, Map<String, List<FieldIndexEntry<?>>>>>() {
         };
@@ -451,42 +479,37 @@ public class MemoryManagementTest {
     }
 
     private void seedCollectionCache(String collName, int count) throws NoSuchFieldException, IllegalAccessException {
-        final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(IocContainer.get(org.techhouse.cache.UserCache.class),
-                "collectionMap", type);
-        final var inner = new ConcurrentHashMap<String, DbEntry>();
+        final var documentCache = documentCache();
         for (int i = 0; i < count; i++) {
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id" + i);
             obj.addProperty("v", "x".repeat(64));
-            final var entry = DbEntry.fromJsonObject("userDb", collName, obj);
-            inner.put(entry.get_id(), entry);
+            documentCache.admit("userDb", collName, DbEntry.fromJsonObject("userDb", collName, obj), Long.MAX_VALUE);
         }
-        collectionMap.put(Cache.getCollectionIdentifier("userDb", collName), inner);
     }
 
     private void seedRawCollection() throws NoSuchFieldException, IllegalAccessException {
-        final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(IocContainer.get(org.techhouse.cache.UserCache.class),
-                "collectionMap", type);
-        final var inner = new ConcurrentHashMap<String, DbEntry>();
+        final var documentCache = documentCache();
         for (int i = 0; i < 5; i++) {
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id" + i);
-            inner.put("id" + i, DbEntry.fromJsonObject(Globals.ADMIN_DB_NAME, "databases", obj));
+            documentCache.pin(Globals.ADMIN_DB_NAME, "databases",
+                    DbEntry.fromJsonObject(Globals.ADMIN_DB_NAME, "databases", obj));
         }
-        collectionMap.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases"), inner);
+    }
+
+    private DocumentCache documentCache() throws NoSuchFieldException, IllegalAccessException {
+        return TestUtils.getPrivateField(IocContainer.get(org.techhouse.cache.UserCache.class), "documentCache",
+                DocumentCache.class);
     }
 
     private void seedPkIndex(String collName) throws NoSuchFieldException, IllegalAccessException {
-        final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var type = new org.techhouse.utils.ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(IocContainer.get(org.techhouse.cache.UserCache.class),
                 "pkIndexMap", type);
         final var list = new ArrayList<PkIndexEntry>();
         list.add(new PkIndexEntry("userDb", collName, "id0", 0, 10, 0));
-        pkIndexMap.put(Cache.getCollectionIdentifier("userDb", collName), list);
+        pkIndexMap.put(Cache.getCollectionIdentifier("userDb", collName), new PkIndex(list));
     }
 }
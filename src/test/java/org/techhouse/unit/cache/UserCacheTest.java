@@ -5,6 +5,7 @@ import static org.mockito.Mockito.*;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +17,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.techhouse.cache.Cache;
+import org.techhouse.cache.DocumentCache;
 import org.techhouse.cache.UserCache;
 import org.techhouse.concurrency.ResourceLocking;
 import org.techhouse.config.Configuration;
@@ -23,6 +25,8 @@ import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
 import org.techhouse.data.IndexKind;
+import org.techhouse.data.NumericFieldIndex;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.ejson.custom_types.JsonTime;
 import org.techhouse.ejson.elements.JsonArray;
@@ -42,9 +46,18 @@ import org.techhouse.utils.ReflectionUtils;
 public class UserCacheTest {
 
     // Mockito mocks skip field initializers, so the real getIdsFromIndex (called via thenCallRealMethod)
-    // would see a null index lock. Inject a real ResourceLocking so the read lock can be acquired.
-    private static void injectRealLocking(UserCache mock) {
+    // and the private lookups behind it would see a null index lock and null index maps. Copy the state of a
+    // real instance into the mock, with a real ResourceLocking so the read lock can be acquired.
+    private static void injectRealState(UserCache mock) {
         try {
+            final var real = new UserCache();
+            for (var field : UserCache.class.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                field.set(mock, field.get(real));
+            }
             final var rlField = UserCache.class.getDeclaredField("rl");
             rlField.setAccessible(true);
             rlField.set(mock, new ResourceLocking());
@@ -53,6 +66,38 @@ public class UserCacheTest {
         }
     }
 
+    // Seeds a document straight into the document cache, outside any budget.
+    private static void seedDocument(UserCache cache, DbEntry entry)
+            throws NoSuchFieldException, IllegalAccessException {
+        final var documentCache = TestUtils.getPrivateField(cache, "documentCache", DocumentCache.class);
+        if (Globals.ADMIN_DB_NAME.equals(entry.getDatabaseName())) {
+            documentCache.pin(entry.getDatabaseName(), entry.getCollectionName(), entry);
+        } else {
+            documentCache.admit(entry.getDatabaseName(), entry.getCollectionName(), entry, Long.MAX_VALUE);
+        }
+    }
+
+    private static void seedDocument(UserCache cache, String dbName, String collName, String id)
+            throws NoSuchFieldException, IllegalAccessException {
+        final var entry = new DbEntry();
+        entry.setDatabaseName(dbName);
+        entry.setCollectionName(collName);
+        entry.set_id(id);
+        seedDocument(cache, entry);
+    }
+
+    // The cached documents by collection identifier.
+    private static Map<String, Map<String, DbEntry>> cachedDocuments(UserCache cache)
+            throws NoSuchFieldException, IllegalAccessException {
+        final var documentCache = TestUtils.getPrivateField(cache, "documentCache", DocumentCache.class);
+        final var documents = new HashMap<String, Map<String, DbEntry>>();
+        for (var collectionIdentifier : documentCache.collectionIdentifiers()) {
+            final var parts = collectionIdentifier.split(Globals.COLL_IDENTIFIER_SEPARATOR_REGEX, 2);
+            documents.put(collectionIdentifier, documentCache.documents(parts[0], parts[1]));
+        }
+        return documents;
+    }
+
     @BeforeEach
     public void setUp() throws NoSuchFieldException, IllegalAccessException, IOException {
         TestUtils.standardInitialSetup();
@@ -102,47 +147,47 @@ public class UserCacheTest {
         String collName = "testColl";
         String collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
         List<PkIndexEntry> expectedPkIndex = List.of(new PkIndexEntry(dbName, collName, "value1", 0, 10, 0));
-        final var type = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var type = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", type);
-        pkIndexMap.put(collectionIdentifier, expectedPkIndex);
+        pkIndexMap.put(collectionIdentifier, new PkIndex(expectedPkIndex));
 
         // Act
-        List<PkIndexEntry> actualPkIndex = cache.getPkIndexAndLoadIfNecessary(dbName, collName);
+        List<PkIndexEntry> actualPkIndex = List.copyOf(cache.getPkIndex(dbName, collName).values());
 
         // Assert
         assertEquals(expectedPkIndex, actualPkIndex);
     }
 
-    // shiftPkPositionsAfterCompaction decrements only same-page entries with a greater position, by
-    // the removed length, in place; other pages and earlier entries are untouched.
+    // applyPageCompaction moves only the same-page entries listed in the compaction, in place; other pages
+    // and unlisted entries are untouched.
     @Test
-    public void test_shift_pk_positions_after_compaction() throws NoSuchFieldException, IllegalAccessException {
+    public void test_apply_page_compaction() throws NoSuchFieldException, IllegalAccessException {
         UserCache cache = new UserCache();
         String dbName = "testDb";
         String collName = "testColl";
         final var before = new PkIndexEntry(dbName, collName, "a", 0, 10, 0);
-        final var removed = new PkIndexEntry(dbName, collName, "b", 10, 10, 0);
-        final var after = new PkIndexEntry(dbName, collName, "c", 20, 10, 0);
-        final var otherPage = new PkIndexEntry(dbName, collName, "d", 20, 10, 1);
-        final var type = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var unmoved = new PkIndexEntry(dbName, collName, "b", 10, 10, 0);
+        final var moved = new PkIndexEntry(dbName, collName, "c", 30, 10, 0);
+        final var otherPage = new PkIndexEntry(dbName, collName, "d", 30, 10, 1);
+        final var type = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         TestUtils.getPrivateField(cache, "pkIndexMap", type).put(Cache.getCollectionIdentifier(dbName, collName),
-                new ArrayList<>(List.of(before, removed, after, otherPage)));
+                new PkIndex(List.of(before, unmoved, moved, otherPage)));
 
-        cache.shiftPkPositionsAfterCompaction(dbName, collName, 0, removed.getPosition(), removed.getLength());
+        cache.applyPageCompaction(dbName, collName, 0, Map.of("c", 20L, "d", 20L));
 
-        assertEquals(0, before.getPosition(), "entry before the removed position is untouched");
-        assertEquals(10, removed.getPosition(), "the entry at the removed position itself is untouched");
-        assertEquals(10, after.getPosition(), "entry after the removed position shifts left by removed length");
-        assertEquals(20, otherPage.getPosition(), "entry on a different page is untouched");
+        assertEquals(0, before.getPosition(), "entry not in the compaction is untouched");
+        assertEquals(10, unmoved.getPosition(), "entry not in the compaction is untouched");
+        assertEquals(20, moved.getPosition(), "moved entry takes its new position");
+        assertEquals(30, otherPage.getPosition(), "entry on a different page is untouched");
     }
 
     // No-op when the collection's PK index is not cached (does not throw).
     @Test
-    public void test_shift_pk_positions_after_compaction_uncached_is_noop() {
+    public void test_apply_page_compaction_uncached_is_noop() {
         UserCache cache = new UserCache();
-        assertDoesNotThrow(() -> cache.shiftPkPositionsAfterCompaction("noDb", "noColl", 0, 0, 10));
+        assertDoesNotThrow(() -> cache.applyPageCompaction("noDb", "noColl", 0, Map.of("a", 0L)));
     }
 
     // Returns list of FieldIndexEntry when index is already loaded
@@ -278,7 +323,7 @@ public class UserCacheTest {
     public void test_retrieves_ids_for_double_values() throws IOException {
         // Arrange
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         var dbName = "testDB";
         var collName = "testCollection";
         var fieldName = "testField";
@@ -286,7 +331,8 @@ public class UserCacheTest {
         var value = 10.0;
 
         var indexEntries = List.of(new FieldIndexEntry<Number>(dbName, collName, value, Set.of("id1", "id2")));
-        when(cache.getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, Number.class)).thenReturn(indexEntries);
+        when(cache.getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName))
+                .thenReturn(NumericFieldIndex.fromEntries(indexEntries));
 
         when(cache.getIdsFromIndex(dbName, collName, fieldName, operator, value)).thenCallRealMethod();
 
@@ -322,7 +368,7 @@ public class UserCacheTest {
     @Test
     public void test_retrieves_ids_for_boolean_values() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         // Setup
         String dbName = "testDB";
         String collName = "testCollection";
@@ -347,7 +393,7 @@ public class UserCacheTest {
     @Test
     public void test_retrieves_ids_for_string_values() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         // Setup
         String dbName = "testDB";
         String collName = "testCollection";
@@ -377,13 +423,9 @@ public class UserCacheTest {
 
         cache.addEntryToCache(dbName, collName, entry);
 
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeCollMap);
-
         String collId = Cache.getCollectionIdentifier(dbName, collName);
-        assertTrue(collectionMap.containsKey(collId));
-        assertTrue(collectionMap.get(collId).containsKey("123"));
+        assertTrue(cachedDocuments(cache).containsKey(collId));
+        assertTrue(cachedDocuments(cache).get(collId).containsKey("123"));
     }
 
     // Adding an entry with a null ID
@@ -398,14 +440,10 @@ public class UserCacheTest {
 
         cache.addEntryToCache(dbName, collName, entry);
 
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeCollMap);
-
         String collId = Cache.getCollectionIdentifier(dbName, collName);
-        assertTrue(collectionMap.containsKey(collId));
+        assertTrue(cachedDocuments(cache).containsKey(collId));
         assertNotNull(entry.get_id());
-        assertTrue(collectionMap.get(collId).containsKey(entry.get_id()));
+        assertTrue(cachedDocuments(cache).get(collId).containsKey(entry.get_id()));
     }
 
     // Adding entries to an empty cache
@@ -423,14 +461,10 @@ public class UserCacheTest {
 
         cache.addEntriesToCache(dbName, collName, entries);
 
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeCollMap);
-
         String collId = Cache.getCollectionIdentifier(dbName, collName);
-        assertEquals(2, collectionMap.get(collId).size());
-        assertTrue(collectionMap.get(collId).containsKey("1"));
-        assertTrue(collectionMap.get(collId).containsKey("2"));
+        assertEquals(2, cachedDocuments(cache).get(collId).size());
+        assertTrue(cachedDocuments(cache).get(collId).containsKey("1"));
+        assertTrue(cachedDocuments(cache).get(collId).containsKey("2"));
     }
 
     // Adding entries with duplicate IDs (last one wins, matching upsert semantics)
@@ -450,13 +484,9 @@ public class UserCacheTest {
 
         cache.addEntriesToCache(dbName, collName, entries);
 
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeCollMap);
-
         String collId = Cache.getCollectionIdentifier(dbName, collName);
-        assertEquals(1, collectionMap.get(collId).size());
-        assertTrue(collectionMap.get(collId).containsKey("1"));
+        assertEquals(1, cachedDocuments(cache).get(collId).size());
+        assertTrue(cachedDocuments(cache).get(collId).containsKey("1"));
     }
 
     // Retrieves an entry from the cache if it exists
@@ -472,13 +502,7 @@ public class UserCacheTest {
         expectedEntry.setCollectionName(collName);
         expectedEntry.set_id("testValue");
 
-        String collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
-
-        final var typeCollMap = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeCollMap);
-        collectionMap.putIfAbsent(collectionIdentifier, new ConcurrentHashMap<>());
-        collectionMap.get(collectionIdentifier).put("testValue", expectedEntry);
+        seedDocument(cache, expectedEntry);
 
         // Act
         DbEntry result = cache.getById(dbName, collName, idxEntry);
@@ -524,18 +548,12 @@ public class UserCacheTest {
         String pk = "testPk";
         String collectionIdentifier = Cache.getCollectionIdentifier(dbName, collName);
 
-        Map<String, DbEntry> collection = new HashMap<>();
-        collection.put(pk, new DbEntry());
-
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
-
-        collectionMap.put(collectionIdentifier, collection);
+        seedDocument(cache, dbName, collName, pk);
+        seedDocument(cache, dbName, collName, "otherPk");
 
         cache.evictEntry(dbName, collName, pk);
 
-        assertFalse(collectionMap.get(collectionIdentifier).containsKey(pk));
+        assertFalse(cachedDocuments(cache).get(collectionIdentifier).containsKey(pk));
     }
 
     // Evicting an entry when the collection map is empty
@@ -548,11 +566,7 @@ public class UserCacheTest {
 
         cache.evictEntry(dbName, collName, pk);
 
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
-
-        assertNull(collectionMap.get(Cache.getCollectionIdentifier(dbName, collName)));
+        assertNull(cachedDocuments(cache).get(Cache.getCollectionIdentifier(dbName, collName)));
     }
 
     // Successfully evicts all collections and their primary key indexes for a given database name
@@ -564,22 +578,18 @@ public class UserCacheTest {
         String collId = Cache.getCollectionIdentifier(dbName, collectionName);
 
         PkIndexEntry pkIndexEntry = new PkIndexEntry(dbName, collectionName, "123", 0, 100, 0);
-        DbEntry dbEntry = new DbEntry();
 
-        final var typePk = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var typePk = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", typePk);
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
 
-        pkIndexMap.put(collId, List.of(pkIndexEntry));
-        collectionMap.put(collId, Map.of("key", dbEntry));
+        pkIndexMap.put(collId, new PkIndex(List.of(pkIndexEntry)));
+        seedDocument(cache, dbName, collectionName, "key");
 
         cache.evictDatabase(dbName);
 
         assertTrue(pkIndexMap.isEmpty());
-        assertTrue(collectionMap.isEmpty());
+        assertTrue(cachedDocuments(cache).isEmpty());
     }
 
     // Empty db name is invalid (< 3 chars per constraints); verify it still evicts only its own entries.
@@ -591,22 +601,18 @@ public class UserCacheTest {
         String collId = Cache.getCollectionIdentifier(dbName, collectionName);
 
         PkIndexEntry pkIndexEntry = new PkIndexEntry(dbName, collectionName, "123", 0, 100, 0);
-        DbEntry dbEntry = new DbEntry();
 
-        final var typePk = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var typePk = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", typePk);
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
 
-        pkIndexMap.put(collId, List.of(pkIndexEntry));
-        collectionMap.put(collId, Map.of("key", dbEntry));
+        pkIndexMap.put(collId, new PkIndex(List.of(pkIndexEntry)));
+        seedDocument(cache, dbName, collectionName, "key");
 
         cache.evictDatabase(dbName);
 
         assertTrue(pkIndexMap.isEmpty());
-        assertTrue(collectionMap.isEmpty());
+        assertTrue(cachedDocuments(cache).isEmpty());
     }
 
     // evictCollection removes the correct collection from pkIndexMap
@@ -619,11 +625,11 @@ public class UserCacheTest {
 
         List<PkIndexEntry> pkIndexEntries = new ArrayList<>();
 
-        final var typePk = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var typePk = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", typePk);
 
-        pkIndexMap.put(collIdentifier, pkIndexEntries);
+        pkIndexMap.put(collIdentifier, new PkIndex(pkIndexEntries));
 
         cache.evictCollection(dbName, collName);
 
@@ -641,15 +647,12 @@ public class UserCacheTest {
 
         cache.evictCollection(dbName, collName);
 
-        final var typePk = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var typePk = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", typePk);
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
 
         assertFalse(pkIndexMap.containsKey(collIdentifier));
-        assertFalse(collectionMap.containsKey(collIdentifier));
+        assertFalse(cachedDocuments(cache).containsKey(collIdentifier));
     }
 
     @Test
@@ -695,12 +698,7 @@ public class UserCacheTest {
         fieldIndexMap.put(collId2, inner2);
         fieldIndexMap.put(siblingId, inner3);
 
-        // Also populate collectionMap so evictDatabase can build its toRemove list.
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
-        collectionMap.put(collId1, new ConcurrentHashMap<>());
-        collectionMap.put(collId2, new ConcurrentHashMap<>());
+        seedDocument(cache, dbName, "coll1", "id1");
 
         cache.evictDatabase(dbName);
 
@@ -750,7 +748,7 @@ public class UserCacheTest {
     @Test
     public void test_get_ids_from_index_with_custom_type() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         var dbName = "db";
         var collName = "coll";
         var fieldName = "time";
@@ -772,7 +770,7 @@ public class UserCacheTest {
     @Test
     public void test_get_ids_from_index_with_json_array_of_strings() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         var dbName = "db";
         var collName = "coll";
         var fieldName = "tag";
@@ -796,7 +794,7 @@ public class UserCacheTest {
     @Test
     public void test_get_ids_from_index_with_json_array_of_numbers() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         var dbName = "db";
         var collName = "coll";
         var fieldName = "score";
@@ -808,7 +806,8 @@ public class UserCacheTest {
         List<FieldIndexEntry<Number>> idx = (List<FieldIndexEntry<Number>>) (List<?>) List.of(
                 new FieldIndexEntry<>(dbName, collName, 10.0, Set.of("id1")),
                 new FieldIndexEntry<>(dbName, collName, 30.0, Set.of("id2")));
-        when(cache.getFieldIndexAndLoadIfNecessary(dbName, collName, fieldName, Number.class)).thenReturn(idx);
+        when(cache.getNumericIndexAndLoadIfNecessary(dbName, collName, fieldName))
+                .thenReturn(NumericFieldIndex.fromEntries(idx));
         when(cache.getIdsFromIndex(dbName, collName, fieldName, operator, arr)).thenCallRealMethod();
 
         var result = cache.getIdsFromIndex(dbName, collName, fieldName, operator, arr);
@@ -822,7 +821,7 @@ public class UserCacheTest {
     @Test
     public void test_get_ids_from_index_with_json_array_of_booleans() throws IOException {
         var cache = mock(UserCache.class);
-        injectRealLocking(cache);
+        injectRealState(cache);
         var dbName = "db";
         var collName = "coll";
         var fieldName = "active";
@@ -859,13 +858,13 @@ public class UserCacheTest {
     @Test
     public void test_evictPkIndex_removes_only_pk_for_target_collection() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var type = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var type = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", type);
         pkIndexMap.put(Cache.getCollectionIdentifier("db1", "c1"),
-                List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0)));
+                new PkIndex(List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0))));
         pkIndexMap.put(Cache.getCollectionIdentifier("db1", "c2"),
-                List.of(new PkIndexEntry("db1", "c2", "id1", 0, 1, 0)));
+                new PkIndex(List.of(new PkIndexEntry("db1", "c2", "id1", 0, 1, 0))));
         cache.evictPkIndex("db1", "c1");
         assertFalse(pkIndexMap.containsKey(Cache.getCollectionIdentifier("db1", "c1")));
         assertTrue(pkIndexMap.containsKey(Cache.getCollectionIdentifier("db1", "c2")));
@@ -874,11 +873,11 @@ public class UserCacheTest {
     @Test
     public void test_evictPkIndex_noop_for_admin() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var type = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var type = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", type);
         pkIndexMap.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases"),
-                List.of(new PkIndexEntry(Globals.ADMIN_DB_NAME, "databases", "id1", 0, 1, 0)));
+                new PkIndex(List.of(new PkIndexEntry(Globals.ADMIN_DB_NAME, "databases", "id1", 0, 1, 0))));
         cache.evictPkIndex(Globals.ADMIN_DB_NAME, "databases");
         assertTrue(pkIndexMap.containsKey(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases")));
     }
@@ -928,43 +927,30 @@ public class UserCacheTest {
     @Test
     public void test_evictCollectionDocuments_removes_only_documents_not_pk() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var pkType = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var pkType = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", pkType);
-        final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
         pkIndexMap.put(Cache.getCollectionIdentifier("db1", "c1"),
-                List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0)));
-        collectionMap.put(Cache.getCollectionIdentifier("db1", "c1"), new ConcurrentHashMap<>());
+                new PkIndex(List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0))));
+        seedDocument(cache, "db1", "c1", "id1");
         cache.evictCollectionDocuments("db1", "c1");
         assertTrue(pkIndexMap.containsKey(Cache.getCollectionIdentifier("db1", "c1")));
-        assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("db1", "c1")));
+        assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("db1", "c1")));
     }
 
     @Test
     public void test_evictCollectionDocuments_noop_for_admin() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-        collectionMap.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases"), new ConcurrentHashMap<>());
+        seedDocument(cache, Globals.ADMIN_DB_NAME, "databases", "id1");
         cache.evictCollectionDocuments(Globals.ADMIN_DB_NAME, "databases");
-        assertTrue(collectionMap.containsKey(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases")));
+        assertNotNull(cache.getCachedCollection(Globals.ADMIN_DB_NAME, "databases"));
     }
 
     @Test
     public void test_listCacheableResources_excludes_admin_entries() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-        final var inner = new ConcurrentHashMap<String, DbEntry>();
-        final var obj = new JsonObject();
-        obj.addProperty(Globals.PK_FIELD, "id1");
-        inner.put("id1", DbEntry.fromJsonObject("userDb", "c1", obj));
-        collectionMap.put(Cache.getCollectionIdentifier("userDb", "c1"), inner);
-        collectionMap.put(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases"), new ConcurrentHashMap<>());
+        seedDocument(cache, "userDb", "c1", "id1");
+        seedDocument(cache, Globals.ADMIN_DB_NAME, "databases", "id1");
         final var resources = cache.listCacheableResources();
         assertTrue(resources.stream().anyMatch(r -> r.dbName().equals("userDb")));
         assertTrue(resources.stream().noneMatch(r -> r.dbName().equals(Globals.ADMIN_DB_NAME)));
@@ -973,11 +959,11 @@ public class UserCacheTest {
     @Test
     public void test_listCacheableResources_includes_pk_and_field_indexes() throws Exception {
         UserCache cache = IocContainer.get(UserCache.class);
-        final var pkType = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var pkType = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", pkType);
         pkIndexMap.put(Cache.getCollectionIdentifier("db1", "c1"),
-                List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0)));
+                new PkIndex(List.of(new PkIndexEntry("db1", "c1", "id1", 0, 1, 0))));
         final var fieldType = new ReflectionUtils.TypeToken<Map<String, Map<String, List<FieldIndexEntry<?>>>>>() {
         };
         final var fieldIndexMap = TestUtils.getPrivateField(cache, "fieldIndexMap", fieldType);
@@ -999,10 +985,7 @@ public class UserCacheTest {
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id1");
             cache.addEntryToCache("userDb", "c1", DbEntry.fromJsonObject("userDb", "c1", obj));
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
+            assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1019,10 +1002,7 @@ public class UserCacheTest {
             obj.addProperty(Globals.PK_FIELD, "id1");
             cache.addEntryToCache(Globals.ADMIN_DB_NAME, "databases",
                     DbEntry.fromJsonObject(Globals.ADMIN_DB_NAME, "databases", obj));
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            assertTrue(collectionMap.containsKey(Cache.getCollectionIdentifier(Globals.ADMIN_DB_NAME, "databases")));
+            assertNotNull(cache.getCachedCollection(Globals.ADMIN_DB_NAME, "databases"));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1038,10 +1018,7 @@ public class UserCacheTest {
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id1");
             cache.addEntriesToCache("userDb", "c1", List.of(DbEntry.fromJsonObject("userDb", "c1", obj)));
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
+            assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1055,15 +1032,12 @@ public class UserCacheTest {
         TestUtils.setPrivateField(config, "maxMemoryBytes", 1L);
         try {
             UserCache cache = IocContainer.get(UserCache.class);
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            collectionMap.clear();
+            TestUtils.setPrivateField(cache, "documentCache", new DocumentCache());
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id1");
             obj.addProperty("v", "x".repeat(128));
             cache.addEntryToCache("userDb", "c1", DbEntry.fromJsonObject("userDb", "c1", obj));
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")),
+            assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")),
                     "entry should not be admitted when it exceeds the cap");
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
@@ -1077,14 +1051,11 @@ public class UserCacheTest {
         TestUtils.setPrivateField(config, "maxMemoryBytes", 1024L * 1024L);
         try {
             UserCache cache = IocContainer.get(UserCache.class);
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            collectionMap.clear();
+            TestUtils.setPrivateField(cache, "documentCache", new DocumentCache());
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id1");
             cache.addEntryToCache("userDb", "c1", DbEntry.fromJsonObject("userDb", "c1", obj));
-            assertTrue(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")),
+            assertTrue(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")),
                     "small entry should be admitted under a generous cap");
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
@@ -1098,10 +1069,7 @@ public class UserCacheTest {
         TestUtils.setPrivateField(config, "maxMemoryBytes", 1L);
         try {
             UserCache cache = IocContainer.get(UserCache.class);
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            collectionMap.clear();
+            TestUtils.setPrivateField(cache, "documentCache", new DocumentCache());
             final var obj1 = new JsonObject();
             obj1.addProperty(Globals.PK_FIELD, "id1");
             obj1.addProperty("v", "x".repeat(128));
@@ -1110,7 +1078,7 @@ public class UserCacheTest {
             obj2.addProperty("v", "y".repeat(128));
             cache.addEntriesToCache("userDb", "c1", List.of(DbEntry.fromJsonObject("userDb", "c1", obj1),
                     DbEntry.fromJsonObject("userDb", "c1", obj2)));
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
+            assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1135,10 +1103,7 @@ public class UserCacheTest {
                 when(fsMock.getById(pk)).thenReturn(stub);
                 final var result = cache.getById("userDb", "c1", pk);
                 assertEquals("id1", result.get_id());
-                final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-                };
-                final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-                assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
+                assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "c1")));
             } finally {
                 fsField.set(cache, originalFs);
             }
@@ -1160,10 +1125,7 @@ public class UserCacheTest {
             final var originalFs = fsField.get(cache);
             fsField.set(cache, fsMock);
             try {
-                final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-                };
-                final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-                collectionMap.clear();
+                TestUtils.setPrivateField(cache, "documentCache", new DocumentCache());
                 final var obj = new JsonObject();
                 obj.addProperty(Globals.PK_FIELD, "id1");
                 obj.addProperty("v", "x".repeat(128));
@@ -1172,7 +1134,7 @@ public class UserCacheTest {
                 when(fsMock.getById(pk)).thenReturn(entry);
                 final var result = cache.getById("userDb", "c1", pk);
                 assertEquals("id1", result.get_id());
-                final var collection = collectionMap.get(Cache.getCollectionIdentifier("userDb", "c1"));
+                final var collection = cachedDocuments(cache).get(Cache.getCollectionIdentifier("userDb", "c1"));
                 assertTrue(collection == null || !collection.containsKey("id1"),
                         "oversized entry must not be admitted to the cache");
             } finally {
@@ -1184,31 +1146,25 @@ public class UserCacheTest {
     }
 
     @Test
-    public void test_shouldCache_refuses_new_entry_when_over_cap() throws Exception {
+    public void test_addEntryToCache_evicts_cold_entry_when_over_cap() throws Exception {
         final var config = Configuration.getInstance();
         final long original = config.getMaxMemoryBytes();
-        // Cap smaller than the seeded "old" collection — adding "new" should be refused.
+        // Cap smaller than the seeded "old" document — adding "new" must make room for it.
         TestUtils.setPrivateField(config, "maxMemoryBytes", 100L);
         try {
             UserCache cache = IocContainer.get(UserCache.class);
-            final var collType = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", collType);
-            collectionMap.clear();
-            // Seed an existing cached collection that already exceeds the cap (~217B > 100B).
-            final var existing = new java.util.concurrent.ConcurrentHashMap<String, DbEntry>();
+            TestUtils.setPrivateField(cache, "documentCache", new DocumentCache());
+            // Seed an existing cached document that already exceeds the cap (~217B > 100B).
             final var seed = new JsonObject();
             seed.addProperty(Globals.PK_FIELD, "seed");
             seed.addProperty("v", "z".repeat(200));
-            existing.put("seed", DbEntry.fromJsonObject("userDb", "old", seed));
-            collectionMap.put(Cache.getCollectionIdentifier("userDb", "old"), existing);
-            // Admission check is pure: it does not run a sweep — the async sweep thread does that.
-            // So "new" is refused while the cache is over cap.
+            seedDocument(cache, DbEntry.fromJsonObject("userDb", "old", seed));
+            // Documents are admitted one at a time: the new one fits, and the old one, never read since, goes.
             final var obj = new JsonObject();
             obj.addProperty(Globals.PK_FIELD, "id1");
             cache.addEntryToCache("userDb", "new", DbEntry.fromJsonObject("userDb", "new", obj));
-            assertTrue(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "old")));
-            assertFalse(collectionMap.containsKey(Cache.getCollectionIdentifier("userDb", "new")));
+            assertFalse(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "old")));
+            assertTrue(cachedDocuments(cache).containsKey(Cache.getCollectionIdentifier("userDb", "new")));
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1218,19 +1174,15 @@ public class UserCacheTest {
 
     private static void injectPkIndex(UserCache cache, String collId, List<PkIndexEntry> entries)
             throws NoSuchFieldException, IllegalAccessException {
-        final var type = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var type = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", type);
-        pkIndexMap.put(collId, new ArrayList<>(entries));
+        pkIndexMap.put(collId, new PkIndex(entries));
     }
 
-    private static void injectCachedEntry(UserCache cache, String collId, DbEntry entry)
+    private static void injectCachedEntry(UserCache cache, DbEntry entry)
             throws NoSuchFieldException, IllegalAccessException {
-        final var type = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", type);
-        final var inner = collectionMap.computeIfAbsent(collId, _ -> new ConcurrentHashMap<>());
-        inner.put(entry.get_id(), entry);
+        seedDocument(cache, entry);
     }
 
     @Test
@@ -1253,7 +1205,7 @@ public class UserCacheTest {
         injectPkIndex(cache, collId, List.of(new PkIndexEntry("userDb", "c1", "id1", 0, 50, 0)));
         final var obj = new JsonObject();
         obj.addProperty(Globals.PK_FIELD, "id1");
-        injectCachedEntry(cache, collId, DbEntry.fromJsonObject("userDb", "c1", obj));
+        injectCachedEntry(cache, DbEntry.fromJsonObject("userDb", "c1", obj));
 
         final var result = cache.getEntriesByIds("userDb", "c1", Set.of("id1"));
 
@@ -1278,7 +1230,7 @@ public class UserCacheTest {
         // id1 already cached; id2 must be read from disk.
         final var cachedObj = new JsonObject();
         cachedObj.addProperty(Globals.PK_FIELD, "id1");
-        injectCachedEntry(cache, collId, DbEntry.fromJsonObject("userDb", "c1", cachedObj));
+        injectCachedEntry(cache, DbEntry.fromJsonObject("userDb", "c1", cachedObj));
 
         final var readObj = new JsonObject();
         readObj.addProperty(Globals.PK_FIELD, "id2");
@@ -1298,34 +1250,33 @@ public class UserCacheTest {
         assertEquals("id2", requested.getFirst().getValue());
 
         // The freshly read entry should now be cached.
-        final var type = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", type);
-        assertTrue(collectionMap.get(collId).containsKey("id2"));
+        assertTrue(cachedDocuments(cache).get(collId).containsKey("id2"));
     }
 
     @Test
-    public void test_getEntriesByIds_admission_rejected_does_not_populate_cache() throws Exception {
-        UserCache cache = new UserCache();
-        FileSystem fsMock = mock(FileSystem.class);
-        TestUtils.setPrivateField(cache, "fs", fsMock);
-        org.techhouse.cache.MemoryManagement mmMock = mock(org.techhouse.cache.MemoryManagement.class);
-        when(mmMock.admissionCheck(anyLong())).thenReturn(org.techhouse.cache.AdmissionDecision.REJECT);
-        TestUtils.setPrivateField(cache, "memoryManagement", mmMock);
+    public void test_getEntriesByIds_oversized_entry_does_not_populate_cache() throws Exception {
+        final var config = Configuration.getInstance();
+        final long original = config.getMaxMemoryBytes();
+        TestUtils.setPrivateField(config, "maxMemoryBytes", 1L);
+        try {
+            UserCache cache = new UserCache();
+            FileSystem fsMock = mock(FileSystem.class);
+            TestUtils.setPrivateField(cache, "fs", fsMock);
 
-        final var collId = Cache.getCollectionIdentifier("userDb", "c1");
-        injectPkIndex(cache, collId, List.of(new PkIndexEntry("userDb", "c1", "id1", 0, 50, 0)));
-        final var readObj = new JsonObject();
-        readObj.addProperty(Globals.PK_FIELD, "id1");
-        when(fsMock.getByIndexEntries(anyList())).thenReturn(List.of(DbEntry.fromJsonObject("userDb", "c1", readObj)));
+            final var collId = Cache.getCollectionIdentifier("userDb", "c1");
+            injectPkIndex(cache, collId, List.of(new PkIndexEntry("userDb", "c1", "id1", 0, 50, 0)));
+            final var readObj = new JsonObject();
+            readObj.addProperty(Globals.PK_FIELD, "id1");
+            when(fsMock.getByIndexEntries(anyList()))
+                    .thenReturn(List.of(DbEntry.fromJsonObject("userDb", "c1", readObj)));
 
-        final var result = cache.getEntriesByIds("userDb", "c1", Set.of("id1"));
+            final var result = cache.getEntriesByIds("userDb", "c1", Set.of("id1"));
 
-        assertEquals(1, result.size());
-        final var type = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", type);
-        assertFalse(collectionMap.containsKey(collId), "rejected admission must not populate the cache");
+            assertEquals(1, result.size());
+            assertFalse(cachedDocuments(cache).containsKey(collId), "an entry over the cap must not be cached");
+        } finally {
+            TestUtils.setPrivateField(config, "maxMemoryBytes", original);
+        }
     }
 
     @Test
@@ -1349,10 +1300,7 @@ public class UserCacheTest {
 
             assertEquals(1, result.size());
             verify(fsMock).getByIndexEntries(anyList());
-            final var type = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-            };
-            final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", type);
-            assertFalse(collectionMap.containsKey(collId), "caching disabled must not populate the cache");
+            assertFalse(cachedDocuments(cache).containsKey(collId), "caching disabled must not populate the cache");
         } finally {
             TestUtils.setPrivateField(config, "maxMemoryBytes", original);
         }
@@ -1385,28 +1333,25 @@ public class UserCacheTest {
         final var collIdFoo = Cache.getCollectionIdentifier("foo", "coll1");
         final var collIdFoobar = Cache.getCollectionIdentifier("foobar", "coll2");
 
-        final var typePk = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var typePk = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(cache, "pkIndexMap", typePk);
-        final var typeColl = new ReflectionUtils.TypeToken<Map<String, Map<String, DbEntry>>>() {
-        };
-        final var collectionMap = TestUtils.getPrivateField(cache, "collectionMap", typeColl);
 
-        pkIndexMap.put(collIdFoo, List.of(new PkIndexEntry("foo", "coll1", "1", 0, 10, 0)));
-        pkIndexMap.put(collIdFoobar, List.of(new PkIndexEntry("foobar", "coll2", "2", 0, 10, 0)));
-        collectionMap.put(collIdFoo, new ConcurrentHashMap<>());
-        collectionMap.put(collIdFoobar, new ConcurrentHashMap<>());
+        pkIndexMap.put(collIdFoo, new PkIndex(List.of(new PkIndexEntry("foo", "coll1", "1", 0, 10, 0))));
+        pkIndexMap.put(collIdFoobar, new PkIndex(List.of(new PkIndexEntry("foobar", "coll2", "2", 0, 10, 0))));
+        seedDocument(cache, "foo", "coll1", "1");
+        seedDocument(cache, "foobar", "coll2", "2");
 
         cache.evictDatabase("foo");
 
         assertFalse(pkIndexMap.containsKey(collIdFoo), "foo|coll1 should have been evicted");
-        assertFalse(collectionMap.containsKey(collIdFoo), "foo|coll1 should have been evicted");
+        assertFalse(cachedDocuments(cache).containsKey(collIdFoo), "foo|coll1 should have been evicted");
         assertTrue(pkIndexMap.containsKey(collIdFoobar), "foobar|coll2 must not be evicted");
-        assertTrue(collectionMap.containsKey(collIdFoobar), "foobar|coll2 must not be evicted");
+        assertTrue(cachedDocuments(cache).containsKey(collIdFoobar), "foobar|coll2 must not be evicted");
     }
 
     // getEntriesByIds must pass a detached PkIndexEntry copy to FileSystem so a concurrent
-    // shiftPkPositionsAfterCompaction cannot move the offset between resolution and the read.
+    // applyPageCompaction cannot move the offset between resolution and the read.
     @Test
     public void test_getEntriesByIds_returns_detached_pk_copy() throws Exception {
         UserCache cache = new UserCache();
@@ -2,9 +2,12 @@ package org.techhouse.unit.concurrency;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -154,6 +157,81 @@ public class ResourceLockingTest {
         assertEquals(0, lock.getReadHoldCount());
     }
 
+    // Shared writers proceed together; the exclusive writer waits for all of them.
+    @Test
+    public void test_shared_writers_proceed_together_exclusive_waits() throws Exception {
+        final var rl = new ResourceLocking();
+        rl.lockSharedWrite("db", "coll");
+        final var shared = new CountDownLatch(1);
+        final var releaseShared = new CountDownLatch(1);
+        final var otherWriter = new Thread(() -> {
+            try {
+                rl.lockSharedWrite("db", "coll");
+                shared.countDown();
+                releaseShared.await();
+                rl.releaseSharedWrite("db", "coll");
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        otherWriter.start();
+        assertTrue(shared.await(2, TimeUnit.SECONDS), "a second shared writer must not wait for the first");
+
+        final var exclusive = new CountDownLatch(1);
+        final var exclusiveWriter = new Thread(() -> {
+            try {
+                rl.lock("db", "coll");
+                exclusive.countDown();
+                rl.release("db", "coll");
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        exclusiveWriter.start();
+        rl.releaseSharedWrite("db", "coll");
+        assertFalse(exclusive.await(200, TimeUnit.MILLISECONDS), "the exclusive writer waits for every shared one");
+        releaseShared.countDown();
+        assertTrue(exclusive.await(2, TimeUnit.SECONDS), "the exclusive writer proceeds once they are done");
+    }
+
+    // A document's lock is held by one writer at a time; another waits until it is released.
+    @Test
+    public void test_document_lock_blocks_same_document() throws Exception {
+        final var rl = new ResourceLocking();
+        rl.lockDocument("db", "coll", "doc1");
+        final var acquired = new CountDownLatch(1);
+        final var writer = new Thread(() -> {
+            try {
+                rl.lockDocument("db", "coll", "doc1");
+                acquired.countDown();
+                rl.releaseDocument("db", "coll", "doc1");
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        writer.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS), "the same document must wait");
+        rl.releaseDocument("db", "coll", "doc1");
+        assertTrue(acquired.await(2, TimeUnit.SECONDS), "the writer must proceed once the document is released");
+    }
+
+    // lockDocuments takes the lock of every id (once per stripe) and releaseDocuments gives them all back.
+    @Test
+    public void test_lock_documents_locks_every_id() throws Exception {
+        final var rl = new ResourceLocking();
+        final var ids = List.of("a", "b", "c", "a");
+        final var stripes = rl.lockDocuments("db", "coll", ids);
+        final var documentLocks = TestUtils.getPrivateField(rl, "documentLocks", ReentrantLock[].class);
+        for (var stripe : stripes) {
+            assertEquals(1, documentLocks[stripe].getHoldCount());
+        }
+        assertTrue(!stripes.isEmpty() && stripes.size() <= 3, "one stripe per distinct id at most");
+        rl.releaseDocuments(stripes);
+        for (var stripe : stripes) {
+            assertFalse(documentLocks[stripe].isLocked());
+        }
+    }
+
     @Test
     public void test_name_based_write_lock() throws Exception {
         final var rl = new ResourceLocking();
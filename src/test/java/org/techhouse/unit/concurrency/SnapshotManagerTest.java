@@ -0,0 +1,307 @@
+package org.techhouse.unit.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.techhouse.cache.Cache;
+import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
+import org.techhouse.config.Configuration;
+import org.techhouse.ex.SnapshotExpiredException;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.test.TestUtils;
+import org.techhouse.utils.ReflectionUtils;
+
+public class SnapshotManagerTest {
+    private static final String DB = "db";
+    private static final String COLL = "snapColl";
+
+    private final SnapshotManager manager = IocContainer.get(SnapshotManager.class);
+    private final ResourceLocking rl = IocContainer.get(ResourceLocking.class);
+
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        TestUtils.releaseAllLocks();
+    }
+
+    private static List<String> collection() {
+        return List.of(Cache.getCollectionIdentifier(DB, COLL));
+    }
+
+    private int recordedChanges() throws NoSuchFieldException, IllegalAccessException {
+        final var historiesType = new ReflectionUtils.TypeToken<Map<String, ?>>() {
+        };
+        final var history = TestUtils.getPrivateField(manager, "histories", historiesType)
+                .get(Cache.getCollectionIdentifier(DB, COLL));
+        final var changesType = new ReflectionUtils.TypeToken<Map<Long, List<?>>>() {
+        };
+        return TestUtils.getPrivateField(history, "changes", changesType).values().stream().mapToInt(List::size).sum();
+    }
+
+    // A snapshot pinned before a write sees the rows it created and retired; one pinned after it sees nothing.
+    @Test
+    public void test_snapshot_sees_writes_made_after_it() throws Exception {
+        final var row = "{\"_id\":\"b\"}\n".getBytes();
+        try (var before = manager.pin(collection())) {
+            rl.lock(DB, COLL);
+            manager.created(DB, COLL, "a", 0, 100);
+            manager.retired(DB, COLL, "b", 0, 0, row);
+            manager.created(DB, COLL, "b", 0, 120);
+            rl.release(DB, COLL);
+
+            final var delta = before.delta(DB, COLL);
+            assertTrue(delta.touches("a"));
+            assertTrue(delta.touches("b"));
+            assertTrue(delta.createdAt(0, 100));
+            assertTrue(delta.createdAt(0, 120));
+            assertNull(delta.rowAt("a"));
+            assertArrayEquals(row, delta.rowAt("b"));
+            assertEquals(Set.of("b"), delta.existingIds());
+            assertEquals(1, delta.retiredOn(0).size());
+            assertTrue(delta.retiredOn(1).isEmpty());
+
+            try (var after = manager.pin(collection())) {
+                assertTrue(after.delta(DB, COLL).isEmpty());
+                assertTrue(after.unchanged(DB, COLL));
+            }
+        }
+    }
+
+    // A row created and retired after the snapshot was never there for it.
+    @Test
+    public void test_row_created_after_snapshot_is_not_restored() throws Exception {
+        try (var snapshot = manager.pin(collection())) {
+            rl.lock(DB, COLL);
+            manager.created(DB, COLL, "c", 2, 0);
+            rl.release(DB, COLL);
+            rl.lock(DB, COLL);
+            manager.retired(DB, COLL, "c", 2, 0, "{}\n".getBytes());
+            rl.release(DB, COLL);
+
+            final var delta = snapshot.delta(DB, COLL);
+            assertTrue(delta.touches("c"));
+            assertNull(delta.rowAt("c"));
+            assertTrue(delta.existingIds().isEmpty());
+            assertTrue(delta.retiredOn(2).isEmpty());
+        }
+    }
+
+    // Changes are kept while a snapshot older than them is pinned, and dropped once it is closed.
+    @Test
+    public void test_changes_dropped_when_no_snapshot_needs_them() throws Exception {
+        final var snapshot = manager.pin(collection());
+        rl.lock(DB, COLL);
+        manager.created(DB, COLL, "d", 0, 0);
+        rl.release(DB, COLL);
+        assertEquals(1, recordedChanges());
+        snapshot.close();
+        assertEquals(0, recordedChanges());
+
+        rl.lock(DB, COLL);
+        manager.created(DB, COLL, "e", 0, 40);
+        rl.release(DB, COLL);
+        assertEquals(0, recordedChanges());
+    }
+
+    // A snapshot's delta is built once and reused by its reads until a write records another change.
+    @Test
+    public void test_delta_reused_until_a_change_is_recorded() throws Exception {
+        try (var snapshot = manager.pin(collection())) {
+            rl.lock(DB, COLL);
+            manager.created(DB, COLL, "f", 0, 0);
+            rl.release(DB, COLL);
+            final var delta = snapshot.delta(DB, COLL);
+            assertSame(delta, snapshot.delta(DB, COLL));
+
+            rl.lock(DB, COLL);
+            manager.created(DB, COLL, "g", 0, 40);
+            rl.release(DB, COLL);
+            final var later = snapshot.delta(DB, COLL);
+            assertNotSame(delta, later);
+            assertTrue(later.touches("f"));
+            assertTrue(later.touches("g"));
+        }
+    }
+
+    // Past maxSnapshotMemory the oldest snapshot is expired: the rows only it needed are dropped and its next read
+    // fails, while newer snapshots keep reading.
+    @Test
+    public void test_oldest_snapshot_expired_past_the_memory_limit() throws Exception {
+        final var config = Configuration.getInstance();
+        final var limit = config.getMaxSnapshotMemoryBytes();
+        final var retainedBefore = manager.retainedBytes();
+        TestUtils.setPrivateField(config, "maxSnapshotMemoryBytes", retainedBefore + 1024L);
+        try (var oldest = manager.pin(collection())) {
+            rl.lock(DB, COLL);
+            manager.retired(DB, COLL, "h", 0, 0, new byte[512]);
+            rl.release(DB, COLL);
+            try (var newer = manager.pin(collection())) {
+                rl.lock(DB, COLL);
+                manager.retired(DB, COLL, "i", 0, 600, new byte[512]);
+                rl.release(DB, COLL);
+
+                assertThrows(SnapshotExpiredException.class, () -> oldest.delta(DB, COLL));
+                final var delta = newer.delta(DB, COLL);
+                assertTrue(delta.touches("i"));
+                assertFalse(delta.touches("h"));
+                assertEquals(1, recordedChanges());
+            }
+            assertEquals(retainedBefore, manager.retainedBytes());
+        } finally {
+            TestUtils.setPrivateField(config, "maxSnapshotMemoryBytes", limit);
+        }
+    }
+
+    // Only a write in progress changes what a snapshot may reuse: it is unchanged until a writer starts.
+    @Test
+    public void test_unchanged_until_a_write_starts() throws Exception {
+        try (var snapshot = manager.pin(collection())) {
+            assertTrue(snapshot.unchanged(DB, COLL));
+            rl.lock(DB, COLL);
+            assertFalse(snapshot.unchanged(DB, COLL));
+            assertFalse(snapshot.runIfUnchanged(DB, COLL, () -> fail("must not run during a write")));
+            rl.release(DB, COLL);
+            assertFalse(snapshot.unchanged(DB, COLL));
+        }
+    }
+
+    // Shared writers finish out of order: a version is only committed once it and every older one are done, so a
+    // snapshot never sees part of an unfinished write.
+    @Test
+    public void test_overlapping_writers_commit_in_version_order() throws Exception {
+        final var started = new CountDownLatch(1);
+        final var finish = new CountDownLatch(1);
+        final var older = new Thread(() -> {
+            try {
+                rl.lockSharedWrite(DB, COLL);
+                manager.created(DB, COLL, "x", 0, 0);
+                started.countDown();
+                finish.await();
+                rl.releaseSharedWrite(DB, COLL);
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        older.start();
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        rl.lockSharedWrite(DB, COLL);
+        assertTrue(manager.isWriting(DB, COLL));
+        manager.created(DB, COLL, "y", 0, 40);
+        rl.releaseSharedWrite(DB, COLL);
+        assertFalse(manager.isWriting(DB, COLL));
+
+        try (var during = manager.pin(collection())) {
+            final var delta = during.delta(DB, COLL);
+            assertTrue(delta.touches("x"), "the older write is still running");
+            assertTrue(delta.touches("y"), "a newer write is not committed before the older one");
+            finish.countDown();
+            older.join(2000);
+            try (var after = manager.pin(collection())) {
+                assertTrue(after.delta(DB, COLL).isEmpty());
+                assertTrue(after.unchanged(DB, COLL));
+            }
+        }
+    }
+
+    // Compaction-style exclusivity fails while a snapshot is pinned, and keeps new snapshots out once taken.
+    @Test
+    public void test_try_exclusive_respects_pinned_snapshots() throws Exception {
+        final var snapshot = manager.pin(collection());
+        rl.lock(DB, COLL);
+        assertFalse(rl.tryExclusive(DB, COLL));
+        rl.release(DB, COLL);
+        snapshot.close();
+
+        rl.lock(DB, COLL);
+        assertTrue(rl.tryExclusive(DB, COLL));
+        final var pinned = new CountDownLatch(1);
+        final var reader = new Thread(() -> {
+            try (var ignored = manager.pin(collection())) {
+                pinned.countDown();
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        reader.start();
+        assertFalse(pinned.await(200, TimeUnit.MILLISECONDS), "a snapshot must wait for the exclusive writer");
+        rl.release(DB, COLL);
+        assertTrue(pinned.await(2, TimeUnit.SECONDS), "the snapshot must be pinned once the writer is done");
+    }
+
+    // lockExclusive waits for the pinned snapshots to be closed.
+    @Test
+    public void test_lock_exclusive_waits_for_snapshots() throws Exception {
+        final var snapshot = manager.pin(collection());
+        final var locked = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var writer = new Thread(() -> {
+            try {
+                rl.lockExclusive(DB, COLL);
+                locked.countDown();
+                release.await();
+                rl.release(DB, COLL);
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        writer.start();
+        assertFalse(locked.await(200, TimeUnit.MILLISECONDS), "an exclusive writer must wait for snapshots");
+        snapshot.close();
+        assertTrue(locked.await(2, TimeUnit.SECONDS), "the writer must proceed once the snapshot is closed");
+        release.countDown();
+        writer.join(2000);
+    }
+
+    // While lockExclusive waits for a snapshot it keeps new snapshots out but not the writers of the collection.
+    @Test
+    public void test_lock_exclusive_does_not_hold_writers_while_waiting_for_snapshots() throws Exception {
+        final var snapshot = manager.pin(collection());
+        final var locked = new CountDownLatch(1);
+        final var exclusive = new Thread(() -> {
+            try {
+                rl.lockExclusive(DB, COLL);
+                locked.countDown();
+                rl.release(DB, COLL);
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        exclusive.start();
+        assertFalse(locked.await(200, TimeUnit.MILLISECONDS), "an exclusive writer must wait for snapshots");
+        final var wrote = new CountDownLatch(1);
+        final var writer = new Thread(() -> {
+            try {
+                rl.lockSharedWrite(DB, COLL);
+                rl.releaseSharedWrite(DB, COLL);
+                wrote.countDown();
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        writer.start();
+        assertTrue(wrote.await(2, TimeUnit.SECONDS), "a writer must not wait for the snapshot");
+        final var pinned = new CountDownLatch(1);
+        final var reader = new Thread(() -> {
+            try (var ignored = manager.pin(collection())) {
+                pinned.countDown();
+            } catch (InterruptedException ignored) {
+                // the test thread gave up on it
+            }
+        });
+        reader.start();
+        assertFalse(pinned.await(200, TimeUnit.MILLISECONDS), "a new snapshot must wait for the exclusive writer");
+        snapshot.close();
+        assertTrue(locked.await(2, TimeUnit.SECONDS), "the writer must proceed once the snapshot is closed");
+        assertTrue(pinned.await(2, TimeUnit.SECONDS), "the snapshot must be pinned once the writer is done");
+        exclusive.join(2000);
+        writer.join(2000);
+        reader.join(2000);
+    }
+}
@@ -62,6 +62,17 @@ public class ConfigReaderTest {
         expectedConfig.put("tlsEnabled", "false");
         expectedConfig.put("tlsKeystorePath", "certs/lwnrdb.p12");
         expectedConfig.put("tlsKeystorePassword", "change_it");
+        expectedConfig.put("walEnabled", "true");
+        expectedConfig.put("walGroupCommitMillis", "2");
+        expectedConfig.put("walCheckpointIntervalSeconds", "30");
+        expectedConfig.put("pageCompactionDeadPercent", "50");
+        expectedConfig.put("mmapReadsEnabled", "false");
+        expectedConfig.put("mmapMaxMappedPages", "64");
+        expectedConfig.put("cursorIdleTimeoutSeconds", "600");
+        expectedConfig.put("maxCursorsPerClient", "16");
+        expectedConfig.put("scanThreads", "0");
+        expectedConfig.put("maxInFlightRequests", "16");
+        expectedConfig.put("maxSnapshotMemory", "64Mb");
 
         // Act
         Map<String, String> actualConfig = ConfigReader.loadConfiguration();
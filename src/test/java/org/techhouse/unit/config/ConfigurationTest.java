@@ -131,6 +131,17 @@ public class ConfigurationTest {
         map.put("defaultAdminPassword", "administrator");
         map.put("maxMemory", "512mb");
         map.put("tlsEnabled", "false");
+        map.put("walEnabled", "true");
+        map.put("walGroupCommitMillis", "2");
+        map.put("walCheckpointIntervalSeconds", "30");
+        map.put("pageCompactionDeadPercent", "50");
+        map.put("mmapReadsEnabled", "false");
+        map.put("mmapMaxMappedPages", "64");
+        map.put("cursorIdleTimeoutSeconds", "600");
+        map.put("maxCursorsPerClient", "16");
+        map.put("scanThreads", "0");
+        map.put("maxInFlightRequests", "16");
+        map.put("maxSnapshotMemory", "64Mb");
         return map;
     }
 
@@ -27,6 +27,17 @@ public class ConfigurationValidatorTest {
         map.put("defaultAdminPassword", "administrator");
         map.put("maxMemory", "512Mb");
         map.put("tlsEnabled", "false");
+        map.put("walEnabled", "true");
+        map.put("walGroupCommitMillis", "2");
+        map.put("walCheckpointIntervalSeconds", "30");
+        map.put("pageCompactionDeadPercent", "50");
+        map.put("mmapReadsEnabled", "false");
+        map.put("mmapMaxMappedPages", "64");
+        map.put("cursorIdleTimeoutSeconds", "600");
+        map.put("maxCursorsPerClient", "16");
+        map.put("scanThreads", "0");
+        map.put("maxInFlightRequests", "16");
+        map.put("maxSnapshotMemory", "64Mb");
         return map;
     }
 
@@ -72,6 +83,49 @@ public class ConfigurationValidatorTest {
         assertHasError(tempDir, "maxLogFiles", "0", "maxLogFiles");
     }
 
+    @Test
+    public void test_invalid_page_compaction_percent(@TempDir Path tempDir) {
+        assertHasError(tempDir, "pageCompactionDeadPercent", "0", "pageCompactionDeadPercent");
+        assertHasError(tempDir, "pageCompactionDeadPercent", "101", "pageCompactionDeadPercent");
+        assertHasError(tempDir, "pageCompactionDeadPercent", "half", "pageCompactionDeadPercent");
+    }
+
+    @Test
+    public void test_invalid_mmap_reads(@TempDir Path tempDir) {
+        assertHasError(tempDir, "mmapReadsEnabled", "sometimes", "mmapReadsEnabled");
+        assertHasError(tempDir, "mmapMaxMappedPages", "0", "mmapMaxMappedPages");
+    }
+
+    @Test
+    public void test_invalid_cursor_idle_timeout(@TempDir Path tempDir) {
+        assertHasError(tempDir, "cursorIdleTimeoutSeconds", "0", "cursorIdleTimeoutSeconds");
+        assertHasError(tempDir, "cursorIdleTimeoutSeconds", "soon", "cursorIdleTimeoutSeconds");
+    }
+
+    @Test
+    public void test_invalid_max_cursors_per_client(@TempDir Path tempDir) {
+        assertHasError(tempDir, "maxCursorsPerClient", "0", "maxCursorsPerClient");
+        assertHasError(tempDir, "maxCursorsPerClient", "lots", "maxCursorsPerClient");
+    }
+
+    @Test
+    public void test_invalid_scan_threads(@TempDir Path tempDir) {
+        assertHasError(tempDir, "scanThreads", "-1", "scanThreads");
+        assertHasError(tempDir, "scanThreads", "all", "scanThreads");
+    }
+
+    @Test
+    public void test_invalid_max_in_flight_requests(@TempDir Path tempDir) {
+        assertHasError(tempDir, "maxInFlightRequests", "0", "maxInFlightRequests");
+        assertHasError(tempDir, "maxInFlightRequests", "many", "maxInFlightRequests");
+    }
+
+    @Test
+    public void test_invalid_max_snapshot_memory(@TempDir Path tempDir) {
+        assertHasError(tempDir, "maxSnapshotMemory", "0", "maxSnapshotMemory");
+        assertHasError(tempDir, "maxSnapshotMemory", "lots", "maxSnapshotMemory");
+    }
+
     @Test
     public void test_invalid_sizes(@TempDir Path tempDir) {
         assertHasError(tempDir, "maxPageSize", "nonsense", "maxPageSize");
@@ -4,13 +4,18 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.techhouse.config.Configuration;
+import org.techhouse.conn.AggregateCursor;
 import org.techhouse.conn.ClientTracker;
 import org.techhouse.data.Client;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ops.req.AggregateRequest;
 import org.techhouse.test.TestUtils;
 import org.techhouse.utils.ReflectionUtils;
 
@@ -172,4 +177,127 @@ public class ClientTrackerTest {
         ClientTracker clientTracker = new ClientTracker();
         assertNull(clientTracker.getAuthenticatedUsername(null));
     }
+
+    private static UUID addPlainClient(ClientTracker clientTracker) throws NoSuchFieldException, IllegalAccessException {
+        final var clientsType = new ReflectionUtils.TypeToken<Map<UUID, Client>>() {
+        };
+        final var clients = TestUtils.getPrivateField(clientTracker, "clients", clientsType);
+        final var clientId = UUID.randomUUID();
+        clients.put(clientId, new Client("127.0.0.1"));
+        return clientId;
+    }
+
+    private static AggregateCursor cursorOver(int documents) {
+        final var request = new AggregateRequest("db", "coll");
+        request.setBatchSize(2);
+        return new AggregateCursor(request, Stream.generate(JsonObject::new).limit(documents));
+    }
+
+    // A cursor is only visible to the client that registered it and is gone once closed
+    @Test
+    public void test_cursor_is_scoped_to_its_client() throws NoSuchFieldException, IllegalAccessException {
+        ClientTracker clientTracker = new ClientTracker();
+        final var owner = addPlainClient(clientTracker);
+        final var other = addPlainClient(clientTracker);
+        final var cursor = cursorOver(5);
+
+        assertTrue(clientTracker.registerCursor(owner, cursor));
+
+        assertSame(cursor, clientTracker.getCursor(owner, cursor.getId()));
+        assertNull(clientTracker.getCursor(other, cursor.getId()));
+        assertFalse(clientTracker.closeCursor(other, cursor.getId()));
+        assertTrue(clientTracker.closeCursor(owner, cursor.getId()));
+        assertNull(clientTracker.getCursor(owner, cursor.getId()));
+        assertFalse(cursor.hasMore());
+    }
+
+    // Registering for an unknown client is refused and closes the cursor
+    @Test
+    public void test_register_cursor_for_unknown_client_closes_it() {
+        ClientTracker clientTracker = new ClientTracker();
+        final var cursor = cursorOver(5);
+
+        assertFalse(clientTracker.registerCursor(UUID.randomUUID(), cursor));
+        assertFalse(cursor.hasMore());
+    }
+
+    // Batches are pulled from the stream in order until it is exhausted
+    @Test
+    public void test_cursor_reads_batches_in_order() {
+        final var request = new AggregateRequest("db", "coll");
+        request.setBatchSize(2);
+        final var docs = Stream.of(1, 2, 3).map(i -> {
+            final var doc = new JsonObject();
+            doc.addProperty("i", i);
+            return doc;
+        });
+        final var cursor = new AggregateCursor(request, docs);
+
+        final var first = cursor.nextBatch(2).stream()
+                .map(doc -> doc.get("i").asJsonNumber().getValue().intValue()).toList();
+        assertEquals(List.of(1, 2), first);
+        assertTrue(cursor.hasMore());
+        assertEquals(1, cursor.nextBatch(2).size());
+        assertFalse(cursor.hasMore());
+    }
+
+    // Only the cursors unused for longer than the timeout are closed
+    @Test
+    public void test_close_idle_cursors() throws NoSuchFieldException, IllegalAccessException {
+        ClientTracker clientTracker = new ClientTracker();
+        final var clientId = addPlainClient(clientTracker);
+        final var idle = cursorOver(5);
+        final var active = cursorOver(5);
+        clientTracker.registerCursor(clientId, idle);
+        clientTracker.registerCursor(clientId, active);
+        TestUtils.setPrivateField(idle, "lastAccessMillis", System.currentTimeMillis() - 60_000);
+
+        assertEquals(1, clientTracker.closeIdleCursors(30_000));
+
+        assertNull(clientTracker.getCursor(clientId, idle.getId()));
+        assertFalse(idle.hasMore());
+        assertSame(active, clientTracker.getCursor(clientId, active.getId()));
+    }
+
+    // A client at maxCursorsPerClient has its least recently read cursor closed to make room for a new one
+    @Test
+    public void test_register_cursor_over_limit_closes_least_recently_read()
+            throws NoSuchFieldException, IllegalAccessException {
+        final var config = Configuration.getInstance();
+        final var limit = config.getMaxCursorsPerClient();
+        TestUtils.setPrivateField(config, "maxCursorsPerClient", 2);
+        try {
+            ClientTracker clientTracker = new ClientTracker();
+            final var clientId = addPlainClient(clientTracker);
+            final var stale = cursorOver(5);
+            final var recent = cursorOver(5);
+            clientTracker.registerCursor(clientId, stale);
+            clientTracker.registerCursor(clientId, recent);
+            TestUtils.setPrivateField(stale, "lastAccessMillis", System.currentTimeMillis() - 60_000);
+            final var newest = cursorOver(5);
+
+            assertTrue(clientTracker.registerCursor(clientId, newest));
+
+            assertNull(clientTracker.getCursor(clientId, stale.getId()));
+            assertFalse(stale.hasMore());
+            assertSame(recent, clientTracker.getCursor(clientId, recent.getId()));
+            assertSame(newest, clientTracker.getCursor(clientId, newest.getId()));
+        } finally {
+            TestUtils.setPrivateField(config, "maxCursorsPerClient", limit);
+        }
+    }
+
+    // Removing a client closes its cursors
+    @Test
+    public void test_remove_client_closes_its_cursors() throws NoSuchFieldException, IllegalAccessException {
+        ClientTracker clientTracker = new ClientTracker();
+        final var clientId = addPlainClient(clientTracker);
+        final var cursor = cursorOver(5);
+        clientTracker.registerCursor(clientId, cursor);
+
+        clientTracker.removeById(clientId);
+
+        assertFalse(cursor.hasMore());
+        assertNull(clientTracker.getCursor(clientId, cursor.getId()));
+    }
 }
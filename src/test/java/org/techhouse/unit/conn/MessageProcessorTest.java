@@ -330,6 +330,55 @@ public class MessageProcessorTest {
         assertTrue(response.contains("FILTER step"), "Should suggest moving the FILTER step");
     }
 
+    // Requests with a requestId are pipelined: every response carries the id of the request it answers.
+    @Test
+    public void test_pipelined_requests_echo_their_request_ids() throws Exception {
+        createAnalyzeAdmin("pipeline_admin");
+        final var messages = new StringBuilder(
+                "{\"type\":\"AUTHENTICATE\",\"username\":\"pipeline_admin\",\"password\":\"password123\"}\n");
+        for (var i = 0; i < 5; i++) {
+            messages.append("{\"type\":\"SAVE\",\"requestId\":\"req-").append(i).append("\",\"databaseName\":\"")
+                    .append(TestGlobals.DB).append("\",\"collectionName\":\"").append(TestGlobals.COLL)
+                    .append("\",\"object\":{\"_id\":\"pipe").append(i).append("\"}}\n");
+        }
+
+        final var lines = runMessages(messages.toString()).lines().toList();
+
+        assertEquals(6, lines.size());
+        assertTrue(lines.getFirst().contains("AUTHENTICATE"), "AUTHENTICATE is answered before anything after it");
+        for (var i = 0; i < 5; i++) {
+            final var requestId = "\"requestId\":\"req-" + i + "\"";
+            assertEquals(1, lines.stream().filter(line -> line.contains(requestId)).count(),
+                    "one response for req-" + i);
+        }
+        assertTrue(lines.stream().skip(1).allMatch(line -> line.contains("\"status\":\"OK\"")));
+    }
+
+    // A request without a requestId waits for the pipelined ones before it, so it sees what they wrote.
+    @Test
+    public void test_request_without_id_waits_for_pipelined_requests() throws Exception {
+        createAnalyzeAdmin("pipeline_admin2");
+        final var messages = new StringBuilder(
+                "{\"type\":\"AUTHENTICATE\",\"username\":\"pipeline_admin2\",\"password\":\"password123\"}\n");
+        for (var i = 0; i < 3; i++) {
+            messages.append("{\"type\":\"SAVE\",\"requestId\":\"w").append(i).append("\",\"databaseName\":\"")
+                    .append(TestGlobals.DB).append("\",\"collectionName\":\"").append(TestGlobals.COLL)
+                    .append("\",\"object\":{\"_id\":\"ordered").append(i).append("\"}}\n");
+        }
+        messages.append("{\"type\":\"AGGREGATE\",\"databaseName\":\"").append(TestGlobals.DB)
+                .append("\",\"collectionName\":\"").append(TestGlobals.COLL).append("\",\"aggregationSteps\":[]}\n");
+
+        final var lines = runMessages(messages.toString()).lines().toList();
+
+        assertEquals(5, lines.size());
+        final var last = lines.getLast();
+        assertTrue(last.contains("AGGREGATE"), "the request without an id is answered last");
+        assertFalse(last.contains("requestId"), "a response to a request without an id carries none");
+        for (var i = 0; i < 3; i++) {
+            assertTrue(last.contains("ordered" + i), "the AGGREGATE sees the save of ordered" + i);
+        }
+    }
+
     // An IOException on the output stream is handled without crashing
     @Test
     public void test_ioexception_on_output_stream_is_handled() throws Exception {
@@ -0,0 +1,123 @@
+package org.techhouse.unit.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.NumericFieldIndex;
+
+public class NumericFieldIndexTest {
+    private static NumericFieldIndex sample() {
+        return NumericFieldIndex.fromEntries(List.of(new FieldIndexEntry<>("db", "coll", 30, Set.of("c")),
+                new FieldIndexEntry<>("db", "coll", 10.0, Set.of("a1", "a2")),
+                new FieldIndexEntry<>("db", "coll", 20, Set.of("b"))));
+    }
+
+    // Entries are sorted by value and whole numbers of any boxed type are merged by value
+    @Test
+    public void test_from_entries_sorts_and_merges_equal_values() {
+        final var index = NumericFieldIndex.fromEntries(List.of(new FieldIndexEntry<>("db", "coll", 5, Set.of("x")),
+                new FieldIndexEntry<>("db", "coll", 1.5, Set.of("y")),
+                new FieldIndexEntry<>("db", "coll", 5.0, Set.of("z")),
+                new FieldIndexEntry<>("db", "coll", 7, Set.of())));
+        assertEquals(2, index.size());
+        assertEquals(3, index.idCount());
+        assertEquals(1.5, index.keyAt(0));
+        assertEquals(5.0, index.keyAt(1));
+        assertEquals(Set.of("x", "z"), index.idsBetween(1, 2));
+    }
+
+    // Bounds are found by binary search and a range of values is one slice of the packed ids
+    @Test
+    public void test_bounds_and_slices() {
+        final var index = sample();
+        assertEquals(1, index.firstAtLeast(20));
+        assertEquals(2, index.firstAbove(20));
+        assertEquals(1, index.firstAtLeast(15));
+        assertEquals(0, index.firstAtLeast(-1));
+        assertEquals(3, index.firstAbove(30));
+        assertEquals(Set.of("b", "c"), index.idsBetween(1, 3));
+        assertEquals(Set.of("a1", "a2", "c"), index.idsOutside(1, 2));
+        assertTrue(index.idsBetween(2, 2).isEmpty());
+        assertEquals(-1, index.indexOfKey(15));
+        assertEquals(2, index.indexOfKey(30));
+    }
+
+    // The value holding an id is found from the mapped slot of the id, built on first use
+    @Test
+    public void test_index_of_id() {
+        final var index = sample();
+        assertFalse(index.hasIdSlots());
+        assertEquals(0, index.indexOfId("a2"));
+        assertTrue(index.hasIdSlots());
+        assertEquals(1, index.indexOfId("b"));
+        assertEquals(2, index.indexOfId("c"));
+        assertEquals(-1, index.indexOfId("missing"));
+    }
+
+    // Ids are added in place, to existing values and to new ones at either end or in between
+    @Test
+    public void test_add_to_existing_and_new_values() {
+        final var index = sample();
+        assertTrue(index.add(20, "b2"));
+        assertTrue(index.add(15, "n"));
+        assertTrue(index.add(40, "last"));
+        assertTrue(index.add(-5, "first"));
+        assertEquals(6, index.size());
+        assertEquals(8, index.idCount());
+        assertEquals(Set.of("b", "b2"), index.idsBetween(index.indexOfKey(20), index.indexOfKey(20) + 1));
+        assertEquals(Set.of("n"), index.idsBetween(index.indexOfKey(15), index.indexOfKey(15) + 1));
+        assertEquals(Set.of("first"), index.idsBetween(0, 1));
+        assertEquals(Set.of("last"), index.idsBetween(5, 6));
+        assertEquals(Set.of("c"), index.idsBetween(index.indexOfKey(30), index.indexOfKey(30) + 1));
+        assertEquals(index.indexOfKey(15), index.indexOfId("n"));
+        assertFalse(index.add(20, "b"));
+        assertEquals(8, index.idCount());
+    }
+
+    // Adding an id under another value moves it there
+    @Test
+    public void test_add_moves_id_from_its_previous_value() {
+        final var index = sample();
+        assertTrue(index.add(30, "b"));
+        assertEquals(2, index.size());
+        assertEquals(4, index.idCount());
+        assertEquals(Set.of("b", "c"), index.idsBetween(1, 2));
+        assertEquals(1, index.indexOfId("b"));
+    }
+
+    // Removing the last id of a value drops the value; the ids left keep their mapped slots
+    @Test
+    public void test_remove_drops_emptied_values() {
+        final var index = sample();
+        index.add(10, "a3");
+        assertTrue(index.remove(10, "a1"));
+        assertTrue(index.remove(20, "b"));
+        assertEquals(2, index.size());
+        assertEquals(3, index.idCount());
+        assertEquals(Set.of("a2", "a3"), index.idsBetween(0, 1));
+        assertEquals(Set.of("c"), index.idsBetween(1, 2));
+        assertEquals(1, index.indexOfId("c"));
+        assertFalse(index.remove(10, "missing"));
+        assertFalse(index.remove(99, "c"));
+        assertTrue(index.remove(10, "a3"));
+        assertTrue(index.remove(10, "a2"));
+        assertEquals(1, index.size());
+        assertEquals(-1, index.indexOfId("a2"));
+        assertEquals(0, index.indexOfId("c"));
+    }
+
+    // Entries are materialized detached, with Double values like the index files load them
+    @Test
+    public void test_to_entries() {
+        final var index = sample();
+        final var entries = index.toEntries("db", "coll");
+        assertEquals(3, entries.size());
+        assertEquals(10.0, entries.getFirst().getValue());
+        assertEquals(Set.of("a1", "a2"), entries.getFirst().getIds());
+        entries.getFirst().getIds().add("other");
+        assertEquals(Set.of("a1", "a2"), index.idsBetween(0, 1));
+    }
+}
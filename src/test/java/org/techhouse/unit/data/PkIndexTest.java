@@ -0,0 +1,97 @@
+package org.techhouse.unit.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.techhouse.data.PkIndex;
+import org.techhouse.data.PkIndexEntry;
+
+public class PkIndexTest {
+    private static PkIndexEntry entry(String id, long position) {
+        return new PkIndexEntry("db", "coll", id, position, 10, 0);
+    }
+
+    // Entries are kept sorted by id whatever order they are added in
+    @Test
+    public void test_entries_sorted_by_id() {
+        final var index = new PkIndex(List.of(entry("c", 20), entry("a", 0), entry("b", 10)));
+        assertEquals(3, index.size());
+        assertEquals(List.of("a", "b", "c"), index.values().stream().map(PkIndexEntry::getValue).toList());
+        assertTrue(index.contains("c"));
+        assertNull(index.get("d"));
+    }
+
+    // put replaces the entry of the same id; remove drops it, and removing a missing id changes nothing
+    @Test
+    public void test_put_replaces_and_remove() {
+        final var index = new PkIndex(List.of(entry("a", 0), entry("b", 10)));
+        index.put(entry("a", 50));
+        assertEquals(2, index.size());
+        assertEquals(50, index.get("a").getPosition());
+
+        index.remove("a");
+        index.remove("missing");
+        assertEquals(1, index.size());
+        assertFalse(index.contains("a"));
+        index.remove("b");
+        assertTrue(index.isEmpty());
+    }
+
+    // Every entry is in its page's bucket: a move to another page moves it there, a removal drops it
+    @Test
+    public void test_page_buckets_follow_entries() {
+        final var index = new PkIndex(List.of(entry("a", 0), new PkIndexEntry("db", "coll", "b", 0, 10, 1),
+                entry("c", 10)));
+        assertEquals(List.of("a", "c"), index.onPage(0).stream().map(PkIndexEntry::getValue).toList());
+        assertEquals(1, index.onPage(1).size());
+
+        index.put(new PkIndexEntry("db", "coll", "a", 20, 10, 1));
+        assertEquals(List.of("c"), index.onPage(0).stream().map(PkIndexEntry::getValue).toList());
+        assertEquals(List.of("a", "b"), index.onPage(1).stream().map(PkIndexEntry::getValue).toList());
+
+        index.put(entry("c", 40));
+        assertEquals(40, index.onPage(0).iterator().next().getPosition(), "an update in place replaces it");
+        index.remove("c");
+        assertTrue(index.onPage(0).isEmpty());
+        assertTrue(index.onPage(7).isEmpty());
+    }
+
+    // Writers of different ids change the index at the same time without losing any entry
+    @Test
+    public void test_concurrent_writers_keep_every_entry() throws Exception {
+        final var index = new PkIndex(List.of());
+        final var start = new CountDownLatch(1);
+        final var errors = new ConcurrentLinkedQueue<Throwable>();
+        final var threads = new ArrayList<Thread>();
+        for (var t = 0; t < 4; t++) {
+            final var prefix = "t" + t + "-";
+            final var thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (var i = 0; i < 1000; i++) {
+                        index.put(entry(prefix + i, i));
+                        if (i % 2 == 1) {
+                            index.remove(prefix + i);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.isEmpty());
+        assertEquals(2000, index.size());
+        assertEquals(2000, index.values().size());
+        assertEquals(2000, index.onPage(0).size());
+    }
+}
@@ -0,0 +1,123 @@
+package org.techhouse.unit.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.techhouse.data.RowIdBitmap;
+
+public class RowIdBitmapTest {
+    private static RowIdBitmap range(int from, int to, int step) {
+        final var bitmap = new RowIdBitmap();
+        for (var row = from; row < to; row += step) {
+            bitmap.add(row);
+        }
+        return bitmap;
+    }
+
+    // Rows are kept once and iterated in ascending order across groups
+    @Test
+    public void test_add_contains_and_order() {
+        final var bitmap = RowIdBitmap.of(70000, 3, 1, 3, 65536);
+        assertEquals(4, bitmap.cardinality());
+        assertTrue(bitmap.contains(1));
+        assertTrue(bitmap.contains(65536));
+        assertFalse(bitmap.contains(2));
+        assertFalse(bitmap.contains(131072));
+        assertArrayEquals(new int[] {1, 3, 65536, 70000}, bitmap.toArray());
+        assertTrue(new RowIdBitmap().isEmpty());
+    }
+
+    // A group denser than the array layout switches to the bit layout and keeps every row
+    @Test
+    public void test_dense_group() {
+        final var bitmap = range(0, 10000, 1);
+        assertEquals(10000, bitmap.cardinality());
+        assertTrue(bitmap.contains(4096));
+        assertTrue(bitmap.contains(9999));
+        assertFalse(bitmap.contains(10000));
+        assertArrayEquals(IntStream.range(0, 10000).toArray(), bitmap.toArray());
+    }
+
+    // Set operations agree between sparse and dense groups
+    @Test
+    public void test_set_operations_across_layouts() {
+        final var dense = range(0, 10000, 1);
+        final var sparse = range(0, 200000, 7);
+        final var expectedAnd = IntStream.range(0, 10000).filter(row -> row % 7 == 0).toArray();
+        assertArrayEquals(expectedAnd, dense.and(sparse).toArray());
+        assertArrayEquals(expectedAnd, sparse.and(dense).toArray());
+        final var expectedOr = IntStream.range(0, 200000).filter(row -> row < 10000 || row % 7 == 0).toArray();
+        assertArrayEquals(expectedOr, dense.or(sparse).toArray());
+        assertArrayEquals(expectedOr, sparse.or(dense).toArray());
+        assertArrayEquals(IntStream.range(0, 10000).filter(row -> row % 7 != 0).toArray(),
+                dense.andNot(sparse).toArray());
+        assertArrayEquals(IntStream.range(10000, 200000).filter(row -> row % 7 == 0).toArray(),
+                sparse.andNot(dense).toArray());
+        assertEquals(range(0, 10000, 2), range(0, 10000, 1).and(range(0, 20000, 2)));
+    }
+
+    // Emptied groups are dropped from the results
+    @Test
+    public void test_empty_results() {
+        final var bitmap = RowIdBitmap.of(1, 2, 70000);
+        assertTrue(bitmap.andNot(bitmap).isEmpty());
+        assertTrue(bitmap.and(RowIdBitmap.of(3, 80000)).isEmpty());
+        assertEquals(bitmap, bitmap.or(new RowIdBitmap()));
+    }
+
+    // Results do not share state with their operands
+    @Test
+    public void test_results_are_independent() {
+        final var left = RowIdBitmap.of(1, 2);
+        final var right = RowIdBitmap.of(70000);
+        final var union = left.or(right);
+        final var difference = left.andNot(right);
+        union.add(3);
+        difference.add(4);
+        assertEquals(RowIdBitmap.of(1, 2), left);
+        assertEquals(RowIdBitmap.of(70000), right);
+        assertEquals(RowIdBitmap.of(1, 2, 3, 70000), union);
+        assertEquals(RowIdBitmap.of(1, 2, 4), difference);
+    }
+
+    // Removing rows empties groups and turns a sparse enough bitmap group back into an array
+    @Test
+    public void test_remove_across_layouts() {
+        final var bitmap = range(0, 10000, 1);
+        bitmap.add(70000);
+        for (var row = 0; row < 10000; row += 2) {
+            bitmap.remove(row);
+        }
+        bitmap.remove(70000);
+        bitmap.remove(123456);
+        assertEquals(range(1, 10000, 2), bitmap);
+        assertFalse(bitmap.contains(70000));
+        final var denseBytes = bitmap.estimatedBytes();
+        for (var row = 1; row < 8000; row += 2) {
+            bitmap.remove(row);
+        }
+        assertEquals(range(8001, 10000, 2), bitmap);
+        assertTrue(bitmap.estimatedBytes() < denseBytes);
+        for (var row = 8001; row < 10000; row += 2) {
+            bitmap.remove(row);
+        }
+        assertTrue(bitmap.isEmpty());
+    }
+
+    // addAll merges into the bitmap without sharing groups with the operand
+    @Test
+    public void test_add_all() {
+        final var bitmap = RowIdBitmap.of(1, 70000);
+        final var other = range(0, 10000, 3);
+        other.add(140000);
+        bitmap.addAll(other);
+        other.add(2);
+        final var expected = range(0, 10000, 3);
+        expected.add(1);
+        expected.add(70000);
+        expected.add(140000);
+        assertEquals(expected, bitmap);
+        assertFalse(bitmap.contains(2));
+    }
+}
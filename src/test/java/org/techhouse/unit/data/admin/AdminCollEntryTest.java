@@ -3,12 +3,16 @@ package org.techhouse.unit.data.admin;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
+import org.techhouse.data.DbEntry;
+import org.techhouse.data.FieldStatistics;
 import org.techhouse.data.admin.AdminCollEntry;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonObject;
@@ -135,6 +139,30 @@ public class AdminCollEntryTest {
         assertNotEquals(entry1.hashCode(), entry2.hashCode());
     }
 
+    @Test
+    public void test_statistics_round_trip_through_json() {
+        AdminCollEntry entry = new AdminCollEntry("db", "coll", new HashSet<>(List.of("status")));
+        entry.setStatistics(new HashMap<>(Map.of("status", new FieldStatistics(3, 12))));
+
+        DbEntry stored = DbEntry.fromString(Globals.ADMIN_DB_NAME, Globals.ADMIN_COLLECTIONS_COLLECTION_NAME,
+                entry.toFileEntry());
+        AdminCollEntry parsed = AdminCollEntry.fromJsonObject(stored.getData());
+
+        assertEquals(new FieldStatistics(3, 12), parsed.getStatistics().get("status"));
+        assertEquals(4.0, parsed.getStatistics().get("status").documentsPerValue());
+    }
+
+    @Test
+    public void test_from_json_object_without_statistics() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty(Globals.PK_FIELD, "test_id");
+        jsonObject.add(INDEXES_FIELD_NAME, new JsonArray());
+
+        AdminCollEntry entry = AdminCollEntry.fromJsonObject(jsonObject);
+
+        assertTrue(entry.getStatistics().isEmpty());
+    }
+
     @Test
     public void test_toString_not_null() {
         AdminCollEntry entry = new AdminCollEntry("db", "coll");
@@ -0,0 +1,138 @@
+package org.techhouse.unit.ejson.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonBaseElement;
+import org.techhouse.ejson.elements.JsonBoolean;
+import org.techhouse.ejson.elements.JsonCustom;
+import org.techhouse.ejson.elements.JsonNull;
+import org.techhouse.ejson.elements.JsonNumber;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.elements.JsonString;
+import org.techhouse.ejson.exceptions.MalformedJsonException;
+import org.techhouse.ejson.exceptions.MissingEndOfStringException;
+import org.techhouse.ejson.exceptions.UnexpectedCharacterException;
+import org.techhouse.ejson.internal.JsonParser;
+
+public class JsonParserTest {
+    private static JsonBaseElement single(String value) {
+        return JsonParser.parse("[" + value + "]").asJsonArray().get(0);
+    }
+
+    // Parsing a quoted value returns a JsonString element
+    @Test
+    public void test_parse_string() {
+        final var result = single("\"test string\"");
+        assertInstanceOf(JsonString.class, result);
+        assertEquals("test string", ((JsonString) result).getValue());
+    }
+
+    // Parsing empty input fails like an empty document
+    @Test
+    public void test_parse_empty_string() {
+        final var exception = assertThrows(MalformedJsonException.class, () -> JsonParser.parse("  "));
+        assertEquals("Empty JSON array", exception.getMessage());
+    }
+
+    @Test
+    public void test_parse_root_must_be_object_or_array() {
+        assertThrows(MalformedJsonException.class, () -> JsonParser.parse("12345"));
+    }
+
+    // Whole numbers become integers, the rest doubles; exponents are accepted
+    @Test
+    public void test_parse_number() {
+        final var result = single("12345");
+        assertInstanceOf(JsonNumber.class, result);
+        assertEquals(12345, ((JsonNumber) result).getValue());
+        assertEquals(-0.5, ((JsonNumber) single("-0.5")).getValue());
+        assertEquals(1.5E-10, ((JsonNumber) single("1.5E-10")).getValue());
+    }
+
+    @Test
+    public void test_parse_boolean() {
+        assertInstanceOf(JsonBoolean.class, single("true"));
+        assertTrue(((JsonBoolean) single("true")).getValue());
+        assertFalse(((JsonBoolean) single("false")).getValue());
+    }
+
+    @Test
+    public void test_parse_null() {
+        assertInstanceOf(JsonNull.class, single("null"));
+    }
+
+    // A string in a registered custom type's form becomes that type
+    @Test
+    public void test_parse_custom_type_string() {
+        new EJson(); // registers custom types
+        assertInstanceOf(JsonCustom.class, single("\"#time(10:30:00)\""));
+    }
+
+    @Test
+    public void test_parse_unterminated_string_throws() {
+        assertThrows(MissingEndOfStringException.class, () -> JsonParser.parse("[\"unclosed"));
+    }
+
+    @Test
+    public void test_parse_invalid_literal_throws() {
+        assertThrows(UnexpectedCharacterException.class, () -> JsonParser.parse("[nul]"));
+        assertThrows(UnexpectedCharacterException.class, () -> JsonParser.parse("[x]"));
+    }
+
+    @Test
+    public void test_parse_trailing_content_throws() {
+        assertThrows(UnexpectedCharacterException.class, () -> JsonParser.parse("{} {}"));
+    }
+
+    @Test
+    public void test_parse_nested_document_with_whitespace() {
+        final var result = JsonParser.parse(" { \"a\" : [ 1 , { \"b\" : null } , [ ] ] ,\n\"c\" : { } } ").asJsonObject();
+        final var array = result.get("a").asJsonArray();
+        assertEquals(3, array.size());
+        assertInstanceOf(JsonNull.class, array.get(1).asJsonObject().get("b"));
+        assertTrue(array.get(2).asJsonArray().isEmpty());
+        assertTrue(result.get("c").asJsonObject().isEmpty());
+    }
+
+    // The three inputs yield the same document; a ByteBuffer is read from its position and left untouched
+    @Test
+    public void test_parse_char_array_and_utf8_buffer() {
+        final var json = "{\"name\":\"Ñandú ☃\",\"n\":[1,2.5,true]}";
+        final var expected = JsonParser.parse(json);
+        assertEquals(expected, JsonParser.parse(json.toCharArray()));
+        final var bytes = ("xx" + json).getBytes(StandardCharsets.UTF_8);
+        final var buffer = ByteBuffer.wrap(bytes).position(2);
+        assertEquals(expected, JsonParser.parse(buffer));
+        assertEquals(2, buffer.position());
+        final var direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().position(2);
+        assertEquals(expected, JsonParser.parse(direct));
+    }
+
+    // Lexing used to copy the rest of the input at every character; a 1MB document must parse in linear time
+    @Test
+    public void test_parse_large_document() {
+        final var builder = new StringBuilder("{\"items\":[");
+        var count = 0;
+        while (builder.length() < 1024 * 1024) {
+            if (count > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(count).append(",\"name\":\"item-").append(count).append("\"}");
+            count++;
+        }
+        builder.append("]}");
+
+        final var items = JsonParser.parse(builder).asJsonObject().get("items").asJsonArray();
+
+        assertEquals(count, items.size());
+        assertEquals("item-" + (count - 1),
+                items.get(count - 1).asJsonObject().get("name").asJsonString().getValue());
+        assertInstanceOf(JsonArray.class, JsonParser.parse("[]"));
+        assertInstanceOf(JsonObject.class, JsonParser.parse("{}"));
+    }
+}
@@ -2,9 +2,17 @@ package org.techhouse.unit.ejson.internal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.elements.JsonArray;
+import org.techhouse.ejson.elements.JsonNumber;
+import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ejson.internal.JsonWriter;
 
 public class JsonWriterTest {
@@ -68,4 +76,41 @@ public class JsonWriterTest {
 
         assertEquals("{\"stringField\":\"test\",\"intField\":42}", json);
     }
+
+    // Streaming into an Appendable produces the same text as toJson
+    @Test
+    public void test_write_to_appendable_matches_to_json() throws IOException {
+        class Wrapper {
+            public String message = "Ok";
+            public List<JsonObject> results;
+        }
+        final var doc = new JsonObject();
+        doc.addProperty("name", "ñandú");
+        final var values = new JsonArray();
+        values.add(new JsonNumber(1));
+        values.add(new JsonObject());
+        doc.add("values", values);
+        final var wrapper = new Wrapper();
+        wrapper.results = List.of(doc, new JsonObject());
+        JsonWriter writer = new JsonWriter();
+
+        final var out = new StringWriter();
+        writer.toJson(wrapper, Wrapper.class, out);
+
+        assertEquals(writer.toJson(wrapper, Wrapper.class), out.toString());
+        assertEquals("{\"message\":\"Ok\",\"results\":[{\"name\":\"ñandú\",\"values\":[1,{}]},{}]}", out.toString());
+    }
+
+    // Streaming into an OutputStream writes UTF-8 and flushes it
+    @Test
+    public void test_write_to_output_stream_is_utf8() throws IOException {
+        final var doc = new JsonObject();
+        doc.addProperty("name", "ñandú");
+        JsonWriter writer = new JsonWriter();
+
+        final var out = new ByteArrayOutputStream();
+        writer.toJson(doc, JsonObject.class, out);
+
+        assertEquals("{\"name\":\"ñandú\"}", out.toString(StandardCharsets.UTF_8));
+    }
 }
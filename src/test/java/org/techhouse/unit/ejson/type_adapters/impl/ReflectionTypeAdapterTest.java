@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.techhouse.ejson.EJson;
+import org.techhouse.ejson.annotations.OmitIfNull;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonNull;
 import org.techhouse.ejson.elements.JsonObject;
@@ -58,6 +59,25 @@ public class ReflectionTypeAdapterTest {
         assertEquals("{\"intField\":42,\"boolField\":true,\"doubleField\":3.14}", json);
     }
 
+    // A null field marked OmitIfNull is left out, a set one is written like any other
+    @Test
+    public void test_omit_if_null_fields() {
+        class TestClass {
+            @OmitIfNull
+            private String first;
+            private String second = "value";
+            @OmitIfNull
+            private String third;
+        }
+
+        ReflectionTypeAdapter<TestClass> adapter = new ReflectionTypeAdapter<>(TestClass.class);
+        TestClass testObj = new TestClass();
+
+        assertEquals("{\"second\":\"value\"}", adapter.toJson(testObj));
+        testObj.third = "set";
+        assertEquals("{\"second\":\"value\",\"third\":\"set\"}", adapter.toJson(testObj));
+    }
+
     // Handle null field values during serialization and deserialization
     @Test
     public void test_handle_null_fields() {
@@ -32,6 +32,7 @@ import org.techhouse.data.PkIndexEntry;
 import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ex.DirectoryNotFoundException;
 import org.techhouse.fs.FileSystem;
+import org.techhouse.fs.StorageFormat;
 import org.techhouse.test.TestGlobals;
 import org.techhouse.test.TestUtils;
 
@@ -364,9 +365,9 @@ public class FileSystemTest {
         assertTrue(collFile.exists());
     }
 
-    // Successfully deletes entry by shifting remaining entries and updating file length
+    // Deletes an entry by blanking its row in place, leaving the other rows where they are
     @Test
-    public void test_delete_entry_shifts_remaining_entries()
+    public void test_delete_entry_blanks_its_row()
             throws IOException, NoSuchFieldException, IllegalAccessException {
         // Setup
         FileSystem fileSystem = new FileSystem();
@@ -395,8 +396,9 @@ public class FileSystemTest {
         try (RandomAccessFile reader = new RandomAccessFile(file, Globals.RW_PERMISSIONS)) {
             byte[] content = new byte[(int) reader.length()];
             reader.readFully(content);
-            assertEquals(entry2.toFileEntry(),
-                    new String(content, StandardCharsets.UTF_8).replace(Globals.NEWLINE, ""));
+            final var text = new String(content, StandardCharsets.UTF_8);
+            assertTrue(text.substring(0, 25).isBlank());
+            assertEquals(entry2.toFileEntry(), text.substring(25).replace(Globals.NEWLINE, ""));
         }
 
         assertTrue(file.delete());
@@ -426,7 +428,7 @@ public class FileSystemTest {
         final var second = entries.get(1);
         second.getData().get("field").asJsonString().setValue("changed");
 
-        final var result = fileSystem.bulkUpdateFromCollection(TestGlobals.DB, TestGlobals.COLL, entries).updated();
+        final var result = fileSystem.bulkUpdateFromCollection(TestGlobals.DB, TestGlobals.COLL, entries);
 
         assertNotNull(result);
         assertEquals(2, result.size());
@@ -446,8 +448,7 @@ public class FileSystemTest {
         final var result = fileSystem.bulkUpdateFromCollection(TestGlobals.DB, TestGlobals.COLL, entries);
 
         assertNotNull(result);
-        assertTrue(result.updated().isEmpty());
-        assertTrue(result.compactions().isEmpty());
+        assertTrue(result.isEmpty());
     }
 
     // Updating multiple entries that share a page in one batch must NOT corrupt the page: each
@@ -472,7 +473,7 @@ public class FileSystemTest {
         final var result = fileSystem.bulkUpdateFromCollection(TestGlobals.DB, TestGlobals.COLL, inserted);
 
         // Every updated entry must read back from disk with its new content at its reported position.
-        for (var ie : result.updated()) {
+        for (var ie : result) {
             final var read = fileSystem.getById(ie.getIndex());
             assertEquals("updated-value-for-" + ie.get_id() + "-longer",
                     read.getData().get("field").asJsonString().getValue(),
@@ -550,11 +551,14 @@ public class FileSystemTest {
         fileSystem.writeIndexFile(TestGlobals.DB, TestGlobals.COLL, fieldName, indexEntryMap);
         File indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
                 + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL + "-" + fieldName + "-String.idx");
-        String fileContent = Files.readString(indexFile.toPath());
-        assertTrue(fileContent.contains("value1" + Globals.ID_SEPARATOR + "id2" + Globals.ID_SEPARATOR + "id1")
-                || fileContent.contains("value1" + Globals.ID_SEPARATOR + "id1" + Globals.ID_SEPARATOR + "id2"));
-        assertTrue(fileContent.contains("value2" + Globals.ID_SEPARATOR + "id3"));
-        assertTrue(fileContent.endsWith(Globals.NEWLINE));
+        assertTrue(indexFile.exists());
+        final var entries = fileSystem.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                String.class);
+        assertEquals(2, entries.size());
+        assertEquals("value1", entries.get(0).getValue());
+        assertEquals(Set.of("id1", "id2"), entries.get(0).getIds());
+        assertEquals("value2", entries.get(1).getValue());
+        assertEquals(Set.of("id3"), entries.get(1).getIds());
     }
 
     // Empty index entry map
@@ -585,14 +589,12 @@ public class FileSystemTest {
         FieldIndexEntry<String> removeEntry = new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, "value2", ids2);
 
         fileSystem.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, insertEntry, removeEntry);
-        File indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
-                + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL + "-" + fieldName + "-String.idx");
-        String fileContent = Files.readString(indexFile.toPath());
+        final var entries = fileSystem.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                String.class);
 
-        assertTrue(fileContent.contains("value1" + Globals.ID_SEPARATOR + "id1" + Globals.ID_SEPARATOR + "id2")
-                || fileContent.contains("value1" + Globals.ID_SEPARATOR + "id2" + Globals.ID_SEPARATOR + "id1"));
-        assertFalse(fileContent.contains("value2" + Globals.ID_SEPARATOR + "id3" + Globals.ID_SEPARATOR + "id4")
-                || fileContent.contains("value2" + Globals.ID_SEPARATOR + "id4" + Globals.ID_SEPARATOR + "id3"));
+        assertEquals(1, entries.size());
+        assertEquals("value1", entries.getFirst().getValue());
+        assertEquals(ids1, entries.getFirst().getIds());
     }
 
     // Handle case when removedEntry has empty ids set
@@ -609,11 +611,9 @@ public class FileSystemTest {
 
         fileSystem.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, null, removeEntry);
 
-        File indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
-                + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL + "-" + fieldName + "-Number.idx");
-        String fileContent = Files.readString(indexFile.toPath());
-
-        assertFalse(fileContent.contains("123" + Globals.INDEX_ENTRY_SEPARATOR));
+        final var entries = fileSystem.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                Number.class);
+        assertTrue(entries.isEmpty());
     }
 
     @Test
@@ -627,10 +627,11 @@ public class FileSystemTest {
                 Set.of("id1"));
         fileSystem.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, entry, null);
 
-        File indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
-                + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL + "-" + fieldName + "-String.idx");
-        String fileContent = Files.readString(indexFile.toPath());
-        assertTrue(fileContent.contains("foo|bar" + Globals.ID_SEPARATOR + "id1"));
+        final var entries = fileSystem.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                String.class);
+        assertEquals(1, entries.size());
+        assertEquals("foo|bar", entries.getFirst().getValue());
+        assertEquals(Set.of("id1"), entries.getFirst().getIds());
     }
 
     @Test
@@ -651,14 +652,12 @@ public class FileSystemTest {
         FieldIndexEntry<String> fooEmpty = new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, "foo", Set.of());
         fileSystem.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, null, fooEmpty);
 
-        File indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
-                + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL + "-" + fieldName + "-String.idx");
-        String fileContent = Files.readString(indexFile.toPath());
+        final var entries = fileSystem.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                String.class);
 
-        assertFalse(fileContent.contains("foo" + Globals.ID_SEPARATOR + "id1"),
-                "exact 'foo' entry should have been removed");
-        assertTrue(fileContent.contains("foo|bar" + Globals.ID_SEPARATOR + "id2"),
-                "'foo|bar' entry must not be affected");
+        assertEquals(1, entries.size(), "exact 'foo' entry should have been removed");
+        assertEquals("foo|bar", entries.getFirst().getValue(), "'foo|bar' entry must not be affected");
+        assertEquals(Set.of("id2"), entries.getFirst().getIds());
     }
 
     @Test
@@ -1144,8 +1143,8 @@ public class FileSystemTest {
         assertEquals(1, secondRead.size());
     }
 
-    // A torn final line in a field (scalar) index file is skipped, logged and rewritten away on read,
-    // mirroring the PK index self-heal — one bad line must not fail every index-backed read.
+    // A field index file still in the line format is converted to the block format on first read; a torn
+    // line in it is skipped and logged, mirroring the PK index self-heal.
     @Test
     public void test_readWholeFieldIndexFiles_drops_and_rewrites_malformed_lines() throws Exception {
         final var fs = new FileSystem();
@@ -1153,19 +1152,17 @@ public class FileSystemTest {
         final var fieldName = "selfHeal";
 
         final var entry = new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, "good", Set.of("id1"));
-        fs.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, entry, null);
-
-        final var indexFile = findIdxFile(fieldName);
-        Files.writeString(indexFile.toPath(), "\nthis is not a valid field index line", StandardCharsets.UTF_8,
-                java.nio.file.StandardOpenOption.APPEND);
+        final var indexFile = legacyIdxFile(fieldName, "String");
+        Files.writeString(indexFile.toPath(), entry.toFileEntry() + "\nthis is not a valid field index line",
+                StandardCharsets.UTF_8);
 
         final var firstRead = fs.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, String.class);
         assertEquals(1, firstRead.size());
         assertEquals("good", firstRead.getFirst().getValue());
 
-        final var diskLines = Files.readAllLines(indexFile.toPath());
-        assertTrue(diskLines.stream().noneMatch(l -> l.contains("not a valid")),
-                "the malformed field index line should have been removed");
+        final var onDisk = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertTrue(onDisk.startsWith("LWIX"), "the file should have been converted to the block format");
+        assertFalse(onDisk.contains("not a valid"), "the malformed field index line should have been removed");
 
         final var secondRead = fs.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, String.class);
         assertEquals(1, secondRead.size());
@@ -1180,24 +1177,62 @@ public class FileSystemTest {
 
         final var entry = new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, "aaaa1111",
                 new HashSet<>(Set.of("id1")));
-        fs.writeHashIndexFile(TestGlobals.DB, TestGlobals.COLL, fieldName, IndexKind.OBJECT, List.of(entry));
-
-        final var indexFile = findIdxFile(fieldName);
-        Files.writeString(indexFile.toPath(), "\nthis is not a valid hash index line", StandardCharsets.UTF_8,
-                java.nio.file.StandardOpenOption.APPEND);
+        final var indexFile = legacyIdxFile(fieldName, IndexKind.OBJECT.label());
+        Files.writeString(indexFile.toPath(), entry.toFileEntry() + "\nthis is not a valid hash index line",
+                StandardCharsets.UTF_8);
 
         final var firstRead = fs.readWholeHashIndexFile(TestGlobals.DB, TestGlobals.COLL, fieldName, IndexKind.OBJECT);
         assertEquals(1, firstRead.size());
         assertEquals("aaaa1111", firstRead.getFirst().getValue());
 
-        final var diskLines = Files.readAllLines(indexFile.toPath());
-        assertTrue(diskLines.stream().noneMatch(l -> l.contains("not a valid")),
-                "the malformed hash index line should have been removed");
+        final var onDisk = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertTrue(onDisk.startsWith("LWIX"), "the file should have been converted to the block format");
+        assertFalse(onDisk.contains("not a valid"), "the malformed hash index line should have been removed");
 
         final var secondRead = fs.readWholeHashIndexFile(TestGlobals.DB, TestGlobals.COLL, fieldName, IndexKind.OBJECT);
         assertEquals(1, secondRead.size());
     }
 
+    // Updates and deletes append to the PK index instead of rewriting it; a full load replays the records
+    // and merges the file back into a sorted run.
+    @Test
+    public void test_pk_index_updates_and_deletes_are_appended_then_merged_on_load() throws Exception {
+        final var fs = new FileSystem();
+        TestUtils.setPrivateField(fs, "dbPath", TestGlobals.PATH);
+        final var inserted = new ArrayList<PkIndexEntry>();
+        for (var id : List.of("a", "b", "c")) {
+            final var entry = new DbEntry();
+            entry.setDatabaseName(TestGlobals.DB);
+            entry.setCollectionName(TestGlobals.COLL);
+            entry.set_id(id);
+            entry.setData(new JsonObject());
+            entry.setPage(0L);
+            inserted.add(fs.insertIntoCollection(entry));
+        }
+        final var indexFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB
+                + Globals.FILE_SEPARATOR + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL
+                + Globals.INDEX_FILE_NAME_SEPARATOR + Globals.PK_FIELD + Globals.INDEX_FILE_NAME_SEPARATOR
+                + Globals.PK_FIELD_TYPE + Globals.INDEX_FILE_EXTENSION);
+
+        fs.deleteFromCollection(inserted.getFirst());
+        // three inserts + the tombstone
+        assertEquals(4, Files.readAllLines(indexFile.toPath()).stream().filter(l -> !l.isEmpty()).count());
+        assertEquals(inserted.get(1).getPosition(),
+                fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "b").getPosition());
+        assertNull(fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "a"));
+
+        final var loaded = fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL);
+        assertEquals(2, loaded.size());
+        assertEquals("b", loaded.get(0).getValue());
+        assertEquals(inserted.get(1).getPosition(), loaded.get(0).getPosition());
+        assertEquals("c", loaded.get(1).getValue());
+        assertEquals(inserted.get(2).getPosition(), loaded.get(1).getPosition());
+        assertEquals(2, Files.readAllLines(indexFile.toPath()).stream().filter(l -> !l.isEmpty()).count(),
+                "the load should have merged the appended records away");
+        assertEquals("b", fs.getById(loaded.get(0)).get_id());
+        assertEquals("c", fs.getById(loaded.get(1)).get_id());
+    }
+
     // Locates the single .idx file in the test collection folder whose name carries the given field.
     private static File findIdxFile(String fieldName) throws IOException {
         final var collFolder = Path.of(TestGlobals.PATH, TestGlobals.DB, TestGlobals.COLL);
@@ -1209,6 +1244,51 @@ public class FileSystemTest {
         }
     }
 
+    // A line-format field index file in the test collection folder, as written before the block format.
+    private static File legacyIdxFile(String fieldName, String typeLabel) throws IOException {
+        final var collFolder = Path.of(TestGlobals.PATH, TestGlobals.DB, TestGlobals.COLL);
+        Files.createDirectories(collFolder);
+        return collFolder.resolve(TestGlobals.COLL + Globals.INDEX_FILE_NAME_SEPARATOR + fieldName
+                + Globals.INDEX_FILE_NAME_SEPARATOR + typeLabel + Globals.INDEX_FILE_EXTENSION).toFile();
+    }
+
+    // Field index files keep their values sorted whatever order they were written in, split into blocks
+    // once they grow, and a range read returns a sorted slice holding every match.
+    @Test
+    public void test_field_index_stays_sorted_across_blocks_and_reads_ranges() throws Exception {
+        final var fs = new FileSystem();
+        TestUtils.setPrivateField(fs, "dbPath", TestGlobals.PATH);
+        final var fieldName = "blocks";
+        final var values = new ArrayList<Integer>();
+        for (var i = 0; i < 2000; i++) {
+            values.add(i);
+        }
+        java.util.Collections.shuffle(values, new java.util.Random(7));
+        for (var value : values) {
+            fs.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName,
+                    new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, value, Set.of("id" + value)), null);
+        }
+        fs.updateIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, null,
+                new FieldIndexEntry<>(TestGlobals.DB, TestGlobals.COLL, 1000, Set.of()));
+
+        final var all = fs.readWholeFieldIndexFiles(TestGlobals.DB, TestGlobals.COLL, fieldName, Number.class);
+        assertEquals(1999, all.size());
+        for (var i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getValue().doubleValue() < all.get(i).getValue().doubleValue());
+        }
+
+        final var range = fs.readFieldIndexRange(TestGlobals.DB, TestGlobals.COLL, fieldName, Number.class, 1500,
+                1510);
+        assertTrue(range.size() < all.size(), "a range read should not load every block");
+        final var matching = range.stream().map(e -> e.getValue().intValue()).filter(v -> v >= 1500 && v <= 1510)
+                .toList();
+        assertEquals(11, matching.size());
+        final var equal = fs.readFieldIndexRange(TestGlobals.DB, TestGlobals.COLL, fieldName, Number.class, 1000,
+                1000);
+        assertTrue(equal.stream().noneMatch(e -> e.getValue().intValue() == 1000));
+        assertNull(fs.readFieldIndexRange(TestGlobals.DB, TestGlobals.COLL, "missing", Number.class, 1, 2));
+    }
+
     // getByIndexEntries returns an empty list for null or empty input
     @Test
     public void test_get_by_index_entries_empty_input()
@@ -1418,48 +1498,33 @@ public class FileSystemTest {
         assertNull(fileSystem.readWholeHashIndexFile(TestGlobals.DB, TestGlobals.COLL, fieldName, IndexKind.ARRAY));
     }
 
-    // deleteFromCollection returns the compaction (removed row's coordinates) when a survivor moves.
+    // Deleting an entry leaves every other row (and its PK position) where it was.
     @Test
-    public void test_delete_returns_compaction() throws IOException, NoSuchFieldException, IllegalAccessException {
+    public void test_delete_does_not_move_other_rows() throws Exception {
         FileSystem fileSystem = new FileSystem();
         TestUtils.setPrivateField(fileSystem, "dbPath", TestGlobals.PATH);
         final var data = new JsonObject();
         data.addProperty("name", "test");
-        final var entry1 = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
-        entry1.set_id("1");
-        final var entry2 = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
-        entry2.set_id("2");
-        final var pk1 = fileSystem.insertIntoCollection(entry1);
-        fileSystem.insertIntoCollection(entry2);
-
-        final var compaction = fileSystem.deleteFromCollection(pk1);
-
-        assertNotNull(compaction);
-        assertEquals(TestGlobals.DB, compaction.dbName());
-        assertEquals(TestGlobals.COLL, compaction.collName());
-        assertEquals(pk1.getPage(), compaction.page());
-        assertEquals(pk1.getPosition(), compaction.removedPosition());
-        assertEquals(pk1.getLength(), compaction.removedLength());
-    }
+        final var pks = new ArrayList<PkIndexEntry>();
+        for (var id : List.of("1", "2", "3")) {
+            final var e = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
+            e.set_id(id);
+            pks.add(fileSystem.insertIntoCollection(e));
+        }
 
-    // Deleting the last entry on a page moves no survivor, so the returned compaction is null.
-    @Test
-    public void test_delete_last_entry_returns_null_compaction()
-            throws IOException, NoSuchFieldException, IllegalAccessException {
-        FileSystem fileSystem = new FileSystem();
-        TestUtils.setPrivateField(fileSystem, "dbPath", TestGlobals.PATH);
-        final var data = new JsonObject();
-        data.addProperty("name", "test");
-        final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
-        entry.set_id("1");
-        final var pk = fileSystem.insertIntoCollection(entry);
+        fileSystem.deleteFromCollection(pks.get(0));
+        fileSystem.deleteFromCollection(pks.get(1));
 
-        assertNull(fileSystem.deleteFromCollection(pk));
+        final var survivor = fileSystem.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "3");
+        assertEquals(pks.get(2).getPosition(), survivor.getPosition());
+        assertEquals("test", fileSystem.getById(pks.get(2)).getData().get("name").asJsonString().getValue());
+        final var page = fileSystem.readWholeCollectionPage(TestGlobals.DB, TestGlobals.COLL, 0);
+        assertEquals(Set.of("3"), page.keySet());
     }
 
-    // updateFromCollection returns the new index entry plus the compaction for the old slot.
+    // updateFromCollection appends the new version at the end of the page and blanks the old row.
     @Test
-    public void test_update_returns_index_entry_and_compaction()
+    public void test_update_appends_new_version()
             throws IOException, NoSuchFieldException, IllegalAccessException {
         FileSystem fileSystem = new FileSystem();
         TestUtils.setPrivateField(fileSystem, "dbPath", TestGlobals.PATH);
@@ -1470,25 +1535,26 @@ public class FileSystemTest {
         final var entry2 = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
         entry2.set_id("2");
         final var pk1 = fileSystem.insertIntoCollection(entry1);
-        fileSystem.insertIntoCollection(entry2);
+        final var pk2 = fileSystem.insertIntoCollection(entry2);
         data.get("name").asJsonString().setValue("updated");
         final var updatedEntry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
         updatedEntry.set_id("1");
 
-        // Updating entry "1" (not the last one) relocates it to the end, so a survivor moves.
         final var result = fileSystem.updateFromCollection(updatedEntry, pk1);
 
-        assertNotNull(result.indexEntry());
-        assertEquals("1", result.indexEntry().getValue());
-        assertNotNull(result.compaction());
-        assertEquals(pk1.getPosition(), result.compaction().removedPosition());
-        assertEquals(pk1.getLength(), result.compaction().removedLength());
+        assertEquals("1", result.getValue());
+        assertEquals(pk2.getPosition() + pk2.getLength(), result.getPosition());
+        assertEquals(pk1.getLength(), updatedEntry.getPreviousByteSize());
+        assertEquals(pk2.getPosition(),
+                fileSystem.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "2").getPosition());
+        final var page = fileSystem.readWholeCollectionPage(TestGlobals.DB, TestGlobals.COLL, 0);
+        assertEquals(2, page.size());
+        assertEquals("updated", page.get("1").getData().get("name").asJsonString().getValue());
     }
 
-    // Two sequential deletes on the same page do not crash when the caller applies the returned
-    // compaction to keep the surviving entries' positions consistent (the stale-position fix).
+    // Compacting a page drops the blanked rows and reports the new positions of the rows that moved.
     @Test
-    public void test_sequential_deletes_applying_compaction_no_crash() throws Exception {
+    public void test_compact_page_drops_dead_rows_and_reports_moves() throws Exception {
         FileSystem fileSystem = new FileSystem();
         TestUtils.setPrivateField(fileSystem, "dbPath", TestGlobals.PATH);
         final var data = new JsonObject();
@@ -1499,25 +1565,53 @@ public class FileSystemTest {
             e.set_id(id);
             pks.add(fileSystem.insertIntoCollection(e));
         }
+        fileSystem.deleteFromCollection(pks.get(0));
+        data.get("name").asJsonString().setValue("updated");
+        final var updatedEntry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
+        updatedEntry.set_id("2");
+        fileSystem.updateFromCollection(updatedEntry, pks.get(1));
 
-        applyCompaction(pks, fileSystem.deleteFromCollection(pks.get(0)));
-        // Without applying the position fix, this second delete would use a stale position and throw.
-        assertDoesNotThrow(() -> applyCompaction(pks, fileSystem.deleteFromCollection(pks.get(1))));
-
-        final var survivor = fileSystem.getById(pks.get(2));
-        assertEquals("test", survivor.getData().get("name").asJsonString().getValue());
-    }
+        final var compaction = fileSystem.compactPage(TestGlobals.DB, TestGlobals.COLL, 0);
 
-    // Mirrors Cache.shiftPkPositionsAfterCompaction for the in-test PkIndexEntry list.
-    private static void applyCompaction(List<PkIndexEntry> pks, org.techhouse.fs.PkCompaction compaction) {
-        if (compaction == null) {
-            return;
+        assertNotNull(compaction);
+        assertEquals(0L, (long) compaction.newPositions().get("3"));
+        assertEquals(pks.get(2).getLength(), (long) compaction.newPositions().get("2"));
+        final var pageFile = new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB
+                + Globals.FILE_SEPARATOR + TestGlobals.COLL + Globals.FILE_SEPARATOR + TestGlobals.COLL
+                + Globals.FILE_PAGE_SEPARATOR + 0 + Globals.DB_FILE_EXTENSION);
+        assertTrue(Files.readAllLines(pageFile.toPath()).stream().noneMatch(String::isBlank));
+        for (var pk : fileSystem.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL)) {
+            assertEquals((long) compaction.newPositions().get(pk.getValue()), pk.getPosition());
+            assertEquals(pk.getValue(), fileSystem.getById(pk).get_id());
         }
-        for (final var pk : pks) {
-            if (pk.getPage() == compaction.page() && pk.getPosition() > compaction.removedPosition()) {
-                pk.setPosition(pk.getPosition() - compaction.removedLength());
-            }
+        final var pk2 = fileSystem.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "2");
+        assertEquals("updated", fileSystem.getById(pk2).getData().get("name").asJsonString().getValue());
+        // Nothing left to reclaim.
+        assertNull(fileSystem.compactPage(TestGlobals.DB, TestGlobals.COLL, 0));
+    }
+
+    // A compaction interrupted after its commit point is finished on startup; an uncommitted one is discarded.
+    @Test
+    public void test_recover_interrupted_page_compaction() throws Exception {
+        final var fileSystem = freshFs();
+        final var idxA = insertOnPage(fileSystem, "a", 0);
+        insertOnPage(fileSystem, "b", 0);
+        fileSystem.deleteFromCollection(idxA);
+        final var pageFile = Path.of(TestGlobals.PATH, TestGlobals.DB, TestGlobals.COLL,
+                TestGlobals.COLL + Globals.FILE_PAGE_SEPARATOR + 0 + Globals.DB_FILE_EXTENSION);
+        final var liveRows = Files.readAllLines(pageFile).stream().filter(l -> !l.isBlank()).toList();
+        Files.write(pageFile.resolveSibling(pageFile.getFileName() + ".compacted"), liveRows);
+        Files.writeString(pageFile.resolveSibling(pageFile.getFileName() + ".compacting"), "partial");
+
+        fileSystem.recoverInterruptedPageCompactions();
+
+        assertEquals(liveRows, Files.readAllLines(pageFile));
+        try (var files = Files.list(pageFile.getParent())) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().contains(".compact")));
         }
+        final var pkB = fileSystem.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "b");
+        assertEquals(0L, pkB.getPosition());
+        assertEquals("short", readValueFromDisk(fileSystem, "b"));
     }
 
     // A stale position past the end of file no longer throws NegativeArraySizeException (over-EOF guard).
@@ -1634,7 +1728,7 @@ public class FileSystemTest {
     }
 
     @Test
-    public void test_single_update_same_page_shifts_only_later_position() throws Exception {
+    public void test_single_update_same_page_leaves_other_positions() throws Exception {
         FileSystem fs = freshFs();
         final var idxA = insertOnPage(fs, "a", 0);
         final var idxB = insertOnPage(fs, "b", 0); // positioned after 'a' on page 0
@@ -1645,8 +1739,7 @@ public class FileSystemTest {
 
         final var disk = fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL);
         final var bDisk = disk.stream().filter(p -> p.getValue().equals("b")).findFirst().orElseThrow();
-        assertEquals(bPosBefore - idxA.getLength(), bDisk.getPosition(),
-                "'b' shifts toward the start by 'a's old length after 'a' is relocated");
+        assertEquals(bPosBefore, bDisk.getPosition(), "'b' stays where it is when 'a' is updated");
         assertEquals("short", fs.getById(bDisk).getData().get("v").asJsonString().getValue());
         assertEquals("updated-longer-value-for-a", readValueFromDisk(fs, "a"));
     }
@@ -1665,4 +1758,155 @@ public class FileSystemTest {
         final var disk = fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL);
         assertTrue(disk.stream().noneMatch(p -> p.getValue().equals("b")), "'b' must be removed from the index");
     }
+
+    // With mmapReadsEnabled, reads by PK come from the page mapping, which follows appends, blanked rows,
+    // compaction and a dropped-then-recreated collection.
+    @Test
+    public void test_mmap_reads_follow_page_changes() throws Exception {
+        final var config = Configuration.getInstance();
+        TestUtils.setPrivateField(config, "mmapReadsEnabled", true);
+        TestUtils.setPrivateField(config, "mmapMaxMappedPages", 1);
+        try {
+            final var fs = freshFs();
+            final var idxA = insertOnPage(fs, "a", 0);
+            final var idxB = insertOnPage(fs, "b", 0);
+            insertOnPage(fs, "c", 1);
+            assertEquals("short", readValueFromDisk(fs, "a"));
+            // Page 0 grows after it was mapped.
+            fs.updateFromCollection(updateEntry(idxA, "a", "updated-longer-value-for-a").toDbEntry(), idxA);
+            assertEquals("updated-longer-value-for-a", readValueFromDisk(fs, "a"));
+            fs.deleteFromCollection(idxB);
+            final var batch = fs.getByIndexEntries(fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL));
+            assertEquals(Set.of("a", "c"), new HashSet<>(batch.stream().map(DbEntry::get_id).toList()));
+
+            fs.compactPage(TestGlobals.DB, TestGlobals.COLL, 0);
+            assertEquals("updated-longer-value-for-a", readValueFromDisk(fs, "a"));
+
+            fs.deleteCollectionFiles(TestGlobals.DB, TestGlobals.COLL);
+            fs.createCollectionFile(TestGlobals.DB, TestGlobals.COLL);
+            insertOnPage(fs, "z", 0);
+            assertEquals("short", readValueFromDisk(fs, "z"));
+        } finally {
+            TestUtils.setPrivateField(config, "mmapReadsEnabled", false);
+        }
+    }
+
+    // ── Binary storage format ──
+
+    private FileSystem freshBinaryFs() throws NoSuchFieldException, IllegalAccessException, IOException {
+        final var fs = freshFs();
+        fs.deleteCollectionFiles(TestGlobals.DB, TestGlobals.COLL);
+        fs.createCollectionFile(TestGlobals.DB, TestGlobals.COLL, StorageFormat.BINARY);
+        return fs;
+    }
+
+    private Path pagePath(long page) {
+        return Path.of(TestGlobals.PATH, TestGlobals.DB, TestGlobals.COLL,
+                TestGlobals.COLL + Globals.FILE_PAGE_SEPARATOR + page + Globals.DB_FILE_EXTENSION);
+    }
+
+    @Test
+    public void test_binary_collection_round_trips_documents() throws Exception {
+        final var fs = freshBinaryFs();
+        assertEquals(StorageFormat.BINARY, fs.getStorageFormat(TestGlobals.DB, TestGlobals.COLL));
+        final var data = new JsonObject();
+        data.addProperty("name", "binary");
+        data.addProperty("count", 7);
+        data.addProperty("ratio", 0.25);
+        data.addProperty("big", 10_000_000_000L);
+        final var nested = new JsonObject();
+        nested.addProperty("flag", true);
+        data.add("nested", nested);
+        final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
+        entry.set_id("x");
+        final var pk = fs.insertIntoCollection(entry);
+
+        assertEquals(1, Files.readAllBytes(pagePath(0))[0]);
+        final var read = fs.getById(pk).getData();
+        assertEquals(data, read);
+        assertEquals(7, read.get("count").asJsonNumber().getValue());
+        assertEquals(10_000_000_000L, read.get("big").asJsonNumber().getValue());
+        assertTrue(read.get("nested").asJsonObject().get("flag").asJsonBoolean().getValue());
+    }
+
+    @Test
+    public void test_binary_collection_update_delete_and_compaction() throws Exception {
+        final var fs = freshBinaryFs();
+        final var idxA = insertOnPage(fs, "a", 0);
+        final var idxB = insertOnPage(fs, "b", 0);
+        insertOnPage(fs, "c", 0);
+        fs.updateFromCollection(updateEntry(idxA, "a", "updated-longer-value-for-a").toDbEntry(), idxA);
+        fs.deleteFromCollection(idxB);
+
+        assertEquals("updated-longer-value-for-a", readValueFromDisk(fs, "a"));
+        assertEquals(Set.of("a", "c"), fs.readWholeCollectionPage(TestGlobals.DB, TestGlobals.COLL, 0).keySet());
+        assertNotNull(fs.compactPage(TestGlobals.DB, TestGlobals.COLL, 0));
+        assertEquals("updated-longer-value-for-a", readValueFromDisk(fs, "a"));
+        assertEquals("short", readValueFromDisk(fs, "c"));
+        final var batch = fs.getByIndexEntries(fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL));
+        assertEquals(Set.of("a", "c"), new HashSet<>(batch.stream().map(DbEntry::get_id).toList()));
+    }
+
+    @Test
+    public void test_recover_interrupted_binary_page_compaction() throws Exception {
+        final var fs = freshBinaryFs();
+        final var idxA = insertOnPage(fs, "a", 0);
+        final var idxB = insertOnPage(fs, "b", 0);
+        fs.deleteFromCollection(idxA);
+        final var bytes = Files.readAllBytes(pagePath(0));
+        final var liveRow = Arrays.copyOfRange(bytes, (int) idxB.getPosition(),
+                (int) (idxB.getPosition() + idxB.getLength()));
+        Files.write(pagePath(0).resolveSibling(pagePath(0).getFileName() + ".compacted"), liveRow);
+
+        fs.recoverInterruptedPageCompactions();
+
+        assertEquals(0L, fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "b").getPosition());
+        assertEquals("short", readValueFromDisk(fs, "b"));
+    }
+
+    // A filtered page read only builds the matching documents, whatever the rows' format.
+    @Test
+    public void test_read_collection_page_matching() throws Exception {
+        final var fs = freshBinaryFs();
+        final var idxA = insertOnPage(fs, "a", 0);
+        insertOnPage(fs, "b", 0);
+        fs.updateFromCollection(updateEntry(idxA, "a", "match").toDbEntry(), idxA);
+        final var tested = new ArrayList<JsonObject>();
+
+        final var matching = fs.readCollectionPageMatching(TestGlobals.DB, TestGlobals.COLL, 0, "v", data -> {
+            tested.add(data);
+            return data.get("v").asJsonString().getValue().equals("match");
+        });
+
+        assertEquals(Set.of("a"), matching.keySet());
+        assertEquals("match", matching.get("a").getData().get("v").asJsonString().getValue());
+        // Binary rows are tested on a projection holding only the filtered field.
+        assertEquals(2, tested.size());
+        assertTrue(tested.stream().allMatch(data -> data.size() == 1));
+    }
+
+    @Test
+    public void test_migrate_collection_rewrites_rows_in_target_format() throws Exception {
+        final var fs = freshFs();
+        final var idxA = insertOnPage(fs, "a", 0);
+        insertOnPage(fs, "b", 0);
+        insertOnPage(fs, "c", 1);
+        fs.deleteFromCollection(idxA);
+
+        assertEquals(2, fs.migrateCollection(TestGlobals.DB, TestGlobals.COLL, StorageFormat.BINARY));
+
+        assertEquals(StorageFormat.BINARY, fs.getStorageFormat(TestGlobals.DB, TestGlobals.COLL));
+        assertEquals(1, Files.readAllBytes(pagePath(0))[0]);
+        assertEquals(1, Files.readAllBytes(pagePath(1))[0]);
+        assertEquals("short", readValueFromDisk(fs, "b"));
+        assertEquals("short", readValueFromDisk(fs, "c"));
+        assertNull(fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "a"));
+        // Migrating again to the same format has nothing to convert.
+        assertEquals(0, fs.migrateCollection(TestGlobals.DB, TestGlobals.COLL, StorageFormat.BINARY));
+
+        assertEquals(2, fs.migrateCollection(TestGlobals.DB, TestGlobals.COLL, StorageFormat.JSON));
+        assertTrue(Files.readString(pagePath(0)).startsWith("{"));
+        assertEquals("short", readValueFromDisk(fs, "b"));
+        assertEquals("short", readValueFromDisk(fs, "c"));
+    }
 }
@@ -0,0 +1,192 @@
+package org.techhouse.unit.fs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.techhouse.config.Configuration;
+import org.techhouse.config.Globals;
+import org.techhouse.data.DbEntry;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.fs.FileSystem;
+import org.techhouse.fs.WalRecord;
+import org.techhouse.fs.WalRecord.WalOperation;
+import org.techhouse.fs.WriteAheadLog;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.test.TestGlobals;
+import org.techhouse.test.TestUtils;
+
+public class WriteAheadLogTest {
+    private final WriteAheadLog wal = IocContainer.get(WriteAheadLog.class);
+    private FileSystem fs;
+
+    @BeforeEach
+    public void setUp() throws NoSuchFieldException, IllegalAccessException, IOException {
+        final var config = Configuration.getInstance();
+        TestUtils.setPrivateField(config, "filePath", TestGlobals.PATH);
+        TestUtils.setPrivateField(config, "walEnabled", true);
+        wal.closeAll();
+        fs = new FileSystem();
+        fs.createBaseDbPath();
+        fs.createAdminDatabase();
+        fs.createDatabaseFolder(TestGlobals.DB);
+        fs.createCollectionFile(TestGlobals.DB, TestGlobals.COLL);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        wal.closeAll();
+        TestUtils.deleteFolder(new File(TestGlobals.PATH));
+    }
+
+    private static File logFile() {
+        return new File(TestGlobals.PATH + Globals.FILE_SEPARATOR + TestGlobals.DB + Globals.FILE_SEPARATOR
+                + TestGlobals.DB + Globals.WAL_FILE_EXTENSION);
+    }
+
+    private static String saveLine(String id, String name) {
+        return WalRecord.toLogLine(WalOperation.SAVE, TestGlobals.COLL, id, 0,
+                "{\"name\":\"" + name + "\",\"_id\":\"" + id + "\"}");
+    }
+
+    // Logged records are durable and read back in write order
+    @Test
+    public void test_log_and_read_committed_records() throws IOException {
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("a", "first"), saveLine("b", "second")))) {
+            // applied
+        }
+        final var records = wal.readCommittedRecords(TestGlobals.DB);
+        assertEquals(2, records.size());
+        assertEquals("a", records.get(0).id());
+        assertEquals(WalOperation.SAVE, records.get(0).operation());
+        assertEquals("first", records.get(0).data().get("name").asJsonString().getValue());
+        assertEquals("b", records.get(1).id());
+    }
+
+    // A torn last line (a write that was never acknowledged) is ignored
+    @Test
+    public void test_torn_tail_is_ignored() throws IOException {
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("a", "first")))) {
+            // applied
+        }
+        Files.writeString(logFile().toPath(), "1234|{\"op\":\"SA", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        final var records = wal.readCommittedRecords(TestGlobals.DB);
+        assertEquals(1, records.size());
+    }
+
+    // A checkpoint truncates the log once every logged write has been applied
+    @Test
+    public void test_checkpoint_truncates_log() throws IOException {
+        final var ticket = wal.log(TestGlobals.DB, List.of(saveLine("a", "first")));
+        assertFalse(wal.checkpoint(TestGlobals.DB));
+        assertTrue(logFile().length() > 0);
+        ticket.close();
+        assertTrue(wal.checkpoint(TestGlobals.DB));
+        assertEquals(0, logFile().length());
+    }
+
+    // A checkpoint drops the records up to the first write still being applied and keeps the rest
+    @Test
+    public void test_checkpoint_keeps_records_after_unapplied_write() throws IOException {
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("a", "first")))) {
+            // applied
+        }
+        final var pending = wal.log(TestGlobals.DB, List.of(saveLine("b", "second")));
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("c", "third")))) {
+            // applied
+        }
+        assertFalse(wal.checkpoint(TestGlobals.DB));
+        assertEquals(List.of("b", "c"), wal.readCommittedRecords(TestGlobals.DB).stream().map(WalRecord::id).toList());
+
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("d", "fourth")))) {
+            // applied
+        }
+        assertEquals(List.of("b", "c", "d"),
+                wal.readCommittedRecords(TestGlobals.DB).stream().map(WalRecord::id).toList());
+        pending.close();
+        assertTrue(wal.checkpoint(TestGlobals.DB));
+        assertEquals(0, logFile().length());
+    }
+
+    // Concurrent writers all end up in the log
+    @Test
+    public void test_concurrent_writers_share_the_log() throws Exception {
+        final var executor = Executors.newFixedThreadPool(8);
+        try {
+            final var futures = new ArrayList<Future<?>>();
+            for (var i = 0; i < 64; i++) {
+                final var id = "id" + i;
+                futures.add(executor.submit(() -> {
+                    try (var _ = wal.log(TestGlobals.DB, List.of(saveLine(id, id)))) {
+                        return null;
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(64, wal.readCommittedRecords(TestGlobals.DB).size());
+    }
+
+    // Writes through the FileSystem are logged before they reach the page file
+    @Test
+    public void test_file_system_writes_are_logged() throws IOException {
+        final var data = new JsonObject();
+        data.addProperty("name", "logged");
+        final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
+        final var pkEntry = fs.insertIntoCollection(entry);
+        fs.deleteFromCollection(pkEntry);
+        final var records = wal.readCommittedRecords(TestGlobals.DB);
+        assertEquals(2, records.size());
+        assertEquals(WalOperation.SAVE, records.get(0).operation());
+        assertEquals(entry.get_id(), records.get(0).id());
+        assertEquals(WalOperation.DELETE, records.get(1).operation());
+    }
+
+    // Recovery re-applies logged writes that never reached the page and PK index files
+    @Test
+    public void test_recovery_replays_missing_writes() throws Exception {
+        try (var _ = wal.log(TestGlobals.DB, List.of(saveLine("recovered", "fromLog")))) {
+            // simulate a crash: the write is logged but never applied
+        }
+        wal.closeAll();
+        assertNull(fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "recovered"));
+
+        fs.recoverFromWriteAheadLog();
+
+        final var pkEntry = fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, "recovered");
+        assertNotNull(pkEntry);
+        assertEquals("fromLog", fs.getById(pkEntry).getData().get("name").asJsonString().getValue());
+        assertEquals(0, logFile().length());
+    }
+
+    // Replaying a log whose writes already reached the files changes nothing
+    @Test
+    public void test_recovery_is_idempotent() throws Exception {
+        final var data = new JsonObject();
+        data.addProperty("name", "applied");
+        final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, data);
+        fs.insertIntoCollection(entry);
+        wal.closeAll();
+
+        fs.recoverFromWriteAheadLog();
+
+        final var pkEntry = fs.findPkIndexEntry(TestGlobals.DB, TestGlobals.COLL, entry.get_id());
+        assertNotNull(pkEntry);
+        assertEquals(0, pkEntry.getPosition());
+        assertEquals(1, fs.readWholePkIndexFile(TestGlobals.DB, TestGlobals.COLL).size());
+    }
+}
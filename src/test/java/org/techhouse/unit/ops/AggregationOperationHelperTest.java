@@ -16,6 +16,7 @@ import org.techhouse.cache.Cache;
 import org.techhouse.cache.UserCache;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonBaseElement;
@@ -41,6 +42,10 @@ import org.techhouse.ops.req.agg.step.SortAggregationStep;
 import org.techhouse.ops.req.agg.step.map.MapOperationType;
 import org.techhouse.ops.req.agg.step.map.MapOperator;
 import org.techhouse.test.TestGlobals;
+import org.techhouse.analyze.AnalyzeContext;
+import java.util.HashSet;
+import org.techhouse.ops.req.agg.mid_operators.MidOperationType;
+import org.techhouse.ops.req.agg.step.group.GroupAccumulator;
 import org.techhouse.test.TestUtils;
 import org.techhouse.utils.ReflectionUtils;
 
@@ -260,14 +265,14 @@ public class AggregationOperationHelperTest {
     // register the ids there. Populated directly to be independent of cache admission decisions.
     private void registerPkIndex(String... ids) throws NoSuchFieldException, IllegalAccessException {
         final var userCache = IocContainer.get(UserCache.class);
-        final var token = new ReflectionUtils.TypeToken<Map<String, List<PkIndexEntry>>>() {
+        final var token = new ReflectionUtils.TypeToken<Map<String, PkIndex>>() {
         };
         final var pkIndexMap = TestUtils.getPrivateField(userCache, "pkIndexMap", token);
         final var list = new ArrayList<PkIndexEntry>();
         for (var id : ids) {
             list.add(new PkIndexEntry(TestGlobals.DB, TestGlobals.COLL, id, 0, 100, 0));
         }
-        pkIndexMap.put(Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL), list);
+        pkIndexMap.put(Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL), new PkIndex(list));
     }
 
     // COUNT returns the number of documents in the collection
@@ -343,6 +348,44 @@ public class AggregationOperationHelperTest {
         assertEquals(10, result.get(2).get("score").asJsonNumber().asInteger());
     }
 
+    // SORT followed by SKIP and LIMIT is run as a top-K sort and returns the same page as a full sort
+    @Test
+    public void test_sort_skip_limit_returns_page_of_sorted_documents() throws IOException {
+        final var cache = IocContainer.get(Cache.class);
+        final int[] scores = {50, 10, 40, 70, 20, 60, 30};
+        for (var i = 0; i < scores.length; i++) {
+            insertEntry(cache, "tk" + i, "score", scores[i]);
+        }
+
+        AggregateRequest request = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        request.setAggregationSteps(List.of(new SortAggregationStep("score", false), new SkipAggregationStep(2),
+                new LimitAggregationStep(3)));
+
+        List<JsonObject> result = AggregationOperationHelper.processAggregation(request);
+
+        assertEquals(List.of(50, 40, 30), result.stream().map(obj -> obj.get("score").asJsonNumber().asInteger())
+                .toList());
+    }
+
+    // Documents with equal keys keep their input order in the top-K page, as they would in a full sort
+    @Test
+    public void test_sort_limit_keeps_ties_in_input_order() throws IOException {
+        final var cache = IocContainer.get(Cache.class);
+        for (var i = 0; i < 6; i++) {
+            insertEntry(cache, "tie" + i, "score", i % 2);
+        }
+
+        AggregateRequest fullSort = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        fullSort.setAggregationSteps(List.of(new SortAggregationStep("score", true)));
+        final var expected = AggregationOperationHelper.processAggregation(fullSort).subList(1, 4);
+
+        AggregateRequest page = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        page.setAggregationSteps(List.of(new SortAggregationStep("score", true), new SkipAggregationStep(1),
+                new LimitAggregationStep(3)));
+
+        assertEquals(expected, AggregationOperationHelper.processAggregation(page));
+    }
+
     // GROUP_BY groups documents by a given field value
     @Test
     public void test_group_by_groups_documents_by_field() throws IOException {
@@ -612,6 +655,91 @@ public class AggregationOperationHelperTest {
         assertEquals(1, groupB.get("group").asJsonArray().size());
     }
 
+    private List<GroupAccumulator> dashboardAccumulators() {
+        return List.of(new GroupAccumulator("count", MidOperationType.SIZE, null),
+                new GroupAccumulator("priced", MidOperationType.SIZE, "price"),
+                new GroupAccumulator("total", MidOperationType.SUM, "price"),
+                new GroupAccumulator("average", MidOperationType.AVG, "price"),
+                new GroupAccumulator("cheapest", MidOperationType.MIN, "price"),
+                new GroupAccumulator("dearest", MidOperationType.MAX, "price"));
+    }
+
+    private void addPricedDoc(Cache cache, String id, String type, Integer price) {
+        final var obj = new JsonObject();
+        obj.add(Globals.PK_FIELD, new JsonString(id));
+        obj.addProperty("type", type);
+        if (price != null) {
+            obj.addProperty("price", price);
+        }
+        final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.COLL, obj);
+        entry.set_id(id);
+        cache.addEntryToCache(TestGlobals.DB, TestGlobals.COLL, entry);
+    }
+
+    // GROUP_BY accumulators compute per-group values without carrying the group's documents, and the index path
+    // computes the same values as the scan
+    @Test
+    public void test_group_by_accumulators_match_between_scan_and_index() throws IOException {
+        final var cache = IocContainer.get(Cache.class);
+        addPricedDoc(cache, "p1", "A", 10);
+        addPricedDoc(cache, "p2", "A", 30);
+        addPricedDoc(cache, "p3", "A", null);
+        addPricedDoc(cache, "p4", "B", null);
+
+        final var req = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        req.setAggregationSteps(List.of(new GroupByAggregationStep("type", dashboardAccumulators(), false)));
+        final var scan = AggregationOperationHelper.processAggregation(req);
+
+        final var groupA = scan.stream().filter(o -> o.get("type").asJsonString().getValue().equals("A")).findFirst()
+                .orElseThrow();
+        assertNull(groupA.get("group"));
+        assertEquals(3, groupA.get("count").asJsonNumber().getValue().longValue());
+        assertEquals(2, groupA.get("priced").asJsonNumber().getValue().longValue());
+        assertEquals(40.0, groupA.get("total").asJsonNumber().getValue().doubleValue());
+        assertEquals(20.0, groupA.get("average").asJsonNumber().getValue().doubleValue());
+        assertEquals(10.0, groupA.get("cheapest").asJsonNumber().getValue().doubleValue());
+        assertEquals(30.0, groupA.get("dearest").asJsonNumber().getValue().doubleValue());
+        final var groupB = scan.stream().filter(o -> o.get("type").asJsonString().getValue().equals("B")).findFirst()
+                .orElseThrow();
+        assertEquals(1, groupB.get("count").asJsonNumber().getValue().longValue());
+        assertEquals(0.0, groupB.get("total").asJsonNumber().getValue().doubleValue());
+        assertTrue(groupB.get("average").isJsonNull());
+        assertTrue(groupB.get("cheapest").isJsonNull());
+
+        enableIndex(cache, "type");
+        final var indexed = AggregationOperationHelper.processAggregation(req);
+
+        assertEquals(new HashSet<>(scan), new HashSet<>(indexed));
+    }
+
+    // A GROUP_BY that only counts documents is answered from the index without reading any document
+    @Test
+    public void test_group_by_count_only_uses_index_ids() throws IOException {
+        final var cache = IocContainer.get(Cache.class);
+        addPricedDoc(cache, "c1", "A", 1);
+        addPricedDoc(cache, "c2", "A", 2);
+        addPricedDoc(cache, "c3", "B", 3);
+        enableIndex(cache, "type");
+
+        final var req = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        req.setAggregationSteps(List.of(new GroupByAggregationStep("type",
+                List.of(new GroupAccumulator("count", MidOperationType.SIZE, null)), false)));
+        final var context = new AnalyzeContext();
+        AnalyzeContext.set(context);
+        final List<JsonObject> result;
+        try {
+            result = AggregationOperationHelper.processAggregation(req);
+        } finally {
+            AnalyzeContext.clear();
+        }
+
+        assertEquals(0, context.getDocumentsScanned());
+        final var counts = new java.util.HashMap<String, Long>();
+        result.forEach(o -> counts.put(o.get("type").asJsonString().getValue(),
+                o.get("count").asJsonNumber().getValue().longValue()));
+        assertEquals(Map.of("A", 2L, "B", 1L), counts);
+    }
+
     // SORT ascending over an indexed field orders documents like the non-indexed path
     @Test
     public void test_sort_ascending_uses_index_matches_scan_order() throws IOException {
@@ -703,7 +831,7 @@ public class AggregationOperationHelperTest {
         final var req = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
         req.setAggregationSteps(List.of(
                 new FilterAggregationStep(new FieldOperator(FieldOperatorType.EQUALS, "type", new JsonString("A"))),
-                new GroupByAggregationStep("type")));
+                new GroupByAggregationStep("type", List.of(), true)));
         final var result = AggregationOperationHelper.processAggregation(req);
 
         assertEquals(1, result.size());
@@ -1141,7 +1269,7 @@ public class AggregationOperationHelperTest {
         enableIndex(cache, "meta");
 
         final var req = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
-        req.setAggregationSteps(List.of(new GroupByAggregationStep("meta")));
+        req.setAggregationSteps(List.of(new GroupByAggregationStep("meta", List.of(), true)));
         final var result = AggregationOperationHelper.processAggregation(req);
 
         final var allDocIds = new java.util.HashSet<String>();
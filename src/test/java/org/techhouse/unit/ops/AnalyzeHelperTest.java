@@ -124,4 +124,17 @@ public class AnalyzeHelperTest {
         assertNotNull(result.getSuggestions());
         assertTrue(result.getSuggestions().isEmpty());
     }
+
+    @Test
+    public void test_build_reports_join_strategies() {
+        final var context = new AnalyzeContext();
+        context.addJoinStrategy("JOIN orders as items: hash join built on the input");
+
+        final var result = AnalyzeHelper.build(request(new JoinAggregationStep("orders", "id", "orderId", "items")),
+                context);
+
+        assertEquals(List.of("JOIN orders as items: hash join built on the input"), result.getJoinStrategies());
+        assertTrue(AnalyzeHelper.build(request(filter("name")), new AnalyzeContext()).getJoinStrategies()
+                .isEmpty());
+    }
 }
@@ -11,9 +11,11 @@ import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.techhouse.analyze.AnalyzeContext;
 import org.techhouse.cache.Cache;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
+import org.techhouse.data.PkIndex;
 import org.techhouse.data.PkIndexEntry;
 import org.techhouse.data.admin.AdminCollEntry;
 import org.techhouse.ejson.custom_types.JsonTime;
@@ -800,8 +802,8 @@ public class FilterOperatorHelperTest {
         for (final var id : new String[]{"r1", "r2", "r3"}) {
             list.add(new PkIndexEntry(TestGlobals.DB, TestGlobals.COLL, id, 0, 100, 0));
         }
-        final var pkMap = new java.util.concurrent.ConcurrentHashMap<String, List<PkIndexEntry>>();
-        pkMap.put(Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL), list);
+        final var pkMap = new java.util.concurrent.ConcurrentHashMap<String, PkIndex>();
+        pkMap.put(Cache.getCollectionIdentifier(TestGlobals.DB, TestGlobals.COLL), new PkIndex(list));
         TestUtils.setPrivateField(userCache, "pkIndexMap", pkMap);
     }
 
@@ -1109,6 +1111,103 @@ public class FilterOperatorHelperTest {
         assertEquals(Set.of("o2"), matched, "the stale hash hit o1 must be dropped after re-testing the document");
     }
 
+    // AND narrows with its indexed leaf, reads only those candidates and applies the unindexed leaf to them
+    @Test
+    public void test_and_with_unindexed_leaf_reads_only_index_candidates() throws Exception {
+        final var cache = IocContainer.get(Cache.class);
+        addTwoFieldDoc(cache, "r1", "active", 1);
+        addTwoFieldDoc(cache, "r2", "active", 2);
+        addTwoFieldDoc(cache, "r3", "inactive", 1);
+        addTwoFieldDoc(cache, "r4", "inactive", 2);
+        index(cache, "status"); // "level" is not indexed
+
+        final var and = new ConjunctionOperator(ConjunctionOperatorType.AND,
+                List.of(new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString("active")),
+                        new FieldOperator(FieldOperatorType.EQUALS, "level", new JsonNumber(2))));
+        final var context = new AnalyzeContext();
+        AnalyzeContext.set(context);
+        try {
+            final var matched = FilterOperatorHelper.processOperator(and, null, TestGlobals.DB, TestGlobals.COLL)
+                    .map(o -> o.get(Globals.PK_FIELD).asJsonString().getValue()).toList();
+            assertEquals(List.of("r2"), matched);
+        } finally {
+            AnalyzeContext.clear();
+        }
+        assertEquals(2, context.getDocumentsScanned());
+        assertEquals(Set.of("status"), context.getIndexesUsed());
+    }
+
+    // Nested conjunctions are combined from the indexes before any document is read
+    @Test
+    public void test_nested_indexed_conjunctions_resolve_from_indexes() throws Exception {
+        final var cache = IocContainer.get(Cache.class);
+        addTwoFieldDoc(cache, "r1", "active", 1);
+        addTwoFieldDoc(cache, "r2", "active", 2);
+        addTwoFieldDoc(cache, "r3", "inactive", 3);
+        addTwoFieldDoc(cache, "r4", "inactive", 1);
+        index(cache, "status", "level");
+
+        final var or = new ConjunctionOperator(ConjunctionOperatorType.OR,
+                List.of(new FieldOperator(FieldOperatorType.EQUALS, "level", new JsonNumber(1)),
+                        new FieldOperator(FieldOperatorType.EQUALS, "level", new JsonNumber(2))));
+        final var and = new ConjunctionOperator(ConjunctionOperatorType.AND,
+                List.of(new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString("inactive")), or));
+        final var context = new AnalyzeContext();
+        AnalyzeContext.set(context);
+        try {
+            final var matched = FilterOperatorHelper.processOperator(and, null, TestGlobals.DB, TestGlobals.COLL)
+                    .map(o -> o.get(Globals.PK_FIELD).asJsonString().getValue()).toList();
+            assertEquals(List.of("r4"), matched);
+        } finally {
+            AnalyzeContext.clear();
+        }
+        assertEquals(1, context.getDocumentsScanned());
+    }
+
+    // An OR with an unindexed leaf cannot be narrowed and is answered by a single scan
+    @Test
+    public void test_or_with_unindexed_leaf_scans_once() throws Exception {
+        final var cache = IocContainer.get(Cache.class);
+        addTwoFieldDoc(cache, "r1", "active", 1);
+        addTwoFieldDoc(cache, "r2", "inactive", 2);
+        addTwoFieldDoc(cache, "r3", "inactive", 3);
+        index(cache, "status");
+        injectPkIndex();
+
+        final var or = new ConjunctionOperator(ConjunctionOperatorType.OR,
+                List.of(new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString("active")),
+                        new FieldOperator(FieldOperatorType.EQUALS, "level", new JsonNumber(3))));
+        final var matched = FilterOperatorHelper.processOperator(or, null, TestGlobals.DB, TestGlobals.COLL)
+                .map(o -> o.get(Globals.PK_FIELD).asJsonString().getValue())
+                .collect(java.util.stream.Collectors.toSet());
+        assertEquals(Set.of("r1", "r3"), matched);
+    }
+
+    // A conjunction over an upstream stream tests each document against every leaf in one pass
+    @Test
+    public void test_conjunction_on_existing_stream_with_several_leaves() throws IOException {
+        final var first = new JsonObject();
+        first.addProperty(Globals.PK_FIELD, "1");
+        first.addProperty("a", "x");
+        first.addProperty("b", "y");
+        final var second = new JsonObject();
+        second.addProperty(Globals.PK_FIELD, "2");
+        second.addProperty("a", "x");
+        second.addProperty("b", "z");
+        final var leaves = List.<BaseOperator>of(new FieldOperator(FieldOperatorType.EQUALS, "a", new JsonString("x")),
+                new FieldOperator(FieldOperatorType.EQUALS, "b", new JsonString("y")));
+
+        final var and = FilterOperatorHelper.processOperator(
+                new ConjunctionOperator(ConjunctionOperatorType.AND, leaves), Stream.of(first, second),
+                TestGlobals.DB, TestGlobals.COLL).toList();
+        final var nand = FilterOperatorHelper.processOperator(
+                new ConjunctionOperator(ConjunctionOperatorType.NAND, leaves), Stream.of(first, second),
+                TestGlobals.DB, TestGlobals.COLL).toList();
+
+        assertEquals(List.of(first), and);
+        assertEquals(List.of(second), nand);
+    }
+
     private void addObjEntry(Cache cache, String id, int n) {
         final var obj = new JsonObject();
         obj.add(Globals.PK_FIELD, new JsonString(id));
@@ -16,11 +16,14 @@ import org.techhouse.bckg_ops.EventProcessorHelper;
 import org.techhouse.bckg_ops.PendingIndexWrites;
 import org.techhouse.bckg_ops.events.EntityEvent;
 import org.techhouse.bckg_ops.events.EventType;
+import org.techhouse.cache.AccessKind;
 import org.techhouse.cache.Cache;
 import org.techhouse.cache.UserCache;
 import org.techhouse.config.Globals;
 import org.techhouse.data.DbEntry;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.RowIdBitmap;
+import org.techhouse.data.RowIdDictionary;
 import org.techhouse.ejson.elements.JsonBaseElement;
 import org.techhouse.ejson.elements.JsonNumber;
 import org.techhouse.ejson.elements.JsonObject;
@@ -49,7 +52,7 @@ import org.techhouse.test.TestUtils;
 import org.techhouse.utils.ReflectionUtils;
 
 // Covers the index read/write consistency layer: the PendingIndexWrites overlay (no false positives
-// or negatives across FILTER/COUNT/GROUP_BY/SORT/DISTINCT/JOIN), evict-on-write convergence, and the
+// or negatives across FILTER/COUNT/GROUP_BY/SORT/DISTINCT/JOIN), write convergence, and the
 // UserCache snapshot/eviction helpers.
 public class IndexConsistencyTest {
     private Cache cache;
@@ -274,9 +277,9 @@ public class IndexConsistencyTest {
         assertEquals(1, result.getFirst().get("joined").asJsonArray().size());
     }
 
-    // ── evict-on-write convergence (Problem 3) ─────────────────────────────--
+    // ── write convergence (Problem 3) ──────────────────────────────────────--
 
-    // After the background entity event runs, the index is rewritten + cache evicted and the pending
+    // After the background entity event runs, the index is rewritten + cache updated and the pending
     // mark cleared, so the document is found via the index alone (no longer via the overlay).
     @Test
     public void test_background_indexing_converges_and_clears_pending() throws IOException, InterruptedException {
@@ -351,6 +354,210 @@ public class IndexConsistencyTest {
         assertEquals(Set.of("stay"), values);
     }
 
+    // ── incremental cache maintenance ─────────────────────────────────────--
+
+    private Set<String> filterIds(String field, JsonBaseElement value) throws IOException {
+        final var operator = new FieldOperator(FieldOperatorType.EQUALS, field, value);
+        return FilterOperatorHelper.processOperator(operator, null, TestGlobals.DB, TestGlobals.COLL)
+                .map(o -> o.get(Globals.PK_FIELD).asJsonString().getValue()).collect(Collectors.toSet());
+    }
+
+    private boolean isFieldIndexCached(String field, Class<?> type) {
+        return IocContainer.get(UserCache.class).hasLoadedIndex(TestGlobals.DB, TestGlobals.COLL,
+                Cache.getIndexIdentifier(field, type));
+    }
+
+    // Index maintenance applies the write to the cached index instead of evicting it, so a new value
+    // is visible through the warm cache and the old entries are still served from it.
+    @Test
+    public void test_update_indexes_keeps_field_index_cached() throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("A"));
+        enableIndex(TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("A")));
+        assertTrue(isFieldIndexCached("status", String.class));
+        addDoc(TestGlobals.COLL, "2", "status", new JsonString("B"));
+        addDoc(TestGlobals.COLL, "3", "status", new JsonString("a"));
+
+        IndexHelper.bulkUpdateIndexes(TestGlobals.DB, TestGlobals.COLL, List.of("2", "3"));
+
+        assertTrue(isFieldIndexCached("status", String.class));
+        assertEquals(Set.of("1"), filterIds(new JsonString("A")));
+        assertEquals(Set.of("2"), filterIds(new JsonString("B")));
+        // "a" sorts next to "A" but is a separate entry.
+        final var values = cache.getFieldIndexAndLoadIfNecessary(TestGlobals.DB, TestGlobals.COLL, "status",
+                String.class).stream().map(FieldIndexEntry::getValue).toList();
+        assertEquals(3, values.size());
+        assertEquals(Set.of("A", "a", "B"), Set.copyOf(values));
+        assertEquals("B", values.getLast());
+    }
+
+    // An entry emptied by an update leaves the cached index (no phantom DISTINCT value), and the
+    // cached state matches what a fresh load from the .idx files yields.
+    @Test
+    public void test_update_indexes_removes_emptied_entry_from_cache() throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("old"));
+        enableIndex(TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("old")));
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("new"));
+
+        IndexHelper.updateIndexes(TestGlobals.DB, TestGlobals.COLL, "1");
+
+        final var distinctReq = new AggregateRequest(TestGlobals.DB, TestGlobals.COLL);
+        distinctReq.setAggregationSteps(List.of(new DistinctAggregationStep("status")));
+        final var values = AggregationOperationHelper.processAggregation(distinctReq).stream()
+                .map(o -> o.get("status").asJsonString().getValue()).collect(Collectors.toSet());
+        assertEquals(Set.of("new"), values);
+        final var cached = cache.getFieldIndexAndLoadIfNecessary(TestGlobals.DB, TestGlobals.COLL, "status",
+                String.class);
+        cache.evictFieldIndexAllTypes(TestGlobals.DB, TestGlobals.COLL, "status");
+        final var reloaded = cache.getFieldIndexAndLoadIfNecessary(TestGlobals.DB, TestGlobals.COLL, "status",
+                String.class);
+        assertEquals(reloaded, cached);
+    }
+
+    // The size estimate the cached index keeps across in-place writes matches the one of a fresh load.
+    @Test
+    public void test_update_indexes_keeps_field_index_estimate() throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("old"));
+        addDoc(TestGlobals.COLL, "2", "status", new JsonString("kept"));
+        enableIndex(TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("old")));
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("new"));
+        addDoc(TestGlobals.COLL, "3", "status", new JsonString("kept"));
+
+        IndexHelper.bulkUpdateIndexes(TestGlobals.DB, TestGlobals.COLL, List.of("1", "3"));
+
+        final var maintained = statusIndexEstimate();
+        cache.evictFieldIndexAllTypes(TestGlobals.DB, TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("new")));
+        assertEquals(statusIndexEstimate(), maintained);
+    }
+
+    private long statusIndexEstimate() {
+        final var indexKey = Cache.getIndexIdentifier("status", String.class);
+        return IocContainer.get(UserCache.class).listCacheableResources().stream()
+                .filter(resource -> indexKey.equals(resource.indexKey())).findFirst().orElseThrow()
+                .estimatedSizeBytes();
+    }
+
+    // A query builds the row bitmaps of the cached index once; writes then change them in place, and a reload
+    // builds the same bitmaps with the same estimate.
+    @Test
+    public void test_update_indexes_keeps_row_bitmaps_of_cached_index() throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("A"));
+        addDoc(TestGlobals.COLL, "2", "status", new JsonString("B"));
+        enableIndex(TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("A")));
+        final var rowIds = cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL);
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("B"));
+        addDoc(TestGlobals.COLL, "3", "status", new JsonString("A"));
+        addDoc(TestGlobals.COLL, "4", "status", new JsonString("C"));
+
+        IndexHelper.bulkUpdateIndexes(TestGlobals.DB, TestGlobals.COLL, List.of("1", "3", "4"));
+
+        assertEquals(rowIds.rowsOf(Set.of("3")), statusRows("A", rowIds));
+        assertEquals(rowIds.rowsOf(Set.of("1", "2")), statusRows("B", rowIds));
+        assertEquals(rowIds.rowsOf(Set.of("4")), statusRows("C", rowIds));
+        final var maintained = statusIndexEstimate();
+        cache.evictFieldIndexAllTypes(TestGlobals.DB, TestGlobals.COLL, "status");
+        assertEquals(Set.of("3"), filterIds(new JsonString("A")));
+        assertEquals(statusIndexEstimate(), maintained);
+    }
+
+    private RowIdBitmap statusRows(String value, RowIdDictionary rowIds) throws IOException {
+        final var operator = new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString(value));
+        return cache.getRowIdsFromIndex(TestGlobals.DB, TestGlobals.COLL, "status", operator, value, rowIds);
+    }
+
+    // The row id dictionary is part of the collection's PK index resource and is evicted with it.
+    @Test
+    public void test_row_id_dictionary_is_accounted_and_evicted_with_pk_index() throws IOException {
+        addDoc(TestGlobals.COLL, "1", "status", new JsonString("A"));
+        enableIndex(TestGlobals.COLL, "status");
+        assertEquals(Set.of("1"), filterIds(new JsonString("A")));
+        final var userCache = IocContainer.get(UserCache.class);
+        final var rowIds = cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL);
+        final var pkResource = userCache.listCacheableResources().stream()
+                .filter(resource -> resource.kind() == AccessKind.PK_INDEX
+                        && TestGlobals.COLL.equals(resource.collName()))
+                .findFirst().orElseThrow();
+        assertTrue(pkResource.estimatedSizeBytes() >= rowIds.estimatedBytes());
+
+        userCache.evictPkIndex(TestGlobals.DB, TestGlobals.COLL);
+
+        assertNotSame(rowIds, cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL));
+        assertEquals(Set.of("1"), filterIds(new JsonString("A")));
+    }
+
+    // Once deleted documents hold most of its rows, the dictionary is replaced at the next page compaction.
+    @Test
+    public void test_page_compaction_replaces_mostly_retired_row_id_dictionary() {
+        final var userCache = IocContainer.get(UserCache.class);
+        final var rowIds = cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL);
+        for (var i = 0; i < 3000; i++) {
+            rowIds.rowOf("id" + i);
+        }
+        for (var i = 0; i < 1400; i++) {
+            userCache.removePkEntry(TestGlobals.DB, TestGlobals.COLL, "id" + i);
+        }
+        userCache.applyPageCompaction(TestGlobals.DB, TestGlobals.COLL, 0, Map.of());
+        assertSame(rowIds, cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL));
+
+        for (var i = 1400; i < 1600; i++) {
+            userCache.removePkEntry(TestGlobals.DB, TestGlobals.COLL, "id" + i);
+        }
+        userCache.applyPageCompaction(TestGlobals.DB, TestGlobals.COLL, 0, Map.of());
+        assertNotSame(rowIds, cache.getRowIdDictionary(TestGlobals.DB, TestGlobals.COLL));
+    }
+
+    // Whole numbers arrive as Integer while the index files load them as Double; a new document with an
+    // already-indexed number must join the existing entry, both in the cache and on disk.
+    @Test
+    public void test_update_indexes_merges_whole_numbers_into_existing_entry()
+            throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "n", new JsonNumber(5));
+        addDoc(TestGlobals.COLL, "2", "n", new JsonNumber(5));
+        enableIndex(TestGlobals.COLL, "n");
+        assertEquals(Set.of("1", "2"), filterIds("n", new JsonNumber(5)));
+        addDoc(TestGlobals.COLL, "3", "n", new JsonNumber(5));
+
+        IndexHelper.updateIndexes(TestGlobals.DB, TestGlobals.COLL, "3");
+
+        assertEquals(Set.of("1", "2", "3"), filterIds("n", new JsonNumber(5)));
+        cache.evictFieldIndexAllTypes(TestGlobals.DB, TestGlobals.COLL, "n");
+        assertEquals(Set.of("1", "2", "3"), filterIds("n", new JsonNumber(5)));
+        // A second write after the reload must still rewrite the same index line.
+        addDoc(TestGlobals.COLL, "4", "n", new JsonNumber(5));
+        IndexHelper.updateIndexes(TestGlobals.DB, TestGlobals.COLL, "4");
+        cache.evictFieldIndexAllTypes(TestGlobals.DB, TestGlobals.COLL, "n");
+        assertEquals(Set.of("1", "2", "3", "4"), filterIds("n", new JsonNumber(5)));
+    }
+
+    // The packed Number index stays cached across writes and range queries see the moved values.
+    @Test
+    public void test_update_indexes_keeps_numeric_index_cached() throws IOException, InterruptedException {
+        addDoc(TestGlobals.COLL, "1", "n", new JsonNumber(1));
+        addDoc(TestGlobals.COLL, "2", "n", new JsonNumber(2));
+        enableIndex(TestGlobals.COLL, "n");
+        assertEquals(Set.of("1", "2"), rangeIds("n", FieldOperatorType.GREATER_THAN_EQUALS, new JsonNumber(1)));
+        assertTrue(isFieldIndexCached("n", Number.class));
+        addDoc(TestGlobals.COLL, "1", "n", new JsonNumber(5));
+        addDoc(TestGlobals.COLL, "3", "n", new JsonNumber(3.5));
+
+        IndexHelper.bulkUpdateIndexes(TestGlobals.DB, TestGlobals.COLL, List.of("1", "3"));
+
+        assertTrue(isFieldIndexCached("n", Number.class));
+        assertEquals(Set.of("1", "3"), rangeIds("n", FieldOperatorType.GREATER_THAN, new JsonNumber(2)));
+        assertEquals(Set.of("2"), rangeIds("n", FieldOperatorType.SMALLER_THAN, new JsonNumber(3)));
+        assertTrue(filterIds("n", new JsonNumber(1)).isEmpty());
+    }
+
+    private Set<String> rangeIds(String field, FieldOperatorType type, JsonBaseElement value) throws IOException {
+        final var operator = new FieldOperator(type, field, value);
+        return FilterOperatorHelper.processOperator(operator, null, TestGlobals.DB, TestGlobals.COLL)
+                .map(o -> o.get(Globals.PK_FIELD).asJsonString().getValue()).collect(Collectors.toSet());
+    }
+
     // ── order-independent re-read (Finding 2) ──────────────────────────────--
 
     // Index maintenance indexes the CURRENT committed document, not a (possibly stale) event snapshot.
@@ -501,7 +708,7 @@ public class IndexConsistencyTest {
         assertEquals(List.of("a"), resp.getUpdated(), "smallest id must be treated as an update");
         assertTrue(resp.getInserted().isEmpty(), "must not insert a duplicate");
         // No duplicate PK entry: exactly three ids remain.
-        assertEquals(3, cache.getPkIndexAndLoadIfNecessary(TestGlobals.DB, TestGlobals.COLL).size());
+        assertEquals(3, cache.getPkIndex(TestGlobals.DB, TestGlobals.COLL).size());
         assertEquals("alpha2", readStatus(processor, "a"));
     }
 
@@ -0,0 +1,181 @@
+package org.techhouse.unit.ops;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.techhouse.analyze.AnalyzeContext;
+import org.techhouse.cache.Cache;
+import org.techhouse.config.Globals;
+import org.techhouse.data.DbEntry;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ejson.elements.JsonString;
+import org.techhouse.ioc.IocContainer;
+import org.techhouse.ops.IndexHelper;
+import org.techhouse.ops.JoinOperatorHelper;
+import org.techhouse.ops.OperationProcessor;
+import org.techhouse.ops.req.SaveRequest;
+import org.techhouse.ops.req.agg.step.JoinAggregationStep;
+import org.techhouse.test.TestGlobals;
+import org.techhouse.test.TestUtils;
+
+public class JoinOperatorHelperTest {
+    private static final JoinAggregationStep STEP = new JoinAggregationStep(TestGlobals.JOIN_COLL, "ref", "refKey",
+            "joined");
+
+    private AnalyzeContext context;
+
+    @BeforeEach
+    public void setUp() throws IOException, NoSuchFieldException, IllegalAccessException, InterruptedException {
+        TestUtils.standardInitialSetup();
+        TestUtils.createTestDatabaseAndCollection();
+        TestUtils.createTestJoinCollection();
+        context = new AnalyzeContext();
+        AnalyzeContext.set(context);
+    }
+
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        AnalyzeContext.clear();
+        TestUtils.standardTearDown();
+    }
+
+    // Saved through the processor, so the remote PK index counts them.
+    private static void saveRemote(OperationProcessor processor, String id, int refKey) {
+        final var save = new SaveRequest(TestGlobals.DB, TestGlobals.JOIN_COLL);
+        final var obj = new JsonObject();
+        obj.add(Globals.PK_FIELD, new JsonString(id));
+        obj.addProperty("refKey", refKey);
+        obj.addProperty("label", "r" + refKey);
+        save.setObject(obj);
+        save.set_id(id);
+        processor.processMessage(save);
+    }
+
+    private static Stream<JsonObject> input(Integer... refs) {
+        return IntStream.range(0, refs.length).mapToObj(i -> {
+            final var document = new JsonObject();
+            document.addProperty(Globals.PK_FIELD, "l" + i);
+            if (refs[i] != null) {
+                document.addProperty("ref", refs[i]);
+            }
+            return document;
+        });
+    }
+
+    // "id:labels" per output document, e.g. "l0:r2,r2" or "l3:-" when the document was not joined
+    private static List<String> joined(Stream<JsonObject> documents) {
+        try (documents) {
+            return documents.map(document -> {
+                final var id = document.get(Globals.PK_FIELD).asJsonString().getValue();
+                if (!document.has("joined")) {
+                    return id + ":-";
+                }
+                final var matches = document.get("joined");
+                if (matches.isJsonNull()) {
+                    return id + ":null";
+                }
+                final var labels = new ArrayList<String>();
+                matches.asJsonArray().forEach(match -> labels.add(match.asJsonObject().get("label").asJsonString()
+                        .getValue()));
+                return id + ":" + String.join(",", labels);
+            }).toList();
+        }
+    }
+
+    private static String[] spillFiles() {
+        final var files = new File(TestGlobals.PATH, Globals.SPILL_FOLDER_NAME).list();
+        return files == null ? new String[0] : files;
+    }
+
+    // An input larger than the remote collection probes a table built on the remote side, keeping its order
+    @Test
+    public void test_hash_join_builds_on_smaller_remote_collection() {
+        final var processor = new OperationProcessor();
+        saveRemote(processor, "a", 1);
+        saveRemote(processor, "b", 2);
+
+        final var result = joined(JoinOperatorHelper.join(STEP, input(2, 1, 3, null), TestGlobals.DB));
+
+        assertEquals(List.of("l0:r2", "l1:r1", "l2:null", "l3:-"), result);
+        assertEquals(List.of("JOIN joinCollection as joined: hash join built on joinCollection"),
+                context.getJoinStrategies());
+    }
+
+    // An input smaller than the remote collection becomes the build side
+    @Test
+    public void test_hash_join_builds_on_smaller_input() {
+        final var processor = new OperationProcessor();
+        saveRemote(processor, "a", 1);
+        saveRemote(processor, "b", 2);
+        saveRemote(processor, "c", 2);
+
+        final var result = joined(JoinOperatorHelper.join(STEP, input(2), TestGlobals.DB));
+
+        assertEquals(List.of("l0:r2,r2"), result);
+        assertEquals(List.of("JOIN joinCollection as joined: hash join built on the input"),
+                context.getJoinStrategies());
+    }
+
+    // A remote table over the budget is partitioned to disk; the result still matches the in-memory join, in
+    // input order, and the partition files are gone once it is read
+    @Test
+    public void test_grace_hash_join_matches_in_memory_join() {
+        final var processor = new OperationProcessor();
+        for (var i = 0; i < 12; i++) {
+            saveRemote(processor, "r" + i, i % 5);
+        }
+        final Integer[] refs = {4, 0, 9, 1, null, 3, 3, 2, 0, 4, 1, 7, 2, 0, 4, 2};
+
+        final var expected = joined(JoinOperatorHelper.join(STEP, input(refs), TestGlobals.DB, Long.MAX_VALUE));
+        final var spilled = joined(JoinOperatorHelper.join(STEP, input(refs), TestGlobals.DB, 1));
+
+        assertEquals(expected, spilled);
+        assertTrue(context.getJoinStrategies().getLast().startsWith(
+                "JOIN joinCollection as joined: grace hash join in "));
+        assertEquals(0, spillFiles().length);
+    }
+
+    // With an index on the remote field the input streams through in batches probing the index, and only the
+    // matching remote documents are read
+    @Test
+    public void test_index_nested_loop_join_reads_only_matches() {
+        final var cache = IocContainer.get(Cache.class);
+        for (var i = 0; i < 4; i++) {
+            final var obj = new JsonObject();
+            obj.add(Globals.PK_FIELD, new JsonString("r" + i));
+            obj.addProperty("refKey", i);
+            obj.addProperty("label", "r" + i);
+            final var entry = DbEntry.fromJsonObject(TestGlobals.DB, TestGlobals.JOIN_COLL, obj);
+            entry.set_id("r" + i);
+            cache.addEntryToCache(TestGlobals.DB, TestGlobals.JOIN_COLL, entry);
+        }
+        IndexHelper.createIndex(TestGlobals.DB, TestGlobals.JOIN_COLL, "refKey");
+        cache.getAdminCollectionEntry(TestGlobals.DB, TestGlobals.JOIN_COLL).setIndexes(Set.of("refKey"));
+        // Building the index scans the collection; only the join's reads are of interest.
+        context = new AnalyzeContext();
+        AnalyzeContext.set(context);
+        // Three probe batches, all referencing remote document r1.
+        final var refs = new Integer[600];
+        Arrays.fill(refs, 1);
+
+        final var result = joined(JoinOperatorHelper.join(STEP, input(refs), TestGlobals.DB));
+
+        assertEquals(600, result.size());
+        assertTrue(result.stream().allMatch(joined -> joined.endsWith(":r1")));
+        assertEquals("l599:r1", result.getLast());
+        assertEquals(List.of("JOIN joinCollection as joined: index nested-loop join on refKey"),
+                context.getJoinStrategies());
+        // r1 once per batch.
+        assertEquals(3, context.getDocumentsScanned());
+    }
+}
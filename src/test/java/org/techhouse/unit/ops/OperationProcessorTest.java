@@ -3,7 +3,11 @@ package org.techhouse.unit.ops;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -14,8 +18,12 @@ import org.techhouse.bckg_ops.BackgroundTaskManager;
 import org.techhouse.bckg_ops.PendingIndexWrites;
 import org.techhouse.bckg_ops.events.EventType;
 import org.techhouse.cache.Cache;
+import org.techhouse.concurrency.ReadSnapshot;
 import org.techhouse.concurrency.ResourceLocking;
+import org.techhouse.concurrency.SnapshotManager;
 import org.techhouse.config.Globals;
+import org.techhouse.conn.ClientTracker;
+import org.techhouse.data.Client;
 import org.techhouse.data.DbEntry;
 import org.techhouse.ejson.elements.JsonArray;
 import org.techhouse.ejson.elements.JsonNumber;
@@ -23,6 +31,7 @@ import org.techhouse.ejson.elements.JsonObject;
 import org.techhouse.ejson.elements.JsonString;
 import org.techhouse.ioc.IocContainer;
 import org.techhouse.ops.AdminOperationHelper;
+import org.techhouse.ops.ErrorCode;
 import org.techhouse.ops.OperationProcessor;
 import org.techhouse.ops.OperationStatus;
 import org.techhouse.ops.OperationType;
@@ -38,6 +47,8 @@ import org.techhouse.ops.req.DropDatabaseRequest;
 import org.techhouse.ops.req.DropIndexRequest;
 import org.techhouse.ops.req.FindByIdRequest;
 import org.techhouse.ops.req.GetDatabaseStatsRequest;
+import org.techhouse.ops.req.GetMoreRequest;
+import org.techhouse.ops.req.KillCursorRequest;
 import org.techhouse.ops.req.ListCollectionsRequest;
 import org.techhouse.ops.req.ListDatabasesRequest;
 import org.techhouse.ops.req.ReindexRequest;
@@ -47,6 +58,7 @@ import org.techhouse.ops.req.agg.BaseAggregationStep;
 import org.techhouse.ops.req.agg.FieldOperatorType;
 import org.techhouse.ops.req.agg.operators.FieldOperator;
 import org.techhouse.ops.req.agg.step.FilterAggregationStep;
+import org.techhouse.ops.req.agg.step.LimitAggregationStep;
 import org.techhouse.ops.req.agg.step.JoinAggregationStep;
 import org.techhouse.ops.req.agg.step.SortAggregationStep;
 import org.techhouse.ops.resp.AggregateAnalyzeResponse;
@@ -57,10 +69,12 @@ import org.techhouse.ops.resp.CreateCollectionResponse;
 import org.techhouse.ops.resp.CreateDatabaseResponse;
 import org.techhouse.ops.resp.CreateIndexResponse;
 import org.techhouse.ops.resp.DeleteResponse;
+import org.techhouse.ops.resp.CursorBatchResponse;
 import org.techhouse.ops.resp.DropCollectionResponse;
 import org.techhouse.ops.resp.DropDatabaseResponse;
 import org.techhouse.ops.resp.DropIndexResponse;
 import org.techhouse.ops.resp.FindByIdResponse;
+import org.techhouse.ops.resp.KillCursorResponse;
 import org.techhouse.ops.resp.GetDatabaseStatsResponse;
 import org.techhouse.ops.resp.ListCollectionsResponse;
 import org.techhouse.ops.resp.ListDatabasesResponse;
@@ -69,6 +83,7 @@ import org.techhouse.ops.resp.ReindexResponse;
 import org.techhouse.ops.resp.SaveResponse;
 import org.techhouse.test.TestGlobals;
 import org.techhouse.test.TestUtils;
+import org.techhouse.utils.ReflectionUtils;
 
 public class OperationProcessorTest {
     final OperationProcessor processor = IocContainer.get(OperationProcessor.class);
@@ -268,6 +283,277 @@ public class OperationProcessorTest {
         assertEquals(1, aggregateResponse.getResults().size());
     }
 
+    private UUID registerTestClient() throws NoSuchFieldException, IllegalAccessException {
+        final var clientsType = new ReflectionUtils.TypeToken<Map<UUID, Client>>() {
+        };
+        final var clients = TestUtils.getPrivateField(IocContainer.get(ClientTracker.class), "clients", clientsType);
+        final var clientId = UUID.randomUUID();
+        clients.put(clientId, new Client("127.0.0.1"));
+        return clientId;
+    }
+
+    private void saveNumberedDocuments(String coll, int count) {
+        processor.processMessage(new CreateCollectionRequest(TestGlobals.DB, coll));
+        for (var i = 0; i < count; i++) {
+            final var saveRequest = new SaveRequest(TestGlobals.DB, coll);
+            final var obj = new JsonObject();
+            obj.add("_id", new JsonString("doc" + i));
+            obj.addProperty("n", i);
+            saveRequest.setObject(obj);
+            processor.processMessage(saveRequest);
+        }
+    }
+
+    // An unvalidated analyze with a batchSize isn't batched: it returns everything with its analyzeResult
+    @Test
+    public void test_batched_aggregate_with_analyze_not_batched() throws NoSuchFieldException, IllegalAccessException {
+        final var coll = "cursorAnalyzeColl";
+        saveNumberedDocuments(coll, 3);
+        final var clientId = registerTestClient();
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAggregationSteps(List.of());
+        aggregateRequest.setBatchSize(1);
+        aggregateRequest.setAnalyze(true);
+
+        final var response = (AggregateAnalyzeResponse) processor.processMessage(aggregateRequest, clientId);
+
+        assertEquals(OperationStatus.OK, response.getStatus());
+        assertEquals(3, response.getResults().size());
+        assertNotNull(response.getAnalyzeResult());
+    }
+
+    // A batched AGGREGATE returns the first batch and a cursor; GET_MORE reads the rest and closes it at the end
+    @Test
+    public void test_batched_aggregate_pages_through_cursor() throws NoSuchFieldException, IllegalAccessException {
+        final var coll = "cursorColl";
+        saveNumberedDocuments(coll, 5);
+        final var clientId = registerTestClient();
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAggregationSteps(List.of());
+        aggregateRequest.setBatchSize(2);
+
+        final var first = (CursorBatchResponse) processor.processMessage(aggregateRequest, clientId);
+        assertEquals(OperationType.AGGREGATE, first.getType());
+        assertEquals(2, first.getResults().size());
+        assertNotNull(first.getCursorId());
+
+        final var getMore = new GetMoreRequest();
+        getMore.setCursorId(first.getCursorId());
+        final var second = (CursorBatchResponse) processor.processMessage(getMore, clientId);
+        assertEquals(OperationType.GET_MORE, second.getType());
+        assertEquals(2, second.getResults().size());
+        assertEquals(first.getCursorId(), second.getCursorId());
+
+        final var third = (CursorBatchResponse) processor.processMessage(getMore, clientId);
+        assertEquals(1, third.getResults().size());
+        assertNull(third.getCursorId());
+
+        final var ids = new HashSet<String>();
+        for (var batch : List.of(first, second, third)) {
+            batch.getResults().forEach(doc -> ids.add(doc.get("_id").asJsonString().getValue()));
+        }
+        assertEquals(5, ids.size());
+        final var exhausted = processor.processMessage(getMore, clientId);
+        assertEquals(ErrorCode.CURSOR_NOT_FOUND.getCode(), exhausted.getErrorCode());
+    }
+
+    // A result that fits in the first batch opens no cursor; without a client the batch size is ignored
+    @Test
+    public void test_batched_aggregate_without_more_results_has_no_cursor()
+            throws NoSuchFieldException, IllegalAccessException {
+        final var coll = "smallCursorColl";
+        saveNumberedDocuments(coll, 3);
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAggregationSteps(List.of());
+        aggregateRequest.setBatchSize(3);
+
+        final var response = (CursorBatchResponse) processor.processMessage(aggregateRequest, registerTestClient());
+        assertEquals(3, response.getResults().size());
+        assertNull(response.getCursorId());
+
+        aggregateRequest.setBatchSize(1);
+        final var unbatched = (AggregateResponse) processor.processMessage(aggregateRequest);
+        assertEquals(3, unbatched.getResults().size());
+    }
+
+    // KILL_CURSOR closes an open cursor; later reads of it are not found
+    @Test
+    public void test_kill_cursor_closes_it() throws NoSuchFieldException, IllegalAccessException {
+        final var coll = "killCursorColl";
+        saveNumberedDocuments(coll, 4);
+        final var clientId = registerTestClient();
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAggregationSteps(List.of());
+        aggregateRequest.setBatchSize(1);
+        final var first = (CursorBatchResponse) processor.processMessage(aggregateRequest, clientId);
+
+        final var kill = new KillCursorRequest();
+        kill.setCursorId(first.getCursorId());
+        assertInstanceOf(KillCursorResponse.class, processor.processMessage(kill, clientId));
+
+        final var getMore = new GetMoreRequest();
+        getMore.setCursorId(first.getCursorId());
+        assertEquals(ErrorCode.CURSOR_NOT_FOUND.getCode(), processor.processMessage(getMore, clientId).getErrorCode());
+        assertEquals(ErrorCode.CURSOR_NOT_FOUND.getCode(), processor.processMessage(kill, clientId).getErrorCode());
+    }
+
+    // An AGGREGATE reads at a snapshot: it completes while another thread holds the collection write lock.
+    @Test
+    public void test_aggregate_proceeds_while_collection_write_locked() throws Exception {
+        final var coll = "snapshotReadColl";
+        saveNumberedDocuments(coll, 3);
+        final var locks = IocContainer.get(ResourceLocking.class);
+        locks.lock(TestGlobals.DB, coll);
+        try {
+            final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+            aggregateRequest.setAggregationSteps(List.of());
+            final var result = new AtomicReference<OperationResponse>();
+            final var done = new CountDownLatch(1);
+            final var worker = new Thread(() -> {
+                result.set(processor.processMessage(aggregateRequest));
+                done.countDown();
+            });
+            worker.start();
+            assertTrue(done.await(2, TimeUnit.SECONDS), "an AGGREGATE must not wait for the collection writer");
+            assertEquals(3, ((AggregateResponse) result.get()).getResults().size());
+        } finally {
+            locks.release(TestGlobals.DB, coll);
+        }
+    }
+
+    // Saves of different documents share the collection: one completes while another writer is in the middle of
+    // its write, and a save of the document that writer holds waits for it.
+    @Test
+    public void test_saves_of_different_documents_run_concurrently() throws Exception {
+        final var coll = "concurrentSaveColl";
+        saveNumberedDocuments(coll, 2);
+        final var locks = IocContainer.get(ResourceLocking.class);
+        locks.lockSharedWrite(TestGlobals.DB, coll);
+        locks.lockDocument(TestGlobals.DB, coll, "doc0");
+        try {
+            final var other = saveInBackground(coll, "doc1");
+            assertTrue(other.done().await(2, TimeUnit.SECONDS), "a save of another document must not wait");
+            assertEquals(OperationStatus.OK, other.result().get().getStatus());
+            final var fresh = saveInBackground(coll, null);
+            assertTrue(fresh.done().await(2, TimeUnit.SECONDS), "an insert must not wait");
+
+            final var same = saveInBackground(coll, "doc0");
+            assertFalse(same.done().await(300, TimeUnit.MILLISECONDS), "a save of the same document must wait");
+            locks.releaseDocument(TestGlobals.DB, coll, "doc0");
+            assertTrue(same.done().await(2, TimeUnit.SECONDS), "the save proceeds once the document is released");
+            assertEquals(OperationStatus.OK, same.result().get().getStatus());
+        } finally {
+            locks.releaseDocument(TestGlobals.DB, coll, "doc0");
+            locks.releaseSharedWrite(TestGlobals.DB, coll);
+        }
+        final var count = new AggregateRequest(TestGlobals.DB, coll);
+        count.setAggregationSteps(List.of());
+        assertEquals(3, ((AggregateResponse) processor.processMessage(count)).getResults().size());
+    }
+
+    private record BackgroundSave(CountDownLatch done, AtomicReference<OperationResponse> result) {
+    }
+
+    private BackgroundSave saveInBackground(String coll, String id) {
+        final var saveRequest = new SaveRequest(TestGlobals.DB, coll);
+        final var obj = new JsonObject();
+        if (id != null) {
+            obj.add("_id", new JsonString(id));
+            // As RequestParser sets it.
+            saveRequest.set_id(id);
+        }
+        obj.addProperty("n", 100);
+        saveRequest.setObject(obj);
+        final var save = new BackgroundSave(new CountDownLatch(1), new AtomicReference<>());
+        new Thread(() -> {
+            save.result().set(processor.processMessage(saveRequest));
+            save.done().countDown();
+        }).start();
+        return save;
+    }
+
+    // Reads under a snapshot see the collection as it was when it was pinned, whatever was written since.
+    @Test
+    public void test_reads_under_snapshot_ignore_later_writes() throws Exception {
+        final var coll = "snapshotWritesColl";
+        saveNumberedDocuments(coll, 4);
+        final var cache = IocContainer.get(Cache.class);
+        final var snapshot = IocContainer.get(SnapshotManager.class)
+                .pin(List.of(Cache.getCollectionIdentifier(TestGlobals.DB, coll)));
+        try {
+            final var update = new SaveRequest(TestGlobals.DB, coll);
+            final var changed = new JsonObject();
+            changed.add("_id", new JsonString("doc1"));
+            changed.addProperty("n", 100);
+            update.setObject(changed);
+            update.set_id("doc1");
+            assertEquals(OperationStatus.OK, processor.processMessage(update).getStatus());
+            final var delete = new DeleteRequest(TestGlobals.DB, coll);
+            delete.set_id("doc2");
+            assertEquals(OperationStatus.OK, processor.processMessage(delete).getStatus());
+            final var insert = new SaveRequest(TestGlobals.DB, coll);
+            final var inserted = new JsonObject();
+            inserted.add("_id", new JsonString("doc9"));
+            inserted.addProperty("n", 9);
+            insert.setObject(inserted);
+            assertEquals(OperationStatus.OK, processor.processMessage(insert).getStatus());
+
+            ReadSnapshot.set(snapshot);
+            final Map<String, Integer> scanned;
+            try (var stream = cache.streamCollection(TestGlobals.DB, coll)) {
+                scanned = stream.collect(java.util.stream.Collectors.toMap(DbEntry::get_id,
+                        entry -> entry.getData().get("n").asJsonNumber().getValue().intValue()));
+            }
+            assertEquals(Map.of("doc0", 0, "doc1", 1, "doc2", 2, "doc3", 3), scanned);
+            final var byId = cache.getEntriesByIds(TestGlobals.DB, coll, Set.of("doc1", "doc2", "doc9"));
+            assertEquals(Set.of("doc1", "doc2"), new HashSet<>(byId.stream().map(DbEntry::get_id).toList()));
+            byId.forEach(entry -> assertTrue(entry.getData().get("n").asJsonNumber().getValue().intValue() < 4));
+            assertEquals(4, cache.countDocuments(TestGlobals.DB, coll));
+        } finally {
+            ReadSnapshot.clear();
+            snapshot.close();
+        }
+        assertEquals(4, cache.countDocuments(TestGlobals.DB, coll));
+    }
+
+    // A cursor keeps reading at the AGGREGATE's snapshot: writes between batches are not seen.
+    @Test
+    public void test_cursor_batches_ignore_writes_between_them()
+            throws NoSuchFieldException, IllegalAccessException {
+        final var coll = "snapshotCursorColl";
+        saveNumberedDocuments(coll, 4);
+        final var clientId = registerTestClient();
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAggregationSteps(List.of());
+        aggregateRequest.setBatchSize(1);
+        final var first = (CursorBatchResponse) processor.processMessage(aggregateRequest, clientId);
+        assertNotNull(first.getCursorId());
+
+        for (var i = 0; i < 4; i++) {
+            final var update = new SaveRequest(TestGlobals.DB, coll);
+            final var changed = new JsonObject();
+            changed.add("_id", new JsonString("doc" + i));
+            changed.addProperty("n", 100 + i);
+            update.setObject(changed);
+            update.set_id("doc" + i);
+            processor.processMessage(update);
+        }
+        final var delete = new DeleteRequest(TestGlobals.DB, coll);
+        delete.set_id("doc3");
+        processor.processMessage(delete);
+
+        final var getMore = new GetMoreRequest();
+        getMore.setCursorId(first.getCursorId());
+        getMore.setBatchSize(10);
+        final var rest = (CursorBatchResponse) processor.processMessage(getMore, clientId);
+        final var ids = new HashSet<String>();
+        for (var doc : List.of(first.getResults(), rest.getResults()).stream().flatMap(List::stream).toList()) {
+            ids.add(doc.get("_id").asJsonString().getValue());
+            assertTrue(doc.get("n").asJsonNumber().getValue().intValue() < 4, "batches must read the snapshot");
+        }
+        assertEquals(Set.of("doc0", "doc1", "doc2", "doc3"), ids);
+    }
+
     // Without analyze, the response is a plain AggregateResponse (no analyzeResult).
     @Test
     public void test_aggregation_without_analyze_has_no_analyzeResult() {
@@ -314,7 +600,8 @@ public class OperationProcessorTest {
         final var analyzeResult = response.getAnalyzeResult();
         assertNotNull(analyzeResult);
         assertTrue(analyzeResult.getDocumentsScanned() > 0);
-        assertTrue(analyzeResult.getLocksAcquired().contains(Cache.getCollectionIdentifier(TestGlobals.DB, coll)));
+        // Read at a snapshot: no collection lock is taken.
+        assertFalse(analyzeResult.getLocksAcquired().contains(Cache.getCollectionIdentifier(TestGlobals.DB, coll)));
     }
 
     // An index-backed filter reports the index as used.
@@ -328,6 +615,15 @@ public class OperationProcessorTest {
         obj.add("status", new JsonString("active"));
         saveRequest.setObject(obj);
         processor.processMessage(saveRequest);
+        // Enough other values that the filter is selective, so the planner picks the index over a scan.
+        for (var i = 0; i < 4; i++) {
+            final var otherRequest = new SaveRequest(TestGlobals.DB, coll);
+            final var other = new JsonObject();
+            other.add("_id", new JsonString("o" + i));
+            other.add("status", new JsonString("other" + i));
+            otherRequest.setObject(other);
+            processor.processMessage(otherRequest);
+        }
         // Index creation is synchronous, so the index is available to the next aggregation.
         processor.processMessage(new CreateIndexRequest(TestGlobals.DB, coll, "status"));
 
@@ -384,7 +680,7 @@ public class OperationProcessorTest {
 
         final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
         aggregateRequest.setAnalyze(true);
-        aggregateRequest.setAggregationSteps(List.of(new SortAggregationStep("status", true), new FilterAggregationStep(
+        aggregateRequest.setAggregationSteps(List.of(new LimitAggregationStep(10), new FilterAggregationStep(
                 new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString("active")))));
 
         final var response = (AggregateAnalyzeResponse) processor.processMessage(aggregateRequest);
@@ -393,6 +689,32 @@ public class OperationProcessorTest {
                 .anyMatch(s -> s.startsWith("FILTER step") && s.contains("step 2")));
     }
 
+    // A FILTER after a SORT is moved ahead of it by the planner, which analyze reports instead of a suggestion.
+    @Test
+    public void test_aggregation_with_analyze_reports_filter_moved_ahead_of_sort() {
+        final var coll = "analyzePlanColl";
+        processor.processMessage(new CreateCollectionRequest(TestGlobals.DB, coll));
+        final var saveRequest = new SaveRequest(TestGlobals.DB, coll);
+        final var obj = new JsonObject();
+        obj.add("_id", new JsonString("a1"));
+        obj.add("status", new JsonString("active"));
+        saveRequest.setObject(obj);
+        processor.processMessage(saveRequest);
+
+        final var aggregateRequest = new AggregateRequest(TestGlobals.DB, coll);
+        aggregateRequest.setAnalyze(true);
+        aggregateRequest.setAggregationSteps(List.of(new SortAggregationStep("status", true), new FilterAggregationStep(
+                new FieldOperator(FieldOperatorType.EQUALS, "status", new JsonString("active")))));
+
+        final var analyzeResult = ((AggregateAnalyzeResponse) processor.processMessage(aggregateRequest))
+                .getAnalyzeResult();
+
+        assertEquals(List.of("FILTER on status moved ahead of SORT"), analyzeResult.getPlanRewrites());
+        assertEquals(List.of("FILTER on status [scan, no usable index]", "SORT on status ascending"),
+                analyzeResult.getPlan());
+        assertTrue(analyzeResult.getSuggestions().stream().noneMatch(s -> s.startsWith("FILTER step")));
+    }
+
     // Analyze mode returns the diagnostic even when there are no results (no NO_RESULTS error).
     @Test
     public void test_aggregation_with_analyze_empty_results_still_has_analyzeResult() {
@@ -541,11 +863,10 @@ public class OperationProcessorTest {
         assertEquals(OperationStatus.OK, response.getStatus());
 
         final var cache = IocContainer.get(org.techhouse.cache.Cache.class);
-        final var pkIdx = cache.getPkIndexAndLoadIfNecessary(TestGlobals.DB, TestGlobals.COLL);
-        final var saved = pkIdx.stream().filter(p -> p.getValue().equals("testPageAssignedId")).findFirst();
-        assertTrue(saved.isPresent());
+        final var saved = cache.getPkIndex(TestGlobals.DB, TestGlobals.COLL).get("testPageAssignedId");
+        assertNotNull(saved);
         // First insert into a small collection lands on page 0
-        assertEquals(0L, saved.get().getPage());
+        assertEquals(0L, saved.getPage());
     }
 
     // List databases returns user databases excluding admin
@@ -931,9 +1252,10 @@ public class OperationProcessorTest {
         }
     }
 
-    // A normal (locking) read blocks while a writer holds the collection, then proceeds once released.
+    // A normal read is taken at a snapshot: it blocks only while a writer holds the collection exclusively (page
+    // compaction, migration), then proceeds once released.
     @Test
-    public void test_normal_read_blocks_until_write_released() throws Exception {
+    public void test_normal_read_blocks_until_exclusive_write_released() throws Exception {
         final var locks = IocContainer.get(ResourceLocking.class);
         final var request = new FindByIdRequest(TestGlobals.DB, TestGlobals.COLL);
         request.set_id("missing");
@@ -942,12 +1264,12 @@ public class OperationProcessorTest {
             processor.processMessage(request);
             done.countDown();
         });
-        locks.lock(TestGlobals.DB, TestGlobals.COLL);
+        locks.lockExclusive(TestGlobals.DB, TestGlobals.COLL);
         boolean releasedWrite = false;
         try {
             worker.start();
             assertFalse(done.await(300, TimeUnit.MILLISECONDS),
-                    "a locking read must block while a writer holds the collection");
+                    "a read must block while a writer holds the collection exclusively");
             locks.release(TestGlobals.DB, TestGlobals.COLL);
             releasedWrite = true;
             assertTrue(done.await(2, TimeUnit.SECONDS),
@@ -959,7 +1281,7 @@ public class OperationProcessorTest {
         }
     }
 
-    // An AGGREGATE with a JOIN read-locks both collections and releases them when finished.
+    // An AGGREGATE with a JOIN leaves both collections free for a writer when finished.
     @Test
     public void test_aggregate_with_join_releases_both_collection_locks() {
         processor.processMessage(new CreateCollectionRequest(TestGlobals.DB, TestGlobals.JOIN_COLL));
@@ -1012,11 +1334,9 @@ public class OperationProcessorTest {
             aSave.set_id("a");
             assertEquals(OperationStatus.OK, processor.processMessage(aSave).getStatus());
 
-            final var pkIndex = cache.getPkIndexAndLoadIfNecessary(TestGlobals.DB, collName);
-            final var keepPageBefore = pkIndex.stream().filter(p -> p.getValue().equals("keep")).findFirst()
-                    .orElseThrow().getPage();
-            final var aPageBefore = pkIndex.stream().filter(p -> p.getValue().equals("a")).findFirst().orElseThrow()
-                    .getPage();
+            final var pkIndex = cache.getPkIndex(TestGlobals.DB, collName);
+            final var keepPageBefore = pkIndex.get("keep").getPage();
+            final var aPageBefore = pkIndex.get("a").getPage();
             assertEquals(0L, keepPageBefore);
             assertEquals(0L, aPageBefore, "both docs must start co-located on page 0");
 
@@ -1031,11 +1351,9 @@ public class OperationProcessorTest {
             assertEquals(OperationStatus.OK, processor.processMessage(growSave).getStatus());
 
             // "a" relocated off page 0; "keep" stayed put.
-            final var pkAfter = cache.getPkIndexAndLoadIfNecessary(TestGlobals.DB, collName);
-            final var aPageAfter = pkAfter.stream().filter(p -> p.getValue().equals("a")).findFirst().orElseThrow()
-                    .getPage();
-            final var keepPageAfter = pkAfter.stream().filter(p -> p.getValue().equals("keep")).findFirst()
-                    .orElseThrow().getPage();
+            final var pkAfter = cache.getPkIndex(TestGlobals.DB, collName);
+            final var aPageAfter = pkAfter.get("a").getPage();
+            final var keepPageAfter = pkAfter.get("keep").getPage();
             assertEquals(0L, keepPageAfter, "the untouched doc must stay on page 0");
             assertTrue(aPageAfter > 0L, "the grown doc must relocate off page 0 (was " + aPageAfter + ")");
 
@@ -0,0 +1,95 @@
+package org.techhouse.unit.ops;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.techhouse.ejson.elements.JsonString;
+import org.techhouse.ops.QueryPlan;
+import org.techhouse.ops.QueryPlanner;
+import org.techhouse.ops.req.agg.BaseAggregationStep;
+import org.techhouse.ops.req.agg.ConjunctionOperatorType;
+import org.techhouse.ops.req.agg.FieldOperatorType;
+import org.techhouse.ops.req.agg.operators.ConjunctionOperator;
+import org.techhouse.ops.req.agg.operators.FieldOperator;
+import org.techhouse.ops.req.agg.step.FilterAggregationStep;
+import org.techhouse.ops.req.agg.step.LimitAggregationStep;
+import org.techhouse.ops.req.agg.step.MapAggregationStep;
+import org.techhouse.ops.req.agg.step.SkipAggregationStep;
+import org.techhouse.ops.req.agg.step.SortAggregationStep;
+import org.techhouse.ops.req.agg.step.map.RemoveFieldMapOperator;
+
+public class QueryPlannerTest {
+    private static QueryPlan plan(BaseAggregationStep... steps) throws IOException {
+        // Not from a collection, so planning never touches the cache.
+        return QueryPlanner.plan(List.of(steps), "db", "coll", false);
+    }
+
+    private static FilterAggregationStep filter(String field) {
+        return new FilterAggregationStep(new FieldOperator(FieldOperatorType.EQUALS, field, new JsonString("x")));
+    }
+
+    private static MapAggregationStep removeField(String field) {
+        return new MapAggregationStep(List.of(new RemoveFieldMapOperator(field, null)));
+    }
+
+    // A FILTER moves ahead of a SORT and of a MAP that writes other fields
+    @Test
+    public void test_filter_pushed_past_sort_and_unrelated_map() throws IOException {
+        final var result = plan(new SortAggregationStep("age", true), removeField("name"), filter("status"));
+
+        assertEquals(List.of("FILTER on status", "SORT on age ascending", "MAP"), result.description());
+        assertEquals(List.of("FILTER on status moved ahead of MAP, SORT"), result.rewrites());
+    }
+
+    // A MAP writing the filtered field, or a parent of it, and a LIMIT both keep the FILTER behind them
+    @Test
+    public void test_filter_not_pushed_past_interfering_steps() throws IOException {
+        assertEquals(List.of(), plan(removeField("status"), filter("status")).rewrites());
+        assertEquals(List.of(), plan(removeField("address"), filter("address.city")).rewrites());
+        assertEquals(List.of(), plan(new LimitAggregationStep(5), filter("status")).rewrites());
+    }
+
+    // Adjacent filters become one flat AND
+    @Test
+    public void test_adjacent_filters_merged() throws IOException {
+        final var and = new ConjunctionOperator(ConjunctionOperatorType.AND, List.of(
+                new FieldOperator(FieldOperatorType.EQUALS, "a", new JsonString("x")),
+                new FieldOperator(FieldOperatorType.EQUALS, "b", new JsonString("y"))));
+        final var result = plan(new FilterAggregationStep(and), filter("c"));
+
+        assertEquals(1, result.steps().size());
+        final var merged = (ConjunctionOperator) ((FilterAggregationStep) result.steps().getFirst()).getOperator();
+        assertEquals(ConjunctionOperatorType.AND, merged.getConjunctionType());
+        assertEquals(3, merged.getOperators().size());
+    }
+
+    // LIMIT and SKIP runs collapse into at most one SKIP followed by one LIMIT
+    @Test
+    public void test_limits_and_skips_merged() throws IOException {
+        assertEquals(List.of("LIMIT 3"),
+                plan(new LimitAggregationStep(10), new LimitAggregationStep(3)).description());
+        assertEquals(List.of("SKIP 7"),
+                plan(new SkipAggregationStep(3), new SkipAggregationStep(4)).description());
+        assertEquals(List.of("SKIP 4", "LIMIT 6"),
+                plan(new LimitAggregationStep(10), new SkipAggregationStep(4)).description());
+        assertEquals(List.of("SKIP 12", "LIMIT 0"),
+                plan(new LimitAggregationStep(10), new SkipAggregationStep(12)).description());
+    }
+
+    // SORT followed by LIMIT, with or without a SKIP in between, becomes a top-K sort
+    @Test
+    public void test_sort_and_limit_fused_into_top_k() throws IOException {
+        final var result = plan(new SortAggregationStep("age", false), new SkipAggregationStep(2),
+                new LimitAggregationStep(5));
+
+        assertEquals(1, result.steps().size());
+        final var topK = (QueryPlanner.TopKSortStep) result.steps().getFirst();
+        assertEquals(2, topK.getSkip());
+        assertEquals(5, topK.getLimit());
+        assertEquals(List.of("SORT on age descending, top 5 after skipping 2"), result.description());
+        assertEquals(List.of("SORT on age ascending, top 4"), plan(new SortAggregationStep("age", true),
+                new LimitAggregationStep(4)).description());
+    }
+}
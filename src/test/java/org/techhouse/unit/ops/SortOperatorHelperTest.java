@@ -0,0 +1,111 @@
+package org.techhouse.unit.ops;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.techhouse.config.Globals;
+import org.techhouse.ejson.elements.JsonObject;
+import org.techhouse.ops.SortOperatorHelper;
+import org.techhouse.test.TestGlobals;
+import org.techhouse.test.TestUtils;
+
+public class SortOperatorHelperTest {
+    @BeforeEach
+    public void setUp() throws IOException, NoSuchFieldException, IllegalAccessException {
+        TestUtils.standardInitialSetup();
+    }
+
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        TestUtils.standardTearDown();
+    }
+
+    private static JsonObject document(int id, Integer score) {
+        final var document = new JsonObject();
+        document.addProperty(Globals.PK_FIELD, "d" + id);
+        if (score != null) {
+            document.addProperty("score", score);
+        }
+        return document;
+    }
+
+    private static List<String> ids(Stream<JsonObject> documents) {
+        try (documents) {
+            return documents.map(document -> document.get(Globals.PK_FIELD).asJsonString().getValue()).toList();
+        }
+    }
+
+    private static String[] runFiles() {
+        final var runs = new File(TestGlobals.PATH, Globals.SPILL_FOLDER_NAME).list();
+        return runs == null ? new String[0] : runs;
+    }
+
+    private static Stream<JsonObject> scores(int... scores) {
+        return IntStream.range(0, scores.length).mapToObj(i -> document(i, scores[i]));
+    }
+
+    // Without a budget the sort stays in memory and orders equal keys by input position
+    @Test
+    public void test_in_memory_sort_is_stable() {
+        final var sorted = ids(SortOperatorHelper.sort(scores(3, 1, 2, 1, 3), "score", true, Long.MAX_VALUE));
+
+        assertEquals(List.of("d1", "d3", "d2", "d0", "d4"), sorted);
+        assertEquals(0, runFiles().length);
+    }
+
+    // A budget smaller than one document spills every document as its own run; the merge still matches a
+    // stable in-memory sort and the run files are gone once the result is read
+    @Test
+    public void test_spilled_sort_merges_runs_in_order() {
+        final int[] values = {5, 3, 9, 3, 1, 7, 5, 2, 8, 3};
+        final var expected = ids(SortOperatorHelper.sort(scores(values), "score", false, Long.MAX_VALUE));
+
+        final var spilled = ids(SortOperatorHelper.sort(scores(values), "score", false, 1));
+
+        assertEquals(expected, spilled);
+        assertEquals(0, runFiles().length);
+    }
+
+    // Documents without the field still sort last when they come back from disk
+    @Test
+    public void test_spilled_sort_keeps_missing_values_last() {
+        final var input = Stream.of(document(0, null), document(1, 2), document(2, null), document(3, 1));
+
+        final var sorted = ids(SortOperatorHelper.sort(input, "score", true, 1));
+
+        assertEquals(List.of("d3", "d1", "d0", "d2"), sorted);
+    }
+
+    // The input is read only when the result is, and closing a partly read result removes its runs
+    @Test
+    public void test_spilled_sort_is_lazy_and_cleans_up_on_close() {
+        final var read = new int[1];
+        final var input = scores(4, 2, 6, 1).peek(_ -> read[0]++);
+
+        final var result = SortOperatorHelper.sort(input, "score", true, 1);
+        assertEquals(0, read[0]);
+
+        final var iterator = result.iterator();
+        assertEquals("d3", iterator.next().get(Globals.PK_FIELD).asJsonString().getValue());
+        assertEquals(4, read[0]);
+        assertTrue(runFiles().length > 0);
+        result.close();
+        assertEquals(0, runFiles().length);
+    }
+
+    // Top-K returns the requested page of the sorted input
+    @Test
+    public void test_top_k_returns_page() {
+        final var page = ids(SortOperatorHelper.topK(scores(5, 3, 9, 3, 1, 7), "score", true, 1, 3));
+
+        assertEquals(List.of("d1", "d3", "d0"), page);
+        assertEquals(List.of(), ids(SortOperatorHelper.topK(scores(1, 2), "score", true, 5, 3)));
+    }
+}
@@ -0,0 +1,26 @@
+package org.techhouse.unit.ops.req;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.techhouse.ops.OperationType;
+import org.techhouse.ops.req.MigrateCollectionRequest;
+
+public class MigrateCollectionRequestTest {
+    @Test
+    public void test_constructor_sets_fields() {
+        MigrateCollectionRequest request = new MigrateCollectionRequest("myDb", "myColl", "BINARY");
+        assertEquals(OperationType.MIGRATE_COLLECTION, request.getType());
+        assertEquals("myDb", request.getDatabaseName());
+        assertEquals("myColl", request.getCollectionName());
+        assertEquals("BINARY", request.getStorageFormat());
+    }
+
+    @Test
+    public void test_no_arg_constructor_has_no_format() {
+        MigrateCollectionRequest request = new MigrateCollectionRequest();
+        assertEquals(OperationType.MIGRATE_COLLECTION, request.getType());
+        assertNull(request.getStorageFormat());
+    }
+}
@@ -35,6 +35,8 @@ import org.techhouse.ops.req.agg.mid_operators.MidOperationType;
 import org.techhouse.ops.req.agg.operators.ConjunctionOperator;
 import org.techhouse.ops.req.agg.operators.FieldOperator;
 import org.techhouse.ops.req.agg.step.FilterAggregationStep;
+import org.techhouse.ops.req.agg.step.GroupByAggregationStep;
+import org.techhouse.ops.req.agg.step.LimitAggregationStep;
 import org.techhouse.ops.req.agg.step.MapAggregationStep;
 import org.techhouse.ops.req.agg.step.map.AddFieldMapOperator;
 import org.techhouse.ops.req.agg.step.map.MapOperator;
@@ -184,6 +186,42 @@ public class RequestParserTest {
         assertEquals("a_field", addParamOperator.getOperands().asList().getFirst().asJsonString().getValue());
     }
 
+    // Parse a GROUP_BY step with accumulators and opted-in group documents
+    @Test
+    public void test_parse_group_by_with_accumulators() {
+        String message = "{ \"type\": \"AGGREGATE\", \"databaseName\": \"testDB\", \"collectionName\": \"testCollection\", \"aggregationSteps\": [{ \"type\": \"GROUP_BY\", \"fieldName\": \"category\", \"includeDocuments\": true, \"accumulators\": [{ \"fieldName\": \"total\", \"type\": \"SUM\", \"operand\": \"price\" }, { \"fieldName\": \"count\", \"type\": \"SIZE\" }] }] }";
+        AggregateRequest aggRequest = (AggregateRequest) RequestParser.parseRequest(message);
+        GroupByAggregationStep groupBy = (GroupByAggregationStep) aggRequest.getAggregationSteps().getFirst();
+        assertEquals("category", groupBy.getFieldName());
+        assertTrue(groupBy.isIncludeDocuments());
+        assertEquals(2, groupBy.getAccumulators().size());
+        assertEquals("total", groupBy.getAccumulators().getFirst().getFieldName());
+        assertEquals(MidOperationType.SUM, groupBy.getAccumulators().getFirst().getType());
+        assertEquals("price", groupBy.getAccumulators().getFirst().getOperand());
+        assertEquals(MidOperationType.SIZE, groupBy.getAccumulators().get(1).getType());
+        assertNull(groupBy.getAccumulators().get(1).getOperand());
+    }
+
+    // A GROUP_BY without accumulators parses with none and keeps its group documents
+    @Test
+    public void test_parse_plain_group_by() {
+        String message = "{ \"type\": \"AGGREGATE\", \"databaseName\": \"testDB\", \"collectionName\": \"testCollection\", \"aggregationSteps\": [{ \"type\": \"GROUP_BY\", \"fieldName\": \"category\" }] }";
+        AggregateRequest aggRequest = (AggregateRequest) RequestParser.parseRequest(message);
+        GroupByAggregationStep groupBy = (GroupByAggregationStep) aggRequest.getAggregationSteps().getFirst();
+        assertEquals("category", groupBy.getFieldName());
+        assertTrue(groupBy.isIncludeDocuments());
+        assertTrue(groupBy.getAccumulators().isEmpty());
+    }
+
+    // The group documents of a GROUP_BY without accumulators can still be left out explicitly
+    @Test
+    public void test_parse_plain_group_by_without_documents() {
+        String message = "{ \"type\": \"AGGREGATE\", \"databaseName\": \"testDB\", \"collectionName\": \"testCollection\", \"aggregationSteps\": [{ \"type\": \"GROUP_BY\", \"fieldName\": \"category\", \"includeDocuments\": false }] }";
+        AggregateRequest aggRequest = (AggregateRequest) RequestParser.parseRequest(message);
+        GroupByAggregationStep groupBy = (GroupByAggregationStep) aggRequest.getAggregationSteps().getFirst();
+        assertFalse(groupBy.isIncludeDocuments());
+    }
+
     // Parse conjunction operators with nested operators (AND, OR)
     @Test
     public void test_parse_conjunction_operators_with_nested_operators() {
@@ -461,6 +499,28 @@ public class RequestParserTest {
         assertEquals(7, result.getAggregationSteps().size());
     }
 
+    // The request fields around the steps are bound from the same parse, and the steps get their concrete types
+    @Test
+    public void test_parse_aggregation_binds_request_fields_and_concrete_steps() {
+        String msg = """
+                {"type":"AGGREGATE","databaseName":"db","collectionName":"coll","batchSize":3,"aggregationSteps":[
+                  {"type":"LIMIT","limit":10}
+                ],"analyze":true}""";
+        AggregateRequest result = (AggregateRequest) RequestParser.parseRequest(msg);
+        assertEquals("db", result.getDatabaseName());
+        assertEquals("coll", result.getCollectionName());
+        assertEquals(3, result.getBatchSize());
+        assertTrue(result.isAnalyze());
+        assertInstanceOf(LimitAggregationStep.class, result.getAggregationSteps().getFirst());
+    }
+
+    // An aggregation without steps is not a valid command
+    @Test
+    public void test_parse_aggregation_without_steps_is_invalid() {
+        String msg = "{\"type\":\"AGGREGATE\",\"databaseName\":\"db\",\"collectionName\":\"coll\"}";
+        assertThrows(InvalidCommandException.class, () -> RequestParser.parseRequest(msg));
+    }
+
     // Parse aggregation MAP step with ABS mid-operator
     @Test
     public void test_parse_map_with_abs_operator() {
@@ -1,10 +1,15 @@
 package org.techhouse.unit.ops.req.agg.step;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.techhouse.ops.req.agg.AggregationStepType;
+import org.techhouse.ops.req.agg.mid_operators.MidOperationType;
 import org.techhouse.ops.req.agg.step.GroupByAggregationStep;
+import org.techhouse.ops.req.agg.step.group.GroupAccumulator;
 
 public class GroupByAggregationStepTest {
     // Constructor initializes with valid fieldName and sets GROUP_BY type
@@ -29,6 +34,26 @@ public class GroupByAggregationStepTest {
         assertEquals(emptyFieldName, step.getFieldName());
     }
 
+    // Without accumulators a group computes no values and carries its documents
+    @Test
+    public void constructor_with_field_name_only_has_no_accumulators_and_carries_documents() {
+        GroupByAggregationStep step = new GroupByAggregationStep("testField");
+
+        assertTrue(step.getAccumulators().isEmpty());
+        assertTrue(step.isIncludeDocuments());
+    }
+
+    // Accumulators and the document opt-in are kept as given
+    @Test
+    public void constructor_with_accumulators_sets_properties() {
+        final var accumulators = List.of(new GroupAccumulator("total", MidOperationType.SUM, "price"));
+
+        GroupByAggregationStep step = new GroupByAggregationStep("testField", accumulators, true);
+
+        assertEquals(accumulators, step.getAccumulators());
+        assertTrue(step.isIncludeDocuments());
+    }
+
     // test getters and setters provided by lombok
     @Test
     public void test_getters_and_setters() {
@@ -24,6 +24,7 @@ import org.techhouse.ops.req.agg.step.LimitAggregationStep;
 import org.techhouse.ops.req.agg.step.MapAggregationStep;
 import org.techhouse.ops.req.agg.step.SkipAggregationStep;
 import org.techhouse.ops.req.agg.step.SortAggregationStep;
+import org.techhouse.ops.req.agg.step.group.GroupAccumulator;
 import org.techhouse.ops.req.agg.step.map.AddFieldMapOperator;
 import org.techhouse.ops.req.agg.step.map.RemoveFieldMapOperator;
 import org.techhouse.ops.req.validations.AggregationStepValidator;
@@ -180,6 +181,39 @@ public class AggregationStepValidatorTest {
         assertFalse(AggregationStepValidator.validate(new GroupByAggregationStep(null)).isValid());
     }
 
+    @Test
+    public void validate_groupByStep_validAccumulators_returnsOk() {
+        final var step = new GroupByAggregationStep("category", List.of(
+                new GroupAccumulator("total", MidOperationType.SUM, "price"),
+                new GroupAccumulator("count", MidOperationType.SIZE, null)), false);
+        assertTrue(AggregationStepValidator.validate(step).isValid());
+    }
+
+    @Test
+    public void validate_groupByStep_accumulatorWithoutOperand_returnsFail() {
+        final var step = new GroupByAggregationStep("category",
+                List.of(new GroupAccumulator("avg", MidOperationType.AVG, null)), false);
+        assertFalse(AggregationStepValidator.validate(step).isValid());
+    }
+
+    @Test
+    public void validate_groupByStep_unsupportedAccumulatorType_returnsFail() {
+        final var step = new GroupByAggregationStep("category",
+                List.of(new GroupAccumulator("x", MidOperationType.CONCAT, "name")), false);
+        assertFalse(AggregationStepValidator.validate(step).isValid());
+    }
+
+    @Test
+    public void validate_groupByStep_clashingAccumulatorFieldNames_returnsFail() {
+        final var sum = new GroupAccumulator("total", MidOperationType.SUM, "price");
+        assertFalse(AggregationStepValidator.validate(new GroupByAggregationStep("category",
+                List.of(sum, new GroupAccumulator("total", MidOperationType.MAX, "price")), false)).isValid());
+        assertFalse(AggregationStepValidator.validate(new GroupByAggregationStep("category",
+                List.of(new GroupAccumulator("category", MidOperationType.SIZE, null)), false)).isValid());
+        assertFalse(AggregationStepValidator.validate(new GroupByAggregationStep("category",
+                List.of(new GroupAccumulator("group", MidOperationType.SIZE, null)), true)).isValid());
+    }
+
     // JOIN
     @Test
     public void validate_joinStep_allFieldsPresent_returnsOk() {
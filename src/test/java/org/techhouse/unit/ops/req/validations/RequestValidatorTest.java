@@ -17,8 +17,11 @@ import org.techhouse.ops.req.DropCollectionRequest;
 import org.techhouse.ops.req.DropDatabaseRequest;
 import org.techhouse.ops.req.DropIndexRequest;
 import org.techhouse.ops.req.FindByIdRequest;
+import org.techhouse.ops.req.GetMoreRequest;
+import org.techhouse.ops.req.KillCursorRequest;
 import org.techhouse.ops.req.ListCollectionsRequest;
 import org.techhouse.ops.req.ListDatabasesRequest;
+import org.techhouse.ops.req.MigrateCollectionRequest;
 import org.techhouse.ops.req.ReindexRequest;
 import org.techhouse.ops.req.SaveRequest;
 import org.techhouse.ops.req.agg.FieldOperatorType;
@@ -305,6 +308,23 @@ public class RequestValidatorTest {
         assertTrue(RequestValidator.validate(req).isValid());
     }
 
+    @Test
+    public void validate_aggregate_negativeBatchSize_returnsFail() {
+        final var req = new AggregateRequest("myDb", "myColl");
+        req.setAggregationSteps(List.of());
+        req.setBatchSize(-1);
+        assertFalse(RequestValidator.validate(req).isValid());
+    }
+
+    @Test
+    public void validate_aggregate_batchSizeWithAnalyze_returnsFail() {
+        final var req = new AggregateRequest("myDb", "myColl");
+        req.setAggregationSteps(List.of());
+        req.setBatchSize(10);
+        req.setAnalyze(true);
+        assertFalse(RequestValidator.validate(req).isValid());
+    }
+
     @Test
     public void validate_aggregate_validSteps_returnsOk() {
         final var req = new AggregateRequest("myDb", "myColl");
@@ -411,4 +431,57 @@ public class RequestValidatorTest {
     public void validate_reindex_adminDatabase_returnsFail() {
         assertFalse(RequestValidator.validate(new ReindexRequest("admin", "myColl", null)).isValid());
     }
+
+    @Test
+    public void validate_createCollection_binaryStorageFormat_returnsOk() {
+        assertTrue(RequestValidator.validate(new CreateCollectionRequest("myDb", "myColl", "BINARY")).isValid());
+    }
+
+    @Test
+    public void validate_createCollection_unknownStorageFormat_returnsFail() {
+        assertFalse(RequestValidator.validate(new CreateCollectionRequest("myDb", "myColl", "XML")).isValid());
+    }
+
+    // MIGRATE_COLLECTION
+    @Test
+    public void validate_migrateCollection_validFormat_returnsOk() {
+        assertTrue(RequestValidator.validate(new MigrateCollectionRequest("myDb", "myColl", "JSON")).isValid());
+    }
+
+    @Test
+    public void validate_migrateCollection_missingFormat_returnsFail() {
+        assertFalse(RequestValidator.validate(new MigrateCollectionRequest("myDb", "myColl", null)).isValid());
+    }
+
+    @Test
+    public void validate_migrateCollection_adminDatabase_returnsFail() {
+        assertFalse(RequestValidator.validate(new MigrateCollectionRequest("admin", "myColl", "BINARY")).isValid());
+    }
+
+    // GET_MORE / KILL_CURSOR
+    @Test
+    public void validate_getMore_validCursorId_returnsOk() {
+        final var req = new GetMoreRequest();
+        req.setCursorId("550e8400-e29b-41d4-a716-446655440000");
+        assertTrue(RequestValidator.validate(req).isValid());
+    }
+
+    @Test
+    public void validate_getMore_invalidCursorIdOrBatchSize_returnsFail() {
+        final var req = new GetMoreRequest();
+        assertFalse(RequestValidator.validate(req).isValid());
+        req.setCursorId("not-a-uuid");
+        assertFalse(RequestValidator.validate(req).isValid());
+        req.setCursorId("550e8400-e29b-41d4-a716-446655440000");
+        req.setBatchSize(-5);
+        assertFalse(RequestValidator.validate(req).isValid());
+    }
+
+    @Test
+    public void validate_killCursor_requiresCursorId() {
+        final var req = new KillCursorRequest();
+        assertFalse(RequestValidator.validate(req).isValid());
+        req.setCursorId("550e8400-e29b-41d4-a716-446655440000");
+        assertTrue(RequestValidator.validate(req).isValid());
+    }
 }
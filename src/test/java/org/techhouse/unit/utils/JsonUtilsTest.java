@@ -382,4 +382,28 @@ public class JsonUtilsTest {
         assertEquals("[]", JsonUtils.canonicalize(new JsonArray()));
         assertNotEquals(JsonUtils.hashElement(new JsonObject()), JsonUtils.hashElement(new JsonArray()));
     }
+
+    // compareSortValues: compares pre-extracted values, keeping missing values last in both directions
+    @Test
+    public void test_compare_sort_values_on_extracted_keys() {
+        assertTrue(JsonUtils.compareSortValues(new JsonNumber(1), new JsonNumber(2), true) < 0);
+        assertTrue(JsonUtils.compareSortValues(new JsonNumber(1), new JsonNumber(2), false) > 0);
+        assertTrue(JsonUtils.compareSortValues(new JsonString("b"), new JsonString("a"), false) < 0);
+        assertEquals(1, JsonUtils.compareSortValues(JsonNull.INSTANCE, new JsonNumber(1), true));
+        assertEquals(1, JsonUtils.compareSortValues(JsonNull.INSTANCE, new JsonNumber(1), false));
+        assertEquals(0, JsonUtils.compareSortValues(JsonNull.INSTANCE, JsonNull.INSTANCE, false));
+    }
+
+    // getFromPath: a path split once resolves the same value as the dotted string
+    @Test
+    public void test_get_from_split_path() {
+        JsonObject inner = new JsonObject();
+        inner.addProperty("city", "Paris");
+        JsonObject obj = new JsonObject();
+        obj.add("address", inner);
+        final var path = JsonUtils.splitPath("address.city");
+        assertArrayEquals(new String[] {"address", "city"}, path);
+        assertEquals(JsonUtils.getFromPath(obj, "address.city"), JsonUtils.getFromPath(obj, path));
+        assertEquals(JsonNull.INSTANCE, JsonUtils.getFromPath(obj, JsonUtils.splitPath("address.zip")));
+    }
 }
@@ -11,6 +11,7 @@ import java.util.Set;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.techhouse.data.FieldIndexEntry;
+import org.techhouse.data.NumericFieldIndex;
 import org.techhouse.ejson.custom_types.JsonDateTime;
 import org.techhouse.ejson.custom_types.JsonTime;
 import org.techhouse.ejson.elements.JsonCustom;
@@ -496,4 +497,38 @@ public class SearchUtilsTest {
         Set<String> result = SearchUtils.findingByOperator(entries, FieldOperatorType.SMALLER_THAN, tSmall);
         assertTrue(result.isEmpty());
     }
+
+    // Every comparison on a packed numeric index resolves to one slice, whatever boxed type the operand is
+    @Test
+    public void test_numeric_index_operators() {
+        final var index = NumericFieldIndex.fromEntries(List.of(new FieldIndexEntry<>("db", "col", 10, Set.of("a")),
+                new FieldIndexEntry<>("db", "col", 20.0, Set.of("b1", "b2")),
+                new FieldIndexEntry<>("db", "col", 30, Set.of("c"))));
+
+        assertEquals(Set.of("b1", "b2"), SearchUtils.findingByOperator(index, FieldOperatorType.EQUALS, 20));
+        assertTrue(SearchUtils.findingByOperator(index, FieldOperatorType.EQUALS, 25).isEmpty());
+        assertEquals(Set.of("a", "c"), SearchUtils.findingByOperator(index, FieldOperatorType.NOT_EQUALS, 20L));
+        assertEquals(Set.of("c"), SearchUtils.findingByOperator(index, FieldOperatorType.GREATER_THAN, 20));
+        assertEquals(Set.of("b1", "b2", "c"),
+                SearchUtils.findingByOperator(index, FieldOperatorType.GREATER_THAN_EQUALS, 20.0));
+        assertEquals(Set.of("a"), SearchUtils.findingByOperator(index, FieldOperatorType.SMALLER_THAN, 20));
+        assertEquals(Set.of("a", "b1", "b2"),
+                SearchUtils.findingByOperator(index, FieldOperatorType.SMALLER_THAN_EQUALS, 20));
+        assertEquals(Set.of("a", "b1", "b2", "c"),
+                SearchUtils.findingByOperator(index, FieldOperatorType.GREATER_THAN, 1.5));
+        assertTrue(SearchUtils.findingByOperator(index, FieldOperatorType.SMALLER_THAN, 10).isEmpty());
+    }
+
+    // IN / NOT_IN on a packed numeric index match values numerically, so 20 finds the 20.0 entry
+    @Test
+    public void test_numeric_index_in_not_in() {
+        final var index = NumericFieldIndex.fromEntries(List.of(new FieldIndexEntry<>("db", "col", 10, Set.of("a")),
+                new FieldIndexEntry<>("db", "col", 20.0, Set.of("b")),
+                new FieldIndexEntry<>("db", "col", 30, Set.of("c"))));
+
+        assertEquals(Set.of("a", "b"), SearchUtils.findingInNotIn(index, FieldOperatorType.IN, List.of(20, 10.0, 99)));
+        assertEquals(Set.of("c"), SearchUtils.findingInNotIn(index, FieldOperatorType.NOT_IN, List.of(20, 10)));
+        assertThrows(UnsupportedOperationException.class,
+                () -> SearchUtils.findingInNotIn(index, FieldOperatorType.EQUALS, List.of(10)));
+    }
 }